@@ -0,0 +1,58 @@
+package com.itmo.java.basics.config;
+
+import lombok.Builder;
+
+/**
+ * Правила вынесения больших значений из сегментов в blob-файлы таблицы. В сегменте вместо такого значения
+ * хранится ссылка на него, поэтому компактизация и инициализация читают только ключи и ссылки.
+ */
+public class BlobPolicy {
+    public static final long DEFAULT_MAX_BLOB_FILE_BYTES = 64L * 1024 * 1024;
+    public static final double DEFAULT_MAX_GARBAGE_RATIO = 0.5;
+
+    private final Integer minValueBytes;
+    private final Long maxBlobFileBytes;
+    private final Double maxGarbageRatio;
+
+    @Builder
+    public BlobPolicy(Integer minValueBytes, Long maxBlobFileBytes, Double maxGarbageRatio) {
+        this.minValueBytes = minValueBytes;
+        this.maxBlobFileBytes = maxBlobFileBytes;
+        this.maxGarbageRatio = maxGarbageRatio;
+    }
+
+    /**
+     * @return размер, начиная с которого значение записывается в blob-файл; {@code 0} - значения не выносятся
+     */
+    public int getMinValueBytes() {
+        return minValueBytes == null
+                ? 0
+                : Math.max(0, minValueBytes);
+    }
+
+    /**
+     * @return размер, достигнув которого blob-файл закрывается на запись
+     */
+    public long getMaxBlobFileBytes() {
+        return maxBlobFileBytes == null
+                ? DEFAULT_MAX_BLOB_FILE_BYTES
+                : Math.max(1, maxBlobFileBytes);
+    }
+
+    /**
+     * @return доля неактуальных значений закрытого blob-файла, при которой актуальные значения переписываются
+     * в новый файл, а старый удаляется
+     */
+    public double getMaxGarbageRatio() {
+        return maxGarbageRatio == null
+                ? DEFAULT_MAX_GARBAGE_RATIO
+                : Math.min(1, Math.max(0, maxGarbageRatio));
+    }
+
+    /**
+     * @return {@code true}, если большие значения выносятся в blob-файлы
+     */
+    public boolean isEnabled() {
+        return getMinValueBytes() > 0;
+    }
+}
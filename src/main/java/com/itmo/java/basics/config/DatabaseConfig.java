@@ -1,12 +1,69 @@
 package com.itmo.java.basics.config;
 
+import lombok.Builder;
+
+import java.util.Map;
+import java.util.Set;
+
 public class DatabaseConfig {
     public static final String DEFAULT_WORKING_PATH = "db_files";
+    public static final long DEFAULT_MAX_MAPPED_BYTES = 256L * 1024 * 1024;
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 10;
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10;
+    public static final long DEFAULT_MAX_COMPACTED_SEGMENT_BYTES = 1024L * 1024 * 1024;
+    public static final int DEFAULT_INITIALIZATION_PARALLELISM = 1;
+    public static final long DEFAULT_BLOCK_CACHE_BYTES = 8L * 1024 * 1024;
+    public static final double DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_RATE = 0.01;
+    public static final long DEFAULT_VALUE_CACHE_BYTES = 64L * 1024 * 1024;
 
     private final String workingPath;
+    private final boolean memoryMappingEnabled;
+    private final Long maxMappedBytes;
+    private final DurabilityPolicy durabilityPolicy;
+    private final Long syncIntervalMillis;
+    private final Integer compactionThreshold;
+    private final Integer initializationParallelism;
+    private final boolean blockCompressionEnabled;
+    private final Long blockCacheBytes;
+    private final Double bloomFilterFalsePositiveRate;
+    private final Long valueCacheBytes;
+    private final SegmentPolicy segmentPolicy;
+    private final Map<String, SegmentPolicy> tableSegmentPolicies;
+    private final Set<String> orderedIndexTables;
+    private final BlobPolicy blobPolicy;
+    private final Long maxCompactedSegmentBytes;
 
     public DatabaseConfig(String workingPath) {
+        this(workingPath, false, null, null, null, null, null, false, null, null, null, null, null, null, null, null);
+    }
+
+    @Builder
+    public DatabaseConfig(String workingPath, boolean memoryMappingEnabled, Long maxMappedBytes,
+                          DurabilityPolicy durabilityPolicy, Long syncIntervalMillis, Integer compactionThreshold,
+                          Integer initializationParallelism, boolean blockCompressionEnabled, Long blockCacheBytes,
+                          Double bloomFilterFalsePositiveRate, Long valueCacheBytes, SegmentPolicy segmentPolicy,
+                          Map<String, SegmentPolicy> tableSegmentPolicies, Set<String> orderedIndexTables,
+                          BlobPolicy blobPolicy, Long maxCompactedSegmentBytes) {
         this.workingPath = workingPath;
+        this.memoryMappingEnabled = memoryMappingEnabled;
+        this.maxMappedBytes = maxMappedBytes;
+        this.durabilityPolicy = durabilityPolicy;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.compactionThreshold = compactionThreshold;
+        this.initializationParallelism = initializationParallelism;
+        this.blockCompressionEnabled = blockCompressionEnabled;
+        this.blockCacheBytes = blockCacheBytes;
+        this.bloomFilterFalsePositiveRate = bloomFilterFalsePositiveRate;
+        this.valueCacheBytes = valueCacheBytes;
+        this.segmentPolicy = segmentPolicy;
+        this.tableSegmentPolicies = tableSegmentPolicies == null
+                ? Map.of()
+                : Map.copyOf(tableSegmentPolicies);
+        this.orderedIndexTables = orderedIndexTables == null
+                ? Set.of()
+                : Set.copyOf(orderedIndexTables);
+        this.blobPolicy = blobPolicy;
+        this.maxCompactedSegmentBytes = maxCompactedSegmentBytes;
     }
 
     public String getWorkingPath() {
@@ -14,4 +71,149 @@ public class DatabaseConfig {
                 ? DEFAULT_WORKING_PATH
                 : workingPath;
     }
+
+    /**
+     * @return {@code true}, если заполненные (read-only) сегменты читаются через отображение в память
+     */
+    public boolean isMemoryMappingEnabled() {
+        return memoryMappingEnabled;
+    }
+
+    /**
+     * @return суммарный размер одновременно отображенных в память сегментов
+     */
+    public long getMaxMappedBytes() {
+        return maxMappedBytes == null
+                ? DEFAULT_MAX_MAPPED_BYTES
+                : maxMappedBytes;
+    }
+
+    public DurabilityPolicy getDurabilityPolicy() {
+        return durabilityPolicy == null
+                ? DurabilityPolicy.NONE
+                : durabilityPolicy;
+    }
+
+    /**
+     * @return период сброса данных на диск для {@link DurabilityPolicy#EVERY_N_MS}
+     */
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis == null
+                ? DEFAULT_SYNC_INTERVAL_MILLIS
+                : syncIntervalMillis;
+    }
+
+    /**
+     * @return количество заполненных сегментов таблицы, при котором запускается их компактизация; {@code 0} - никогда
+     */
+    public int getCompactionThreshold() {
+        return compactionThreshold == null
+                ? DEFAULT_COMPACTION_THRESHOLD
+                : compactionThreshold;
+    }
+
+    /**
+     * @return наибольший суммарный размер сегментов, сливаемых компактизацией в один сегмент
+     */
+    public long getMaxCompactedSegmentBytes() {
+        return maxCompactedSegmentBytes == null
+                ? DEFAULT_MAX_COMPACTED_SEGMENT_BYTES
+                : maxCompactedSegmentBytes;
+    }
+
+    /**
+     * @return число потоков, которыми инициализируются базы данных, таблицы и сегменты; {@code 1} - последовательно
+     */
+    public int getInitializationParallelism() {
+        return initializationParallelism == null
+                ? DEFAULT_INITIALIZATION_PARALLELISM
+                : Math.max(1, initializationParallelism);
+    }
+
+    /**
+     * @return {@code true}, если компактизация записывает сегменты сжатыми блоками
+     */
+    public boolean isBlockCompressionEnabled() {
+        return blockCompressionEnabled;
+    }
+
+    /**
+     * @return суммарный размер распакованных блоков сжатых сегментов, хранящихся в памяти
+     */
+    public long getBlockCacheBytes() {
+        return blockCacheBytes == null
+                ? DEFAULT_BLOCK_CACHE_BYTES
+                : blockCacheBytes;
+    }
+
+    /**
+     * @return доля ложных срабатываний, под которую строятся фильтры Блума заполненных сегментов;
+     * {@code 0} - фильтры не строятся
+     */
+    public double getBloomFilterFalsePositiveRate() {
+        return bloomFilterFalsePositiveRate == null
+                ? DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_RATE
+                : bloomFilterFalsePositiveRate;
+    }
+
+    /**
+     * @return суммарный размер значений, кэшируемых всеми таблицами окружения
+     */
+    public long getValueCacheBytes() {
+        return valueCacheBytes == null
+                ? DEFAULT_VALUE_CACHE_BYTES
+                : valueCacheBytes;
+    }
+
+    /**
+     * @return правила смены сегментов таблиц, для которых не задано собственных правил
+     */
+    public SegmentPolicy getSegmentPolicy() {
+        return segmentPolicy == null
+                ? new SegmentPolicy(null, null)
+                : segmentPolicy;
+    }
+
+    /**
+     * Возвращает правила смены сегментов таблицы. Собственные правила таблицы задаются
+     * по ключу {@code база/таблица} или по имени таблицы для одноименных таблиц всех баз
+     * и заменяют общие правила целиком.
+     *
+     * @param databaseName имя базы данных
+     * @param tableName имя таблицы
+     * @return правила смены сегментов таблицы
+     */
+    public SegmentPolicy getSegmentPolicy(String databaseName, String tableName) {
+        var policy = tableSegmentPolicies.get(databaseName + "/" + tableName);
+
+        if (policy == null) {
+            policy = tableSegmentPolicies.get(tableName);
+        }
+
+        return policy == null
+                ? getSegmentPolicy()
+                : policy;
+    }
+
+    /**
+     * Проверяет, ведет ли таблица упорядоченный индекс ключей для запросов по диапазону.
+     * Таблицы задаются так же, как в {@link #getSegmentPolicy(String, String)}: {@code база/таблица} или имя таблицы.
+     * Без упорядоченного индекса запросы по диапазону читают таблицу целиком.
+     *
+     * @param databaseName имя базы данных
+     * @param tableName имя таблицы
+     * @return {@code true}, если у таблицы есть упорядоченный индекс ключей
+     */
+    public boolean isOrderedIndexEnabled(String databaseName, String tableName) {
+        return orderedIndexTables.contains(databaseName + "/" + tableName) || orderedIndexTables.contains(tableName);
+    }
+
+    /**
+     * @return правила вынесения больших значений в blob-файлы, по умолчанию значения не выносятся
+     */
+    public BlobPolicy getBlobPolicy() {
+        return blobPolicy == null
+                ? new BlobPolicy(null, null, null)
+                : blobPolicy;
+    }
 }
@@ -0,0 +1,200 @@
+package com.itmo.java.basics.config;
+
+import com.itmo.java.basics.logic.impl.ValueCache;
+import com.itmo.java.basics.logic.io.BlockCache;
+import com.itmo.java.basics.logic.io.MappedSegmentCache;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ресурсы, разделяемые всеми базами данных одного окружения и созданные по {@link DatabaseConfig}.
+ * Фоновые потоки ресурсов останавливаются {@link #close()}.
+ */
+public class DatabaseResources implements AutoCloseable {
+
+    /**
+     * Доля бюджета кэша значений, отдаваемая под кэш отсутствующих ключей
+     */
+    private static final int ABSENT_KEY_CACHE_DIVISOR = 16;
+    /**
+     * Число потоков периодического сброса данных на диск, общих для всех таблиц окружения
+     */
+    static final int FLUSH_THREADS = 4;
+
+    private static DatabaseResources defaults;
+
+    private final DatabaseConfig config;
+    private final MappedSegmentCache mappedSegments;
+    private final BlockCache blockCache;
+    private final ValueCache valueCache;
+    private final ValueCache absentKeyCache;
+    private ScheduledExecutorService scheduler;
+    private ScheduledThreadPoolExecutor flushScheduler;
+    private ExecutorService compactionExecutor;
+    private ForkJoinPool initializationPool;
+
+    public DatabaseResources(DatabaseConfig config) {
+        this.config = config;
+        this.mappedSegments = config.isMemoryMappingEnabled()
+                ? new MappedSegmentCache(config.getMaxMappedBytes())
+                : null;
+        this.blockCache = new BlockCache(config.getBlockCacheBytes());
+        this.valueCache = new ValueCache(config.getValueCacheBytes());
+        this.absentKeyCache = new ValueCache(config.getValueCacheBytes() / ABSENT_KEY_CACHE_DIVISOR);
+    }
+
+    /**
+     * Возвращает ресурсы с настройками по умолчанию. Используется сущностями, созданными вне окружения.
+     *
+     * @return ресурсы с настройками по умолчанию
+     */
+    public static synchronized DatabaseResources defaults() {
+        if (defaults == null) {
+            defaults = new DatabaseResources(new DatabaseConfig(null));
+        }
+
+        return defaults;
+    }
+
+    public DatabaseConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return отображения сегментов в память, если этот режим включен
+     */
+    public Optional<MappedSegmentCache> getMappedSegments() {
+        return Optional.ofNullable(mappedSegments);
+    }
+
+    /**
+     * @return кэш распакованных блоков сжатых сегментов
+     */
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * @return кэш значений, общий для всех таблиц окружения
+     */
+    public ValueCache getValueCache() {
+        return valueCache;
+    }
+
+    /**
+     * @return кэш ключей, которых нет в таблицах, общий для всех таблиц окружения
+     */
+    public ValueCache getAbsentKeyCache() {
+        return absentKeyCache;
+    }
+
+    /**
+     * Возвращает планировщик для фоновых задач хранилища. Потоки планировщика - демоны.
+     *
+     * @return планировщик фоновых задач
+     */
+    public synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                var thread = new Thread(task, "database-background");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return scheduler;
+    }
+
+    /**
+     * Запускает периодический сброс данных таблицы на диск. Сбросы выполняет отдельный планировщик
+     * из {@link #FLUSH_THREADS} потоков независимо от числа таблиц: медленный сброс одной таблицы не задерживает
+     * сбросы других таблиц, пока заняты не все потоки, а сами сбросы не ждут фоновых задач {@link #getScheduler()}.
+     *
+     * @param flush сброс данных таблицы
+     * @param intervalMillis период сброса
+     * @return запущенный сброс, останавливается через {@link #cancelFlush(ScheduledFuture)}
+     */
+    public synchronized ScheduledFuture<?> scheduleFlush(Runnable flush, long intervalMillis) {
+        if (flushScheduler == null) {
+            flushScheduler = new ScheduledThreadPoolExecutor(FLUSH_THREADS, task -> {
+                var thread = new Thread(task, "database-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flushScheduler.setRemoveOnCancelPolicy(true);
+        }
+
+        return flushScheduler.scheduleWithFixedDelay(flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Останавливает сброс, запущенный {@link #scheduleFlush(Runnable, long)}. Выполняющийся сброс не прерывается.
+     *
+     * @param flush запущенный сброс
+     */
+    public synchronized void cancelFlush(ScheduledFuture<?> flush) {
+        flush.cancel(false);
+    }
+
+    /**
+     * Возвращает исполнителя для компактизации сегментов, отдельного от планировщика,
+     * чтобы долгая компактизация не задерживала сброс данных на диск.
+     *
+     * @return исполнитель компактизации
+     */
+    public synchronized ExecutorService getCompactionExecutor() {
+        if (compactionExecutor == null) {
+            compactionExecutor = Executors.newSingleThreadExecutor(task -> {
+                var thread = new Thread(task, "database-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return compactionExecutor;
+    }
+
+    /**
+     * Возвращает пул для параллельной инициализации размером {@link DatabaseConfig#getInitializationParallelism()}.
+     * Простаивающие потоки пула завершаются сами.
+     *
+     * @return пул инициализации
+     */
+    public synchronized ForkJoinPool getInitializationPool() {
+        if (initializationPool == null) {
+            initializationPool = new ForkJoinPool(config.getInitializationParallelism());
+        }
+
+        return initializationPool;
+    }
+
+    /**
+     * Останавливает фоновые потоки ресурсов. Вызывается после закрытия всех баз данных окружения, когда у них
+     * не осталось фоновых задач: задачи, поставленные после этого, например отложенные повторы, отменяются.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+
+        if (flushScheduler != null) {
+            flushScheduler.shutdownNow();
+        }
+
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdownNow();
+        }
+
+        if (initializationPool != null) {
+            initializationPool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.itmo.java.basics.config;
+
+/**
+ * Определяет, когда записанные в сегмент данные сбрасываются на диск
+ */
+public enum DurabilityPolicy {
+    /**
+     * Данные не сбрасываются явно, за сохранность отвечает операционная система
+     */
+    NONE,
+    /**
+     * Данные сбрасываются раз в {@link DatabaseConfig#getSyncIntervalMillis()} миллисекунд,
+     * запись подтверждается после ближайшего сброса
+     */
+    EVERY_N_MS,
+    /**
+     * Каждая запись подтверждается только после сброса на диск, конкурентные записи сбрасываются вместе
+     */
+    EVERY_WRITE
+}
@@ -0,0 +1,41 @@
+package com.itmo.java.basics.config;
+
+import lombok.Builder;
+
+/**
+ * Правила, по которым таблица закрывает активный сегмент и начинает новый
+ */
+public class SegmentPolicy {
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 100_000;
+
+    private final Long maxSegmentBytes;
+    private final Long maxSegmentAgeMillis;
+
+    @Builder
+    public SegmentPolicy(Long maxSegmentBytes, Long maxSegmentAgeMillis) {
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentAgeMillis = maxSegmentAgeMillis;
+    }
+
+    /**
+     * @return размер, достигнув которого сегмент становится read-only
+     */
+    public long getMaxSegmentBytes() {
+        return maxSegmentBytes == null
+                ? DEFAULT_MAX_SEGMENT_BYTES
+                : Math.max(1, maxSegmentBytes);
+    }
+
+    /**
+     * Возраст считается с момента, когда сегмент стал активным. Проверяется при записи: сегмент, в который
+     * давно не писали, закрывается следующей записью.
+     *
+     * @return время, после которого непустой активный сегмент закрывается независимо от размера;
+     * {@code 0} - не закрывается по времени
+     */
+    public long getMaxSegmentAgeMillis() {
+        return maxSegmentAgeMillis == null
+                ? 0
+                : Math.max(0, maxSegmentAgeMillis);
+    }
+}
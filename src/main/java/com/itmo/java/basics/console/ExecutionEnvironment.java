@@ -1,5 +1,6 @@
 package com.itmo.java.basics.console;
 
+import com.itmo.java.basics.config.DatabaseResources;
 import com.itmo.java.basics.logic.Database;
 
 import java.nio.file.Path;
@@ -25,4 +26,9 @@ public interface ExecutionEnvironment {
      * @param db база данных, которую нужно добавить
      */
     void addDatabase(Database db);
+
+    /**
+     * @return ресурсы, разделяемые всеми базами данных окружения
+     */
+    DatabaseResources getResources();
 }
@@ -1,6 +1,7 @@
 package com.itmo.java.basics.console.impl;
 
 import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
 import com.itmo.java.basics.console.ExecutionEnvironment;
 import com.itmo.java.basics.index.impl.EnvironmentIndex;
 import com.itmo.java.basics.logic.Database;
@@ -8,13 +9,15 @@ import com.itmo.java.basics.logic.Database;
 import java.nio.file.Path;
 import java.util.Optional;
 
-public class ExecutionEnvironmentImpl implements ExecutionEnvironment {
+public class ExecutionEnvironmentImpl implements ExecutionEnvironment, AutoCloseable {
 
     DatabaseConfig config;
+    DatabaseResources resources;
     EnvironmentIndex databases = new EnvironmentIndex();
 
     public ExecutionEnvironmentImpl(DatabaseConfig config) {
         this.config = config;
+        this.resources = new DatabaseResources(config);
     }
 
     @Override
@@ -31,4 +34,18 @@ public class ExecutionEnvironmentImpl implements ExecutionEnvironment {
     public Path getWorkingPath() {
         return Path.of(config.getWorkingPath());
     }
+
+    @Override
+    public DatabaseResources getResources() {
+        return resources;
+    }
+
+    /**
+     * Останавливает фоновые потоки окружения, см {@link DatabaseResources#close()}.
+     * Вызывается после закрытия баз данных окружения.
+     */
+    @Override
+    public void close() {
+        resources.close();
+    }
 }
@@ -11,6 +11,13 @@ public interface KvsIndex<K, V> {
      */
     void onIndexedEntityUpdated(K key, V value);
 
+    /**
+     * Оповещает индекс об удалении ключа.
+     *
+     * @param key ключ, который больше не нужно индексировать
+     */
+    void onIndexedEntityRemoved(K key);
+
     /**
      * Ищет значение в индексе по указанному ключу.
      *
@@ -0,0 +1,9 @@
+package com.itmo.java.basics.index;
+
+public interface RecordLocation {
+    int getSegmentId();
+
+    long getOffset();
+
+    int getLength();
+}
@@ -0,0 +1,421 @@
+package com.itmo.java.basics.index.impl;
+
+import com.itmo.java.basics.index.KvsIndex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Индекс со строковыми ключами и значениями, которые кодируются в один или несколько {@code long}.
+ * Хеш-таблица с открытой адресацией (линейное пробирование) хранит номера записей в {@code int[]},
+ * ключи лежат в UTF-8 в больших общих массивах байтов, а значения, хеши и ссылки на ключи - в примитивных массивах.
+ * Поиск через {@link #get(String)} и {@link #entryOf(String)} ничего не аллоцирует:
+ * ключ сравнивается с байтами без кодирования.
+ * <p>
+ * Ключи удаленных записей остаются в массивах до ближайшего расширения таблицы.
+ *
+ * @param <V> тип значения, см {@link #decode(int)}
+ */
+public abstract class CompactKvsIndex<V> implements KvsIndex<String, V> {
+
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final int MIN_ARENA_CHUNK_SIZE = 4 * 1024;
+    private static final int MAX_ARENA_CHUNK_SIZE = 1024 * 1024;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private long[] keyRefs = new long[INITIAL_CAPACITY];
+    private int[] keyLengths = new int[INITIAL_CAPACITY];
+    private long[] values;
+    private final int width;
+    private int entries = 0;
+    private int size = 0;
+
+    private final List<byte[]> arena = new ArrayList<>();
+    private byte[] arenaChunk = new byte[0];
+    private int arenaPosition = 0;
+    private long arenaBytes = 0;
+
+    protected CompactKvsIndex() {
+        this(1);
+    }
+
+    /**
+     * @param width число {@code long}, в которые кодируется значение
+     */
+    protected CompactKvsIndex(int width) {
+        this.width = width;
+        this.values = new long[INITIAL_CAPACITY * width];
+    }
+
+    /**
+     * Восстанавливает значение индекса по номеру записи, см {@link #valueAt(int, int)}.
+     */
+    protected abstract V decode(int entry);
+
+    @Override
+    public void onIndexedEntityRemoved(String key) {
+        int slot = findSlot(key);
+
+        if (slots[slot] == 0)
+            return;
+
+        slots[slot] = 0;
+        size--;
+
+        int mask = slots.length - 1;
+        int next = (slot + 1) & mask;
+
+        while (slots[next] != 0) {
+            int home = spread(hashes[slots[next] - 1]) & mask;
+
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                slots[slot] = slots[next];
+                slots[next] = 0;
+                slot = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+    }
+
+    @Override
+    public Optional<V> searchForKey(String key) {
+        int entry = entryOf(key);
+
+        return entry < 0
+                ? Optional.empty()
+                : Optional.of(decode(entry));
+    }
+
+    /**
+     * Обновляет значение ключа, не создавая объект значения.
+     *
+     * @param key ключ
+     * @param value закодированное значение
+     */
+    public void put(String key, long value) {
+        int entry = insert(key) * width;
+        values[entry] = value;
+    }
+
+    /**
+     * Обновляет значение ключа, закодированное в два {@code long}.
+     *
+     * @param key ключ
+     * @param value первая часть закодированного значения
+     * @param extra вторая часть закодированного значения
+     */
+    public void put(String key, long value, long extra) {
+        int entry = insert(key) * width;
+        values[entry] = value;
+        values[entry + 1] = extra;
+    }
+
+    /**
+     * Ищет значение без аллокаций.
+     *
+     * @param key ключ
+     * @return закодированное значение или {@link #NO_VALUE}, если ключа нет
+     */
+    public long get(String key) {
+        int entry = entryOf(key);
+
+        return entry < 0
+                ? NO_VALUE
+                : values[entry * width];
+    }
+
+    /**
+     * Ищет запись ключа без аллокаций. Номер записи действителен до следующего изменения индекса.
+     *
+     * @param key ключ
+     * @return номер записи или {@code -1}, если ключа нет
+     */
+    public int entryOf(String key) {
+        return slots[findSlot(key)] - 1;
+    }
+
+    /**
+     * @param entry номер записи из {@link #entryOf(String)}
+     * @param column номер части закодированного значения
+     * @return часть закодированного значения записи
+     */
+    public long valueAt(int entry, int column) {
+        return values[entry * width + column];
+    }
+
+    /**
+     * Находит запись ключа, добавляя новую, если ключа нет.
+     *
+     * @return номер записи
+     */
+    private int insert(String key) {
+        int slot = findSlot(key);
+
+        if (slots[slot] != 0)
+            return slots[slot] - 1;
+
+        if (entries == hashes.length) {
+            if (size < entries / 2) {
+                rehash();
+                slot = findSlot(key);
+            } else {
+                growEntries();
+            }
+        }
+
+        int entry = entries++;
+        hashes[entry] = key.hashCode();
+        keyLengths[entry] = utf8Length(key);
+        keyRefs[entry] = storeKey(key, keyLengths[entry]);
+        slots[slot] = entry + 1;
+        size++;
+
+        if (size > slots.length * LOAD_FACTOR) {
+            rehash();
+            return slots[findSlot(key)] - 1;
+        }
+
+        return entry;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Передает {@code consumer} все ключи индекса в произвольном порядке.
+     */
+    public void forEachKey(Consumer<String> consumer) {
+        for (int slot : slots) {
+            if (slot != 0) {
+                int entry = slot - 1;
+                var chunk = arena.get((int) (keyRefs[entry] >>> 32));
+                consumer.accept(new String(chunk, (int) keyRefs[entry], keyLengths[entry], StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * @return оценка занятой индексом памяти в байтах: таблица, массивы записей и массивы ключей
+     */
+    public long estimateHeapBytes() {
+        return (long) slots.length * Integer.BYTES
+                + (long) hashes.length * (Integer.BYTES + Long.BYTES + Integer.BYTES)
+                + (long) values.length * Long.BYTES
+                + arenaBytes;
+    }
+
+    private int findSlot(String key) {
+        int hash = key.hashCode();
+        int mask = slots.length - 1;
+        int slot = spread(hash) & mask;
+
+        while (slots[slot] != 0) {
+            int entry = slots[slot] - 1;
+
+            if (hashes[entry] == hash && keyEquals(key, entry))
+                return slot;
+
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private static int spread(int hash) {
+        int spread = hash * 0x9E3779B9;
+        return spread ^ (spread >>> 16);
+    }
+
+    private void rehash() {
+        var oldHashes = hashes;
+        var oldKeyRefs = keyRefs;
+        var oldKeyLengths = keyLengths;
+        var oldValues = values;
+        var oldSlots = slots;
+        var oldArena = new ArrayList<>(arena);
+
+        int capacity = Integer.highestOneBit(Math.max(INITIAL_CAPACITY, size) * 2) * 2;
+        slots = new int[capacity];
+        hashes = new int[Math.max(INITIAL_CAPACITY, size * 2)];
+        keyRefs = new long[hashes.length];
+        keyLengths = new int[hashes.length];
+        values = new long[hashes.length * width];
+        entries = 0;
+        arena.clear();
+        arenaChunk = new byte[0];
+        arenaPosition = 0;
+        arenaBytes = 0;
+
+        int mask = capacity - 1;
+
+        for (int oldEntry : oldSlots) {
+            if (oldEntry == 0)
+                continue;
+
+            int from = oldEntry - 1;
+            int entry = entries++;
+            hashes[entry] = oldHashes[from];
+            keyLengths[entry] = oldKeyLengths[from];
+            keyRefs[entry] = copyKey(oldArena, oldKeyRefs[from], oldKeyLengths[from]);
+            System.arraycopy(oldValues, from * width, values, entry * width, width);
+
+            int slot = spread(hashes[entry]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+    }
+
+    private void growEntries() {
+        int capacity = hashes.length * 2;
+        hashes = Arrays.copyOf(hashes, capacity);
+        keyRefs = Arrays.copyOf(keyRefs, capacity);
+        keyLengths = Arrays.copyOf(keyLengths, capacity);
+        values = Arrays.copyOf(values, capacity * width);
+    }
+
+    /**
+     * Выделяет место под ключ в массивах ключей. Ключ не пересекает границу массива,
+     * массивы растут вдвое от {@link #MIN_ARENA_CHUNK_SIZE} до {@link #MAX_ARENA_CHUNK_SIZE}.
+     *
+     * @return ссылка на ключ: номер массива в старших 32 битах, смещение в младших
+     */
+    private long allocate(int length) {
+        if (arenaChunk.length - arenaPosition < length) {
+            int chunkSize = Math.min(MAX_ARENA_CHUNK_SIZE, Math.max(MIN_ARENA_CHUNK_SIZE, arenaChunk.length * 2));
+            arenaChunk = new byte[Math.max(chunkSize, length)];
+            arena.add(arenaChunk);
+            arenaBytes += arenaChunk.length;
+            arenaPosition = 0;
+        }
+
+        long ref = (long) (arena.size() - 1) << 32 | arenaPosition;
+        arenaPosition += length;
+
+        return ref;
+    }
+
+    private long storeKey(String key, int length) {
+        long ref = allocate(length);
+        var chunk = arena.get((int) (ref >>> 32));
+        int position = (int) ref;
+
+        for (int i = 0; i < key.length(); i++) {
+            int c = key.charAt(i);
+
+            if (c < 0x80) {
+                chunk[position++] = (byte) c;
+            } else if (c < 0x800) {
+                chunk[position++] = (byte) (0xC0 | c >> 6);
+                chunk[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < key.length()
+                    && Character.isLowSurrogate(key.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint((char) c, key.charAt(++i));
+                chunk[position++] = (byte) (0xF0 | codePoint >> 18);
+                chunk[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                chunk[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                chunk[position++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate((char) c)) {
+                chunk[position++] = (byte) '?';
+            } else {
+                chunk[position++] = (byte) (0xE0 | c >> 12);
+                chunk[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                chunk[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+
+        return ref;
+    }
+
+    private long copyKey(List<byte[]> from, long fromRef, int length) {
+        long ref = allocate(length);
+        System.arraycopy(from.get((int) (fromRef >>> 32)), (int) fromRef,
+                arena.get((int) (ref >>> 32)), (int) ref, length);
+
+        return ref;
+    }
+
+    /**
+     * Сравнивает строку с ключом записи, кодируя символы строки в UTF-8 на лету.
+     */
+    private boolean keyEquals(String key, int entry) {
+        var chunk = arena.get((int) (keyRefs[entry] >>> 32));
+        int position = (int) keyRefs[entry];
+        int end = position + keyLengths[entry];
+
+        for (int i = 0; i < key.length(); i++) {
+            int c = key.charAt(i);
+
+            if (c < 0x80) {
+                if (position >= end || chunk[position++] != (byte) c)
+                    return false;
+                continue;
+            }
+
+            int codePoint = c;
+            if (Character.isHighSurrogate((char) c) && i + 1 < key.length()
+                    && Character.isLowSurrogate(key.charAt(i + 1))) {
+                codePoint = Character.toCodePoint((char) c, key.charAt(++i));
+            } else if (Character.isSurrogate((char) c)) {
+                codePoint = '?';
+            }
+
+            int bytes = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+
+            if (end - position < bytes)
+                return false;
+
+            if (bytes == 1) {
+                if (chunk[position++] != (byte) codePoint)
+                    return false;
+                continue;
+            }
+
+            int lead = bytes == 2 ? 0xC0 : bytes == 3 ? 0xE0 : 0xF0;
+            if (chunk[position++] != (byte) (lead | codePoint >> 6 * (bytes - 1)))
+                return false;
+
+            for (int shift = 6 * (bytes - 2); shift >= 0; shift -= 6) {
+                if (chunk[position++] != (byte) (0x80 | codePoint >> shift & 0x3F))
+                    return false;
+            }
+        }
+
+        return position == end;
+    }
+
+    private static int utf8Length(String key) {
+        int length = 0;
+
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < key.length()
+                    && Character.isLowSurrogate(key.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+
+        return length;
+    }
+}
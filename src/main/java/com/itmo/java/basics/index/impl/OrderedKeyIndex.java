@@ -0,0 +1,50 @@
+package com.itmo.java.basics.index.impl;
+
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Упорядоченное по {@link String#compareTo(String)} множество ключей таблицы для запросов по диапазону ключей.
+ * Дополняет {@link TableIndex}, в котором положения записей ищутся по хешу.
+ * <p>
+ * При открытии таблицы в множество попадают ключи индекса, последняя запись которых - не удаление.
+ * Множество может ненадолго содержать удаленные ключи, пока удаление выполняется одновременно с чтением,
+ * поэтому читающий обязан проверять ключ по таблице.
+ * Обход не блокирует изменения и видит их частично.
+ */
+public class OrderedKeyIndex {
+
+    private final ConcurrentSkipListSet<String> keys = new ConcurrentSkipListSet<>();
+
+    public void add(String key) {
+        keys.add(key);
+    }
+
+    public void remove(String key) {
+        keys.remove(key);
+    }
+
+    /**
+     * @param fromKey первый ключ диапазона или {@code null} - от начала
+     * @param toKey ключ после диапазона (не входит в него) или {@code null} - до конца
+     * @return ключи диапазона по возрастанию
+     */
+    public Iterator<String> keys(String fromKey, String toKey) {
+        NavigableSet<String> range = keys;
+
+        if (fromKey != null) {
+            range = range.tailSet(fromKey, true);
+        }
+
+        if (toKey != null) {
+            range = range.headSet(toKey, false);
+        }
+
+        return range.iterator();
+    }
+
+    public int size() {
+        return keys.size();
+    }
+}
@@ -0,0 +1,30 @@
+package com.itmo.java.basics.index.impl;
+
+import com.itmo.java.basics.index.RecordLocation;
+
+public class RecordLocationImpl implements RecordLocation {
+    private final int segmentId;
+    private final long offset;
+    private final int length;
+
+    public RecordLocationImpl(int segmentId, long offset, int length) {
+        this.segmentId = segmentId;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int getSegmentId() {
+        return this.segmentId;
+    }
+
+    @Override
+    public long getOffset() {
+        return this.offset;
+    }
+
+    @Override
+    public int getLength() {
+        return this.length;
+    }
+}
@@ -2,5 +2,61 @@ package com.itmo.java.basics.index.impl;
 
 import com.itmo.java.basics.index.SegmentOffsetInfo;
 
-public class SegmentIndex extends MapBasedKvsIndex<String, SegmentOffsetInfo> {
+/**
+ * Индекс сегмента: ключ - смещение и размер его последней записи в сегменте
+ */
+public class SegmentIndex extends CompactKvsIndex<SegmentOffsetInfo> {
+
+    public SegmentIndex() {
+        super(2);
+    }
+
+    /**
+     * Обновляет положение последней записи ключа.
+     *
+     * @param key ключ
+     * @param offset смещение записи в сегменте
+     * @param length размер записи в байтах или {@code 0}, если он неизвестен
+     */
+    public void put(String key, long offset, int length) {
+        put(key, offset, (long) length);
+    }
+
+    /**
+     * @param key ключ
+     * @return смещение последней записи ключа или {@code -1}, если ключа в сегменте нет
+     */
+    public long offsetOf(String key) {
+        long offset = get(key);
+
+        return offset == NO_VALUE
+                ? -1
+                : offset;
+    }
+
+    /**
+     * @param entry номер записи из {@link #entryOf(String)}
+     * @return смещение последней записи ключа в сегменте
+     */
+    public long offsetAt(int entry) {
+        return valueAt(entry, 0);
+    }
+
+    /**
+     * @param entry номер записи из {@link #entryOf(String)}
+     * @return размер последней записи ключа в байтах или {@code 0}, если он неизвестен
+     */
+    public int lengthAt(int entry) {
+        return (int) valueAt(entry, 1);
+    }
+
+    @Override
+    public void onIndexedEntityUpdated(String key, SegmentOffsetInfo value) {
+        put(key, value.getOffset(), 0);
+    }
+
+    @Override
+    protected SegmentOffsetInfo decode(int entry) {
+        return new SegmentOffsetInfoImpl(offsetAt(entry));
+    }
 }
@@ -1,9 +1,95 @@
 package com.itmo.java.basics.index.impl;
 
-import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.index.RecordLocation;
 
-public class TableIndex extends MapBasedKvsIndex<String, Segment> {
-}
+/**
+ * Индекс таблицы: ключ - положение его последней записи (номер сегмента в таблице, смещение в сегменте и размер записи).
+ * Чтение по ключу обходится одним поиском, без индекса сегмента.
+ * <p>
+ * Удаленный ключ остается в индексе, пока его удаление не отбросит компактизация: индекс указывает на удаление
+ * и помнит, что последняя запись ключа - удаление.
+ */
+public class TableIndex extends CompactKvsIndex<RecordLocation> {
+
+    private static final long LENGTH_MASK = 0x7FFFFFFFL;
+    private static final long REMOVED = 0x80000000L;
+
+    public TableIndex() {
+        super(2);
+    }
+
+    /**
+     * Обновляет положение последней записи ключа.
+     *
+     * @param key ключ
+     * @param segmentId номер сегмента в таблице
+     * @param offset смещение записи в сегменте
+     * @param length размер записи в байтах
+     */
+    public void put(String key, int segmentId, long offset, int length) {
+        put(key, segmentId, offset, length, false);
+    }
+
+    /**
+     * Обновляет положение последней записи ключа.
+     *
+     * @param key ключ
+     * @param segmentId номер сегмента в таблице
+     * @param offset смещение записи в сегменте
+     * @param length размер записи в байтах
+     * @param removed является ли запись удалением ключа
+     */
+    public void put(String key, int segmentId, long offset, int length, boolean removed) {
+        put(key, offset, (long) segmentId << 32 | length & LENGTH_MASK | (removed ? REMOVED : 0));
+    }
 
+    /**
+     * @param entry номер записи из {@link #entryOf(String)}
+     * @return номер сегмента, в котором лежит последняя запись ключа
+     */
+    public int segmentIdAt(int entry) {
+        return (int) (valueAt(entry, 1) >>> 32);
+    }
 
+    /**
+     * @param entry номер записи из {@link #entryOf(String)}
+     * @return смещение последней записи ключа в сегменте
+     */
+    public long offsetAt(int entry) {
+        return valueAt(entry, 0);
+    }
 
+    /**
+     * @param entry номер записи из {@link #entryOf(String)}
+     * @return размер последней записи ключа в байтах
+     */
+    public int lengthAt(int entry) {
+        return (int) (valueAt(entry, 1) & LENGTH_MASK);
+    }
+
+    /**
+     * @param entry номер записи из {@link #entryOf(String)}
+     * @return {@code true}, если последняя запись ключа - удаление
+     */
+    public boolean isRemovedAt(int entry) {
+        return (valueAt(entry, 1) & REMOVED) != 0;
+    }
+
+    /**
+     * @return {@code true}, если ключ есть в индексе и его последняя запись - не удаление
+     */
+    public boolean isLive(String key) {
+        int entry = entryOf(key);
+        return entry >= 0 && !isRemovedAt(entry);
+    }
+
+    @Override
+    public void onIndexedEntityUpdated(String key, RecordLocation value) {
+        put(key, value.getSegmentId(), value.getOffset(), value.getLength());
+    }
+
+    @Override
+    protected RecordLocation decode(int entry) {
+        return new RecordLocationImpl(segmentIdAt(entry), offsetAt(entry), lengthAt(entry));
+    }
+}
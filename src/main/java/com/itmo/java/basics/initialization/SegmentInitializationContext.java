@@ -22,7 +22,7 @@ public interface SegmentInitializationContext {
     /**
      * Возвращает индекс инициализируемого сегмента.
      *
-     * @return индекс инициализируемого сегмента
+     * @return индекс инициализируемого сегмента или {@code null}, если он составляется по требованию
      */
     SegmentIndex getIndex();
 
@@ -2,8 +2,11 @@ package com.itmo.java.basics.initialization;
 
 import com.itmo.java.basics.index.impl.TableIndex;
 import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.logic.io.BlobPointer;
 
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 
 public interface TableInitializationContext {
     /**
@@ -40,4 +43,26 @@ public interface TableInitializationContext {
      * @param segment новый сегмент
      */
     void updateCurrentSegment(Segment segment);
+
+    /**
+     * Возвращает все проинициализированные сегменты таблицы в порядке их создания.
+     *
+     * @return сегменты таблицы
+     */
+    List<Segment> getSegments();
+
+    /**
+     * Запоминает ссылку на blob-файл из последней прочитанной записи ключа.
+     *
+     * @param key ключ записи
+     * @param pointer ссылка на значение или {@code null}, если значение записи не вынесено в blob-файл
+     */
+    void updateBlobPointer(String key, BlobPointer pointer);
+
+    /**
+     * Возвращает ссылки на blob-файлы из последних записей ключей таблицы.
+     *
+     * @return ссылки на значения по ключам
+     */
+    Map<String, BlobPointer> getBlobPointers();
 }
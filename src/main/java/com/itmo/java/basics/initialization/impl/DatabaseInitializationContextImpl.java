@@ -5,8 +5,8 @@ import com.itmo.java.basics.logic.Table;
 import lombok.Builder;
 
 import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class DatabaseInitializationContextImpl implements DatabaseInitializationContext {
@@ -19,7 +19,7 @@ public class DatabaseInitializationContextImpl implements DatabaseInitialization
     public DatabaseInitializationContextImpl(String dbName, Path databaseRoot) {
         this.databaseName = dbName;
         this.databaseRoot = databaseRoot;
-        index = new HashMap<>();
+        index = new ConcurrentHashMap<>();
     }
 
     @Override
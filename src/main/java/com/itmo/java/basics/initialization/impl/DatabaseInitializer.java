@@ -5,7 +5,6 @@ import com.itmo.java.basics.index.impl.TableIndex;
 import com.itmo.java.basics.initialization.InitializationContext;
 import com.itmo.java.basics.initialization.Initializer;
 import com.itmo.java.basics.logic.impl.DatabaseImpl;
-import lombok.SneakyThrows;
 
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
@@ -13,6 +12,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashSet;
 
 
@@ -39,25 +39,29 @@ public class DatabaseInitializer implements Initializer {
         if (Files.notExists(dbPath)) {
             throw new DatabaseException("Database " + dbPath + " does not exist");
         } else {
+            var steps = new ArrayList<ParallelInitialization.Step<Void>>();
+
             try {
                 Files.walkFileTree(dbPath, new HashSet<>(), 1, new SimpleFileVisitor<>() {
-                    @SneakyThrows
                     @Override
                     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                        tableInitializer.perform(
-                                InitializationContextImpl
-                                        .builder()
-                                        .executionEnvironment(initialContext.executionEnvironment())
-                                        .currentDatabaseContext(initialContext.currentDbContext())
-                                        .currentTableContext(TableInitializationContextImpl
-                                                .builder()
-                                                .tableName(file.getFileName().toString())
-                                                .databasePath(initialContext.currentDbContext().getDatabasePath())
-                                                .tableIndex(new TableIndex())
-                                                .build())
-                                        .currentSegmentContext(initialContext.currentSegmentContext())
-                                        .build()
-                        );
+                        steps.add(() -> {
+                            tableInitializer.perform(
+                                    InitializationContextImpl
+                                            .builder()
+                                            .executionEnvironment(initialContext.executionEnvironment())
+                                            .currentDatabaseContext(initialContext.currentDbContext())
+                                            .currentTableContext(TableInitializationContextImpl
+                                                    .builder()
+                                                    .tableName(file.getFileName().toString())
+                                                    .databasePath(initialContext.currentDbContext().getDatabasePath())
+                                                    .tableIndex(new TableIndex())
+                                                    .build())
+                                            .currentSegmentContext(initialContext.currentSegmentContext())
+                                            .build()
+                            );
+                            return null;
+                        });
                         return FileVisitResult.CONTINUE;
                     }
                 });
@@ -65,9 +69,12 @@ public class DatabaseInitializer implements Initializer {
                 throw new DatabaseException(dbPath + "reading error", e);
             }
 
+            ParallelInitialization.runAll(initialContext.executionEnvironment().getResources(), steps);
+
             initialContext.executionEnvironment().addDatabase(
                     DatabaseImpl.initializeFromContext(
-                            initialContext.currentDbContext()
+                            initialContext.currentDbContext(),
+                            initialContext.executionEnvironment().getResources()
                     )
             );
         }
@@ -3,7 +3,6 @@ package com.itmo.java.basics.initialization.impl;
 import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.basics.initialization.InitializationContext;
 import com.itmo.java.basics.initialization.Initializer;
-import lombok.SneakyThrows;
 
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
@@ -11,6 +10,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashSet;
 
 
@@ -45,29 +45,35 @@ public class DatabaseServerInitializer implements Initializer {
         } else if (!Files.isReadable(serverPath)) {
             throw new DatabaseException("Server " + serverPath + " is not readable");
         } else {
+            var steps = new ArrayList<ParallelInitialization.Step<Void>>();
+
             try {
                 Files.walkFileTree(serverPath, new HashSet<>(), 1, new SimpleFileVisitor<>() {
-                    @SneakyThrows
                     @Override
                     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                        databaseInitializer.perform(
-                                InitializationContextImpl
-                                        .builder()
-                                        .executionEnvironment(context.executionEnvironment())
-                                        .currentDatabaseContext(DatabaseInitializationContextImpl
-                                                .builder()
-                                                .databaseRoot(context.executionEnvironment().getWorkingPath())
-                                                .dbName(file.getFileName().toString())
-                                                .build())
-                                        .currentTableContext(context.currentTableContext())
-                                        .currentSegmentContext(context.currentSegmentContext())
-                                        .build());
+                        steps.add(() -> {
+                            databaseInitializer.perform(
+                                    InitializationContextImpl
+                                            .builder()
+                                            .executionEnvironment(context.executionEnvironment())
+                                            .currentDatabaseContext(DatabaseInitializationContextImpl
+                                                    .builder()
+                                                    .databaseRoot(context.executionEnvironment().getWorkingPath())
+                                                    .dbName(file.getFileName().toString())
+                                                    .build())
+                                            .currentTableContext(context.currentTableContext())
+                                            .currentSegmentContext(context.currentSegmentContext())
+                                            .build());
+                            return null;
+                        });
                         return FileVisitResult.CONTINUE;
                     }
                 });
             } catch (IOException e) {
                 throw new DatabaseException(serverPath + "reading error", e);
             }
+
+            ParallelInitialization.runAll(context.executionEnvironment().getResources(), steps);
         }
     }
 }
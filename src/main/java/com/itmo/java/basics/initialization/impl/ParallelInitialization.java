@@ -0,0 +1,69 @@
+package com.itmo.java.basics.initialization.impl;
+
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.exceptions.DatabaseException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Выполняет независимые шаги инициализации в пуле {@link DatabaseResources#getInitializationPool()}
+ * или последовательно, если параллельная инициализация выключена.
+ */
+final class ParallelInitialization {
+
+    interface Step<T> {
+        T run() throws DatabaseException;
+    }
+
+    private ParallelInitialization() {
+    }
+
+    /**
+     * Выполняет шаги и возвращает их результаты в исходном порядке.
+     *
+     * @throws DatabaseException первая ошибка среди шагов
+     */
+    static <T> List<T> runAll(DatabaseResources resources, List<Step<T>> steps) throws DatabaseException {
+        var results = new ArrayList<T>(steps.size());
+
+        if (resources.getConfig().getInitializationParallelism() <= 1 || steps.size() <= 1) {
+            for (var step : steps) {
+                results.add(step.run());
+            }
+            return results;
+        }
+
+        var tasks = new ArrayList<ForkJoinTask<T>>(steps.size());
+        for (var step : steps) {
+            tasks.add(ForkJoinTask.adapt(step::run));
+        }
+
+        try {
+            if (ForkJoinTask.getPool() == resources.getInitializationPool()) {
+                ForkJoinTask.invokeAll(tasks);
+            } else {
+                resources.getInitializationPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+            }
+        } catch (RuntimeException e) {
+            throw unwrap(e);
+        }
+
+        for (var task : tasks) {
+            results.add(task.join());
+        }
+
+        return results;
+    }
+
+    private static DatabaseException unwrap(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DatabaseException) {
+                return (DatabaseException) cause;
+            }
+        }
+
+        return new DatabaseException("Initialization failed", e);
+    }
+}
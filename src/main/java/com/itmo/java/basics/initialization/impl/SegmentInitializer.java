@@ -1,26 +1,35 @@
 package com.itmo.java.basics.initialization.impl;
 
 import com.itmo.java.basics.exceptions.DatabaseException;
-import com.itmo.java.basics.index.impl.SegmentOffsetInfoImpl;
 import com.itmo.java.basics.initialization.InitializationContext;
 import com.itmo.java.basics.initialization.Initializer;
-import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.initialization.SegmentInitializationContext;
 import com.itmo.java.basics.logic.impl.SegmentImpl;
-import com.itmo.java.basics.logic.io.DatabaseInputStream;
+import com.itmo.java.basics.logic.io.BlobPointer;
+import com.itmo.java.basics.logic.io.CorruptedRecordException;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
+import com.itmo.java.basics.logic.io.SegmentScanner;
 
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 
 public class SegmentInitializer implements Initializer {
 
     /**
      * Добавляет в контекст информацию об инициализируемом сегменте.
-     * Составляет индекс сегмента
+     * Собирает положения последних записей ключей сегмента
      * Обновляет инфу в индексе таблицы
      *
      * @param context контекст с информацией об инициализируемой бд и об окружении
@@ -28,68 +37,178 @@ public class SegmentInitializer implements Initializer {
      */
     @Override
     public void perform(InitializationContext context) throws DatabaseException {
+        register(context, load(context.currentSegmentContext(), true, true));
+    }
+
+    /**
+     * Собирает положения записей сегмента, не изменяя состояние таблицы. Может выполняться параллельно для разных сегментов.
+     * Последний сегмент таблицы мог быть оборван при сбое во время записи: для него записи сверяются
+     * с контрольными суммами, и файл обрезается по первой поврежденной записи. Закрытые сегменты не проверяются.
+     * Вместе с положениями записей собираются ссылки на blob-файлы, записанные вместо значений.
+     *
+     * @param segmentContext контекст инициализируемого сегмента
+     * @param recover проверять ли записи и обрезать ли поврежденный хвост сегмента
+     * @param blobPointers нужны ли ссылки на blob-файлы: если в файле-подсказке прежней версии они не отмечены,
+     * сегмент читается целиком
+     * @return загруженный сегмент для {@link #register(InitializationContext, LoadedSegment)}
+     * @throws DatabaseException если в контексте лежит неправильный путь к сегменту, невозможно прочитать содержимое
+     */
+    public LoadedSegment load(SegmentInitializationContext segmentContext, boolean recover, boolean blobPointers)
+            throws DatabaseException {
 
-        var segmentPath = context.currentSegmentContext().getSegmentPath();
+        var segmentPath = segmentContext.getSegmentPath();
 
         if (Files.isDirectory(segmentPath)) {
             throw new DatabaseException(segmentPath + "is not a segment file");
         } else if (!Files.isReadable(segmentPath)) {
             throw new DatabaseException("Segment " + segmentPath + " is not readable");
-        } else {
-            int size = 0;
-            List<String> segmentKeys = new ArrayList<>();
-            Optional<DatabaseRecord> segment;
+        }
+
+        long size;
+        var records = new Records();
+
+        try {
+            long fileSize = Files.size(segmentPath);
+            boolean hinted = SegmentHintFile.read(segmentPath, fileSize, blobPointers,
+                    (key, offset, recordSize, removed, pointer) ->
+                            records.add(new String(key, StandardCharsets.UTF_8), offset, recordSize, removed, pointer));
+
+            size = hinted
+                    ? fileSize
+                    : scan(segmentPath, fileSize, recover, records);
+        } catch (IOException e) {
+            throw new DatabaseException(segmentPath + "reading error", e);
+        }
+
+        return new LoadedSegment(
+                SegmentInitializationContextImpl
+                        .builder()
+                        .segmentName(segmentContext.getSegmentName())
+                        .currentSize(size)
+                        .segmentPath(segmentPath)
+                        .build(),
+                records);
+    }
 
-            try (DatabaseInputStream in = new DatabaseInputStream(
-                    new FileInputStream(
-                            String.valueOf(context.currentSegmentContext().getSegmentPath())
-                    )
-            )) {
+    /**
+     * Делает загруженный сегмент текущим сегментом таблицы и обновляет индекс таблицы и ссылки на blob-файлы
+     * из последних записей ключей ({@link com.itmo.java.basics.initialization.TableInitializationContext#getBlobPointers()}).
+     * Сегменты одной таблицы должны регистрироваться в порядке их создания: номер сегмента в индексе таблицы -
+     * его позиция в {@link com.itmo.java.basics.initialization.TableInitializationContext#getSegments()}.
+     *
+     * @param context контекст с информацией об инициализируемой таблице и об окружении
+     * @param segment загруженный сегмент
+     * @throws DatabaseException если не удалось открыть сегмент
+     */
+    public void register(InitializationContext context, LoadedSegment segment) throws DatabaseException {
+        var tableContext = context.currentTableContext();
+
+        tableContext.updateCurrentSegment(
+                SegmentImpl.initializeFromContext(
+                        segment.context,
+                        context.executionEnvironment().getResources()
+                )
+        );
+
+        int segmentId = tableContext.getSegments().size() - 1;
+        var records = segment.records;
+
+        for (int i = 0; i < records.keys.size(); i++) {
+            var key = records.keys.get(i);
 
-                while (in.available() > 0) {
+            tableContext.getTableIndex().put(key, segmentId, records.offsets[i], records.lengths[i],
+                    records.removed.get(i));
+            tableContext.updateBlobPointer(key, records.pointers.get(i));
+        }
+    }
+
+    /**
+     * Собирает положения записей сегмента, последовательно читая все его записи.
+     *
+     * @return размер сегмента. Сжатые сегменты не обрезаются, их размер - размер файла
+     */
+    private long scan(Path segmentPath, long fileSize, boolean recover, Records records) throws IOException {
+        long size;
 
-                    segment = in.readDbUnit();
+        try (var scanner = SegmentScanner.open(segmentPath, fileSize, recover)) {
+            size = Math.min(fileSize, scanner.format().getFileHeaderSize());
 
-                    segmentKeys.add(
-                            new String(segment.get().getKey()));
+            try {
+                while (scanner.next()) {
+                    var pointer = scanner.isBlobPointer()
+                            ? BlobPointer.decode(ByteBuffer.wrap(scanner.value()), 0)
+                            : null;
 
-                    context.currentSegmentContext().getIndex().onIndexedEntityUpdated(
-                            new String(segment.get().getKey()),
-                            new SegmentOffsetInfoImpl(size)
-                    );
+                    records.add(scanner.keyString(), scanner.offset(), scanner.recordSize(), !scanner.isValuePresented(),
+                            pointer);
 
-                    size += segment.get().size();
+                    size = scanner.offset() + scanner.recordSize();
                 }
-            } catch (IOException e) {
-                throw new DatabaseException(segmentPath + "reading error", e);
+            } catch (CorruptedRecordException e) {
+                if (!recover || scanner.format().isCompressed())
+                    throw e;
+
+                truncate(segmentPath, size);
             }
 
-            context = InitializationContextImpl
-                    .builder()
-                    .executionEnvironment(context.executionEnvironment())
-                    .currentDatabaseContext(context.currentDbContext())
-                    .currentTableContext(context.currentTableContext())
-                    .currentSegmentContext(SegmentInitializationContextImpl
-                            .builder()
-                            .segmentName(context.currentSegmentContext().getSegmentName())
-                            .currentSize(size)
-                            .index(context.currentSegmentContext().getIndex())
-                            .segmentPath(context.currentSegmentContext().getSegmentPath())
-                            .build())
-                    .build();
-
-            context.currentTableContext().updateCurrentSegment(
-                    SegmentImpl.initializeFromContext(
-                            context.currentSegmentContext()
-                    )
-            );
-
-            InitializationContext finalContext = context;
-            segmentKeys.forEach(key ->
-                    finalContext.currentTableContext().getTableIndex().onIndexedEntityUpdated(
-                            key,
-                            finalContext.currentTableContext().getCurrentSegment()
-                    ));
+            if (scanner.format().isCompressed())
+                return fileSize;
+        }
+
+        return size;
+    }
+
+    /**
+     * Отбрасывает поврежденный хвост сегмента, оставляя только записи до {@code size}.
+     */
+    private static void truncate(Path segmentPath, long size) throws IOException {
+        try (var channel = FileChannel.open(segmentPath, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+            channel.force(true);
+        }
+    }
+
+
+    /**
+     * Сегмент с собранными положениями записей, еще не добавленный в таблицу
+     */
+    public static class LoadedSegment {
+        private final SegmentInitializationContext context;
+        private final Records records;
+
+        private LoadedSegment(SegmentInitializationContext context, Records records) {
+            this.context = context;
+            this.records = records;
+        }
+    }
+
+    /**
+     * Ключи записей сегмента в порядке чтения с их смещениями, размерами, признаками удаления
+     * и ссылками на blob-файлы по номерам записей
+     */
+    private static class Records {
+        private final List<String> keys = new ArrayList<>();
+        private final BitSet removed = new BitSet();
+        private final Map<Integer, BlobPointer> pointers = new HashMap<>();
+        private long[] offsets = new long[64];
+        private int[] lengths = new int[64];
+
+        void add(String key, long offset, long length, boolean isRemoved, BlobPointer pointer) {
+            int i = keys.size();
+
+            if (i == offsets.length) {
+                offsets = Arrays.copyOf(offsets, i * 2);
+                lengths = Arrays.copyOf(lengths, i * 2);
+            }
+
+            keys.add(key);
+            offsets[i] = offset;
+            lengths[i] = (int) length;
+            removed.set(i, isRemoved);
+
+            if (pointer != null) {
+                pointers.put(i, pointer);
+            }
         }
     }
 }
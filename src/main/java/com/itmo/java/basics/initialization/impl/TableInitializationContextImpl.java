@@ -3,9 +3,14 @@ package com.itmo.java.basics.initialization.impl;
 import com.itmo.java.basics.index.impl.TableIndex;
 import com.itmo.java.basics.initialization.TableInitializationContext;
 import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.logic.io.BlobPointer;
 import lombok.Builder;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 public class TableInitializationContextImpl implements TableInitializationContext {
@@ -13,6 +18,8 @@ public class TableInitializationContextImpl implements TableInitializationContex
     private final String tableName;
     private final Path databasePath;
     private final TableIndex index;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<String, BlobPointer> blobPointers = new HashMap<>();
     private Segment currentSegment;
 
     @Builder
@@ -45,5 +52,25 @@ public class TableInitializationContextImpl implements TableInitializationContex
     @Override
     public void updateCurrentSegment(Segment segment) {
         currentSegment = segment;
+        segments.add(segment);
+    }
+
+    @Override
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    @Override
+    public void updateBlobPointer(String key, BlobPointer pointer) {
+        if (pointer != null) {
+            blobPointers.put(key, pointer);
+        } else if (!blobPointers.isEmpty()) {
+            blobPointers.remove(key);
+        }
+    }
+
+    @Override
+    public Map<String, BlobPointer> getBlobPointers() {
+        return blobPointers;
     }
 }
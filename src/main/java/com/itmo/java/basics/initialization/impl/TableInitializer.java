@@ -1,20 +1,27 @@
 package com.itmo.java.basics.initialization.impl;
 
 import com.itmo.java.basics.exceptions.DatabaseException;
-import com.itmo.java.basics.index.impl.SegmentIndex;
 import com.itmo.java.basics.initialization.InitializationContext;
 import com.itmo.java.basics.initialization.Initializer;
+import com.itmo.java.basics.logic.impl.BlobLog;
 import com.itmo.java.basics.logic.impl.TableImpl;
 
+import com.itmo.java.basics.logic.impl.SegmentImpl;
+import com.itmo.java.basics.logic.io.SegmentBloomFilter;
+import com.itmo.java.basics.logic.io.SegmentFormat;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
+
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 
 public class TableInitializer implements Initializer {
 
@@ -26,7 +33,9 @@ public class TableInitializer implements Initializer {
 
     /**
      * Добавляет в контекст информацию об инициализируемой таблице.
-     * Запускает инициализацию всех сегментов в порядке их создания (из имени)
+     * Запускает инициализацию всех сегментов в порядке их создания (из имени).
+     * Индексы сегментов могут строиться параллельно, но в индекс таблицы попадают в порядке создания сегментов.
+     * Если у таблицы есть blob-файлы, вместе с индексом собираются ссылки на них из последних записей ключей
      *
      * @param context контекст с информацией об инициализируемой бд, окружении, таблицы
      * @throws DatabaseException если в контексте лежит неправильный путь к таблице, невозможно прочитать содержимого папки,
@@ -52,6 +61,17 @@ public class TableInitializer implements Initializer {
                         segments.add(file);
                         return FileVisitResult.CONTINUE;
                     }
+
+                    /**
+                     * Временный файл подсказки или фильтра мог быть переименован фоновой записью, пока читался каталог
+                     */
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                        if (e instanceof NoSuchFileException)
+                            return FileVisitResult.CONTINUE;
+
+                        throw e;
+                    }
                 });
             } catch (IOException e) {
                 throw new DatabaseException(tablePath + "reading error", e);
@@ -60,32 +80,140 @@ public class TableInitializer implements Initializer {
             if (segments.size() > 0) {
 
                 segments.sort(Comparator.comparing(Path::getFileName));
+                boolean blobPointers = segments.stream().anyMatch(BlobLog::isBlobFile);
+                removeObsoleteFiles(context.currentTableContext().getTableName(), segments);
+
+                var steps = new ArrayList<ParallelInitialization.Step<SegmentInitializer.LoadedSegment>>();
+                int firstActive = firstActiveSegment(segments);
+
+                for (int i = 0; i < segments.size(); i++) {
+                    var path = segments.get(i);
+                    boolean last = i >= firstActive;
 
-                for (var path : segments) {
-                    segmentInitializer.perform(
-                            InitializationContextImpl
+                    steps.add(() -> segmentInitializer.load(
+                            SegmentInitializationContextImpl
                                     .builder()
-                                    .executionEnvironment(context.executionEnvironment())
-                                    .currentDatabaseContext(context.currentDbContext())
-                                    .currentTableContext(context.currentTableContext())
-                                    .currentSegmentContext(SegmentInitializationContextImpl
-                                            .builder()
-                                            .segmentName(path.getFileName().toString())
-                                            .segmentPath(path)
-                                            .currentSize(0)
-                                            .index(new SegmentIndex())
-                                            .build())
-                                    .build()
-                    );
+                                    .segmentName(path.getFileName().toString())
+                                    .segmentPath(path)
+                                    .currentSize(0)
+                                    .build(),
+                            last,
+                            blobPointers
+                    ));
+                }
+
+                var loaded = ParallelInitialization.runAll(context.executionEnvironment().getResources(), steps);
+
+                for (var segment : loaded) {
+                    segmentInitializer.register(context, segment);
                 }
             }
 
             context.currentDbContext().addTable(
                     TableImpl.initializeFromContext(
-                            context.currentTableContext()
+                            context.currentTableContext(),
+                            context.executionEnvironment().getResources()
                     )
             );
         }
     }
-}
 
+    /**
+     * Возвращает номер первого сегмента, в который могла идти запись во время сбоя. Обычно это последний сегмент,
+     * но если последний сегмент пуст, он мог быть создан заранее, пока запись шла в предыдущий.
+     *
+     * @param segments отсортированные файлы сегментов
+     * @throws DatabaseException если не удалось узнать размер сегмента
+     */
+    private int firstActiveSegment(List<Path> segments) throws DatabaseException {
+        int last = segments.size() - 1;
+
+        try {
+            return last > 0 && Files.size(segments.get(last)) <= SegmentFormat.CURRENT.getFileHeaderSize()
+                    ? last - 1
+                    : last;
+        } catch (IOException e) {
+            throw new DatabaseException(segments.get(last) + "reading error", e);
+        }
+    }
+
+    /**
+     * Оставляет в списке только файлы сегментов. Удаляет недописанные временные файлы, сегменты, которые уже слиты
+     * в компактизированный сегмент, но не были удалены из-за сбоя, и файлы-подсказки и фильтры удаленных сегментов.
+     * Слитые сегменты - те, что по времени создания попадают в диапазон компактизированного сегмента,
+     * см {@link SegmentImpl#createdRange(String, String)}.
+     * Blob-файлы открывает сама таблица, см {@link BlobLog}.
+     *
+     * @param tableName имя таблицы
+     * @param segments отсортированные файлы таблицы
+     * @throws DatabaseException если файл не удалось удалить
+     */
+    private void removeObsoleteFiles(String tableName, List<Path> segments) throws DatabaseException {
+        segments.removeIf(BlobLog::isBlobFile);
+
+        var companions = new ArrayList<Path>();
+        segments.removeIf(path -> (SegmentHintFile.isHintFile(path) || SegmentBloomFilter.isFilterFile(path))
+                && companions.add(path));
+
+        var compacted = new ArrayList<long[]>();
+
+        for (var segment : segments) {
+            var name = segment.getFileName().toString();
+
+            if (name.endsWith(SegmentImpl.COMPACTED_SUFFIX)) {
+                var range = SegmentImpl.createdRange(tableName, name);
+
+                if (range != null) {
+                    compacted.add(range);
+                }
+            }
+        }
+
+        var obsolete = new ArrayList<Path>();
+
+        for (var segment : segments) {
+            var name = segment.getFileName().toString();
+
+            if (name.endsWith(SegmentImpl.TEMP_SUFFIX) || isMerged(tableName, name, compacted)) {
+                obsolete.add(segment);
+            }
+        }
+
+        segments.removeAll(obsolete);
+
+        for (var companion : companions) {
+            var name = companion.getFileName().toString();
+            var suffix = SegmentHintFile.isHintFile(companion) ? SegmentHintFile.SUFFIX : SegmentBloomFilter.SUFFIX;
+            var segmentName = name.substring(0, name.length() - suffix.length());
+
+            if (!segments.contains(companion.resolveSibling(segmentName))) {
+                obsolete.add(companion);
+            }
+        }
+
+        try {
+            for (var path : obsolete) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            throw new DatabaseException("Can not remove obsolete segment", e);
+        }
+    }
+
+    /**
+     * @return {@code true}, если сегмент слит в компактизированный сегмент с более широким диапазоном
+     */
+    private static boolean isMerged(String tableName, String segmentName, List<long[]> compacted) {
+        var range = SegmentImpl.createdRange(tableName, segmentName);
+
+        if (range == null)
+            return false;
+
+        for (var output : compacted) {
+            if (output[0] <= range[0] && range[1] <= output[1] && (output[0] != range[0] || output[1] != range[1]))
+                return true;
+        }
+
+        return false;
+    }
+}
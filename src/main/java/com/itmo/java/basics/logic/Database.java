@@ -2,6 +2,10 @@ package com.itmo.java.basics.logic;
 
 import com.itmo.java.basics.exceptions.DatabaseException;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 
@@ -32,6 +36,27 @@ public interface Database {
      */
     void write(String tableName, String objectKey, byte[] objectValue) throws DatabaseException;
 
+    /**
+     * Записывает пакет значений в указанную таблицу одной операцией.
+     *
+     * @param tableName таблица, в которую нужно записать значения
+     * @param entries пары ключ-значение, которые нужно записать
+     * @throws DatabaseException если указанная таблица не была найдена, пакет содержит {@code null}
+     *                           или если произошла ошибка ввода-вывода
+     */
+    void writeBatch(String tableName, Map<String, byte[]> entries) throws DatabaseException;
+
+    /**
+     * Записывает значение из потока в указанную таблицу, см {@link Table#write(String, InputStream, long)}.
+     *
+     * @param tableName таблица, в которую нужно записать значение
+     * @param objectKey ключ, по которому нужно записать значение
+     * @param objectValue поток, из которого читается значение
+     * @param length размер значения
+     * @throws DatabaseException если указанная таблица не была найдена или если произошла ошибка ввода-вывода
+     */
+    void write(String tableName, String objectKey, InputStream objectValue, long length) throws DatabaseException;
+
     /**
      * Считывает значение из указанной таблицы по заданному ключу.
      *
@@ -42,5 +67,95 @@ public interface Database {
      */
     Optional<byte[]> read(String tableName, String objectKey) throws DatabaseException;
 
+    /**
+     * Считывает значение из указанной таблицы, по возможности не копируя его, см {@link Table#readBuffer(String)}.
+     *
+     * @param tableName таблица, из которой нужно считать значение
+     * @param objectKey ключ, по которому нужно получить значение
+     * @return значение только для чтения
+     * @throws DatabaseException если не была найдена указанная таблица, или произошла ошибка ввода-вывода
+     */
+    Optional<ByteBuffer> readBuffer(String tableName, String objectKey) throws DatabaseException;
+
+    /**
+     * Передает значение из указанной таблицы в канал, см {@link Table#transferTo(String, WritableByteChannel)}.
+     *
+     * @param tableName таблица, из которой нужно передать значение
+     * @param objectKey ключ, по которому нужно передать значение
+     * @param target блокирующий канал, в который передается значение
+     * @return число переданных байтов или {@code -1}, если ключа нет
+     * @throws DatabaseException если не была найдена указанная таблица, или произошла ошибка ввода-вывода
+     */
+    long transferTo(String tableName, String objectKey, WritableByteChannel target) throws DatabaseException;
+
+    /**
+     * Открывает значение из указанной таблицы для чтения частями, см {@link Table#openValue(String)}.
+     *
+     * @param tableName таблица, из которой нужно считать значение
+     * @param objectKey ключ, по которому нужно получить значение
+     * @return поток со значением, который нужно закрыть
+     * @throws DatabaseException если не была найдена указанная таблица, или произошла ошибка ввода-вывода
+     */
+    Optional<InputStream> openValue(String tableName, String objectKey) throws DatabaseException;
+
+    /**
+     * Считывает значения нескольких ключей из указанной таблицы.
+     *
+     * @param tableName таблица, из которой нужно считать значения
+     * @param objectKeys ключи, по которым нужно получить значения
+     * @return значения найденных ключей; отсутствующие ключи не попадают в результат
+     * @throws DatabaseException если не была найдена указанная таблица, или произошла ошибка ввода-вывода
+     */
+    Map<String, byte[]> readMany(String tableName, Collection<String> objectKeys) throws DatabaseException;
+
     void delete(String tableName, String objectKey) throws DatabaseException;
+
+    /**
+     * Удаляет пакет ключей из указанной таблицы одной операцией.
+     *
+     * @param tableName таблица, из которой нужно удалить ключи
+     * @param objectKeys ключи, которые нужно удалить
+     * @throws DatabaseException если указанная таблица не была найдена, пакет содержит {@code null}
+     *                           или если произошла ошибка ввода-вывода
+     */
+    void deleteBatch(String tableName, Collection<String> objectKeys) throws DatabaseException;
+
+    /**
+     * Открывает проход по всем ключам указанной таблицы и их значениям, см {@link TableScan}.
+     *
+     * @param tableName таблица, которую нужно прочитать
+     * @return проход, стоящий перед первым ключом
+     * @throws DatabaseException если указанная таблица не была найдена или если произошла ошибка ввода-вывода
+     */
+    TableScan scan(String tableName) throws DatabaseException;
+
+    /**
+     * Открывает страницу ключей указанной таблицы из диапазона, см {@link Table#range(String, String, int)}.
+     *
+     * @param tableName таблица, которую нужно прочитать
+     * @param fromKey первый ключ диапазона или {@code null}
+     * @param toKey ключ после диапазона или {@code null}
+     * @param limit наибольшее число ключей на странице
+     * @return страница, стоящая перед первым ключом
+     * @throws DatabaseException если указанная таблица не была найдена или если произошла ошибка ввода-вывода
+     */
+    RangeScan range(String tableName, String fromKey, String toKey, int limit) throws DatabaseException;
+
+    /**
+     * Открывает страницу ключей указанной таблицы с префиксом, см {@link Table#prefix(String, int)}.
+     *
+     * @param tableName таблица, которую нужно прочитать
+     * @param prefix префикс ключей
+     * @param limit наибольшее число ключей на странице
+     * @return страница, стоящая перед первым ключом
+     * @throws DatabaseException если указанная таблица не была найдена или если произошла ошибка ввода-вывода
+     */
+    RangeScan prefix(String tableName, String prefix, int limit) throws DatabaseException;
+
+    /**
+     * Закрывает все таблицы базы данных. Вызывается при завершении работы.
+     *
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    void close() throws DatabaseException;
 }
\ No newline at end of file
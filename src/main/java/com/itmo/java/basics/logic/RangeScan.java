@@ -0,0 +1,20 @@
+package com.itmo.java.basics.logic;
+
+/**
+ * Страница ключей из диапазона и их значений по возрастанию ключей ({@link String#compareTo(String)}).
+ * Следующая страница запрашивается через {@link Table#range(String, String, int)}
+ * с {@link #getNextCursor()} и {@link #getToKey()}.
+ */
+public interface RangeScan extends TableScan {
+
+    /**
+     * @return первый ключ следующей страницы (после последнего выданного ключа или начало диапазона,
+     * если страница еще не выдала ключей) или {@code null}, если ключей в диапазоне больше нет
+     */
+    String getNextCursor();
+
+    /**
+     * @return ключ после диапазона (не входит в него) или {@code null}, если диапазон не ограничен сверху
+     */
+    String getToKey();
+}
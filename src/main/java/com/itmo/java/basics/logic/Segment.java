@@ -1,6 +1,9 @@
 package com.itmo.java.basics.logic;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -28,6 +31,17 @@ public interface Segment {
      */
     boolean write(String objectKey, byte[] objectValue) throws IOException;
 
+    /**
+     * Записывает пакет значений в сегмент одним обращением к файлу, начиная с указанной позиции пакета.
+     * Записывает значения, пока сегмент не заполнится. Значение {@code null} означает удаление ключа.
+     *
+     * @param entries пакет пар ключ-значение
+     * @param fromIndex индекс первой записываемой пары
+     * @return количество записанных пар, {@code 0} - если сегмент открыт только на чтение
+     * @throws IOException если произошла ошибка ввода-вывода.
+     */
+    int write(List<Map.Entry<String, byte[]>> entries, int fromIndex) throws IOException;
+
     /**
      * Считывает значение из сегмента по переданному ключу.
      *
@@ -37,6 +51,24 @@ public interface Segment {
      */
     Optional<byte[]> read(String objectKey) throws IOException;
 
+    /**
+     * Считывает значения нескольких ключей, обращаясь к файлу в порядке возрастания смещений
+     * и объединяя близко расположенные записи в одно чтение.
+     *
+     * @param objectKeys ключи, по которым нужно получить значения
+     * @return значения найденных ключей; отсутствующие и удаленные ключи не попадают в результат
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    Map<String, byte[]> readMany(Collection<String> objectKeys) throws IOException;
+
+    /**
+     * Проверяет по фильтру сегмента, может ли в нем быть ключ, не обращаясь к индексу и диску.
+     *
+     * @param objectKey ключ
+     * @return {@code false}, если ключа в сегменте точно нет
+     */
+    boolean mightContain(String objectKey);
+
     /**
      * Возвращает {@code true} - если данный сегмент открыт только на чтение, {@code false} - если данный сегмент открыт на чтение и запись.
      *
@@ -45,4 +77,18 @@ public interface Segment {
     boolean isReadOnly();
 
     boolean delete(String objectKey) throws IOException;
+
+    /**
+     * Сбрасывает на диск все записанные в сегмент данные.
+     *
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    void sync() throws IOException;
+
+    /**
+     * Освобождает файловые дескрипторы, открытые сегментом. После закрытия запись в сегмент невозможна.
+     *
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    void close() throws IOException;
 }
\ No newline at end of file
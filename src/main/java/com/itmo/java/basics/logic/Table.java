@@ -2,6 +2,11 @@ package com.itmo.java.basics.logic;
 
 import com.itmo.java.basics.exceptions.DatabaseException;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -30,6 +35,25 @@ public interface Table {
      */
     void write(String objectKey, byte[] objectValue) throws DatabaseException;
 
+    /**
+     * Атомарно для читателей записывает в таблицу пакет значений.
+     *
+     * @param entries пары ключ-значение, которые нужно записать
+     * @throws DatabaseException если пакет содержит {@code null} или произошла ошибка ввода-вывода
+     */
+    void writeBatch(Map<String, byte[]> entries) throws DatabaseException;
+
+    /**
+     * Записывает в таблицу значение, читая его из потока частями. Значение, не помещающееся в сегмент,
+     * записывается в blob-файл таблицы и не собирается в памяти целиком.
+     *
+     * @param objectKey ключ, по которому нужно записать значение
+     * @param objectValue поток, из которого читается значение; не закрывается
+     * @param length размер значения
+     * @throws DatabaseException если поток закончился раньше, значение слишком велико или произошла ошибка ввода-вывода
+     */
+    void write(String objectKey, InputStream objectValue, long length) throws DatabaseException;
+
     /**
      * Считывает значение из таблицы по заданному ключу.
      *
@@ -39,6 +63,91 @@ public interface Table {
      */
     Optional<byte[]> read(String objectKey) throws DatabaseException;
 
+    /**
+     * Считывает значение по ключу, по возможности не копируя его: значение заполненного сегмента, отображенного
+     * в память, возвращается как часть отображения.
+     *
+     * @param objectKey ключ, по которому нужно получить значение
+     * @return значение только для чтения
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    Optional<ByteBuffer> readBuffer(String objectKey) throws DatabaseException;
+
+    /**
+     * Передает значение по ключу в канал. Значение, лежащее в файле, передается через
+     * {@link java.nio.channels.FileChannel#transferTo} и не копируется в память приложения.
+     * Запись в таблицу не ждет окончания передачи.
+     *
+     * @param objectKey ключ, по которому нужно передать значение
+     * @param target блокирующий канал, в который передается значение
+     * @return число переданных байтов или {@code -1}, если ключа нет
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    long transferTo(String objectKey, WritableByteChannel target) throws DatabaseException;
+
+    /**
+     * Открывает значение по ключу для чтения частями. Значение, лежащее в файле, не копируется в память целиком.
+     * Запись в таблицу не ждет закрытия потока.
+     *
+     * @param objectKey ключ, по которому нужно получить значение
+     * @return поток со значением, который нужно закрыть
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    Optional<InputStream> openValue(String objectKey) throws DatabaseException;
+
+    /**
+     * Считывает значения нескольких ключей, группируя обращения к диску по сегментам.
+     *
+     * @param objectKeys ключи, по которым нужно получить значения
+     * @return значения найденных ключей; отсутствующие ключи не попадают в результат
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    Map<String, byte[]> readMany(Collection<String> objectKeys) throws DatabaseException;
+
     void delete(String objectKey) throws DatabaseException;
+
+    /**
+     * Атомарно для читателей удаляет из таблицы пакет ключей.
+     *
+     * @param objectKeys ключи, которые нужно удалить
+     * @throws DatabaseException если пакет содержит {@code null} или произошла ошибка ввода-вывода
+     */
+    void deleteBatch(Collection<String> objectKeys) throws DatabaseException;
+
+    /**
+     * Открывает проход по всем ключам таблицы и их значениям, см {@link TableScan}.
+     *
+     * @return проход, стоящий перед первым ключом
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    TableScan scan() throws DatabaseException;
+
+    /**
+     * Открывает страницу ключей из диапазона по возрастанию, см {@link RangeScan}.
+     *
+     * @param fromKey первый ключ диапазона или {@code null} - от начала таблицы
+     * @param toKey ключ после диапазона (не входит в него) или {@code null} - до конца таблицы
+     * @param limit наибольшее число ключей на странице
+     * @return страница, стоящая перед первым ключом
+     * @throws DatabaseException если {@code limit} отрицателен или произошла ошибка ввода-вывода
+     */
+    RangeScan range(String fromKey, String toKey, int limit) throws DatabaseException;
+
+    /**
+     * Открывает страницу ключей с указанным префиксом по возрастанию, см {@link RangeScan}.
+     *
+     * @param prefix префикс ключей
+     * @param limit наибольшее число ключей на странице
+     * @return страница, стоящая перед первым ключом
+     * @throws DatabaseException если {@code limit} отрицателен или произошла ошибка ввода-вывода
+     */
+    RangeScan prefix(String prefix, int limit) throws DatabaseException;
+
+    /**
+     * Закрывает все сегменты таблицы и освобождает их файловые дескрипторы.
+     *
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    void close() throws DatabaseException;
 }
 
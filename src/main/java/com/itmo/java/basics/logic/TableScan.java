@@ -0,0 +1,40 @@
+package com.itmo.java.basics.logic;
+
+import com.itmo.java.basics.exceptions.DatabaseException;
+
+/**
+ * Последовательный проход по всем ключам таблицы и их актуальным значениям.
+ * Значения читаются по одному с диска, поэтому проход занимает память независимо от размера таблицы.
+ * <p>
+ * Проход не блокирует запись. Ключ, не изменявшийся во время прохода, встречается ровно один раз.
+ * Ключ, записанный во время прохода, может встретиться дважды: сначала со старым значением, затем с новым.
+ * Экземпляр не потокобезопасен и должен быть закрыт.
+ */
+public interface TableScan extends AutoCloseable {
+
+    /**
+     * Переходит к следующему ключу таблицы.
+     *
+     * @return {@code false}, если ключей больше нет
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    boolean next() throws DatabaseException;
+
+    /**
+     * @return ключ, на котором стоит проход
+     */
+    String getKey();
+
+    /**
+     * @return значение ключа, на котором стоит проход
+     */
+    byte[] getValue();
+
+    /**
+     * Завершает проход и освобождает открытые им файлы.
+     *
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    @Override
+    void close() throws DatabaseException;
+}
@@ -0,0 +1,210 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.io.BlobPointer;
+import com.itmo.java.basics.logic.io.CorruptedRecordException;
+import com.itmo.java.basics.logic.io.SegmentScanner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Фоновая сборка мусора в blob-файлах таблицы, см {@link BlobLog}.
+ * <p>
+ * После открытия таблицы сначала подсчитывается объем значений в файлах с прошлого запуска, актуальные ссылки
+ * на них к этому моменту уже собраны при чтении сегментов (см {@link BlobLog#markLive(String, BlobPointer)}). Затем закрытые файлы, в которых доля неактуальных значений
+ * достигла {@link com.itmo.java.basics.config.BlobPolicy#getMaxGarbageRatio()}, переписываются: актуальные значения
+ * дописываются в активный файл, а в активный сегмент таблицы - новые ссылки на них.
+ * Старый файл убирается из таблицы, только когда новые значения и ссылки сброшены на диск и ссылок на файл
+ * не осталось, а удаляется, когда его отпустит последний читатель, например открытый проход ({@link TableScanImpl}).
+ */
+class BlobCollector {
+
+    private static final long MIN_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+
+    private final TableImpl table;
+    private final BlobLog blobs;
+    private final DatabaseResources resources;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ReentrantLock running = new ReentrantLock();
+    private volatile boolean closed = false;
+    private int failures = 0;
+
+    BlobCollector(TableImpl table, BlobLog blobs, DatabaseResources resources) {
+        this.table = table;
+        this.blobs = blobs;
+        this.resources = resources;
+    }
+
+    /**
+     * Запускает подсчет актуальных ссылок или сборку мусора в фоне, если она еще не запущена.
+     * Сборка повторяет проходы по закрытым файлам, пока они удаляются. Запрос, пришедший во время сборки,
+     * запускает еще одну сборку после нее: файл мог стать мусором после того, как сборка его проверила.
+     */
+    void schedule() {
+        if (closed || !scheduled.compareAndSet(false, true))
+            return;
+
+        resources.getCompactionExecutor().execute(this::run);
+    }
+
+    /**
+     * Дожидается окончания текущей сборки мусора и запрещает новые.
+     */
+    void close() {
+        closed = true;
+        running.lock();
+        running.unlock();
+    }
+
+    /**
+     * Неудавшаяся сборка повторяется с растущей задержкой: иначе до перезаписи значения в файле с мусором
+     * (а если не удался подсчет - до конца работы таблицы) сборка больше не запустилась бы.
+     */
+    private void run() {
+        long retryDelay = 0;
+
+        running.lock();
+        try {
+            scheduled.set(false);
+
+            if (!closed) {
+                collect();
+            }
+            failures = 0;
+        } catch (IOException | DatabaseException e) {
+            retryDelay = Math.min(MAX_RETRY_DELAY_MILLIS, MIN_RETRY_DELAY_MILLIS << Math.min(failures, 6));
+            failures++;
+        } finally {
+            running.unlock();
+        }
+
+        if (retryDelay > 0 && !closed) {
+            resources.getScheduler().schedule(this::schedule, retryDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void collect() throws IOException, DatabaseException {
+        if (!blobs.isCounted()) {
+            for (var file : blobs.uncountedFiles()) {
+                if (closed)
+                    return;
+
+                count(file);
+            }
+
+            blobs.setCounted();
+        }
+
+        boolean removed;
+
+        do {
+            removed = false;
+
+            for (var file : blobs.sealedFiles()) {
+                if (closed)
+                    return;
+
+                if (!file.hasPendingWrites() && (file.getLiveBytes() == 0 || blobs.isGarbage(file))) {
+                    removed |= rewrite(file);
+                }
+            }
+        } while (removed);
+    }
+
+    /**
+     * Подсчитывает объем значений файла с прошлого запуска. Оборванная при сбое последняя запись не учитывается.
+     */
+    private void count(BlobLog.BlobFile file) throws IOException {
+        long valueBytes = 0;
+
+        try (var scanner = SegmentScanner.open(file.getPath(), file.getSize(), false)) {
+            while (next(scanner)) {
+                valueBytes += pointerOf(file, scanner).getLength();
+            }
+        }
+
+        file.setValueBytes(valueBytes);
+    }
+
+    /**
+     * Переносит актуальные значения файла в активный blob-файл и убирает файл из таблицы.
+     * Значения переносятся потоком и не собираются в памяти целиком.
+     *
+     * @return {@code true}, если файл убран
+     */
+    private boolean rewrite(BlobLog.BlobFile file) throws IOException, DatabaseException {
+        var keys = new ArrayList<String>();
+        var expected = new ArrayList<BlobPointer>();
+        var moved = new ArrayList<BlobPointer>();
+
+        try {
+            try (var scanner = SegmentScanner.open(file.getPath(), file.getSize(), true)) {
+                while (next(scanner)) {
+                    var key = scanner.keyString();
+                    var pointer = pointerOf(file, scanner);
+
+                    if (blobs.isLive(key, pointer)) {
+                        keys.add(key);
+                        expected.add(pointer);
+                        moved.add(copy(scanner.key(), pointer));
+                    }
+
+                    if (closed)
+                        return false;
+                }
+            }
+
+            blobs.force(moved);
+
+            Set<SegmentImpl> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+
+            for (int i = 0; i < keys.size(); i++) {
+                var segment = table.relocateBlob(keys.get(i), expected.get(i), moved.get(i));
+
+                if (segment != null) {
+                    touched.add(segment);
+                }
+            }
+
+            for (var segment : touched) {
+                segment.force();
+            }
+        } finally {
+            moved.forEach(blobs::settle);
+        }
+
+        return table.removeBlobFile(file);
+    }
+
+    private BlobPointer copy(byte[] key, BlobPointer pointer) throws IOException {
+        try (var value = blobs.open(pointer); var stream = value.openStream()) {
+            return blobs.append(key, stream, pointer.getLength());
+        }
+    }
+
+    /**
+     * Переходит к следующей записи файла. Запись, оборванная при сбое, считается концом файла:
+     * если после нее есть актуальные значения, ссылки на них останутся, и файл не будет удален.
+     */
+    private static boolean next(SegmentScanner scanner) throws IOException {
+        try {
+            return scanner.next();
+        } catch (CorruptedRecordException e) {
+            return false;
+        }
+    }
+
+    private static BlobPointer pointerOf(BlobLog.BlobFile file, SegmentScanner scanner) {
+        long valueSize = scanner.recordSize() - scanner.format().recordHeaderSize(scanner.key().length);
+        return new BlobPointer(file.getId(), scanner.offset() + scanner.recordSize() - valueSize, (int) valueSize);
+    }
+}
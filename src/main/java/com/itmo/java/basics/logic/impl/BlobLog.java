@@ -0,0 +1,544 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.BlobPolicy;
+import com.itmo.java.basics.config.DurabilityPolicy;
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+import com.itmo.java.basics.logic.io.BlobPointer;
+import com.itmo.java.basics.logic.io.DatabaseRecordCodec;
+import com.itmo.java.basics.logic.io.SegmentFormat;
+import com.itmo.java.basics.logic.io.StreamedRecordWriter;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Blob-файлы таблицы: большие значения, вынесенные из сегментов по {@link BlobPolicy}.
+ * В сегмент вместо такого значения пишется {@link BlobPointerRecord}.
+ * <p>
+ * Сюда же пишутся значения, записанные потоком ({@link #append(byte[], InputStream, int)}).
+ * <p>
+ * Blob-файл имеет формат сегмента {@link SegmentFormat#CURRENT}, ключ записи нужен сборке мусора.
+ * Значения дописываются в последний (активный) файл. После открытия таблицы запись начинается в новый файл,
+ * поэтому файлы с прошлого запуска только читаются и их недописанный хвост не нужно восстанавливать.
+ * Пока ссылка на дописанное значение не записана в сегмент ({@link #settle(WritableDatabaseRecord)}),
+ * сборка мусора не трогает файл значения.
+ * Файл с дописанным значением регистрируется в {@link GroupCommitter} таблицы, и если {@link DurabilityPolicy}
+ * не {@link DurabilityPolicy#NONE}, сбрасывается на диск тем же групповым сбросом, что и запись со ссылкой на значение,
+ * до сегмента с этой записью.
+ * <p>
+ * Для каждого файла известен объем актуальных значений - тех, на которые ссылается последняя запись ключа в таблице.
+ * Актуальные ссылки хранятся по ключам и обновляются таблицей под блокировкой записи
+ * ({@link #onWritten(String, WritableDatabaseRecord)}). При открытии таблицы они собираются вместе с индексом
+ * ({@link #markLive(String, BlobPointer)}), а объем значений в файлах с прошлого запуска подсчитывается в фоне,
+ * до окончания подсчета сборка мусора ({@link BlobCollector}) не запускается.
+ */
+public class BlobLog implements Closeable {
+
+    public static final String SUFFIX = ".blob";
+
+    private final String tableName;
+    private final Path path;
+    private final BlobPolicy policy;
+    private final GroupCommitter committer;
+    private final ConcurrentHashMap<Long, BlobFile> files = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, BlobPointer> live = new ConcurrentHashMap<>();
+    private final List<BlobFile> restored = new ArrayList<>();
+    private volatile boolean counted = true;
+    private BlobFile active;
+
+    BlobLog(String tableName, Path path, BlobPolicy policy, GroupCommitter committer) {
+        this.tableName = tableName;
+        this.path = path;
+        this.policy = policy;
+        this.committer = committer;
+    }
+
+    /**
+     * @return {@code true}, если файл - blob-файл, а не сегмент таблицы
+     */
+    public static boolean isBlobFile(Path file) {
+        return file.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    /**
+     * Открывает на чтение blob-файлы, оставшиеся с прошлого запуска.
+     */
+    void load() throws IOException {
+        List<Path> found;
+
+        try (var stream = Files.list(path)) {
+            found = stream.filter(BlobLog::isBlobFile).collect(Collectors.toList());
+        }
+
+        for (var file : found) {
+            var blob = BlobFile.open(file);
+            files.put(blob.id, blob);
+            restored.add(blob);
+        }
+
+        counted = restored.isEmpty();
+    }
+
+    /**
+     * @return {@code true}, если значение такого размера нужно записать в blob-файл
+     */
+    boolean accepts(int valueSize) {
+        return policy.isEnabled() && valueSize >= policy.getMinValueBytes();
+    }
+
+    /**
+     * Дописывает значение в активный blob-файл. Файл не сбрасывается на диск, см {@link GroupCommitter}.
+     *
+     * @return ссылка на записанное значение
+     */
+    synchronized BlobPointer append(byte[] key, byte[] value) throws IOException {
+        rotateIfFull();
+
+        var header = DatabaseRecordCodec.encodeHeader(new SetDatabaseRecord(key, value));
+        long recordOffset = active.size;
+        var buffers = new ByteBuffer[]{header, ByteBuffer.wrap(value)};
+        long written = 0;
+
+        active.channel.position(recordOffset);
+        while (written < header.capacity() + value.length) {
+            written += active.channel.write(buffers);
+        }
+
+        active.size += written;
+        active.valueBytes.addAndGet(value.length);
+        active.pendingWrites.incrementAndGet();
+        committer.blobAppended(active);
+
+        return new BlobPointer(active.id, recordOffset + header.capacity(), value.length);
+    }
+
+    /**
+     * Дописывает в активный blob-файл значение из потока, не собирая его в памяти. Место под запись занимается
+     * под блокировкой, а значение пишется без нее, поэтому другие значения не ждут окончания потока и дописываются
+     * после занятого места. Если поток прервался, на занятом месте остается запись без ссылок на нее,
+     * см {@link StreamedRecordWriter}.
+     *
+     * @return ссылка на записанное значение
+     */
+    BlobPointer append(byte[] key, InputStream value, int length) throws IOException {
+        int headerSize = SegmentFormat.CURRENT.recordHeaderSize(key.length);
+        BlobFile file;
+        long recordOffset;
+
+        synchronized (this) {
+            rotateIfFull();
+            file = active;
+            recordOffset = file.size;
+            file.size += headerSize + length;
+            file.valueBytes.addAndGet(length);
+            file.pendingWrites.incrementAndGet();
+        }
+
+        try {
+            StreamedRecordWriter.write(file.channel, recordOffset, key, value, length);
+        } catch (IOException e) {
+            file.pendingWrites.decrementAndGet();
+            throw e;
+        }
+
+        committer.blobAppended(file);
+
+        return new BlobPointer(file.id, recordOffset + headerSize, length);
+    }
+
+    /**
+     * Начинает новый активный файл, если текущий заполнен.
+     */
+    private void rotateIfFull() throws IOException {
+        if (active != null && active.size < policy.getMaxBlobFileBytes())
+            return;
+
+        active = BlobFile.create(path.resolve(SegmentImpl.createSegmentName(tableName) + SUFFIX));
+        files.put(active.id, active);
+    }
+
+    /**
+     * Отмечает, что ссылка из записи, значение которой дописано через {@code append}, записана в сегмент
+     * или уже не будет записана. Вызывается таблицей для каждой такой записи.
+     */
+    void settle(WritableDatabaseRecord record) {
+        var pointer = pointerOf(record);
+
+        if (pointer != null) {
+            settle(pointer);
+        }
+    }
+
+    /**
+     * Отмечает, что ссылка, полученная от {@code append}, записана в сегмент или уже не будет записана.
+     */
+    void settle(BlobPointer pointer) {
+        var file = files.get(pointer.getFileId());
+
+        if (file != null) {
+            file.pendingWrites.decrementAndGet();
+        }
+    }
+
+    /**
+     * Сбрасывает на диск файлы значений по ссылкам, каждый файл один раз. Нужен сборке мусора,
+     * которая пишет ссылки в сегменты мимо {@link GroupCommitter}.
+     */
+    void force(Collection<BlobPointer> pointers) throws IOException {
+        var forced = new HashSet<Long>();
+
+        for (var pointer : pointers) {
+            var file = files.get(pointer.getFileId());
+
+            if (file != null && forced.add(file.id)) {
+                file.force();
+            }
+        }
+    }
+
+    byte[] read(BlobPointer pointer) throws IOException {
+        var file = retainExisting(pointer);
+
+        try {
+            return read(file, pointer);
+        } finally {
+            file.release();
+        }
+    }
+
+    /**
+     * Читает значение из файла, закрепленного через {@link #retain(BlobPointer)}.
+     */
+    byte[] read(BlobFile file, BlobPointer pointer) throws IOException {
+        var value = ByteBuffer.allocate(pointer.getLength());
+
+        while (value.hasRemaining()) {
+            if (file.channel.read(value, pointer.getOffset() + value.position()) < 0)
+                throw new EOFException("Blob file " + file.path + " ends inside of value");
+        }
+
+        return value.array();
+    }
+
+    /**
+     * Открывает значение через собственный канал файла, см {@link SegmentImpl.StoredValue}.
+     */
+    SegmentImpl.StoredValue open(BlobPointer pointer) throws IOException {
+        var file = retainExisting(pointer);
+        FileChannel channel;
+
+        try {
+            channel = FileChannel.open(file.path, StandardOpenOption.READ);
+        } finally {
+            file.release();
+        }
+
+        return new SegmentImpl.StoredValue(channel, pointer.getOffset(), pointer.getLength());
+    }
+
+    /**
+     * Закрепляет blob-файл ссылки: пока файл не отпущен через {@link BlobFile#release()}, он не будет закрыт и удален.
+     *
+     * @return файл или {@code null}, если файл уже убран из таблицы
+     */
+    BlobFile retain(BlobPointer pointer) {
+        var file = files.get(pointer.getFileId());
+
+        return file != null && file.retain()
+                ? file
+                : null;
+    }
+
+    private BlobFile retainExisting(BlobPointer pointer) throws IOException {
+        var file = retain(pointer);
+
+        if (file == null)
+            throw new IOException("Blob file " + pointer.getFileId() + " of table " + tableName + " does not exist");
+
+        return file;
+    }
+
+    /**
+     * Обновляет актуальные ссылки после записи ключа. Вызывается под блокировкой записи таблицы.
+     *
+     * @param record новая последняя запись ключа
+     * @return {@code true}, если в закрытом blob-файле накопилось достаточно неактуальных значений для сборки мусора
+     * или подсчет файлов с прошлого запуска еще не закончен: если он не удался, запись запускает его повторно
+     */
+    boolean onWritten(String objectKey, WritableDatabaseRecord record) {
+        var pointer = pointerOf(record);
+
+        if (pointer == null && live.isEmpty())
+            return !counted;
+
+        var previous = pointer != null
+                ? live.put(objectKey, pointer)
+                : live.remove(objectKey);
+
+        if (pointer != null) {
+            addLive(pointer, pointer.getLength());
+        }
+
+        if (previous != null) {
+            addLive(previous, -previous.getLength());
+        }
+
+        if (!counted)
+            return true;
+
+        var file = previous != null ? files.get(previous.getFileId()) : null;
+        return file != null && isGarbage(file);
+    }
+
+    private static BlobPointer pointerOf(WritableDatabaseRecord record) {
+        return record.getValueSize() == DatabaseRecordCodec.BLOB_POINTER_SIZE
+                ? BlobPointer.decode(ByteBuffer.wrap(record.getValue()), 0)
+                : null;
+    }
+
+    /**
+     * Отмечает актуальной ссылку из последней записи ключа, прочитанной при открытии таблицы, см
+     * {@link com.itmo.java.basics.initialization.TableInitializationContext#getBlobPointers()}.
+     * Вызывается после {@link #load()}, до того как таблица начнет принимать записи.
+     */
+    void markLive(String objectKey, BlobPointer pointer) {
+        live.put(objectKey, pointer);
+        addLive(pointer, pointer.getLength());
+    }
+
+    boolean isLive(String objectKey, BlobPointer pointer) {
+        return pointer.equals(live.get(objectKey));
+    }
+
+    private void addLive(BlobPointer pointer, long delta) {
+        var file = files.get(pointer.getFileId());
+
+        if (file != null) {
+            file.liveBytes.addAndGet(delta);
+        }
+    }
+
+    /**
+     * @return {@code true}, если актуальные ссылки известны для всех blob-файлов
+     */
+    boolean isCounted() {
+        return counted;
+    }
+
+    /**
+     * @return файлы с прошлого запуска, если актуальные ссылки в них еще не подсчитаны
+     */
+    List<BlobFile> uncountedFiles() {
+        return counted
+                ? List.of()
+                : List.copyOf(restored);
+    }
+
+    void setCounted() {
+        counted = true;
+        restored.clear();
+    }
+
+    /**
+     * @return закрытые на запись blob-файлы
+     */
+    synchronized List<BlobFile> sealedFiles() {
+        var result = new ArrayList<BlobFile>();
+
+        for (var file : files.values()) {
+            if (file != active) {
+                result.add(file);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return {@code true}, если в файле есть неактуальные значения и их доля не меньше
+     * {@link BlobPolicy#getMaxGarbageRatio()}
+     */
+    boolean isGarbage(BlobFile file) {
+        long total = file.valueBytes.get();
+        long live = file.liveBytes.get();
+        return live < total && 1 - (double) live / total >= policy.getMaxGarbageRatio();
+    }
+
+    /**
+     * Убирает файл из таблицы. Вызывается под блокировкой записи таблицы. Файл закрывается и удаляется,
+     * когда его отпустит последний читатель.
+     */
+    void remove(BlobFile file) {
+        files.remove(file.id);
+        file.retire();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (var file : files.values()) {
+            file.channel.close();
+        }
+    }
+
+    /**
+     * Blob-файл и объем его значений
+     */
+    static class BlobFile {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final AtomicLong valueBytes = new AtomicLong();
+        private final AtomicLong liveBytes = new AtomicLong();
+        /**
+         * Дописанные значения, ссылки на которые еще не записаны в сегмент, см {@link BlobLog#settle(WritableDatabaseRecord)}
+         */
+        private final AtomicInteger pendingWrites = new AtomicInteger();
+        /**
+         * Ссылки на файл: одна у таблицы, пока файл в ней, остальные у читателей, см {@link BlobLog#retain(BlobPointer)}
+         */
+        private final AtomicInteger references = new AtomicInteger(1);
+        private volatile boolean removeOnRelease = false;
+        private volatile long size;
+
+        private BlobFile(long id, Path path, FileChannel channel, long size) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        /**
+         * Сбрасывает файл на диск. Файл, уже убранный из таблицы и отпущенный читателями, не сбрасывается:
+         * его актуальные значения перенесены и сброшены сборкой мусора.
+         */
+        void force() throws IOException {
+            if (!retain())
+                return;
+
+            try {
+                channel.force(false);
+            } finally {
+                release();
+            }
+        }
+
+        static BlobFile create(Path path) throws IOException {
+            var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+
+            try {
+                var header = SegmentFormat.CURRENT.header();
+
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+
+            return new BlobFile(idOf(path), path, channel, SegmentFormat.CURRENT.getFileHeaderSize());
+        }
+
+        static BlobFile open(Path path) throws IOException {
+            var channel = FileChannel.open(path, StandardOpenOption.READ);
+            return new BlobFile(idOf(path), path, channel, channel.size());
+        }
+
+        /**
+         * @return номер файла - время создания из имени {@code таблица_время.blob}
+         */
+        private static long idOf(Path path) throws IOException {
+            var name = path.getFileName().toString();
+            var id = name.substring(name.lastIndexOf('_') + 1, name.length() - SUFFIX.length());
+
+            try {
+                return Long.parseLong(id);
+            } catch (NumberFormatException e) {
+                throw new IOException("Unexpected blob file name " + name, e);
+            }
+        }
+
+        long getId() {
+            return id;
+        }
+
+        Path getPath() {
+            return path;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLiveBytes() {
+            return liveBytes.get();
+        }
+
+        /**
+         * @return {@code true}, если ссылки на какие-то значения файла еще записываются в сегменты
+         */
+        boolean hasPendingWrites() {
+            return pendingWrites.get() > 0;
+        }
+
+        private boolean retain() {
+            int count;
+
+            do {
+                count = references.get();
+
+                if (count == 0)
+                    return false;
+            } while (!references.compareAndSet(count, count + 1));
+
+            return true;
+        }
+
+        /**
+         * Отпускает файл, закрепленный {@link BlobLog#retain(BlobPointer)}. Последний отпустивший закрывает файл,
+         * а убранный из таблицы файл еще и удаляет.
+         */
+        void release() {
+            if (references.decrementAndGet() > 0)
+                return;
+
+            try {
+                channel.close();
+
+                if (removeOnRelease) {
+                    Files.deleteIfExists(path);
+                }
+            } catch (IOException e) {
+                // файл без актуальных значений будет переписан сборкой мусора после следующего открытия таблицы
+            }
+        }
+
+        private void retire() {
+            removeOnRelease = true;
+            release();
+        }
+
+        /**
+         * Задает объем значений файла с прошлого запуска, см {@link BlobCollector}.
+         */
+        void setValueBytes(long bytes) {
+            valueBytes.set(bytes);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+import com.itmo.java.basics.logic.io.BlobPointer;
+import com.itmo.java.basics.logic.io.DatabaseRecordCodec;
+
+/**
+ * Запись, значение которой вынесено в blob-файл. Значение записи - закодированная {@link BlobPointer}.
+ */
+public class BlobPointerRecord implements WritableDatabaseRecord {
+
+    private static final int INTEGER_SIZE = 4;
+
+    private final byte[] key;
+    private final byte[] pointer;
+
+    public BlobPointerRecord(byte[] key, BlobPointer pointer) {
+        this(key, pointer.encode());
+    }
+
+    public BlobPointerRecord(byte[] key, byte[] pointer) {
+        this.key = key;
+        this.pointer = pointer;
+    }
+
+    @Override
+    public byte[] getKey() {
+        return key;
+    }
+
+    @Override
+    public byte[] getValue() {
+        return pointer;
+    }
+
+    @Override
+    public long size() {
+        return INTEGER_SIZE + key.length + INTEGER_SIZE + pointer.length;
+    }
+
+    @Override
+    public boolean isValuePresented() {
+        return true;
+    }
+
+    @Override
+    public int getKeySize() {
+        return key.length;
+    }
+
+    @Override
+    public int getValueSize() {
+        return DatabaseRecordCodec.BLOB_POINTER_SIZE;
+    }
+}
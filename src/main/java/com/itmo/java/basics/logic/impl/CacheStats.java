@@ -0,0 +1,60 @@
+package com.itmo.java.basics.logic.impl;
+
+/**
+ * Статистика кэша одной таблицы на момент запроса
+ */
+public class CacheStats {
+    private final String name;
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long cachedBytes;
+
+    public CacheStats(String name, long hitCount, long missCount, long evictionCount, long cachedBytes) {
+        this.name = name;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.cachedBytes = cachedBytes;
+    }
+
+    /**
+     * @return имя таблицы в виде {@code база/таблица}
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * @return доля обращений, нашедших значение в кэше; {@code 0}, если обращений не было
+     */
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+
+        return requests == 0
+                ? 0
+                : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: hits=%d misses=%d hitRate=%.3f evictions=%d bytes=%d",
+                name, hitCount, missCount, getHitRate(), evictionCount, cachedBytes);
+    }
+}
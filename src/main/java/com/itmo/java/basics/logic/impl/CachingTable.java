@@ -1,19 +1,68 @@
 package com.itmo.java.basics.logic.impl;
 
+import com.itmo.java.basics.config.DatabaseResources;
 import com.itmo.java.basics.exceptions.DatabaseException;
-import com.itmo.java.basics.logic.DatabaseCache;
+import com.itmo.java.basics.logic.RangeScan;
 import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.TableScan;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Таблица с кэшем значений. Записи и удаления одного ключа выполняются по очереди
+ * (см {@link KeyLocks}) и сбрасывают ключ из кэша до записи в таблицу, поэтому чтение не может получить из кэша
+ * значение старее того, что уже видно в таблице. Чтения не блокируются.
+ * <p>
+ * Промах кэша читает значение из таблицы и кладет его в кэш, отсутствующие ключи запоминаются в отдельном небольшом
+ * кэше отсутствующих ключей. Прочитанное значение попадает в кэш, только если за время чтения ключ не записывали
+ * и полосу ключа в этот момент не держит запись: промах кэша не ждет записей в таблицу.
+ * Одновременные промахи по одному ключу читают таблицу один раз.
+ * <p>
+ * Оба кэша - части общих для окружения кэшей {@link DatabaseResources#getValueCache()}
+ * и {@link DatabaseResources#getAbsentKeyCache()}.
+ */
 public class CachingTable implements Table {
 
+    private static final byte[] ABSENT = new byte[0];
+
     private final Table table;
-    private final DatabaseCache cache;
+    private final DatabaseCacheImpl cache;
+    private final DatabaseCacheImpl absentKeys;
+    private final KeyLocks locks = new KeyLocks();
+    private final ConcurrentHashMap<String, CompletableFuture<Optional<byte[]>>> loading = new ConcurrentHashMap<>();
 
     public CachingTable(Table table) {
+        this(table, DatabaseResources.defaults(), table.getName());
+    }
+
+    /**
+     * @param table таблица
+     * @param resources ресурсы окружения с общими кэшами
+     * @param name имя таблицы в статистике кэша
+     */
+    public CachingTable(Table table, DatabaseResources resources, String name) {
         this.table = table;
-        cache = new DatabaseCacheImpl();
+        cache = new DatabaseCacheImpl(resources.getValueCache(), name);
+        absentKeys = new DatabaseCacheImpl(resources.getAbsentKeyCache(), name);
+    }
+
+    /**
+     * @return статистика кэша значений таблицы
+     */
+    public CacheStats getCacheStats() {
+        return cache.getStats();
     }
 
     @Override
@@ -23,22 +72,239 @@ public class CachingTable implements Table {
 
     @Override
     public void write(String objectKey, byte[] objectValue) throws DatabaseException {
-        table.write(objectKey, objectValue);
-        cache.set(objectKey, objectValue);
+        locks.lock(objectKey);
+        try {
+            invalidate(objectKey);
+            table.write(objectKey, objectValue);
+            remember(objectKey, objectValue);
+        } finally {
+            loading.remove(objectKey);
+            locks.unlock(objectKey);
+        }
+    }
+
+    @Override
+    public void writeBatch(Map<String, byte[]> entries) throws DatabaseException {
+        var stripes = locks.lockAll(entries.keySet());
+        try {
+            entries.keySet().forEach(this::invalidate);
+            table.writeBatch(entries);
+            entries.forEach(this::remember);
+        } finally {
+            entries.keySet().forEach(loading::remove);
+            locks.unlockAll(stripes);
+        }
+    }
+
+    /**
+     * Значение из потока не попадает в кэш. Поток читается без блокировки ключа, а ключ сбрасывается из кэша
+     * после записи в таблицу: до этого в таблице видно предыдущее значение.
+     */
+    @Override
+    public void write(String objectKey, InputStream objectValue, long length) throws DatabaseException {
+        table.write(objectKey, objectValue, length);
+
+        locks.lock(objectKey);
+        try {
+            invalidate(objectKey);
+        } finally {
+            loading.remove(objectKey);
+            locks.unlock(objectKey);
+        }
     }
 
     @Override
     public Optional<byte[]> read(String objectKey) throws DatabaseException {
         var value = cache.get(objectKey);
 
-        return value == null
-                ? table.read(objectKey)
-                : Optional.of(value);
+        if (value != null)
+            return Optional.of(value);
+
+        if (absentKeys.get(objectKey) != null)
+            return Optional.empty();
+
+        var load = new CompletableFuture<Optional<byte[]>>();
+        var running = loading.putIfAbsent(objectKey, load);
+
+        if (running != null)
+            return await(running);
+
+        try {
+            long version = locks.version(objectKey);
+            var result = table.read(objectKey);
+
+            locks.runIfUnchanged(objectKey, version, () -> remember(objectKey, result.orElse(null)));
+            load.complete(result);
+
+            return result;
+        } catch (DatabaseException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(objectKey, load);
+        }
+    }
+
+    /**
+     * Значение из кэша возвращается как буфер над кэшированным массивом. Промах кэша читает таблицу, не заполняя кэш:
+     * значение отображенного сегмента не копируется в память.
+     */
+    @Override
+    public Optional<ByteBuffer> readBuffer(String objectKey) throws DatabaseException {
+        var value = cache.get(objectKey);
+
+        if (value != null)
+            return Optional.of(ByteBuffer.wrap(value).asReadOnlyBuffer());
+
+        if (absentKeys.get(objectKey) != null)
+            return Optional.empty();
+
+        return table.readBuffer(objectKey);
+    }
+
+    @Override
+    public long transferTo(String objectKey, WritableByteChannel target) throws DatabaseException {
+        var value = cache.get(objectKey);
+
+        if (value == null) {
+            return absentKeys.get(objectKey) != null
+                    ? -1
+                    : table.transferTo(objectKey, target);
+        }
+
+        try (var stored = new SegmentImpl.StoredValue(ByteBuffer.wrap(value))) {
+            return stored.transferTo(target);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    @Override
+    public Optional<InputStream> openValue(String objectKey) throws DatabaseException {
+        var value = cache.get(objectKey);
+
+        if (value != null)
+            return Optional.of(new ByteArrayInputStream(value));
+
+        if (absentKeys.get(objectKey) != null)
+            return Optional.empty();
+
+        return table.openValue(objectKey);
+    }
+
+    @Override
+    public Map<String, byte[]> readMany(Collection<String> objectKeys) throws DatabaseException {
+        var result = new HashMap<String, byte[]>();
+        var misses = new ArrayList<String>();
+        var versions = new HashMap<String, Long>();
+
+        for (var key : objectKeys) {
+            var value = cache.get(key);
+
+            if (value != null) {
+                result.put(key, value);
+            } else if (absentKeys.get(key) == null) {
+                misses.add(key);
+                versions.put(key, locks.version(key));
+            }
+        }
+
+        if (misses.isEmpty())
+            return result;
+
+        var loaded = table.readMany(misses);
+
+        for (var key : misses) {
+            var value = loaded.get(key);
+            locks.runIfUnchanged(key, versions.get(key), () -> remember(key, value));
+        }
+
+        result.putAll(loaded);
+
+        return result;
     }
 
     @Override
     public void delete(String objectKey) throws DatabaseException {
-        table.delete(objectKey);
+        locks.lock(objectKey);
+        try {
+            invalidate(objectKey);
+            table.delete(objectKey);
+            absentKeys.set(objectKey, ABSENT);
+        } finally {
+            loading.remove(objectKey);
+            locks.unlock(objectKey);
+        }
+    }
+
+    @Override
+    public void deleteBatch(Collection<String> objectKeys) throws DatabaseException {
+        var stripes = locks.lockAll(objectKeys);
+        try {
+            objectKeys.forEach(this::invalidate);
+            table.deleteBatch(objectKeys);
+            objectKeys.forEach(key -> absentKeys.set(key, ABSENT));
+        } finally {
+            objectKeys.forEach(loading::remove);
+            locks.unlockAll(stripes);
+        }
+    }
+
+    /**
+     * Проход и запросы по диапазону читают значения из таблицы мимо кэша и не заполняют его.
+     */
+    @Override
+    public TableScan scan() throws DatabaseException {
+        return table.scan();
+    }
+
+    @Override
+    public RangeScan range(String fromKey, String toKey, int limit) throws DatabaseException {
+        return table.range(fromKey, toKey, limit);
+    }
+
+    @Override
+    public RangeScan prefix(String prefix, int limit) throws DatabaseException {
+        return table.prefix(prefix, limit);
+    }
+
+    @Override
+    public void close() throws DatabaseException {
+        try {
+            table.close();
+        } finally {
+            cache.clear();
+            absentKeys.clear();
+        }
+    }
+
+    private void invalidate(String objectKey) {
         cache.delete(objectKey);
+        absentKeys.delete(objectKey);
+    }
+
+    /**
+     * Запоминает прочитанное или записанное значение или отсутствие ключа: запись {@code null} удаляет ключ.
+     */
+    private void remember(String objectKey, byte[] value) {
+        if (value != null) {
+            cache.set(objectKey, value);
+        } else {
+            absentKeys.set(objectKey, ABSENT);
+        }
+    }
+
+    /**
+     * Дожидается чтения ключа, начатого другим потоком.
+     */
+    private static Optional<byte[]> await(CompletableFuture<Optional<byte[]>> load) throws DatabaseException {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof DatabaseException)
+                throw (DatabaseException) e.getCause();
+
+            throw new DatabaseException(e.getCause());
+        }
     }
 }
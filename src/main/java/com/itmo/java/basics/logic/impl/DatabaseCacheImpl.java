@@ -2,21 +2,61 @@ package com.itmo.java.basics.logic.impl;
 
 import com.itmo.java.basics.logic.DatabaseCache;
 
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Кэш значений одной таблицы: часть общего {@link ValueCache} со своей статистикой.
+ */
 public class DatabaseCacheImpl implements DatabaseCache {
 
-    private static final int MAX_CACHE_SIZE = 5_000;
+    public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
 
-    private final LinkedHashMap<String, byte[]> cacheMap = new LinkedHashMap<>(MAX_CACHE_SIZE);
+    private final ValueCache cache;
+    private final String name;
+    private final int id;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+
+    /**
+     * Размер значений таблицы в кэше, изменяется под блокировкой {@link ValueCache}
+     */
+    volatile long cachedBytes = 0;
+
+    /**
+     * Создает кэш с собственным {@link ValueCache} размера {@link #DEFAULT_MAX_BYTES}.
+     */
+    public DatabaseCacheImpl() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Создает кэш с собственным {@link ValueCache}.
+     *
+     * @param maxBytes наибольший суммарный размер записей кэша в байтах
+     */
+    public DatabaseCacheImpl(long maxBytes) {
+        this(new ValueCache(maxBytes), "");
+    }
+
+    /**
+     * @param cache общий кэш
+     * @param name имя таблицы для статистики
+     */
+    public DatabaseCacheImpl(ValueCache cache, String name) {
+        this.cache = cache;
+        this.name = name;
+        this.id = cache.register(this);
+    }
 
     @Override
     public byte[] get(String key) {
-        var value = cacheMap.get(key);
+        var value = cache.get(this, key);
 
-        if (value != null) {
-            set(key, value);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
         }
 
         return value;
@@ -24,19 +64,54 @@ public class DatabaseCacheImpl implements DatabaseCache {
 
     @Override
     public void set(String key, byte[] value) {
-        if (cacheMap.containsKey(key)) {
-            delete(key);
-        } else if (cacheMap.size() == MAX_CACHE_SIZE) {
-            Iterator<String> it = cacheMap.keySet().iterator();
-            it.next();
-            it.remove();
-        }
-
-        cacheMap.put(key, value);
+        cache.set(this, key, value);
     }
 
     @Override
     public void delete(String key) {
-        cacheMap.remove(key);
+        cache.delete(this, key);
+    }
+
+    /**
+     * Удаляет значения таблицы из общего кэша и больше не кэширует их. Используется при закрытии таблицы.
+     */
+    public void clear() {
+        cache.unregister(this);
+    }
+
+    /**
+     * @return число обращений, нашедших значение в кэше
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return число обращений, не нашедших значения в кэше
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return число значений таблицы, вытесненных из-за нехватки места
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return размер значений таблицы в кэше в байтах
+     */
+    public long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(name, getHitCount(), getMissCount(), getEvictionCount(), getCachedBytes());
+    }
+
+    int getId() {
+        return id;
     }
 }
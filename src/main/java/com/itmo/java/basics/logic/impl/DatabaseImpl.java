@@ -1,42 +1,53 @@
 package com.itmo.java.basics.logic.impl;
 
+import com.itmo.java.basics.config.DatabaseResources;
 import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.basics.index.impl.TableIndex;
 import com.itmo.java.basics.initialization.DatabaseInitializationContext;
 import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.RangeScan;
 import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.TableScan;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DatabaseImpl implements Database {
 
     private final String dbName;
     private final Path path;
     private final Map<String, Table> indexes;
+    private final DatabaseResources resources;
 
     public DatabaseImpl(String dbName, Path path) {
-        this.dbName = dbName;
-        this.path = path;
-        this.indexes = new HashMap<>();
+        this(dbName, path, new ConcurrentHashMap<>(), DatabaseResources.defaults());
     }
 
-    private DatabaseImpl(String dbName, Path path, Map<String, Table> index) {
+    private DatabaseImpl(String dbName, Path path, Map<String, Table> index, DatabaseResources resources) {
         this.dbName = dbName;
         this.path = path;
         this.indexes = index;
+        this.resources = resources;
     }
 
     public static Database create(String dbName, Path databaseRoot) throws DatabaseException {
+        return create(dbName, databaseRoot, DatabaseResources.defaults());
+    }
+
+    public static Database create(String dbName, Path databaseRoot, DatabaseResources resources) throws DatabaseException {
 
-        if (dbName == null || databaseRoot == null)
-            throw new DatabaseException("Database name or database root path is null");
+        if (dbName == null || databaseRoot == null || resources == null)
+            throw new DatabaseException("Database name or database root path or resources is null");
 
-        DatabaseImpl database = new DatabaseImpl(dbName, databaseRoot.resolve(dbName));
+        DatabaseImpl database = new DatabaseImpl(dbName, databaseRoot.resolve(dbName), new ConcurrentHashMap<>(), resources);
 
         try {
             Files.createDirectory(database.path);
@@ -48,10 +59,15 @@ public class DatabaseImpl implements Database {
     }
 
     public static Database initializeFromContext(DatabaseInitializationContext context) {
+        return initializeFromContext(context, DatabaseResources.defaults());
+    }
+
+    public static Database initializeFromContext(DatabaseInitializationContext context, DatabaseResources resources) {
         return new DatabaseImpl(
                 context.getDbName(),
                 context.getDatabasePath(),
-                context.getTables()
+                new ConcurrentHashMap<>(context.getTables()),
+                resources
         );
     }
 
@@ -61,13 +77,13 @@ public class DatabaseImpl implements Database {
     }
 
     @Override
-    public void createTableIfNotExists(String tableName) throws DatabaseException {
+    public synchronized void createTableIfNotExists(String tableName) throws DatabaseException {
 
         if (tableName == null)
             throw new DatabaseException("Table name is null");
 
         if (!indexes.containsKey(tableName)) {
-            indexes.put(tableName, TableImpl.create(tableName, path, new TableIndex()));
+            indexes.put(tableName, TableImpl.create(tableName, path, new TableIndex(), resources));
         } else
             throw new DatabaseException("The table already exists");
     }
@@ -83,6 +99,28 @@ public class DatabaseImpl implements Database {
         table.write(objectKey, objectValue);
     }
 
+    @Override
+    public void writeBatch(String tableName, Map<String, byte[]> entries) throws DatabaseException {
+
+        var table = indexes.get(tableName);
+
+        if (table == null)
+            throw new DatabaseException("The table does not exist");
+
+        table.writeBatch(entries);
+    }
+
+    @Override
+    public void write(String tableName, String objectKey, InputStream objectValue, long length) throws DatabaseException {
+
+        var table = indexes.get(tableName);
+
+        if (table == null)
+            throw new DatabaseException("The table does not exist");
+
+        table.write(objectKey, objectValue, length);
+    }
+
     @Override
     public Optional<byte[]> read(String tableName, String objectKey) throws DatabaseException {
 
@@ -94,6 +132,50 @@ public class DatabaseImpl implements Database {
         return table.read(objectKey);
     }
 
+    @Override
+    public Optional<ByteBuffer> readBuffer(String tableName, String objectKey) throws DatabaseException {
+
+        var table = indexes.get(tableName);
+
+        if (table == null)
+            throw new DatabaseException("The table does not exist");
+
+        return table.readBuffer(objectKey);
+    }
+
+    @Override
+    public long transferTo(String tableName, String objectKey, WritableByteChannel target) throws DatabaseException {
+
+        var table = indexes.get(tableName);
+
+        if (table == null)
+            throw new DatabaseException("The table does not exist");
+
+        return table.transferTo(objectKey, target);
+    }
+
+    @Override
+    public Optional<InputStream> openValue(String tableName, String objectKey) throws DatabaseException {
+
+        var table = indexes.get(tableName);
+
+        if (table == null)
+            throw new DatabaseException("The table does not exist");
+
+        return table.openValue(objectKey);
+    }
+
+    @Override
+    public Map<String, byte[]> readMany(String tableName, Collection<String> objectKeys) throws DatabaseException {
+
+        var table = indexes.get(tableName);
+
+        if (table == null)
+            throw new DatabaseException("The table does not exist");
+
+        return table.readMany(objectKeys);
+    }
+
     @Override
     public void delete(String tableName, String objectKey) throws DatabaseException {
 
@@ -104,4 +186,75 @@ public class DatabaseImpl implements Database {
 
         table.delete(objectKey);
     }
+
+    @Override
+    public void deleteBatch(String tableName, Collection<String> objectKeys) throws DatabaseException {
+
+        var table = indexes.get(tableName);
+
+        if (table == null)
+            throw new DatabaseException("The table does not exist");
+
+        table.deleteBatch(objectKeys);
+    }
+
+    @Override
+    public TableScan scan(String tableName) throws DatabaseException {
+
+        var table = indexes.get(tableName);
+
+        if (table == null)
+            throw new DatabaseException("The table does not exist");
+
+        return table.scan();
+    }
+
+    @Override
+    public RangeScan range(String tableName, String fromKey, String toKey, int limit) throws DatabaseException {
+
+        var table = indexes.get(tableName);
+
+        if (table == null)
+            throw new DatabaseException("The table does not exist");
+
+        return table.range(fromKey, toKey, limit);
+    }
+
+    @Override
+    public RangeScan prefix(String tableName, String prefix, int limit) throws DatabaseException {
+
+        var table = indexes.get(tableName);
+
+        if (table == null)
+            throw new DatabaseException("The table does not exist");
+
+        return table.prefix(prefix, limit);
+    }
+
+    /**
+     * Закрывает все таблицы, даже если закрытие некоторых из них не удалось.
+     *
+     * @throws DatabaseException первая ошибка закрытия, остальные добавлены к ней как подавленные
+     */
+    @Override
+    public void close() throws DatabaseException {
+        DatabaseException failure = null;
+
+        for (var table : indexes.values()) {
+            try {
+                table.close();
+            } catch (DatabaseException | RuntimeException e) {
+                if (failure == null) {
+                    failure = e instanceof DatabaseException
+                            ? (DatabaseException) e
+                            : new DatabaseException(e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        if (failure != null)
+            throw failure;
+    }
 }
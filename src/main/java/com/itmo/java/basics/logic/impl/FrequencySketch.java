@@ -0,0 +1,92 @@
+package com.itmo.java.basics.logic.impl;
+
+/**
+ * Приблизительный счетчик частоты обращений к ключам (Count-Min Sketch с 4-битными счетчиками).
+ * Когда число учтенных обращений достигает размера выборки, все счетчики уменьшаются вдвое,
+ * поэтому давно популярные, но забытые ключи постепенно теряют частоту. Не потокобезопасен.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MIN_LENGTH = 16;
+    private static final int MAX_LENGTH = 1 << 24;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int size = 0;
+
+    /**
+     * @param expectedKeys ожидаемое число различных ключей в кэше
+     */
+    FrequencySketch(long expectedKeys) {
+        int length = Integer.highestOneBit((int) Math.max(MIN_LENGTH, Math.min(MAX_LENGTH, expectedKeys)) * 2 - 1);
+        this.table = new long[length];
+        this.mask = length - 1;
+        this.sampleSize = 10 * length;
+    }
+
+    /**
+     * @param keyHash хеш ключа
+     * @return оценка числа обращений к ключу, от 0 до 15
+     */
+    int frequency(int keyHash) {
+        int hash = spread(keyHash);
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+
+        for (int i = 0; i < 4; i++) {
+            int offset = (start + i) << 2;
+            frequency = Math.min(frequency, (int) (table[indexOf(hash, i)] >>> offset & 0xF));
+        }
+
+        return frequency;
+    }
+
+    void increment(int keyHash) {
+        int hash = spread(keyHash);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int offset = (start + i) << 2;
+
+            if ((table[index] >>> offset & 0xF) != 0xF) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        int odd = 0;
+
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = table[i] >>> 1 & RESET_MASK;
+        }
+
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
@@ -0,0 +1,167 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.config.DurabilityPolicy;
+import com.itmo.java.basics.logic.Segment;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Групповой сброс записей таблицы на диск согласно {@link DurabilityPolicy}.
+ * Каждая запись получает номер, запись подтверждается, когда сброшены все записи с номерами не больше ее.
+ * Один вызов {@link Segment#sync()} покрывает все записи, добавленные до его начала.
+ * <p>
+ * Blob-файлы, в которые дописаны значения, регистрируются до записи ссылок на значения в сегмент
+ * и сбрасываются тем же сбросом перед сегментом, поэтому ссылка не может оказаться на диске раньше значения.
+ */
+class GroupCommitter {
+
+    private final DurabilityPolicy policy;
+    private final DatabaseResources resources;
+    private final Object syncLock = new Object();
+    private final ScheduledFuture<?> flusher;
+    private final Set<BlobLog.BlobFile> dirtyBlobs = new HashSet<>();
+
+    private long appended = 0;
+    private long durable = 0;
+    private Segment dirty;
+    private IOException failure;
+
+    GroupCommitter(DatabaseResources resources) {
+        var config = resources.getConfig();
+        this.policy = config.getDurabilityPolicy();
+        this.resources = resources;
+
+        if (policy == DurabilityPolicy.EVERY_N_MS) {
+            flusher = resources.scheduleFlush(this::flush, config.getSyncIntervalMillis());
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Регистрирует запись в сегмент. Вызывается под блокировкой записи таблицы.
+     *
+     * @param segment сегмент, в который попала запись
+     * @return номер записи для {@link #awaitDurable(long)}
+     */
+    synchronized long appended(Segment segment) {
+        dirty = segment;
+        return ++appended;
+    }
+
+    /**
+     * Регистрирует blob-файл, в который дописано значение. Вызывается до записи ссылки на значение в сегмент.
+     *
+     * @param file файл со значением
+     */
+    synchronized void blobAppended(BlobLog.BlobFile file) {
+        if (policy != DurabilityPolicy.NONE) {
+            dirtyBlobs.add(file);
+        }
+    }
+
+    /**
+     * Блокирует поток, пока запись с указанным номером не будет сброшена на диск.
+     *
+     * @param ticket номер записи
+     * @throws IOException если сброс не удался
+     */
+    void awaitDurable(long ticket) throws IOException {
+        switch (policy) {
+            case EVERY_WRITE:
+                syncUpTo(ticket);
+                break;
+            case EVERY_N_MS:
+                waitFor(ticket);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Останавливает фоновый сброс и сбрасывает оставшиеся записи.
+     *
+     * @throws IOException если сброс не удался
+     */
+    void close() throws IOException {
+        if (flusher != null) {
+            resources.cancelFlush(flusher);
+        }
+
+        if (policy != DurabilityPolicy.NONE) {
+            syncUpTo(currentTicket());
+        }
+    }
+
+    private synchronized long currentTicket() {
+        return appended;
+    }
+
+    private void syncUpTo(long ticket) throws IOException {
+        synchronized (syncLock) {
+            long target;
+            Segment segment;
+            List<BlobLog.BlobFile> blobs;
+
+            synchronized (this) {
+                if (durable >= ticket)
+                    return;
+
+                target = appended;
+                segment = dirty;
+                blobs = List.copyOf(dirtyBlobs);
+                dirtyBlobs.clear();
+            }
+
+            try {
+                for (var blob : blobs) {
+                    blob.force();
+                }
+
+                segment.sync();
+            } catch (IOException e) {
+                synchronized (this) {
+                    dirtyBlobs.addAll(blobs);
+                    failure = e;
+                    notifyAll();
+                }
+                throw e;
+            }
+
+            synchronized (this) {
+                durable = target;
+                failure = null;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void waitFor(long ticket) throws IOException {
+        while (durable < ticket) {
+            if (failure != null)
+                throw new IOException("Group commit failed", failure);
+
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for group commit");
+            }
+        }
+    }
+
+    private void flush() {
+        try {
+            syncUpTo(currentTicket());
+        } catch (IOException ignored) {
+            // ошибка уже передана ожидающим потокам
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.itmo.java.basics.logic.impl;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Блокировки по ключам, разбитые на фиксированное число полос. Ключи одной полосы блокируются вместе,
+ * операции над ключами разных полос не мешают друг другу.
+ * <p>
+ * У каждой полосы есть номер версии, который увеличивается при захвате и при освобождении блокировки.
+ * По нему читатель, не захватывавший блокировку, узнает, не менялись ли ключи полосы, пока он читал.
+ */
+final class KeyLocks {
+
+    private static final int STRIPES = 64;
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+
+    KeyLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    void lock(String key) {
+        lock(stripe(key));
+    }
+
+    void unlock(String key) {
+        unlock(stripe(key));
+    }
+
+    /**
+     * @return версия полосы ключа, см {@link #runIfUnchanged(String, long, Runnable)}
+     */
+    long version(String key) {
+        return versions.get(stripe(key));
+    }
+
+    /**
+     * Выполняет действие под блокировкой полосы ключа, если с момента получения версии полосу никто не захватывал.
+     * Блокировка не ожидается: запись держит полосу, пока пишет в таблицу, и если полоса занята,
+     * действие не выполняется.
+     *
+     * @param version версия из {@link #version(String)}
+     * @return {@code false}, если полоса менялась или занята и действие не выполнено
+     */
+    boolean runIfUnchanged(String key, long version, Runnable action) {
+        int stripe = stripe(key);
+        var lock = locks[stripe];
+
+        if (versions.get(stripe) != version || !lock.tryLock())
+            return false;
+
+        try {
+            if (versions.get(stripe) != version)
+                return false;
+
+            action.run();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Блокирует полосы всех ключей в порядке возрастания номеров, поэтому одновременные пакеты не могут взаимно заблокироваться.
+     *
+     * @return заблокированные полосы для {@link #unlockAll(BitSet)}
+     */
+    BitSet lockAll(Collection<String> keys) {
+        var stripes = new BitSet(STRIPES);
+        keys.forEach(key -> stripes.set(stripe(key)));
+
+        for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+            lock(i);
+        }
+
+        return stripes;
+    }
+
+    void unlockAll(BitSet stripes) {
+        for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+            unlock(i);
+        }
+    }
+
+    private void lock(int stripe) {
+        locks[stripe].lock();
+        versions.incrementAndGet(stripe);
+    }
+
+    private void unlock(int stripe) {
+        versions.incrementAndGet(stripe);
+        locks[stripe].unlock();
+    }
+
+    private static int stripe(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,119 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.RangeScan;
+
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Страница диапазона: идет по упорядоченным ключам и читает значение каждого ключа,
+ * пропуская ключи, которых уже нет в таблице.
+ */
+class RangeScanImpl implements RangeScan {
+
+    /**
+     * Читает значение ключа из таблицы
+     */
+    interface KeyReader {
+        Optional<byte[]> read(String objectKey) throws DatabaseException;
+    }
+
+    private final Iterator<String> keys;
+    private final KeyReader reader;
+    private final String fromKey;
+    private final String toKey;
+    private int remaining;
+    private String key;
+    private byte[] value;
+    private String lastKey;
+    private boolean exhausted = false;
+
+    /**
+     * @param keys ключи диапазона по возрастанию
+     * @param reader чтение значения ключа
+     * @param fromKey первый ключ диапазона или {@code null} - от начала таблицы
+     * @param toKey ключ после диапазона или {@code null}
+     * @param limit наибольшее число ключей на странице
+     */
+    RangeScanImpl(Iterator<String> keys, KeyReader reader, String fromKey, String toKey, int limit) {
+        this.keys = keys;
+        this.reader = reader;
+        this.fromKey = fromKey == null ? "" : fromKey;
+        this.toKey = toKey;
+        this.remaining = limit;
+    }
+
+    @Override
+    public boolean next() throws DatabaseException {
+        key = null;
+        value = null;
+
+        if (remaining <= 0)
+            return false;
+
+        while (keys.hasNext()) {
+            var candidate = keys.next();
+            var found = reader.read(candidate);
+
+            if (found.isPresent()) {
+                key = candidate;
+                value = found.get();
+                lastKey = candidate;
+                remaining--;
+                return true;
+            }
+        }
+
+        exhausted = true;
+        return false;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public byte[] getValue() {
+        return value;
+    }
+
+    /**
+     * Курсор - наименьшая строка, большая последнего выданного ключа. Пока страница не выдала ни одного ключа,
+     * например при нулевом {@code limit}, курсор - начало диапазона, и следующая страница начнется с него же.
+     */
+    @Override
+    public String getNextCursor() {
+        if (exhausted)
+            return null;
+
+        return lastKey == null
+                ? fromKey
+                : lastKey + '\0';
+    }
+
+    @Override
+    public String getToKey() {
+        return toKey;
+    }
+
+    @Override
+    public void close() {
+        remaining = 0;
+    }
+
+    /**
+     * @return наименьшая строка, большая всех строк с указанным префиксом, или {@code null}, если такой нет
+     */
+    static String prefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            char c = prefix.charAt(i);
+
+            if (c != Character.MAX_VALUE)
+                return prefix.substring(0, i) + (char) (c + 1);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,332 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+import com.itmo.java.basics.logic.io.BlobPointer;
+import com.itmo.java.basics.logic.io.DatabaseRecordCodec;
+import com.itmo.java.basics.logic.io.SegmentBlockWriter;
+import com.itmo.java.basics.logic.io.SegmentFormat;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Фоновая компактизация заполненных сегментов таблицы.
+ * <p>
+ * Сливаются сегменты одного уровня: самая длинная последовательность соседних заполненных сегментов близкого размера,
+ * суммарно не больше {@link com.itmo.java.basics.config.DatabaseConfig#getMaxCompactedSegmentBytes()}.
+ * Сегменты меньше наибольшего размера сегмента таблицы считаются одним уровнем. Результат слияния крупнее исходных
+ * сегментов и сливается снова, только когда рядом накопятся сегменты такого же размера, поэтому каждое значение
+ * переписывается порядка логарифма от объема таблицы раз, а не при каждой компактизации.
+ * <p>
+ * В новый сегмент попадают только актуальные по {@link com.itmo.java.basics.index.impl.TableIndex} значения.
+ * Удаления отбрасываются, только если слияние начинается с самого старого сегмента: тогда все более старые версии
+ * ключа находятся в сливаемых сегментах и удаляются вместе с ними. Иначе удаление переносится в новый сегмент.
+ * Новый сегмент называется по времени создания самого нового и самого старого из сливаемых
+ * ({@link SegmentImpl#createCompactedName(String, String, String)}), поэтому при инициализации он оказывается после них
+ * и перед всеми более новыми сегментами. Сегменты из его диапазона остаются только после сбоя и удаляются
+ * при инициализации.
+ * <p>
+ * Ссылки на blob-файлы ({@link BlobPointerRecord}) переносятся как есть, сами значения не читаются.
+ * Компактизация не ждет открытых проходов ({@link TableScanImpl}): слитые сегменты удаляются, когда проходы их отпустят.
+ */
+class SegmentCompactor {
+
+    private static final Logger LOGGER = Logger.getLogger(SegmentCompactor.class.getName());
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    /**
+     * Наибольшее число сегментов одного уровня, которого достаточно для слияния
+     */
+    private static final int MIN_MERGED_SEGMENTS = 4;
+    private static final long MIN_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+
+    private final TableImpl table;
+    private final DatabaseResources resources;
+    private final int threshold;
+    private final long smallSegmentBytes;
+    private final long maxOutputBytes;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ReentrantLock running = new ReentrantLock();
+    private volatile boolean closed = false;
+    private int failures = 0;
+
+    /**
+     * @param smallSegmentBytes наибольший размер сегмента таблицы, меньшие сегменты сливаются как один уровень
+     */
+    SegmentCompactor(TableImpl table, DatabaseResources resources, long smallSegmentBytes) {
+        this.table = table;
+        this.resources = resources;
+        this.threshold = resources.getConfig().getCompactionThreshold();
+        this.smallSegmentBytes = smallSegmentBytes;
+        this.maxOutputBytes = resources.getConfig().getMaxCompactedSegmentBytes();
+    }
+
+    /**
+     * Запускает компактизацию в фоне, если заполненных сегментов накопилось достаточно.
+     */
+    void onSegmentSealed(int sealedSegments) {
+        if (threshold <= 0 || closed || sealedSegments < threshold || !scheduled.compareAndSet(false, true))
+            return;
+
+        resources.getCompactionExecutor().execute(this::run);
+    }
+
+    /**
+     * Дожидается окончания текущей компактизации и запрещает новые.
+     */
+    void close() {
+        closed = true;
+        running.lock();
+        running.unlock();
+    }
+
+    /**
+     * Сливает последовательности сегментов, пока они находятся. Сегмент, закрытый во время компактизации,
+     * запускает еще одну компактизацию после нее.
+     * <p>
+     * Неудавшаяся компактизация повторяется с растущей задержкой, а не только после заполнения следующего сегмента:
+     * иначе при редкой записи сегменты копились бы без слияния.
+     */
+    private void run() {
+        long retryDelay = 0;
+
+        running.lock();
+        try {
+            scheduled.set(false);
+
+            while (!closed && compact()) {
+                // следующая последовательность могла появиться после слияния
+            }
+            failures = 0;
+        } catch (IOException | RuntimeException e) {
+            if (closed)
+                return;
+
+            retryDelay = Math.min(MAX_RETRY_DELAY_MILLIS, MIN_RETRY_DELAY_MILLIS << Math.min(failures, 6));
+            failures++;
+            LOGGER.log(Level.WARNING, String.format("Compaction of table %s failed %d time(s), retrying in %d ms",
+                    table.getName(), failures, retryDelay), e);
+        } finally {
+            running.unlock();
+        }
+
+        if (retryDelay > 0 && !closed) {
+            resources.getScheduler().schedule(this::retry, retryDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void retry() {
+        if (closed || !scheduled.compareAndSet(false, true))
+            return;
+
+        resources.getCompactionExecutor().execute(this::run);
+    }
+
+    /**
+     * Сливает одну последовательность сегментов, см {@link #selectRun(List)}.
+     *
+     * @return {@code true}, если сегменты заменены результатом слияния
+     */
+    boolean compact() throws IOException {
+        var sealed = table.sealedSegments();
+        int[] run = selectRun(sealed);
+        var candidates = sealed.subList(run[0], run[1]);
+
+        if (candidates.size() < 2)
+            return false;
+
+        boolean keepRemoved = run[0] > 0;
+        var name = SegmentImpl.createCompactedName(table.getName(), candidates.get(0).getName(),
+                candidates.get(candidates.size() - 1).getName());
+        var target = table.getPath().resolve(name);
+        var temp = table.getPath().resolve(name + SegmentImpl.TEMP_SUFFIX);
+
+        var hints = new ArrayList<SegmentHintFile.Entry>();
+        var moved = new ArrayList<String>();
+        var dropped = new ArrayList<String>();
+        long size;
+
+        try {
+            size = writeLiveRecords(candidates, keepRemoved, temp, hints, moved, dropped);
+
+            if (!moved.isEmpty()) {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                SegmentHintFile.write(target, size, hints);
+                SegmentImpl.writeFilter(target, size, moved, resources);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        var output = !moved.isEmpty()
+                ? SegmentImpl.openSealed(name, target, size, outputFormat(), resources)
+                : null;
+
+        if (!table.replaceSegments(candidates, output, moved, hints, dropped)) {
+            if (output != null) {
+                output.close();
+                output.removeFiles();
+            }
+            return false;
+        }
+
+        for (var segment : candidates) {
+            segment.retire();
+        }
+
+        return true;
+    }
+
+    /**
+     * Выбирает самую длинную последовательность соседних сегментов близкого размера, суммарно не больше
+     * {@link #maxOutputBytes}.
+     *
+     * @return {@code [начало, конец)} последовательности в {@code sealed} или пустой отрезок, если сливать нечего
+     */
+    private int[] selectRun(List<SegmentImpl> sealed) {
+        int minLength = Math.max(2, Math.min(threshold, MIN_MERGED_SEGMENTS));
+        int[] best = {0, 0};
+        int bestLength = 0;
+
+        for (int from = 0; from < sealed.size(); from++) {
+            long total = 0;
+            int length = 0;
+            int to = from;
+
+            for (; to < sealed.size(); to++) {
+                long size = sealed.get(to).size();
+
+                if (length > 0 && !isSimilar(size, total / length) || total + size > maxOutputBytes)
+                    break;
+
+                total += size;
+                length++;
+            }
+
+            if (length >= minLength && length > bestLength) {
+                best = new int[]{from, to};
+                bestLength = length;
+            }
+        }
+
+        return best;
+    }
+
+    private boolean isSimilar(long size, long average) {
+        if (size < smallSegmentBytes && average < smallSegmentBytes)
+            return true;
+
+        return size >= average / 2 && size <= average + average / 2;
+    }
+
+    /**
+     * @param keepRemoved переносить ли все удаления: перед сливаемыми сегментами есть более старые
+     */
+    private long writeLiveRecords(List<SegmentImpl> candidates, boolean keepRemoved, Path temp,
+                                  List<SegmentHintFile.Entry> hints, List<String> moved,
+                                  List<String> dropped) throws IOException {
+        var buffer = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+        long[] size = {SegmentFormat.CURRENT.getFileHeaderSize()};
+
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             var blocks = outputFormat().isCompressed() ? new SegmentBlockWriter(channel) : null) {
+
+            if (blocks == null) {
+                buffer.put(SegmentFormat.CURRENT.header());
+            }
+
+            for (var segment : candidates) {
+                segment.forEachRecord(true, record -> {
+                    var key = record.keyString();
+
+                    if (!table.isLatest(key, segment, record.offset()))
+                        return;
+
+                    if (!record.isValuePresented() && !keepRemoved) {
+                        dropped.add(key);
+                        return;
+                    }
+
+                    WritableDatabaseRecord writable;
+
+                    if (record.isBlobPointer()) {
+                        writable = new BlobPointerRecord(record.key(), record.value());
+                    } else if (record.isValuePresented()) {
+                        writable = new SetDatabaseRecord(record.key(), record.value());
+                    } else {
+                        writable = new RemoveDatabaseRecord(record.key());
+                    }
+                    long recordSize = DatabaseRecordCodec.encodedSize(writable);
+                    long offset = size[0];
+
+                    if (blocks != null) {
+                        offset = blocks.append(writable);
+                    } else {
+                        if (buffer.remaining() < recordSize) {
+                            flush(channel, buffer);
+                        }
+
+                        if (buffer.capacity() < recordSize) {
+                            writeFully(channel, DatabaseRecordCodec.encode(writable, null));
+                        } else {
+                            DatabaseRecordCodec.put(writable, buffer);
+                        }
+
+                        size[0] += recordSize;
+                    }
+
+                    hints.add(new SegmentHintFile.Entry(writable.getKey(), offset, recordSize, !writable.isValuePresented(),
+                            record.isBlobPointer() ? BlobPointer.decode(ByteBuffer.wrap(writable.getValue()), 0) : null));
+                    moved.add(key);
+                });
+
+                if (closed)
+                    throw new IOException("Table " + table.getName() + " is closed");
+            }
+
+            if (blocks != null) {
+                size[0] = blocks.finish();
+            } else {
+                flush(channel, buffer);
+            }
+
+            channel.force(false);
+        }
+
+        return size[0];
+    }
+
+    /**
+     * @return формат сегментов, которые записывает компактизация
+     */
+    private SegmentFormat outputFormat() {
+        return resources.getConfig().isBlockCompressionEnabled()
+                ? SegmentFormat.V3
+                : SegmentFormat.CURRENT;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        writeFully(channel, buffer.flip());
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -1,56 +1,144 @@
 package com.itmo.java.basics.logic.impl;
 
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.config.DurabilityPolicy;
+import com.itmo.java.basics.config.SegmentPolicy;
 import com.itmo.java.basics.index.impl.SegmentIndex;
-import com.itmo.java.basics.index.impl.SegmentOffsetInfoImpl;
 import com.itmo.java.basics.initialization.SegmentInitializationContext;
-import com.itmo.java.basics.logic.DatabaseRecord;
 import com.itmo.java.basics.logic.Segment;
 import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.basics.logic.WritableDatabaseRecord;
-import com.itmo.java.basics.logic.io.DatabaseInputStream;
-import com.itmo.java.basics.logic.io.DatabaseOutputStream;
+import com.itmo.java.basics.logic.io.BlobPointer;
+import com.itmo.java.basics.logic.io.BlockCache;
+import com.itmo.java.basics.logic.io.DatabaseRecordCodec;
+import com.itmo.java.basics.logic.io.MappedSegmentCache;
+import com.itmo.java.basics.logic.io.SegmentBlocks;
+import com.itmo.java.basics.logic.io.SegmentBloomFilter;
+import com.itmo.java.basics.logic.io.SegmentFormat;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
+import com.itmo.java.basics.logic.io.SegmentScanner;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class SegmentImpl implements Segment {
 
-    public static final int MAX_SEGMENT_SIZE = 100_000;
+    /**
+     * Размер сегмента по умолчанию, см {@link SegmentPolicy#getMaxSegmentBytes()}
+     */
+    public static final int MAX_SEGMENT_SIZE = (int) SegmentPolicy.DEFAULT_MAX_SEGMENT_BYTES;
+    /**
+     * Суффикс сегмента, в который компактизация слила сегменты {@code таблица_первый ... таблица_последний}.
+     * Такой сегмент называется {@code таблица_последний_первый_c}, см {@link #createCompactedName(String, String, String)}
+     */
+    public static final String COMPACTED_SUFFIX = "_c";
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int WRITE_BUFFER_SIZE = 4096;
+    private static final int READ_AHEAD_SIZE = 4096;
+    private static final int MAX_MERGED_READ_SIZE = 256 * 1024;
+
+    private static final AtomicLong LAST_SEGMENT_TIMESTAMP = new AtomicLong();
+
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(READ_AHEAD_SIZE));
 
     private final String segmentName;
     private final Path path;
-    private long segmentSize = 0;
-    private boolean isReadOnly = false;
-    private final SegmentIndex indexes;
+    private volatile long segmentSize = 0;
+    private volatile boolean isReadOnly = false;
+    private volatile long maxSize;
+    private SegmentIndex indexes;
+    private final LongAdder fileReads = new LongAdder();
+    private final SegmentFormat format;
+    private final DatabaseResources resources;
+    private final MappedSegmentCache mappedSegments;
+    private final BlockCache blockCache;
+    private final boolean syncOnSeal;
+    private final Object channelLock = new Object();
+    private FileChannel channel;
+    private volatile FileChannel readChannel;
+    private volatile SegmentBlocks blocks;
+    private volatile SegmentBloomFilter bloomFilter;
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    private volatile BlobLog blobs;
+    private int id = -1;
+    /**
+     * Ссылки на сегмент: одна у таблицы, пока сегмент в ней, остальные у тех, кто читает сегмент
+     * без блокировки таблицы, см {@link #retain()}
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile boolean removeOnRelease = false;
+    /**
+     * Куда компактизация перенесла последние версии ключей сегмента, пока его читают открытые проходы,
+     * см {@link TableImpl#isLatest(String, SegmentImpl, long)}
+     */
+    private volatile Map<String, MovedRecord> moves;
 
-    private SegmentImpl(String segmentName, Path tableRootPath) {
+    private SegmentImpl(String segmentName, Path tableRootPath, DatabaseResources resources) {
         this.segmentName = segmentName;
         this.path = tableRootPath.resolve(segmentName);
-        indexes = new SegmentIndex();
+        this.format = SegmentFormat.CURRENT;
+        this.resources = resources;
+        this.mappedSegments = resources.getMappedSegments().orElse(null);
+        this.blockCache = resources.getBlockCache();
+        this.syncOnSeal = resources.getConfig().getDurabilityPolicy() != DurabilityPolicy.NONE;
+        this.maxSize = resources.getConfig().getSegmentPolicy().getMaxSegmentBytes();
     }
 
-    private SegmentImpl(String segmentName, Path segmentPath, long currentSize, SegmentIndex index, boolean isReadOnly) {
+    private SegmentImpl(String segmentName, Path segmentPath, long currentSize, SegmentIndex index, SegmentFormat format,
+                        boolean isReadOnly, DatabaseResources resources) {
         this.segmentName = segmentName;
         this.path = segmentPath;
         this.segmentSize = currentSize;
         this.indexes = index;
+        this.format = format;
         this.isReadOnly = isReadOnly;
+        this.resources = resources;
+        this.mappedSegments = resources.getMappedSegments().orElse(null);
+        this.blockCache = resources.getBlockCache();
+        this.syncOnSeal = resources.getConfig().getDurabilityPolicy() != DurabilityPolicy.NONE;
+        this.maxSize = resources.getConfig().getSegmentPolicy().getMaxSegmentBytes();
     }
 
     public static Segment create(String segmentName, Path tableRootPath) throws DatabaseException {
+        return create(segmentName, tableRootPath, DatabaseResources.defaults());
+    }
+
+    public static Segment create(String segmentName, Path tableRootPath, DatabaseResources resources) throws DatabaseException {
 
-        if (segmentName == null || tableRootPath == null)
-            throw new DatabaseException("Segment name or table root path is null");
+        if (segmentName == null || tableRootPath == null || resources == null)
+            throw new DatabaseException("Segment name or table root path or resources is null");
 
-        SegmentImpl segment = new SegmentImpl(segmentName, tableRootPath);
+        SegmentImpl segment = new SegmentImpl(segmentName, tableRootPath, resources);
 
         try {
             Files.createFile(segment.path);
+            segment.openChannel();
+            segment.writeHeader();
         } catch (IOException e) {
             throw new DatabaseException(e);
         }
@@ -58,43 +146,522 @@ public class SegmentImpl implements Segment {
         return segment;
     }
 
-    public static Segment initializeFromContext(SegmentInitializationContext context) {
+    public static Segment initializeFromContext(SegmentInitializationContext context) throws DatabaseException {
+        return initializeFromContext(context, DatabaseResources.defaults());
+    }
+
+    public static Segment initializeFromContext(SegmentInitializationContext context,
+                                                DatabaseResources resources) throws DatabaseException {
+
+        try {
+            SegmentFormat format;
+
+            try (var file = FileChannel.open(context.getSegmentPath(), StandardOpenOption.READ)) {
+                format = SegmentFormat.detect(file);
+            }
+
+            SegmentImpl segment = new SegmentImpl(
+                    context.getSegmentName(),
+                    context.getSegmentPath(),
+                    context.getCurrentSize(),
+                    context.getIndex(),
+                    format,
+                    context.getCurrentSize() >= resources.getConfig().getSegmentPolicy().getMaxSegmentBytes()
+                            || context.getSegmentName().endsWith(COMPACTED_SUFFIX)
+                            || format != SegmentFormat.CURRENT,
+                    resources
+            );
 
-        return new SegmentImpl(
-                context.getSegmentName(),
-                context.getSegmentPath(),
-                context.getCurrentSize(),
-                context.getIndex(),
-                context.getCurrentSize() >= MAX_SEGMENT_SIZE
-        );
+            if (segment.isReadOnly) {
+                segment.mapping();
+                segment.loadBloomFilter();
+            } else {
+                segment.openChannel();
+
+                if (segment.segmentSize == 0) {
+                    segment.writeHeader();
+                }
+            }
+
+            return segment;
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Открывает уже записанный сегмент только на чтение независимо от его размера.
+     * Используется для сегментов, полученных компактизацией.
+     */
+    static SegmentImpl openSealed(String segmentName, Path segmentPath, long size, SegmentFormat format,
+                                  DatabaseResources resources) throws IOException {
+        var segment = new SegmentImpl(segmentName, segmentPath, size, null, format, true, resources);
+        segment.mapping();
+        segment.loadBloomFilter();
+        return segment;
     }
 
     static String createSegmentName(String tableName) {
-        return tableName + "_" + System.currentTimeMillis();
+        long now = System.currentTimeMillis();
+        return tableName + "_" + LAST_SEGMENT_TIMESTAMP.updateAndGet(last -> Math.max(now, last + 1));
+    }
+
+    /**
+     * Имя сегмента, в который слиты сегменты от {@code first} до {@code last}. По порядку имен он оказывается сразу после
+     * {@code last} и перед всеми более новыми сегментами.
+     */
+    static String createCompactedName(String tableName, String first, String last) {
+        var range = createdRange(tableName, first);
+        return tableName + "_" + createdRange(tableName, last)[1] + "_" + range[0] + COMPACTED_SUFFIX;
+    }
+
+    /**
+     * Возвращает время создания самого старого и самого нового из сегментов, слитых в сегмент. Для обычного сегмента
+     * оба значения - время его создания. В компактизированный сегмент старого формата ({@code таблица_последний_c})
+     * слиты все сегменты до него, для него время самого старого - {@code 0}.
+     *
+     * @param tableName имя таблицы
+     * @param segmentName имя сегмента таблицы
+     * @return {@code [первый, последний]} или {@code null}, если имя не является именем сегмента таблицы
+     */
+    public static long[] createdRange(String tableName, String segmentName) {
+        if (!segmentName.startsWith(tableName + "_"))
+            return null;
+
+        var name = segmentName.substring(tableName.length() + 1);
+        boolean compacted = name.endsWith(COMPACTED_SUFFIX);
+
+        if (compacted) {
+            name = name.substring(0, name.length() - COMPACTED_SUFFIX.length());
+        }
+
+        var parts = name.split("_");
+
+        try {
+            if (parts.length == 1) {
+                long created = Long.parseLong(parts[0]);
+                return new long[]{compacted ? 0 : created, created};
+            }
+
+            if (parts.length == 2 && compacted)
+                return new long[]{Long.parseLong(parts[1]), Long.parseLong(parts[0])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        return null;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return номер сегмента в таблице, см {@link com.itmo.java.basics.index.impl.TableIndex}
+     */
+    int getId() {
+        return id;
     }
 
-    private boolean writeToFile(WritableDatabaseRecord record) throws IOException {
+    void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * @param blobs blob-файлы таблицы, на которые могут ссылаться записи сегмента
+     */
+    void setBlobs(BlobLog blobs) {
+        this.blobs = blobs;
+    }
+
+    private BlobLog blobs() throws IOException {
+        var log = blobs;
+
+        if (log == null)
+            throw new IOException("Segment " + segmentName + " refers to a blob file, but blob files are not attached");
+
+        return log;
+    }
+
+    /**
+     * Задает размер, достигнув которого сегмент становится read-only.
+     * По умолчанию - размер из общих правил {@link com.itmo.java.basics.config.DatabaseConfig#getSegmentPolicy()}.
+     */
+    void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    long size() {
+        return segmentSize;
+    }
+
+    /**
+     * @return {@code true}, если в сегмент еще ничего не записано
+     */
+    boolean isEmpty() {
+        return segmentSize <= format.getFileHeaderSize();
+    }
+
+    /**
+     * Возвращает индекс сегмента, при первом обращении составляя его чтением сегмента.
+     * Таблица читает записи по положению из своего индекса, поэтому индекс сегмента нужен только
+     * при обращении к сегменту напрямую через {@link #read(String)}. Фильтр Блума проверяется только
+     * до составления индекса: он избавляет от чтения сегмента, а поиск в готовом индексе дешевле фильтра.
+     */
+    private synchronized SegmentIndex segmentIndex() throws IOException {
+        if (indexes == null) {
+            var index = new SegmentIndex();
+            forEachRecord(false, record -> index.put(record.keyString(), record.offset(), (int) record.recordSize()));
+            indexes = index;
+        }
+
+        return indexes;
+    }
+
+    /**
+     * @return число чтений записей с диска по их положениям; соседние записи, прочитанные вместе, - одно чтение
+     */
+    long fileReads() {
+        return fileReads.sum();
+    }
+
+    /**
+     * Открывает последовательное чтение записей, уже записанных в сегмент.
+     *
+     * @param verify сверять ли записи с контрольными суммами
+     */
+    SegmentScanner scanner(boolean verify) throws IOException {
+        return SegmentScanner.open(path, segmentSize, verify);
+    }
+
+    /**
+     * Открывает последовательное чтение части сегмента без проверки контрольных сумм.
+     *
+     * @param from смещение записи, с которой начинается чтение
+     * @param limit конец читаемой части, не больше {@link #size()}
+     */
+    SegmentScanner scanner(long from, long limit) throws IOException {
+        return SegmentScanner.open(path, from, limit, false);
+    }
+
+    /**
+     * Последовательно читает все записи сегмента. Значение записи читается, только если его запросит consumer.
+     *
+     * @param verify сверять ли записи с контрольными суммами
+     */
+    void forEachRecord(boolean verify, RecordConsumer consumer) throws IOException {
+        try (var scanner = scanner(verify)) {
+            while (scanner.next()) {
+                consumer.accept(scanner);
+            }
+        }
+    }
+
+    /**
+     * Записывает файл-подсказку с последними записями каждого ключа сегмента и фильтр Блума по его ключам.
+     */
+    void writeHint() throws IOException {
+        var latest = new LinkedHashMap<String, SegmentHintFile.Entry>();
+
+        forEachRecord(false, record -> latest.put(record.keyString(),
+                new SegmentHintFile.Entry(record.key(), record.offset(), record.recordSize(), !record.isValuePresented(),
+                        record.isBlobPointer() ? BlobPointer.decode(ByteBuffer.wrap(record.value()), 0) : null)));
+
+        SegmentHintFile.write(path, segmentSize, latest.values());
+        bloomFilter = writeFilter(path, segmentSize, latest.keySet(), resources);
+    }
+
+    /**
+     * Строит фильтр Блума по ключам заполненного сегмента и сохраняет его рядом с сегментом.
+     *
+     * @return фильтр или {@code null}, если фильтры выключены в конфигурации
+     */
+    static SegmentBloomFilter writeFilter(Path segmentPath, long segmentSize, Collection<String> keys,
+                                          DatabaseResources resources) throws IOException {
+        double falsePositiveRate = resources.getConfig().getBloomFilterFalsePositiveRate();
+
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            return null;
+
+        var filter = SegmentBloomFilter.create(keys.size(), falsePositiveRate);
+        keys.forEach(filter::add);
+        filter.write(segmentPath, segmentSize);
+
+        return filter;
+    }
+
+    /**
+     * @return фильтр Блума сегмента, если он уже построен
+     */
+    Optional<SegmentBloomFilter> getBloomFilter() {
+        return Optional.ofNullable(bloomFilter);
+    }
+
+    /**
+     * Закрепляет сегмент: пока он не отпущен через {@link #release()}, компактизация не закроет и не удалит его.
+     *
+     * @return {@code false}, если сегмент уже убран из таблицы и закрыт
+     */
+    boolean retain() {
+        int count;
+
+        do {
+            count = references.get();
+
+            if (count == 0)
+                return false;
+        } while (!references.compareAndSet(count, count + 1));
+
+        return true;
+    }
+
+    /**
+     * Отпускает сегмент, закрепленный {@link #retain()}. Последний отпустивший закрывает сегмент,
+     * а сегмент, убранный из таблицы через {@link #retire()}, еще и удаляет.
+     */
+    void release() {
+        if (references.decrementAndGet() > 0)
+            return;
+
+        try {
+            close();
+
+            if (removeOnRelease) {
+                removeFiles();
+            }
+        } catch (IOException e) {
+            // файлы слитого сегмента удаляются при инициализации таблицы, см TableInitializer
+        }
+    }
+
+    /**
+     * Отпускает ссылку таблицы на сегмент, слитый компактизацией. Сегмент закрывается и удаляется,
+     * когда его отпустит последний читатель.
+     */
+    void retire() {
+        removeOnRelease = true;
+        release();
+    }
+
+    /**
+     * Запоминает новые места последних версий ключей, перенесенных компактизацией из этого сегмента.
+     * Вызывается под блокировкой записи таблицы.
+     */
+    void setMoves(Map<String, MovedRecord> moves) {
+        this.moves = moves;
+    }
+
+    /**
+     * @return новое место последней версии ключа, перенесенной компактизацией из этого сегмента, или {@code null}
+     */
+    MovedRecord movedRecord(String objectKey) {
+        var current = moves;
+
+        return current == null
+                ? null
+                : current.get(objectKey);
+    }
+
+    /**
+     * Удаляет файлы закрытого сегмента.
+     */
+    void removeFiles() throws IOException {
+        blockCache.invalidate(path);
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(SegmentHintFile.pathFor(path));
+        Files.deleteIfExists(SegmentBloomFilter.pathFor(path));
+    }
+
+    interface RecordConsumer {
+        void accept(SegmentScanner record) throws IOException;
+    }
+
+    /**
+     * Получает положение каждой дописанной в сегмент записи.
+     */
+    interface LocationConsumer {
+        /**
+         * @param removed является ли запись удалением ключа
+         */
+        void accept(String objectKey, long offset, int length, boolean removed);
+    }
+
+    /**
+     * Загружает сохраненный фильтр Блума. Если его нет, фильтр вместе с файлом-подсказкой строится в фоне.
+     */
+    private void loadBloomFilter() throws IOException {
+        bloomFilter = SegmentBloomFilter.read(path, segmentSize).orElse(null);
+
+        if (bloomFilter == null && resources.getConfig().getBloomFilterFalsePositiveRate() > 0) {
+            writeHintInBackground();
+        }
+    }
+
+    private void writeHintInBackground() {
+        resources.getCompactionExecutor().execute(() -> {
+            try {
+                writeHint();
+            } catch (IOException e) {
+                // без подсказки сегмент будет прочитан целиком при инициализации
+            }
+        });
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.WRITE);
+    }
+
+    private void writeHeader() throws IOException {
+        writeFully(format.header());
+        segmentSize = format.getFileHeaderSize();
+    }
+
+    private FileChannel readChannel() throws IOException {
+        var result = readChannel;
+
+        if (result == null) {
+            synchronized (this) {
+                if (readChannel == null) {
+                    readChannel = FileChannel.open(path, StandardOpenOption.READ);
+                }
+                result = readChannel;
+            }
+        }
+
+        return result;
+    }
+
+    private Optional<ByteBuffer> mapping() throws IOException {
+        if (mappedSegments == null || !isReadOnly || format.isCompressed())
+            return Optional.empty();
+
+        return mappedSegments.map(path, readChannel(), segmentSize);
+    }
+
+    private SegmentBlocks blocks() throws IOException {
+        var result = blocks;
+
+        if (result == null) {
+            var file = readChannel();
+
+            synchronized (this) {
+                if (blocks == null) {
+                    blocks = SegmentBlocks.read(file);
+                }
+                result = blocks;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Возвращает распакованный блок сжатого сегмента из кэша, при промахе распаковывая его с диска.
+     */
+    private byte[] block(int index) throws IOException {
+        var block = blockCache.get(path, index);
+
+        if (block == null) {
+            block = blocks().inflate(readChannel(), index);
+            blockCache.put(path, index, block);
+        }
+
+        return block;
+    }
+
+    /**
+     * Дочитывает в буфер не меньше {@code minimum} байт, начиная с {@code position}. Каждый вызов учитывается
+     * в {@link #fileReads()}.
+     */
+    private void readFully(FileChannel channel, ByteBuffer buffer, long position, int minimum) throws IOException {
+        fileReads.increment();
+
+        while (buffer.position() < minimum) {
+            int read = channel.read(buffer, position + buffer.position());
+
+            if (read < 0)
+                throw new EOFException("Unexpected end of segment at " + (position + buffer.position()));
+        }
+    }
+
+    /**
+     * Делает сегмент read-only: закрывает файл на запись и в фоне строит файл-подсказку и фильтр Блума.
+     * Вызывается при заполнении сегмента, а также таблицей, когда она закрывает сегмент раньше.
+     */
+    void seal() throws IOException {
+        isReadOnly = true;
+        writeBuffer = null;
+
+        synchronized (channelLock) {
+            if (channel != null) {
+                if (syncOnSeal) {
+                    channel.force(false);
+                }
+                channel.close();
+                channel = null;
+            }
+        }
+
+        mapping();
+        writeHintInBackground();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        long position = segmentSize;
+
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static WritableDatabaseRecord toRecord(String objectKey, byte[] objectValue) {
+        var key = objectKey.getBytes(StandardCharsets.UTF_8);
+
+        return objectValue != null
+                ? new SetDatabaseRecord(key, objectValue)
+                : new RemoveDatabaseRecord(key);
+    }
+
+    private boolean writeToFile(String objectKey, WritableDatabaseRecord record,
+                                LocationConsumer consumer) throws IOException {
 
         if (isReadOnly || record.getKey() == null)
             return false;
 
-        try (DatabaseOutputStream outputStream = new DatabaseOutputStream(
-                new FileOutputStream(
-                        String.valueOf(path), true
-                )
-        )) {
+        if (channel == null)
+            throw new IOException("Segment " + segmentName + " is closed");
 
-            var segmentOffset = outputStream.write(record);
+        var buffer = DatabaseRecordCodec.encode(record, writeBuffer);
+        writeFully(buffer);
 
-            indexes.onIndexedEntityUpdated(new String(record.getKey()), new SegmentOffsetInfoImpl(segmentSize));
-            segmentSize += segmentOffset;
+        if (buffer.capacity() <= WRITE_BUFFER_SIZE) {
+            writeBuffer = buffer;
         }
 
-        if (segmentSize >= MAX_SEGMENT_SIZE) isReadOnly = true;
+        int length = (int) DatabaseRecordCodec.encodedSize(record);
+        written(objectKey, segmentSize, length, !record.isValuePresented(), consumer);
+        segmentSize += length;
+
+        if (segmentSize >= maxSize) seal();
 
         return true;
     }
 
+    /**
+     * Сообщает о дописанной записи индексу сегмента, если он уже составлен, и {@code consumer}.
+     */
+    private void written(String objectKey, long offset, int length, boolean removed, LocationConsumer consumer) {
+        synchronized (this) {
+            if (indexes != null) {
+                indexes.put(objectKey, offset, length);
+            }
+        }
+
+        if (consumer != null) {
+            consumer.accept(objectKey, offset, length, removed);
+        }
+    }
+
     @Override
     public String getName() {
         return segmentName;
@@ -102,38 +669,597 @@ public class SegmentImpl implements Segment {
 
     @Override
     public boolean write(String objectKey, byte[] objectValue) throws IOException {
+        return append(objectKey, objectValue, null);
+    }
+
+    @Override
+    public int write(List<Map.Entry<String, byte[]>> entries, int fromIndex) throws IOException {
+        var records = new ArrayList<Map.Entry<String, WritableDatabaseRecord>>(entries.size() - fromIndex);
+
+        for (int i = fromIndex; i < entries.size(); i++) {
+            var key = entries.get(i).getKey();
+            records.add(new AbstractMap.SimpleImmutableEntry<>(key, toRecord(key, entries.get(i).getValue())));
+        }
+
+        return append(records, 0, null);
+    }
+
+    /**
+     * Как {@link #write(String, byte[])}, но сообщает положение записи {@code consumer}.
+     *
+     * @param objectValue значение или {@code null} для удаления ключа
+     */
+    boolean append(String objectKey, byte[] objectValue, LocationConsumer consumer) throws IOException {
+        return writeToFile(objectKey, toRecord(objectKey, objectValue), consumer);
+    }
+
+    /**
+     * Дописывает готовую запись, например {@link BlobPointerRecord}, и сообщает ее положение {@code consumer}.
+     */
+    boolean appendRecord(String objectKey, WritableDatabaseRecord record, LocationConsumer consumer) throws IOException {
+        return writeToFile(objectKey, record, consumer);
+    }
+
+    /**
+     * Как {@link #write(List, int)}, но для готовых записей и сообщает положение каждой записи {@code consumer}.
+     */
+    int append(List<Map.Entry<String, WritableDatabaseRecord>> entries, int fromIndex,
+               LocationConsumer consumer) throws IOException {
+
+        if (isReadOnly)
+            return 0;
+
+        if (channel == null)
+            throw new IOException("Segment " + segmentName + " is closed");
+
+        var records = new ArrayList<WritableDatabaseRecord>();
+        long size = segmentSize;
+
+        for (int i = fromIndex; i < entries.size() && size < maxSize; i++) {
+            var record = entries.get(i).getValue();
+            records.add(record);
+            size += DatabaseRecordCodec.encodedSize(record);
+        }
+
+        int batchSize = (int) (size - segmentSize);
+        var buffer = writeBuffer != null && writeBuffer.capacity() >= batchSize
+                ? writeBuffer.clear()
+                : ByteBuffer.allocate(batchSize);
+
+        for (var record : records) {
+            DatabaseRecordCodec.put(record, buffer);
+        }
 
-        return writeToFile(
-                objectValue != null
-                        ? new SetDatabaseRecord(
-                        objectKey.getBytes(StandardCharsets.UTF_8), objectValue
-                )
-                        : new RemoveDatabaseRecord(objectKey.getBytes(StandardCharsets.UTF_8))
-        );
+        writeFully(buffer.flip());
+
+        for (int i = 0; i < records.size(); i++) {
+            int length = (int) DatabaseRecordCodec.encodedSize(records.get(i));
+            written(entries.get(fromIndex + i).getKey(), segmentSize, length, !records.get(i).isValuePresented(), consumer);
+            segmentSize += length;
+        }
+
+        if (segmentSize >= maxSize) seal();
+
+        return records.size();
     }
 
     @Override
     public Optional<byte[]> read(String objectKey) throws IOException {
 
-        var key = indexes.searchForKey(objectKey);
-        Optional<DatabaseRecord> value;
+        if (objectKey == null)
+            return Optional.empty();
+
+        long offset;
+        synchronized (this) {
+            if (indexes == null && !mightContain(objectKey))
+                return Optional.empty();
+
+            offset = segmentIndex().offsetOf(objectKey);
+        }
+
+        return offset < 0
+                ? Optional.empty()
+                : readAt(offset, 0);
+    }
+
+    /**
+     * Находит записи ключей по индексу сегмента и читает их через {@link #readAt(List)}.
+     * Записи, размер которых индексу неизвестен, читаются по одной.
+     */
+    @Override
+    public Map<String, byte[]> readMany(Collection<String> objectKeys) throws IOException {
+        var located = new ArrayList<LocatedKey>();
+        var unsized = new ArrayList<LocatedKey>();
+
+        synchronized (this) {
+            for (var objectKey : objectKeys) {
+                if (objectKey == null || indexes == null && !mightContain(objectKey))
+                    continue;
+
+                var index = segmentIndex();
+                int entry = index.entryOf(objectKey);
+
+                if (entry >= 0) {
+                    var key = new LocatedKey(objectKey, index.offsetAt(entry), index.lengthAt(entry));
+                    (key.length > 0 ? located : unsized).add(key);
+                }
+            }
+        }
+
+        var result = readAt(located);
+
+        for (var key : unsized) {
+            readAt(key.offset, 0).ifPresent(value -> result.put(key.key, value));
+        }
+
+        return result;
+    }
+
+    /**
+     * Читает запись по ее положению в сегменте.
+     *
+     * @param offset смещение записи, см {@link SegmentScanner#offset()}
+     * @param length размер записи или {@code 0}, если он неизвестен
+     * @return значение или {@link Optional#empty()}, если запись - удаление ключа
+     */
+    Optional<byte[]> readAt(long offset, int length) throws IOException {
 
-        if (objectKey == null || key.isEmpty())
+        if (format.isCompressed())
+            return readInMemory(ByteBuffer.wrap(block(SegmentBlocks.block(offset))), SegmentBlocks.position(offset));
+
+        var mapping = mapping();
+        if (mapping.isPresent())
+            return readInMemory(mapping.get(), (int) offset);
+
+        var file = readChannel();
+        var buffer = readHeader(file, offset, length);
+
+        return decode(file, buffer, offset, offset, headerSize(buffer, 0));
+    }
+
+    /**
+     * Читает значение записи, не копируя его из памяти: для отображенного в память сегмента - часть отображения,
+     * для сжатого - часть распакованного блока. Значения остальных сегментов читаются с диска в новый массив.
+     *
+     * @param offset смещение записи, см {@link SegmentScanner#offset()}
+     * @param length размер записи или {@code 0}, если он неизвестен
+     * @return значение только для чтения или {@link Optional#empty()}, если запись - удаление ключа
+     */
+    Optional<ByteBuffer> readBufferAt(long offset, int length) throws IOException {
+
+        if (format.isCompressed())
+            return sliceInMemory(ByteBuffer.wrap(block(SegmentBlocks.block(offset))), SegmentBlocks.position(offset));
+
+        var mapping = mapping();
+        if (mapping.isPresent())
+            return sliceInMemory(mapping.get(), (int) offset);
+
+        return readAt(offset, length).map(value -> ByteBuffer.wrap(value).asReadOnlyBuffer());
+    }
+
+    /**
+     * Открывает значение записи для передачи в канал, см {@link StoredValue}.
+     * Значение несжатого сегмента, не отображенного в память, читается через собственный файловый канал,
+     * поэтому передачу можно продолжать после закрытия и удаления сегмента.
+     *
+     * @param offset смещение записи, см {@link SegmentScanner#offset()}
+     * @param length размер записи или {@code 0}, если он неизвестен
+     * @return значение или {@link Optional#empty()}, если запись - удаление ключа
+     */
+    Optional<StoredValue> openValueAt(long offset, int length) throws IOException {
+
+        if (format.isCompressed() || mapping().isPresent()) {
+            var pointer = pointerAt(offset, length);
+
+            if (pointer.isPresent())
+                return Optional.of(blobs().open(pointer.get()));
+
+            return readBufferAt(offset, length).map(StoredValue::new);
+        }
+
+        var file = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            var header = readHeader(file, offset, length);
+            int headerSize = headerSize(header, 0);
+            int valueSize = header.getInt(headerSize - DatabaseRecordCodec.INTEGER_SIZE);
+
+            if (valueSize == DatabaseRecordCodec.REMOVED_OBJECT_SIZE) {
+                file.close();
+                return Optional.empty();
+            }
+
+            if (valueSize == DatabaseRecordCodec.BLOB_POINTER_SIZE) {
+                var pointer = pointerAfterHeader(file, header, offset, headerSize);
+                file.close();
+                return Optional.of(blobs().open(pointer));
+            }
+
+            return Optional.of(new StoredValue(file, offset + headerSize, valueSize));
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Читает ссылку на значение в blob-файле, записанную вместо значения.
+     *
+     * @param offset смещение записи, см {@link SegmentScanner#offset()}
+     * @param length размер записи или {@code 0}, если он неизвестен
+     * @return ссылка или {@link Optional#empty()}, если в записи нет ссылки
+     */
+    private Optional<BlobPointer> pointerAt(long offset, int length) throws IOException {
+
+        if (format.isCompressed())
+            return pointerIn(ByteBuffer.wrap(block(SegmentBlocks.block(offset))), SegmentBlocks.position(offset));
+
+        var mapping = mapping();
+        if (mapping.isPresent())
+            return pointerIn(mapping.get(), (int) offset);
+
+        var file = readChannel();
+        var header = readHeader(file, offset, length);
+        int headerSize = headerSize(header, 0);
+
+        if (header.getInt(headerSize - DatabaseRecordCodec.INTEGER_SIZE) != DatabaseRecordCodec.BLOB_POINTER_SIZE)
+            return Optional.empty();
+
+        return Optional.of(pointerAfterHeader(file, header, offset, headerSize));
+    }
+
+    private Optional<BlobPointer> pointerIn(ByteBuffer segment, int offset) {
+        int headerSize = headerSize(segment, offset);
+
+        int valueSize = segment.getInt(offset + headerSize - DatabaseRecordCodec.INTEGER_SIZE);
+
+        if (valueSize != DatabaseRecordCodec.BLOB_POINTER_SIZE)
             return Optional.empty();
 
-        try (DatabaseInputStream in = new DatabaseInputStream(
-                new FileInputStream(
-                        String.valueOf(path)
-                )
-        )) {
+        return Optional.of(BlobPointer.decode(segment, offset + headerSize));
+    }
 
-            in.skip(key.get().getOffset());
-            value = in.readDbUnit();
+    /**
+     * Читает ссылку, идущую после заголовка записи, из буфера {@link #readHeader} или дочитывает ее из файла.
+     */
+    private BlobPointer pointerAfterHeader(FileChannel file, ByteBuffer header, long offset,
+                                           int headerSize) throws IOException {
+        if (header.limit() < headerSize + BlobPointer.SIZE) {
+            header = ByteBuffer.allocate(headerSize + BlobPointer.SIZE);
+            readFully(file, header, offset, header.capacity());
         }
 
-        return value.get().isValuePresented()
-                ? Optional.of(value.get().getValue())
-                : Optional.empty();
+        return BlobPointer.decode(header, headerSize);
+    }
+
+    /**
+     * Читает начало записи так, чтобы заголовок записи целиком оказался в буфере.
+     *
+     * @return буфер с байтами записи начиная с {@code offset}, готовый к чтению
+     */
+    private ByteBuffer readHeader(FileChannel file, long offset, int length) throws IOException {
+        var buffer = READ_BUFFER.get().clear();
+        int prefetched = (int) Math.min(buffer.capacity(), length > 0 ? length : segmentSize - offset);
+
+        buffer.limit(prefetched);
+        readFully(file, buffer, offset, prefetched);
+
+        int headerSize = headerSize(buffer, 0);
+
+        if (headerSize > prefetched) {
+            buffer = ByteBuffer.allocate(headerSize);
+            readFully(file, buffer, offset, headerSize);
+        }
+
+        return buffer.flip();
+    }
+
+    /**
+     * Читает записи по их положениям в сегменте. Записи, лежащие рядом в файле, читаются одним вызовом:
+     * размер каждой записи известен, поэтому читаются ровно байты записей и промежутков между ними.
+     *
+     * @param located положения записей
+     * @return значения ключей, записи которых не являются удалениями
+     */
+    Map<String, byte[]> readAt(List<LocatedKey> located) throws IOException {
+        var result = new HashMap<String, byte[]>();
+
+        if (located.isEmpty())
+            return result;
+
+        located.sort(Comparator.comparingLong(LocatedKey::getOffset));
+
+        if (format.isCompressed()) {
+            ByteBuffer block = null;
+            int blockIndex = -1;
+
+            for (var key : located) {
+                if (SegmentBlocks.block(key.offset) != blockIndex) {
+                    blockIndex = SegmentBlocks.block(key.offset);
+                    block = ByteBuffer.wrap(block(blockIndex));
+                }
+
+                readInMemory(block, SegmentBlocks.position(key.offset)).ifPresent(value -> result.put(key.key, value));
+            }
+            return result;
+        }
+
+        var mapping = mapping();
+        if (mapping.isPresent()) {
+            for (var key : located) {
+                readInMemory(mapping.get(), (int) key.offset).ifPresent(value -> result.put(key.key, value));
+            }
+            return result;
+        }
+
+        var file = readChannel();
+        int from = 0;
+
+        while (from < located.size()) {
+            long start = located.get(from).offset;
+            long end = located.get(from).end();
+            int to = from + 1;
+
+            while (to < located.size()
+                    && located.get(to).offset - end <= READ_AHEAD_SIZE
+                    && located.get(to).end() - start <= MAX_MERGED_READ_SIZE) {
+                end = Math.max(end, located.get(to).end());
+                to++;
+            }
+
+            var buffer = ByteBuffer.allocate((int) (end - start));
+            readFully(file, buffer, start, buffer.capacity());
+            buffer.flip();
+
+            for (int i = from; i < to; i++) {
+                var key = located.get(i);
+                int position = (int) (key.offset - start);
+                decode(file, buffer, start, key.offset, headerSize(buffer, position))
+                        .ifPresent(value -> result.put(key.key, value));
+            }
+
+            from = to;
+        }
+
+        return result;
+    }
+
+    /**
+     * @return размер заголовка записи, начинающейся в буфере с позиции {@code position}
+     */
+    private int headerSize(ByteBuffer buffer, int position) {
+        int checksumSize = format.hasChecksums() ? DatabaseRecordCodec.CHECKSUM_SIZE : 0;
+        return format.recordHeaderSize(buffer.getInt(position + checksumSize));
+    }
+
+    /**
+     * Декодирует значение записи из буфера, содержащего байты сегмента начиная с {@code bufferOffset}.
+     * Заголовок записи должен целиком находиться в буфере, недостающая часть значения дочитывается из файла.
+     */
+    private Optional<byte[]> decode(FileChannel file, ByteBuffer buffer, long bufferOffset,
+                                    long offset, int headerSize) throws IOException {
+        int position = (int) (offset - bufferOffset);
+        int valueSize = buffer.getInt(position + headerSize - DatabaseRecordCodec.INTEGER_SIZE);
+
+        if (valueSize == DatabaseRecordCodec.REMOVED_OBJECT_SIZE)
+            return Optional.empty();
+
+        int payloadSize = DatabaseRecordCodec.payloadSize(valueSize);
+        var value = new byte[payloadSize];
+        int prefetched = Math.max(0, Math.min(payloadSize, buffer.limit() - position - headerSize));
+        buffer.position(position + headerSize);
+        buffer.get(value, 0, prefetched);
+
+        if (prefetched < payloadSize) {
+            var rest = ByteBuffer.wrap(value, prefetched, payloadSize - prefetched).slice();
+            readFully(file, rest, offset + headerSize + prefetched, rest.capacity());
+        }
+
+        if (valueSize == DatabaseRecordCodec.BLOB_POINTER_SIZE)
+            return Optional.of(blobs().read(BlobPointer.decode(ByteBuffer.wrap(value), 0)));
+
+        return Optional.of(value);
+    }
+
+    /**
+     * Значение записи, открытое для передачи в канал: часть памяти или участок файла со своим каналом.
+     * Не зависит от блокировок и жизни сегмента, должно быть закрыто.
+     */
+    static class StoredValue implements Closeable {
+        /**
+         * Число передач подряд, не передавших ни байта, после которого передача значения прерывается
+         */
+        private static final int MAX_EMPTY_TRANSFERS = 16;
+
+        private final ByteBuffer buffer;
+        private final FileChannel file;
+        private final long position;
+        private final int size;
+
+        StoredValue(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.file = null;
+            this.position = 0;
+            this.size = buffer.remaining();
+        }
+
+        StoredValue(FileChannel file, long position, int size) {
+            this.buffer = null;
+            this.file = file;
+            this.position = position;
+            this.size = size;
+        }
+
+        /**
+         * Передает значение в канал. Участок файла передается через {@link FileChannel#transferTo},
+         * минуя память приложения. Канал должен быть блокирующим: если он подряд
+         * {@link #MAX_EMPTY_TRANSFERS} раз не принял ни байта, передача прерывается.
+         *
+         * @return число переданных байтов
+         * @throws EOFException если файл кончается внутри значения
+         */
+        long transferTo(WritableByteChannel target) throws IOException {
+            if (buffer != null) {
+                var source = buffer.duplicate();
+                int empty = 0;
+
+                while (source.hasRemaining()) {
+                    if (target.write(source) > 0) {
+                        empty = 0;
+                    } else if (++empty >= MAX_EMPTY_TRANSFERS) {
+                        throw new IOException("Target channel accepted no bytes " + empty + " times in a row");
+                    }
+                }
+                return size;
+            }
+
+            long transferred = 0;
+            int empty = 0;
+
+            while (transferred < size) {
+                long count = file.transferTo(position + transferred, size - transferred, target);
+
+                if (count > 0) {
+                    transferred += count;
+                    empty = 0;
+                    continue;
+                }
+
+                if (position + transferred >= file.size())
+                    throw new EOFException("Segment ends inside of value");
+
+                if (++empty >= MAX_EMPTY_TRANSFERS)
+                    throw new IOException("Target channel accepted no bytes " + empty + " times in a row");
+            }
+
+            return transferred;
+        }
+
+        /**
+         * @return поток, читающий значение частями и закрывающий значение при закрытии
+         */
+        InputStream openStream() {
+            return new ValueStream();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (file != null) {
+                file.close();
+            }
+        }
+
+        private class ValueStream extends InputStream {
+            private long read = 0;
+
+            @Override
+            public int read() throws IOException {
+                var one = new byte[1];
+                return read(one, 0, 1) < 0
+                        ? -1
+                        : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] target, int offset, int length) throws IOException {
+                Objects.checkFromIndexSize(offset, length, target.length);
+
+                if (length == 0)
+                    return 0;
+
+                if (read >= size)
+                    return -1;
+
+                int count = (int) Math.min(length, size - read);
+
+                if (buffer != null) {
+                    buffer.duplicate().position(buffer.position() + (int) read).get(target, offset, count);
+                } else {
+                    count = file.read(ByteBuffer.wrap(target, offset, count), position + read);
+
+                    if (count < 0)
+                        throw new EOFException("Segment ends inside of value");
+                }
+
+                read += count;
+                return count;
+            }
+
+            @Override
+            public long skip(long count) {
+                long skipped = Math.max(0, Math.min(count, size - read));
+                read += skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, size - read);
+            }
+
+            @Override
+            public void close() throws IOException {
+                StoredValue.this.close();
+            }
+        }
+    }
+
+    /**
+     * Положение записи ключа в сегменте
+     */
+    static class LocatedKey {
+        private final String key;
+        private final long offset;
+        private final int length;
+
+        LocatedKey(String key, long offset, int length) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        long end() {
+            return offset + length;
+        }
+    }
+
+    /**
+     * Декодирует значение записи из сегмента, целиком лежащего в памяти: отображения или распакованного блока.
+     */
+    private Optional<byte[]> readInMemory(ByteBuffer segment, int offset) throws IOException {
+        return sliceInMemory(segment, offset).map(slice -> {
+            var value = new byte[slice.remaining()];
+            slice.get(value);
+            return value;
+        });
+    }
+
+    /**
+     * @return значение записи из сегмента, целиком лежащего в памяти, как часть этой памяти только для чтения
+     */
+    private Optional<ByteBuffer> sliceInMemory(ByteBuffer segment, int offset) throws IOException {
+        int headerSize = headerSize(segment, offset);
+        int valueSize = segment.getInt(offset + headerSize - DatabaseRecordCodec.INTEGER_SIZE);
+
+        if (valueSize == DatabaseRecordCodec.REMOVED_OBJECT_SIZE)
+            return Optional.empty();
+
+        int start = offset + headerSize;
+
+        if (valueSize == DatabaseRecordCodec.BLOB_POINTER_SIZE)
+            return Optional.of(ByteBuffer.wrap(blobs().read(BlobPointer.decode(segment, start))).asReadOnlyBuffer());
+
+        return Optional.of(segment.duplicate().limit(start + valueSize).position(start).slice().asReadOnlyBuffer());
+    }
+
+    @Override
+    public boolean mightContain(String objectKey) {
+        var filter = bloomFilter;
+        return filter == null || filter.mightContain(objectKey);
     }
 
     @Override
@@ -144,7 +1270,84 @@ public class SegmentImpl implements Segment {
     @Override
     public boolean delete(String objectKey) throws IOException {
 
-        return writeToFile(new RemoveDatabaseRecord(
-                objectKey.getBytes(StandardCharsets.UTF_8)));
+        return append(objectKey, null, null);
+    }
+
+    @Override
+    public void sync() throws IOException {
+        synchronized (channelLock) {
+            if (channel != null) {
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Как {@link #sync()}, но сбрасывает на диск и закрытый на запись сегмент.
+     * Сегмент, который уже удален компактизацией, пропускается.
+     */
+    void force() throws IOException {
+        synchronized (channelLock) {
+            if (channel != null) {
+                channel.force(false);
+                return;
+            }
+        }
+
+        try (var file = FileChannel.open(path, StandardOpenOption.READ)) {
+            file.force(false);
+        } catch (NoSuchFileException e) {
+            // записи сегмента перенесены компактизацией, которая сбрасывает свой результат на диск
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (channelLock) {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        if (mappedSegments != null) {
+            mappedSegments.unmap(path);
+        }
+
+        blockCache.invalidate(path);
+
+        synchronized (this) {
+            if (readChannel != null) {
+                readChannel.close();
+                readChannel = null;
+            }
+        }
+    }
+
+    /**
+     * Запись, перенесенная компактизацией из сегмента по смещению {@code from} в сегмент {@code target}
+     */
+    static final class MovedRecord {
+        private final long from;
+        private final SegmentImpl target;
+        private final long offset;
+
+        MovedRecord(long from, SegmentImpl target, long offset) {
+            this.from = from;
+            this.target = target;
+            this.offset = offset;
+        }
+
+        long getFrom() {
+            return from;
+        }
+
+        SegmentImpl getTarget() {
+            return target;
+        }
+
+        long getOffset() {
+            return offset;
+        }
     }
 }
@@ -1,39 +1,133 @@
 package com.itmo.java.basics.logic.impl;
 
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.config.SegmentPolicy;
 import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.index.impl.OrderedKeyIndex;
 import com.itmo.java.basics.index.impl.TableIndex;
 import com.itmo.java.basics.initialization.TableInitializationContext;
 import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.logic.RangeScan;
 import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.TableScan;
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+import com.itmo.java.basics.logic.io.BlobPointer;
+import com.itmo.java.basics.logic.io.SegmentFormat;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
+/**
+ * Таблица пишет в последний (активный) сегмент. Активный сегмент сменяется, когда он заполняется
+ * или становится старше допустимого, см {@link SegmentPolicy}. Когда активный сегмент заполнен наполовину,
+ * файл следующего сегмента создается в фоне, поэтому запись, заполнившая сегмент, не ждет создания файла.
+ * <p>
+ * Чтение по ключу не берет блокировку таблицы: положение записи читается из индекса оптимистично
+ * и сверяется с {@link #indexLock}, а сегмент записи закрепляется, чтобы компактизация не удалила его во время чтения.
+ */
 public class TableImpl implements Table {
 
+    /**
+     * Наибольший размер значения из потока, которое читается в память и записывается в активный сегмент
+     */
+    static final int MAX_BUFFERED_VALUE_SIZE = 1024 * 1024;
+
+    /**
+     * Число попыток прочитать индекс без блокировки, после которых читатель ждет окончания изменения индекса
+     */
+    private static final int OPTIMISTIC_READ_ATTEMPTS = 8;
+
     private final String tableName;
     private final Path path;
     private final TableIndex indexes;
+    private final List<Segment> segments;
+    private final List<SegmentImpl> segmentsById = new ArrayList<>();
+    private final DatabaseResources resources;
+    private final GroupCommitter committer;
+    private final SegmentCompactor compactor;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Защищает индекс и номера сегментов. Пишущие берут ее под {@link #lock} только на время изменения индекса,
+     * читающие по ключу сверяются с ней без блокировки, см {@link #locate(Collection)}
+     */
+    private final StampedLock indexLock = new StampedLock();
+    private final SegmentPolicy segmentPolicy;
+    private final OrderedKeyIndex orderedKeys;
+    private final BlobLog blobs;
+    private final BlobCollector blobCollector;
     private Segment current;
+    private long currentSince = System.currentTimeMillis();
+    private Future<SegmentImpl> nextSegment;
+    /**
+     * Открытые проходы. Изменяется под блокировкой чтения, а новые сегменты добавляются в проходы
+     * под блокировкой записи, см {@link #addSegment(SegmentImpl)}
+     */
+    private final Set<TableScanImpl> openScans = ConcurrentHashMap.newKeySet();
+    private boolean closed = false;
 
     public TableImpl(String tableName, Path path, TableIndex indexes) {
+        this(tableName, path, indexes, DatabaseResources.defaults());
+    }
+
+    public TableImpl(String tableName, Path path, TableIndex indexes, DatabaseResources resources) {
         this.tableName = tableName;
         this.path = path;
         this.indexes = indexes;
+        this.segments = new ArrayList<>();
+        this.resources = resources;
+        this.committer = new GroupCommitter(resources);
+
+        var databaseName = path.getParent().getFileName().toString();
+        this.segmentPolicy = resources.getConfig().getSegmentPolicy(databaseName, tableName);
+        this.compactor = new SegmentCompactor(this, resources, segmentPolicy.getMaxSegmentBytes());
+        this.orderedKeys = resources.getConfig().isOrderedIndexEnabled(databaseName, tableName)
+                ? new OrderedKeyIndex()
+                : null;
+        this.blobs = new BlobLog(tableName, path, resources.getConfig().getBlobPolicy(), committer);
+        this.blobCollector = new BlobCollector(this, blobs, resources);
     }
 
     public static Table create(String tableName, Path pathToDatabaseRoot, TableIndex tableIndex) throws DatabaseException {
+        return create(tableName, pathToDatabaseRoot, tableIndex, DatabaseResources.defaults());
+    }
 
-        if (tableName == null || pathToDatabaseRoot == null || tableIndex == null) {
-            throw new DatabaseException("Table name or path to database root or table index is null");
+    public static Table create(String tableName, Path pathToDatabaseRoot, TableIndex tableIndex,
+                               DatabaseResources resources) throws DatabaseException {
+
+        if (tableName == null || pathToDatabaseRoot == null || tableIndex == null || resources == null) {
+            throw new DatabaseException("Table name or path to database root or table index or resources is null");
         }
 
         var tablePath = pathToDatabaseRoot.resolve(tableName);
 
         CachingTable table = new CachingTable(
-                new TableImpl(tableName, tablePath, tableIndex)
+                new TableImpl(tableName, tablePath, tableIndex, resources),
+                resources,
+                cacheName(tablePath)
         );
 
         try {
@@ -45,10 +139,79 @@ public class TableImpl implements Table {
         return table;
     }
 
-    public static Table initializeFromContext(TableInitializationContext context) {
-        var tableImpl = new TableImpl(context.getTableName(), context.getTablePath(), context.getTableIndex());
+    public static Table initializeFromContext(TableInitializationContext context) throws DatabaseException {
+        return initializeFromContext(context, DatabaseResources.defaults());
+    }
+
+    public static Table initializeFromContext(TableInitializationContext context,
+                                          DatabaseResources resources) throws DatabaseException {
+        var tableImpl = new TableImpl(context.getTableName(), context.getTablePath(), context.getTableIndex(), resources);
+
+        try {
+            tableImpl.blobs.load();
+        } catch (IOException e) {
+            throw new DatabaseException("Can not open blob files of table " + context.getTableName(), e);
+        }
+
+        context.getBlobPointers().forEach(tableImpl.blobs::markLive);
+
         tableImpl.current = context.getCurrentSegment();
-        return new CachingTable(tableImpl);
+        tableImpl.segments.addAll(context.getSegments());
+
+        for (var segment : context.getSegments()) {
+            tableImpl.assignId((SegmentImpl) segment);
+        }
+
+        if (tableImpl.orderedKeys != null) {
+            var index = context.getTableIndex();
+
+            index.forEachKey(key -> {
+                if (index.isLive(key)) {
+                    tableImpl.orderedKeys.add(key);
+                }
+            });
+        }
+
+        try {
+            tableImpl.sealInactiveSegments();
+        } catch (IOException e) {
+            throw new DatabaseException("Can not seal segments of table " + context.getTableName(), e);
+        }
+
+        if (!tableImpl.blobs.isCounted()) {
+            tableImpl.blobCollector.schedule();
+        }
+
+        return new CachingTable(tableImpl, resources, cacheName(context.getTablePath()));
+    }
+
+    /**
+     * Закрывает на запись все сегменты, кроме активного. Сегмент мог остаться открытым на запись, если его закрыли
+     * по времени, если после него уже был создан следующий сегмент или если с тех пор изменился размер сегментов.
+     */
+    private void sealInactiveSegments() throws IOException {
+        for (var segment : segments) {
+            var segmentImpl = (SegmentImpl) segment;
+
+            if (segment != current) {
+                if (!segment.isReadOnly()) {
+                    segmentImpl.seal();
+                }
+            } else if (!segment.isReadOnly()) {
+                segmentImpl.setMaxSize(segmentPolicy.getMaxSegmentBytes());
+
+                if (!segmentImpl.isEmpty() && segmentImpl.size() >= segmentPolicy.getMaxSegmentBytes()) {
+                    segmentImpl.seal();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return имя таблицы в статистике кэша: {@code база/таблица}
+     */
+    private static String cacheName(Path tablePath) {
+        return tablePath.getParent().getFileName() + "/" + tablePath.getFileName();
     }
 
     @Override
@@ -56,49 +219,982 @@ public class TableImpl implements Table {
         return tableName;
     }
 
+    /**
+     * Значение не меньше {@link com.itmo.java.basics.config.BlobPolicy#getMinValueBytes()} записывается
+     * в blob-файл до блокировки таблицы, а в сегмент - ссылка на него, см {@link BlobLog}.
+     */
     @Override
     public void write(String objectKey, byte[] objectValue) throws DatabaseException {
+        writeRecord(objectKey, toRecord(objectKey, objectValue));
+    }
 
-        if (current == null || current.isReadOnly())
-            current = SegmentImpl.create(SegmentImpl.createSegmentName(tableName), path);
+    /**
+     * Дописывает запись в активный сегмент. Ссылка на blob-файл из записи после этого отмечается записанной,
+     * см {@link BlobLog#settle(WritableDatabaseRecord)}.
+     */
+    private void writeRecord(String objectKey, WritableDatabaseRecord record) throws DatabaseException {
+        try {
+            appendRecord(objectKey, record);
+        } finally {
+            blobs.settle(record);
+        }
+    }
 
+    private void appendRecord(String objectKey, WritableDatabaseRecord record) throws DatabaseException {
+        boolean collect;
+        long ticket;
+
+        lock.writeLock().lock();
         try {
-            if (!current.write(objectKey, objectValue))
-                throw new DatabaseException("Write error");
+            var segment = currentSegment();
+
+            try {
+                if (!segment.appendRecord(objectKey, record, locationConsumer(segment)))
+                    throw new DatabaseException("Write error");
+            } catch (IOException e) {
+                throw new DatabaseException(e);
+            }
+
+            if (orderedKeys != null) {
+                if (record.isValuePresented()) {
+                    orderedKeys.add(objectKey);
+                } else {
+                    orderedKeys.remove(objectKey);
+                }
+            }
+
+            collect = blobs.onWritten(objectKey, record);
+            ticket = committer.appended(segment);
+            prepareNextSegmentIfFilling();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (collect) {
+            blobCollector.schedule();
+        }
+
+        awaitDurable(ticket);
+    }
+
+    @Override
+    public void writeBatch(Map<String, byte[]> entries) throws DatabaseException {
+        var batch = new ArrayList<Map.Entry<String, WritableDatabaseRecord>>(entries.size());
+        var records = new ArrayList<WritableDatabaseRecord>(entries.size());
+
+        try {
+            for (var entry : entries.entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null)
+                    throw new DatabaseException("Batch contains null key or value");
+
+                var record = toRecord(entry.getKey(), entry.getValue());
+                records.add(record);
+                batch.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), record));
+            }
+
+            writeEntries(batch);
+        } finally {
+            records.forEach(blobs::settle);
+        }
+    }
+
+    /**
+     * @param objectValue значение или {@code null} для удаления ключа
+     * @return запись для сегмента; большое значение при этом дописывается в blob-файл
+     */
+    private WritableDatabaseRecord toRecord(String objectKey, byte[] objectValue) throws DatabaseException {
+        var key = objectKey.getBytes(StandardCharsets.UTF_8);
+
+        if (objectValue == null)
+            return new RemoveDatabaseRecord(key);
+
+        if (!blobs.accepts(objectValue.length))
+            return new SetDatabaseRecord(key, objectValue);
+
+        try {
+            return new BlobPointerRecord(key, blobs.append(key, objectValue));
         } catch (IOException e) {
             throw new DatabaseException(e);
         }
+    }
+
+    /**
+     * Значение не больше {@link #MAX_BUFFERED_VALUE_SIZE} и размера сегмента записывается как обычно.
+     * Большее значение записывается потоком в blob-файл, а в сегмент - ссылка на него, см {@link BlobLog}.
+     */
+    @Override
+    public void write(String objectKey, InputStream objectValue, long length) throws DatabaseException {
+        if (objectKey == null || objectValue == null)
+            throw new DatabaseException("Key or value stream is null");
+
+        var key = objectKey.getBytes(StandardCharsets.UTF_8);
+
+        if (length < 0 || length > Integer.MAX_VALUE - SegmentFormat.CURRENT.recordHeaderSize(key.length))
+            throw new DatabaseException("Unsupported value length: " + length);
 
-        indexes.onIndexedEntityUpdated(objectKey, current);
+        if (length > Math.min(MAX_BUFFERED_VALUE_SIZE, segmentPolicy.getMaxSegmentBytes())) {
+            writeStreamed(objectKey, key, objectValue, (int) length);
+            return;
+        }
+
+        byte[] value;
+
+        try {
+            value = objectValue.readNBytes((int) length);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+
+        if (value.length < length)
+            throw new DatabaseException("Value stream ended " + (length - value.length) + " bytes early");
+
+        write(objectKey, value);
+    }
+
+    private void writeStreamed(String objectKey, byte[] key, InputStream objectValue, int length)
+            throws DatabaseException {
+        BlobPointer pointer;
+
+        try {
+            pointer = blobs.append(key, objectValue, length);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+
+        writeRecord(objectKey, new BlobPointerRecord(key, pointer));
     }
 
     @Override
     public Optional<byte[]> read(String objectKey) throws DatabaseException {
+        var location = locate(objectKey);
+
+        if (location == null)
+            return Optional.empty();
+
+        try {
+            return location.segment.readAt(location.offset, location.length);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        } finally {
+            location.segment.release();
+        }
+    }
+
+    @Override
+    public Optional<ByteBuffer> readBuffer(String objectKey) throws DatabaseException {
+        var location = locate(objectKey);
+
+        if (location == null)
+            return Optional.empty();
+
+        try {
+            return location.segment.readBufferAt(location.offset, location.length);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        } finally {
+            location.segment.release();
+        }
+    }
+
+    /**
+     * Значение открывается, пока сегмент закреплен, а передается без этого: компактизация может удалить сегмент
+     * во время передачи, но открытое значение от сегмента не зависит.
+     */
+    @Override
+    public long transferTo(String objectKey, WritableByteChannel target) throws DatabaseException {
+        var stored = openStored(objectKey);
+
+        if (stored.isEmpty())
+            return -1;
+
+        try (var value = stored.get()) {
+            return value.transferTo(target);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Как и в {@link #transferTo(String, WritableByteChannel)}, поток читает значение, не закрепляя сегмент.
+     */
+    @Override
+    public Optional<InputStream> openValue(String objectKey) throws DatabaseException {
+        return openStored(objectKey).map(SegmentImpl.StoredValue::openStream);
+    }
+
+    private Optional<SegmentImpl.StoredValue> openStored(String objectKey) throws DatabaseException {
+        var location = locate(objectKey);
 
-        var segment = indexes.searchForKey(objectKey);
+        if (location == null)
+            return Optional.empty();
+
+        try {
+            return location.segment.openValueAt(location.offset, location.length);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        } finally {
+            location.segment.release();
+        }
+    }
+
+    /**
+     * Положения всех ключей читаются из индекса одним снимком, поэтому результат согласован,
+     * как если бы ключи читались под блокировкой таблицы.
+     */
+    @Override
+    public Map<String, byte[]> readMany(Collection<String> objectKeys) throws DatabaseException {
+        var bySegment = new IdentityHashMap<SegmentImpl, List<SegmentImpl.LocatedKey>>();
+        var result = new HashMap<String, byte[]>();
+        var located = locate(objectKeys);
+
+        try {
+            for (var location : located) {
+                bySegment.computeIfAbsent(location.segment, segment -> new ArrayList<>())
+                        .add(new SegmentImpl.LocatedKey(location.key, location.offset, location.length));
+            }
+
+            for (var entry : bySegment.entrySet()) {
+                result.putAll(entry.getKey().readAt(entry.getValue()));
+            }
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        } finally {
+            located.forEach(location -> location.segment.release());
+        }
+
+        return result;
+    }
+
+    /**
+     * @return положение последней записи ключа с закрепленным сегментом или {@code null}, если ключа нет.
+     * Сегмент должен быть отпущен через {@link SegmentImpl#release()}
+     */
+    private Location locate(String objectKey) throws DatabaseException {
+        var located = locate(List.of(objectKey));
+
+        return located.isEmpty()
+                ? null
+                : located.get(0);
+    }
+
+    /**
+     * Читает из индекса положения последних записей ключей и закрепляет их сегменты, не блокируя таблицу.
+     * Индекс читается одновременно с записью, поэтому прочитанное может оказаться несогласованным или
+     * привести к исключению: тогда индекс перечитывается. После {@link #OPTIMISTIC_READ_ATTEMPTS} неудачных попыток
+     * читатель ждет окончания текущего изменения индекса, но не записи в сегмент.
+     *
+     * @return положения ключей, которые есть в таблице. Сегменты положений должны быть отпущены
+     * через {@link SegmentImpl#release()}
+     */
+    private List<Location> locate(Collection<String> objectKeys) throws DatabaseException {
+        for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+            long stamp = indexLock.tryOptimisticRead();
+            var located = new ArrayList<Location>(objectKeys.size());
+            boolean retained;
 
-        if (segment.isPresent()) {
             try {
-                return segment.get().read(objectKey);
-            } catch (IOException e) {
-                throw new DatabaseException(e);
+                retained = collectLocations(objectKeys, located);
+            } catch (RuntimeException e) {
+                // индекс изменился во время чтения
+                retained = false;
             }
-        } else
-            return Optional.empty();
+
+            if (retained && indexLock.validate(stamp))
+                return located;
+
+            located.forEach(location -> location.segment.release());
+        }
+
+        long stamp = indexLock.readLock();
+        try {
+            var located = new ArrayList<Location>(objectKeys.size());
+
+            if (!collectLocations(objectKeys, located)) {
+                located.forEach(location -> location.segment.release());
+                throw new DatabaseException("Table " + tableName + " is closed");
+            }
+
+            return located;
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return {@code false}, если сегмент одного из ключей уже закрыт: значит, индекс изменился во время чтения
+     */
+    private boolean collectLocations(Collection<String> objectKeys, List<Location> located) {
+        for (var key : objectKeys) {
+            int entry = indexes.entryOf(key);
+
+            if (entry < 0 || indexes.isRemovedAt(entry))
+                continue;
+
+            var segment = segmentsById.get(indexes.segmentIdAt(entry));
+
+            if (!segment.retain())
+                return false;
+
+            located.add(new Location(key, segment, indexes.offsetAt(entry), indexes.lengthAt(entry)));
+        }
+
+        return true;
     }
 
     @Override
     public void delete(String objectKey) throws DatabaseException {
+        deleteBatch(List.of(objectKey));
+    }
+
+    @Override
+    public void deleteBatch(Collection<String> objectKeys) throws DatabaseException {
+        var batch = new ArrayList<Map.Entry<String, WritableDatabaseRecord>>(objectKeys.size());
+
+        for (var key : objectKeys) {
+            if (key == null)
+                throw new DatabaseException("Batch contains null key");
+
+            batch.add(new AbstractMap.SimpleImmutableEntry<>(key, toRecord(key, null)));
+        }
+
+        writeEntries(batch);
+    }
+
+    /**
+     * Проход закрепляет все сегменты таблицы и сегменты, созданные, пока он открыт, см {@link TableScanImpl}.
+     */
+    @Override
+    public TableScan scan() {
+        var scan = new TableScanImpl(this);
+
+        lock.readLock().lock();
+        try {
+            for (var segment : segments) {
+                scan.append((SegmentImpl) segment);
+            }
+
+            openScans.add(scan);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return scan;
+    }
+
+    /**
+     * С упорядоченным индексом ключей страница идет по ключам диапазона и читает значения по {@link TableIndex}.
+     * Без него таблица читается целиком через {@link #scan()}, а в памяти остаются {@code limit} наименьших ключей.
+     */
+    @Override
+    public RangeScan range(String fromKey, String toKey, int limit) throws DatabaseException {
+        if (limit < 0)
+            throw new DatabaseException("Limit must not be negative: " + limit);
+
+        if (limit == 0)
+            return new RangeScanImpl(Collections.emptyIterator(), key -> Optional.empty(), fromKey, toKey, 0);
+
+        if (orderedKeys != null)
+            return new RangeScanImpl(orderedKeys.keys(fromKey, toKey), this::readListed, fromKey, toKey, limit);
+
+        var page = collectRange(fromKey, toKey, limit);
+        return new RangeScanImpl(page.keySet().iterator(), key -> Optional.ofNullable(page.get(key)),
+                fromKey, toKey, limit);
+    }
+
+    @Override
+    public RangeScan prefix(String prefix, int limit) throws DatabaseException {
+        if (prefix == null)
+            throw new DatabaseException("Prefix is null");
+
+        return range(prefix, RangeScanImpl.prefixEnd(prefix), limit);
+    }
+
+    /**
+     * Читает ключ из упорядоченного индекса. Ключ, которого нет в таблице, убирается из упорядоченного индекса,
+     * а если его записали одновременно с этим, возвращается обратно.
+     */
+    private Optional<byte[]> readListed(String objectKey) throws DatabaseException {
+        var value = read(objectKey);
 
-        var segment = indexes.searchForKey(objectKey);
+        if (value.isPresent())
+            return value;
 
-        if (segment.isPresent()) {
+        orderedKeys.remove(objectKey);
+        value = read(objectKey);
+
+        if (value.isPresent()) {
+            orderedKeys.add(objectKey);
+        }
+
+        return value;
+    }
+
+    /**
+     * Полным проходом собирает {@code limit} наименьших ключей диапазона с их значениями.
+     */
+    private TreeMap<String, byte[]> collectRange(String fromKey, String toKey, int limit) throws DatabaseException {
+        var page = new TreeMap<String, byte[]>();
+
+        try (var scan = scan()) {
+            while (scan.next()) {
+                var key = scan.getKey();
+
+                if ((fromKey == null || key.compareTo(fromKey) >= 0) && (toKey == null || key.compareTo(toKey) < 0)) {
+                    page.put(key, scan.getValue());
+
+                    if (page.size() > limit) {
+                        page.pollLastEntry();
+                    }
+                }
+            }
+        }
+
+        return page;
+    }
+
+    /**
+     * Вызывается при закрытии прохода: после этого новые сегменты в проход не добавляются.
+     */
+    void scanClosed(TableScanImpl scan) {
+        lock.readLock().lock();
+        try {
+            openScans.remove(scan);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет новый сегмент в конец таблицы и в открытые проходы. Вызывается под блокировкой записи.
+     */
+    private void addSegment(SegmentImpl segment) {
+        segments.add(segment);
+
+        for (var scan : openScans) {
+            scan.append(segment);
+        }
+    }
+
+    /**
+     * Дописывает записи в активный сегмент одним вызовом записи на каждый затронутый сегмент.
+     * Удаления ключей, которых нет в таблице или которые уже удалены, пропускаются.
+     * Положения записей попадают в индекс разом после записи всего пакета, в том числе если пакет
+     * пришелся на несколько сегментов, поэтому читающие по ключу видят пакет целиком или не видят совсем.
+     */
+    private void writeEntries(List<Map.Entry<String, WritableDatabaseRecord>> batch) throws DatabaseException {
+        boolean collect = false;
+        long ticket;
+
+        lock.writeLock().lock();
+        try {
+            batch.removeIf(entry -> !entry.getValue().isValuePresented() && !indexes.isLive(entry.getKey()));
+
+            if (batch.isEmpty())
+                return;
+
+            var locations = new PendingLocations(batch.size());
+            int written = 0;
+
+            try {
+                while (written < batch.size()) {
+                    var segment = currentSegment();
+                    int count;
+
+                    try {
+                        count = segment.append(batch, written, locations.in(segment));
+                    } catch (IOException e) {
+                        throw new DatabaseException(e);
+                    }
+
+                    if (count == 0)
+                        throw new DatabaseException("Write error");
+
+                    written += count;
+                }
+            } finally {
+                locations.publish();
+            }
+
+            if (orderedKeys != null) {
+                for (var entry : batch) {
+                    if (entry.getValue().isValuePresented()) {
+                        orderedKeys.add(entry.getKey());
+                    } else {
+                        orderedKeys.remove(entry.getKey());
+                    }
+                }
+            }
+
+            for (var entry : batch) {
+                collect |= blobs.onWritten(entry.getKey(), entry.getValue());
+            }
+
+            ticket = committer.appended(current);
+            prepareNextSegmentIfFilling();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (collect) {
+            blobCollector.schedule();
+        }
+
+        awaitDurable(ticket);
+    }
+
+    private SegmentImpl currentSegment() throws DatabaseException {
+        if (current != null && !current.isReadOnly() && isExpired((SegmentImpl) current)) {
             try {
-                if (!segment.get().delete(objectKey))
-                    throw new DatabaseException("Delete error");
+                ((SegmentImpl) current).seal();
             } catch (IOException e) {
                 throw new DatabaseException(e);
             }
         }
+
+        if (current == null || current.isReadOnly()) {
+            var segment = takeNextSegment();
+            assignId(segment);
+            current = segment;
+            currentSince = System.currentTimeMillis();
+            addSegment(segment);
+            compactor.onSegmentSealed(segments.size() - 1);
+        }
+
+        return (SegmentImpl) current;
+    }
+
+    private boolean isExpired(SegmentImpl segment) {
+        long maxAge = segmentPolicy.getMaxSegmentAgeMillis();
+        return maxAge > 0 && !segment.isEmpty() && System.currentTimeMillis() - currentSince >= maxAge;
+    }
+
+    /**
+     * Начинает в фоне создание файла следующего сегмента, если активный сегмент заполнен наполовину.
+     */
+    private void prepareNextSegmentIfFilling() {
+        var segment = (SegmentImpl) current;
+
+        if (nextSegment == null && (segment.isReadOnly() || segment.size() >= segmentPolicy.getMaxSegmentBytes() / 2)) {
+            nextSegment = resources.getScheduler().submit(this::newSegment);
+        }
+    }
+
+    /**
+     * Возвращает заранее созданный следующий сегмент. Если его создание еще не началось, создает сегмент сам.
+     */
+    private SegmentImpl takeNextSegment() throws DatabaseException {
+        var prepared = nextSegment;
+        nextSegment = null;
+
+        if (prepared == null || prepared.cancel(false))
+            return newSegment();
+
+        try {
+            return prepared.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } catch (ExecutionException e) {
+            return newSegment();
+        }
+    }
+
+    private SegmentImpl newSegment() throws DatabaseException {
+        var segment = (SegmentImpl) SegmentImpl.create(SegmentImpl.createSegmentName(tableName), path, resources);
+        segment.setMaxSize(segmentPolicy.getMaxSegmentBytes());
+        return segment;
+    }
+
+    /**
+     * @return получатель положений записей, дописанных в сегмент, обновляющий индекс таблицы
+     */
+    private SegmentImpl.LocationConsumer locationConsumer(SegmentImpl segment) {
+        int segmentId = segment.getId();
+
+        return (objectKey, offset, length, removed) -> {
+            long stamp = indexLock.writeLock();
+            try {
+                indexes.put(objectKey, segmentId, offset, length, removed);
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+        };
+    }
+
+    /**
+     * Положения записей пакета, которые попадают в индекс одним изменением, см {@link #publish()}
+     */
+    private final class PendingLocations {
+        private final List<WrittenRecord> records;
+
+        PendingLocations(int size) {
+            this.records = new ArrayList<>(size);
+        }
+
+        /**
+         * @return получатель положений записей, дописанных в сегмент, запоминающий их до {@link #publish()}
+         */
+        SegmentImpl.LocationConsumer in(SegmentImpl segment) {
+            int segmentId = segment.getId();
+
+            return (objectKey, offset, length, removed) ->
+                    records.add(new WrittenRecord(objectKey, segmentId, offset, length, removed));
+        }
+
+        /**
+         * Записывает запомненные положения в индекс таблицы под одной блокировкой {@link #indexLock}.
+         * Вызывается и после неудачной записи: дописанные в сегменты записи все равно будут прочитаны при открытии таблицы.
+         */
+        void publish() {
+            if (records.isEmpty())
+                return;
+
+            long stamp = indexLock.writeLock();
+            try {
+                for (var record : records) {
+                    indexes.put(record.key, record.segmentId, record.offset, record.length, record.removed);
+                }
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Положение записи, дописанной в сегмент, но еще не попавшей в индекс, см {@link PendingLocations}
+     */
+    private static final class WrittenRecord {
+        private final String key;
+        private final int segmentId;
+        private final long offset;
+        private final int length;
+        private final boolean removed;
+
+        WrittenRecord(String key, int segmentId, long offset, int length, boolean removed) {
+            this.key = key;
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+            this.removed = removed;
+        }
+    }
+
+    /**
+     * Назначает сегменту наименьший свободный номер. Номера удаленных компактизацией сегментов используются повторно.
+     */
+    private void assignId(SegmentImpl segment) {
+        segment.setBlobs(blobs);
+
+        long stamp = indexLock.writeLock();
+        try {
+            int id = segmentsById.indexOf(null);
+
+            if (id < 0) {
+                id = segmentsById.size();
+                segmentsById.add(segment);
+            } else {
+                segmentsById.set(id, segment);
+            }
+
+            segment.setId(id);
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return самые старые заполненные сегменты таблицы, идущие подряд, в порядке их создания
+     */
+    List<SegmentImpl> sealedSegments() {
+        var result = new ArrayList<SegmentImpl>();
+
+        lock.readLock().lock();
+        try {
+            for (var segment : segments) {
+                if (!(segment instanceof SegmentImpl) || !segment.isReadOnly())
+                    break;
+
+                result.add((SegmentImpl) segment);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return result;
+    }
+
+    /**
+     * Проверяет, что запись ключа по указанному смещению - последняя версия ключа в таблице.
+     * Запись сегмента, слитого компактизацией, пока его читал проход, остается последней версией,
+     * если компактизация перенесла именно ее и перенесенную запись с тех пор не перезаписали.
+     */
+    boolean isLatest(String objectKey, SegmentImpl segment, long offset) {
+        lock.readLock().lock();
+        try {
+            int entry = indexes.entryOf(objectKey);
+
+            if (entry < 0)
+                return false;
+
+            var latest = segmentsById.get(indexes.segmentIdAt(entry));
+            long latestOffset = indexes.offsetAt(entry);
+
+            while (segment != latest || offset != latestOffset) {
+                var moved = segment.movedRecord(objectKey);
+
+                if (moved == null || moved.getFrom() != offset)
+                    return false;
+
+                segment = moved.getTarget();
+                offset = moved.getOffset();
+            }
+
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Дописывает в активный сегмент ссылку на перенесенное сборкой мусора значение,
+     * если последняя запись ключа все еще ссылается на его старое место.
+     *
+     * @return сегмент, в который записана ссылка, или {@code null}, если ключ перезаписан или таблица закрыта
+     */
+    SegmentImpl relocateBlob(String objectKey, BlobPointer expected, BlobPointer moved)
+            throws IOException, DatabaseException {
+        var record = new BlobPointerRecord(objectKey.getBytes(StandardCharsets.UTF_8), moved);
+
+        lock.writeLock().lock();
+        try {
+            if (closed || !blobs.isLive(objectKey, expected))
+                return null;
+
+            var segment = currentSegment();
+
+            if (!segment.appendRecord(objectKey, record, locationConsumer(segment)))
+                return null;
+
+            blobs.onWritten(objectKey, record);
+            prepareNextSegmentIfFilling();
+            return segment;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Убирает из таблицы blob-файл, на который не осталось ссылок. Файл удаляется, когда его отпустит
+     * последний читатель, см {@link BlobLog#remove(BlobLog.BlobFile)}.
+     *
+     * @return {@code false}, если таблица уже закрыта, на файл еще есть ссылки или они еще записываются
+     */
+    boolean removeBlobFile(BlobLog.BlobFile file) {
+        lock.writeLock().lock();
+        try {
+            if (closed || file.getLiveBytes() > 0 || file.hasPendingWrites())
+                return false;
+
+            blobs.remove(file);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Читает значение по закодированной ссылке из записи сегмента, если запись - последняя версия ключа,
+     * см {@link TableScanImpl}. Blob-файл закрепляется до проверки, поэтому сборка мусора не удалит его между
+     * проверкой и чтением. Файл с последней версией ключа сборка мусора не удаляет, поэтому если файла уже нет,
+     * запись не последняя.
+     *
+     * @return значение или {@code null}, если запись не последняя версия ключа
+     */
+    byte[] readBlobIfLatest(String objectKey, SegmentImpl segment, long offset, byte[] pointer) throws IOException {
+        var decoded = BlobPointer.decode(ByteBuffer.wrap(pointer), 0);
+        var file = blobs.retain(decoded);
+
+        if (file == null)
+            return null;
+
+        try {
+            return isLatest(objectKey, segment, offset)
+                    ? blobs.read(file, decoded)
+                    : null;
+        } finally {
+            file.release();
+        }
+    }
+
+    /**
+     * Атомарно подменяет компактизированные сегменты результатом компактизации.
+     * Ключи, перезаписанные после начала компактизации, продолжают указывать на более новые сегменты.
+     * Если таблицу читают проходы, слитые сегменты запоминают, куда перенесены их записи, см {@link TableScanImpl}.
+     *
+     * @param replaced сегменты, которые были слиты
+     * @param compacted новый сегмент или {@code null}, если актуальных записей не осталось
+     * @param moved ключи, актуальные значения которых перенесены в новый сегмент
+     * @param records записи ключей из {@code moved} в новом сегменте, в том же порядке
+     * @param dropped удаленные ключи, удаления которых не попали в новый сегмент
+     * @return {@code false}, если таблица уже закрыта
+     */
+    boolean replaceSegments(List<SegmentImpl> replaced, SegmentImpl compacted, List<String> moved,
+                            List<SegmentHintFile.Entry> records, List<String> dropped) {
+        var replacedSet = Collections.newSetFromMap(new IdentityHashMap<Segment, Boolean>());
+        replacedSet.addAll(replaced);
+
+        var replacedIds = new BitSet();
+        replaced.forEach(segment -> replacedIds.set(segment.getId()));
+
+        lock.writeLock().lock();
+        try {
+            if (closed)
+                return false;
+
+            if (compacted != null) {
+                assignId(compacted);
+            }
+
+            var moves = new IdentityHashMap<SegmentImpl, Map<String, SegmentImpl.MovedRecord>>();
+
+            long stamp = indexLock.writeLock();
+            try {
+                for (int i = 0; i < moved.size(); i++) {
+                    var key = moved.get(i);
+                    int entry = indexes.entryOf(key);
+
+                    if (entry >= 0 && replacedIds.get(indexes.segmentIdAt(entry))) {
+                        var record = records.get(i);
+
+                        if (!openScans.isEmpty() && !record.isRemoved()) {
+                            var source = segmentsById.get(indexes.segmentIdAt(entry));
+                            moves.computeIfAbsent(source, segment -> new HashMap<>()).put(key,
+                                    new SegmentImpl.MovedRecord(indexes.offsetAt(entry), compacted, record.getOffset()));
+                        }
+
+                        indexes.put(key, compacted.getId(), record.getOffset(), (int) record.getRecordSize(),
+                                record.isRemoved());
+                    }
+                }
+
+                moves.forEach(SegmentImpl::setMoves);
+
+                for (var key : dropped) {
+                    int entry = indexes.entryOf(key);
+
+                    if (entry >= 0 && replacedIds.get(indexes.segmentIdAt(entry))) {
+                        indexes.onIndexedEntityRemoved(key);
+                    }
+                }
+
+                replaced.forEach(segment -> segmentsById.set(segment.getId(), null));
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+
+            segments.removeIf(replacedSet::contains);
+
+            if (compacted != null) {
+                segments.add(positionOf(compacted), compacted);
+            }
+
+            if (replacedSet.contains(current)) {
+                current = null;
+            }
+
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return позиция сегмента в списке сегментов по порядку имен, в котором сегменты читаются при инициализации
+     */
+    private int positionOf(SegmentImpl compacted) {
+        int position = 0;
+
+        while (position < segments.size() && segments.get(position).getName().compareTo(compacted.getName()) < 0) {
+            position++;
+        }
+
+        return position;
+    }
+
+    private void awaitDurable(long ticket) throws DatabaseException {
+        try {
+            committer.awaitDurable(ticket);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    @Override
+    public void close() throws DatabaseException {
+        compactor.close();
+        blobCollector.close();
+
+        Future<SegmentImpl> prepared;
+
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            prepared = nextSegment;
+            nextSegment = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            committer.close();
+            removePreparedSegment(prepared);
+
+            for (var segment : segments) {
+                segment.close();
+            }
+
+            blobs.close();
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Удаляет заранее созданный, но так и не ставший активным сегмент.
+     */
+    private static void removePreparedSegment(Future<SegmentImpl> prepared) throws IOException {
+        if (prepared == null || prepared.cancel(false))
+            return;
+
+        try {
+            var segment = prepared.get();
+            segment.close();
+            segment.removeFiles();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // файл сегмента не был создан
+        }
+    }
+
+    /**
+     * Положение последней записи ключа в закрепленном сегменте, см {@link #locate(Collection)}
+     */
+    private static final class Location {
+        private final String key;
+        private final SegmentImpl segment;
+        private final long offset;
+        private final int length;
+
+        Location(String key, SegmentImpl segment, long offset, int length) {
+            this.key = key;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
     }
 }
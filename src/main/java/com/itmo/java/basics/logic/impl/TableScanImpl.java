@@ -0,0 +1,159 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.TableScan;
+import com.itmo.java.basics.logic.io.SegmentScanner;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Проход по таблице, читающий сегменты от самого старого к самому новому через {@link SegmentScanner}.
+ * Запись попадает в результат, только если по индексу таблицы она - последняя версия ключа,
+ * удаления и перезаписанные версии пропускаются без чтения значения.
+ * <p>
+ * Активный сегмент дочитывается до конца, пока в него пишут, поэтому новая запись перезаписанного ключа
+ * всегда лежит дальше по ходу прохода и ключ не теряется. Если писать быстрее, чем идет проход, проход не закончится.
+ * <p>
+ * Проход закрепляет сегменты таблицы на момент открытия и сегменты, созданные, пока он открыт
+ * (см {@link SegmentImpl#retain()}), и отпускает каждый, дочитав его. Компактизация не ждет прохода: слитый сегмент
+ * удаляется, когда его отпустят, а его запись, перенесенная в новый сегмент, остается для прохода последней версией
+ * ключа, см {@link TableImpl#isLatest(String, SegmentImpl, long)}. Blob-файл значения закрепляется на время чтения.
+ */
+class TableScanImpl implements TableScan {
+
+    private final TableImpl table;
+    private final ConcurrentLinkedQueue<SegmentImpl> pending = new ConcurrentLinkedQueue<>();
+    private SegmentImpl segment;
+    private SegmentScanner scanner;
+    private long scanned = 0;
+    private String key;
+    private byte[] value;
+    private boolean closed = false;
+
+    TableScanImpl(TableImpl table) {
+        this.table = table;
+    }
+
+    /**
+     * Закрепляет сегмент и ставит его в очередь прохода. Вызывается таблицей под ее блокировкой.
+     */
+    void append(SegmentImpl next) {
+        if (next.retain()) {
+            pending.add(next);
+        }
+    }
+
+    @Override
+    public boolean next() throws DatabaseException {
+        key = null;
+        value = null;
+
+        try {
+            while (!closed) {
+                if (scanner == null && !openScanner()) {
+                    close();
+                    return false;
+                }
+
+                if (!scanner.next()) {
+                    scanner.close();
+                    scanner = null;
+                    continue;
+                }
+
+                if (!scanner.isValuePresented())
+                    continue;
+
+                var recordKey = scanner.keyString();
+
+                if (scanner.isBlobPointer()) {
+                    value = table.readBlobIfLatest(recordKey, segment, scanner.offset(), scanner.value());
+                } else if (table.isLatest(recordKey, segment, scanner.offset())) {
+                    value = scanner.value();
+                }
+
+                if (value != null) {
+                    key = recordKey;
+                    return true;
+                }
+            }
+
+            return false;
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Открывает чтение части текущего сегмента, дописанной после прошлого чтения, или следующего сегмента.
+     *
+     * @return {@code false}, если непрочитанных записей нет
+     */
+    private boolean openScanner() throws IOException {
+        while (true) {
+            var next = pending.peek();
+
+            // следующий сегмент читается раньше размера текущего: если он уже есть, в текущий больше не пишут
+            if (segment != null && segment.size() > scanned) {
+                long limit = segment.size();
+                scanner = segment.scanner(scanned, limit);
+                scanned = limit;
+                return true;
+            }
+
+            if (next == null)
+                return false;
+
+            pending.poll();
+
+            if (segment != null) {
+                segment.release();
+            }
+
+            segment = next;
+            scanned = 0;
+        }
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public byte[] getValue() {
+        return value;
+    }
+
+    @Override
+    public void close() throws DatabaseException {
+        if (closed)
+            return;
+
+        closed = true;
+        table.scanClosed(this);
+
+        try {
+            if (scanner != null) {
+                scanner.close();
+            }
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        } finally {
+            scanner = null;
+            releaseSegments();
+        }
+    }
+
+    private void releaseSegments() {
+        if (segment != null) {
+            segment.release();
+            segment = null;
+        }
+
+        for (var next = pending.poll(); next != null; next = pending.poll()) {
+            next.release();
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.itmo.java.basics.logic.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Потокобезопасный кэш значений, общий для таблиц и ограниченный суммарным размером записей в байтах.
+ * Таблицы работают с ним через свои {@link DatabaseCacheImpl}, ключи разных таблиц не пересекаются.
+ * Место не делится между таблицами заранее: значения часто читаемых таблиц вытесняют значения редко читаемых.
+ * <p>
+ * Вытеснение - W-TinyLFU: новые ключи попадают в маленькое окно (LRU), а вытесненные из окна
+ * допускаются в основную часть, только если обращались к ним чаще, чем к кандидату на вытеснение из основной части
+ * (см {@link FrequencySketch}). Основная часть - сегментированный LRU: ключи, к которым обратились повторно,
+ * переходят из испытательной части в защищенную. Поэтому однократное чтение множества ключей не вытесняет
+ * часто используемые значения.
+ * <p>
+ * Поиск не блокируется. Обращения учитываются политикой вытеснения, только если ее блокировка свободна,
+ * при высокой конкуренции часть обращений не учитывается.
+ * <p>
+ * Записи каждой таблицы связаны в отдельный список, поэтому закрытие таблицы удаляет только ее записи,
+ * не просматривая весь кэш.
+ */
+public class ValueCache {
+
+    /**
+     * Приблизительные накладные расходы на запись кэша: узел, ключ кэша, запись хеш-таблицы, заголовки ключа и значения
+     */
+    private static final int ENTRY_OVERHEAD = 112;
+    private static final int EXPECTED_ENTRY_SIZE = 512;
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final ConcurrentHashMap<ScopedKey, Node> data = new ConcurrentHashMap<>();
+    private final Map<DatabaseCacheImpl, ScopeEntries> scopes = new ConcurrentHashMap<>();
+    private final AtomicInteger lastScopeId = new AtomicInteger();
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final long maxBytes;
+    private final long windowMaxBytes;
+    private final long protectedMaxBytes;
+
+    private final AccessQueue window = new AccessQueue();
+    private final AccessQueue probation = new AccessQueue();
+    private final AccessQueue protectedQueue = new AccessQueue();
+
+    /**
+     * @param maxBytes наибольший суммарный размер записей кэша в байтах
+     */
+    public ValueCache(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.windowMaxBytes = Math.max(1, (long) (this.maxBytes * WINDOW_SHARE));
+        this.protectedMaxBytes = (long) ((this.maxBytes - windowMaxBytes) * PROTECTED_SHARE);
+        this.sketch = new FrequencySketch(this.maxBytes / EXPECTED_ENTRY_SIZE);
+    }
+
+    /**
+     * @return суммарный размер записей кэша в байтах
+     */
+    public long getCachedBytes() {
+        policyLock.lock();
+        try {
+            return window.bytes + probation.bytes + protectedQueue.bytes;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return статистика кэшей всех открытых таблиц
+     */
+    public List<CacheStats> getStatistics() {
+        var result = new ArrayList<CacheStats>();
+
+        for (var scope : scopes.keySet()) {
+            result.add(scope.getStats());
+        }
+
+        return result;
+    }
+
+    int register(DatabaseCacheImpl scope) {
+        scopes.put(scope, new ScopeEntries());
+        return lastScopeId.incrementAndGet();
+    }
+
+    /**
+     * Удаляет все значения таблицы и перестает учитывать ее в статистике.
+     * Значения, записанные после этого, в кэш не попадают.
+     */
+    void unregister(DatabaseCacheImpl scope) {
+        policyLock.lock();
+        try {
+            var entries = scopes.remove(scope);
+
+            if (entries == null)
+                return;
+
+            while (entries.head != null) {
+                remove(entries.head);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    byte[] get(DatabaseCacheImpl scope, String key) {
+        var scopedKey = new ScopedKey(scope, key);
+        var node = data.get(scopedKey);
+
+        if (policyLock.tryLock()) {
+            try {
+                sketch.increment(scopedKey.hashCode());
+
+                if (node != null && node.queue != null) {
+                    onAccess(node);
+                }
+            } finally {
+                policyLock.unlock();
+            }
+        }
+
+        return node == null
+                ? null
+                : node.value;
+    }
+
+    void set(DatabaseCacheImpl scope, String key, byte[] value) {
+        var scopedKey = new ScopedKey(scope, key);
+        long weight = ENTRY_OVERHEAD + 2L * key.length() + value.length;
+
+        policyLock.lock();
+        try {
+            var node = data.get(scopedKey);
+            var entries = scopes.get(scope);
+
+            if (entries == null)
+                return;
+
+            if (weight > maxBytes - windowMaxBytes) {
+                if (node != null) {
+                    remove(node);
+                }
+                return;
+            }
+
+            sketch.increment(scopedKey.hashCode());
+
+            if (node != null) {
+                node.value = value;
+                node.queue.bytes += weight - node.weight;
+                scope.cachedBytes += weight - node.weight;
+                node.weight = weight;
+                onAccess(node);
+            } else {
+                node = new Node(scopedKey, value, weight);
+                data.put(scopedKey, node);
+                entries.add(node);
+                window.addLast(node);
+                scope.cachedBytes += weight;
+            }
+
+            evict();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    void delete(DatabaseCacheImpl scope, String key) {
+        policyLock.lock();
+        try {
+            var node = data.get(new ScopedKey(scope, key));
+
+            if (node != null) {
+                remove(node);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Переносит ключ в конец его очереди, а повторно использованный ключ испытательной части - в защищенную часть.
+     */
+    private void onAccess(Node node) {
+        if (node.queue == probation) {
+            probation.remove(node);
+            protectedQueue.addLast(node);
+
+            while (protectedQueue.bytes > protectedMaxBytes && protectedQueue.first() != node) {
+                var demoted = protectedQueue.first();
+                protectedQueue.remove(demoted);
+                probation.addLast(demoted);
+            }
+        } else {
+            node.queue.moveToLast(node);
+        }
+    }
+
+    /**
+     * Переносит переполнившие окно ключи в основную часть и освобождает место в ней.
+     */
+    private void evict() {
+        while (window.bytes > windowMaxBytes) {
+            var candidate = window.first();
+            window.remove(candidate);
+            probation.addLast(candidate);
+            admit(candidate);
+        }
+
+        while (probation.bytes + protectedQueue.bytes > maxBytes - windowMaxBytes) {
+            evict(leastRecentMain());
+        }
+    }
+
+    /**
+     * Освобождает место под кандидата из окна: кандидат вытесняет самые давние ключи основной части,
+     * пока обращались к нему чаще, чем к ним, иначе вытесняется сам.
+     */
+    private void admit(Node candidate) {
+        while (probation.bytes + protectedQueue.bytes > maxBytes - windowMaxBytes) {
+            var victim = leastRecentMain();
+
+            if (victim == candidate
+                    || sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode())) {
+                evict(candidate);
+                return;
+            }
+
+            evict(victim);
+        }
+    }
+
+    private Node leastRecentMain() {
+        return probation.first() != null
+                ? probation.first()
+                : protectedQueue.first();
+    }
+
+    private void evict(Node node) {
+        remove(node);
+        node.key.scope.evictions.increment();
+    }
+
+    private void remove(Node node) {
+        data.remove(node.key, node);
+        node.entries.remove(node);
+        node.queue.remove(node);
+        node.key.scope.cachedBytes -= node.weight;
+    }
+
+    /**
+     * Ключ таблицы в общем кэше
+     */
+    private static class ScopedKey {
+        private final DatabaseCacheImpl scope;
+        private final String key;
+
+        ScopedKey(DatabaseCacheImpl scope, String key) {
+            this.scope = scope;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+
+            if (!(o instanceof ScopedKey))
+                return false;
+
+            var other = (ScopedKey) o;
+            return scope == other.scope && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() * 31 + scope.getId();
+        }
+    }
+
+    private static class Node {
+        private final ScopedKey key;
+        private volatile byte[] value;
+        private long weight;
+        private AccessQueue queue;
+        private Node previous;
+        private Node next;
+        private ScopeEntries entries;
+        private Node previousInScope;
+        private Node nextInScope;
+
+        Node(ScopedKey key, byte[] value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Двусвязный список записей одной таблицы
+     */
+    private static class ScopeEntries {
+        private Node head;
+
+        void add(Node node) {
+            node.entries = this;
+            node.previousInScope = null;
+            node.nextInScope = head;
+
+            if (head != null) {
+                head.previousInScope = node;
+            }
+
+            head = node;
+        }
+
+        void remove(Node node) {
+            if (node.previousInScope == null) {
+                head = node.nextInScope;
+            } else {
+                node.previousInScope.nextInScope = node.nextInScope;
+            }
+
+            if (node.nextInScope != null) {
+                node.nextInScope.previousInScope = node.previousInScope;
+            }
+
+            node.previousInScope = null;
+            node.nextInScope = null;
+            node.entries = null;
+        }
+    }
+
+    /**
+     * Двусвязный список ключей от самого давнего к самому недавнему обращению
+     */
+    private static class AccessQueue {
+        private Node head;
+        private Node tail;
+        private long bytes;
+
+        Node first() {
+            return head;
+        }
+
+        void addLast(Node node) {
+            node.queue = this;
+            node.previous = tail;
+            node.next = null;
+
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+
+            tail = node;
+            bytes += node.weight;
+        }
+
+        void remove(Node node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+
+            node.previous = null;
+            node.next = null;
+            node.queue = null;
+            bytes -= node.weight;
+        }
+
+        void moveToLast(Node node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+}
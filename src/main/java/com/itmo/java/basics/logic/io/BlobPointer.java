@@ -0,0 +1,77 @@
+package com.itmo.java.basics.logic.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ссылка на значение в blob-файле таблицы: номер файла, смещение значения в файле и его размер.
+ * Хранится в записи сегмента вместо значения, см {@link DatabaseRecordCodec#BLOB_POINTER_SIZE}.
+ */
+public final class BlobPointer {
+
+    /**
+     * Размер закодированной ссылки в байтах
+     */
+    public static final int SIZE = 8 + 8 + DatabaseRecordCodec.INTEGER_SIZE;
+
+    private final long fileId;
+    private final long offset;
+    private final int length;
+
+    public BlobPointer(long fileId, long offset, int length) {
+        this.fileId = fileId;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @param buffer буфер с закодированной ссылкой
+     * @param position позиция ссылки в буфере, позиция буфера не меняется
+     */
+    public static BlobPointer decode(ByteBuffer buffer, int position) {
+        return new BlobPointer(
+                buffer.getLong(position),
+                buffer.getLong(position + 8),
+                buffer.getInt(position + 16)
+        );
+    }
+
+    public byte[] encode() {
+        return ByteBuffer.allocate(SIZE)
+                .putLong(fileId)
+                .putLong(offset)
+                .putInt(length)
+                .array();
+    }
+
+    public long getFileId() {
+        return fileId;
+    }
+
+    /**
+     * @return смещение значения (не записи) от начала blob-файла
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+
+        if (!(o instanceof BlobPointer))
+            return false;
+
+        var other = (BlobPointer) o;
+        return fileId == other.fileId && offset == other.offset && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(fileId) * 31 * 31 + Long.hashCode(offset) * 31 + length;
+    }
+}
@@ -0,0 +1,141 @@
+package com.itmo.java.basics.logic.io;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Распакованные блоки сжатых сегментов с ограничением на их суммарный размер.
+ * При превышении лимита вытесняются давно не использованные блоки
+ * <p>
+ * Поиск блока не блокируется: время последнего обращения хранится в самом блоке,
+ * вытеснение выполняет один поток (см. {@link MappedSegmentCache}).
+ */
+public class BlockCache {
+
+    private final long maxBytes;
+    private final ConcurrentHashMap<BlockKey, Block> blocks = new ConcurrentHashMap<>();
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final ReentrantLock evicting = new ReentrantLock();
+
+    public BlockCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param path путь до сегмента
+     * @param block номер блока
+     * @return распакованный блок или {@code null}, если его нет в кэше
+     */
+    public byte[] get(Path path, int block) {
+        var cached = blocks.get(new BlockKey(path, block));
+
+        if (cached == null)
+            return null;
+
+        cached.lastAccess = clock.incrementAndGet();
+        return cached.data;
+    }
+
+    /**
+     * Кладет распакованный блок в кэш, вытесняя давно не использованные блоки.
+     * Блок больше лимита не кэшируется.
+     *
+     * @param path путь до сегмента
+     * @param block номер блока
+     * @param data распакованный блок
+     */
+    public void put(Path path, int block, byte[] data) {
+        if (data.length > maxBytes)
+            return;
+
+        var previous = blocks.put(new BlockKey(path, block), new Block(data, clock.incrementAndGet()));
+        cachedBytes.addAndGet(data.length - (previous == null ? 0 : previous.data.length));
+
+        evict();
+    }
+
+    /**
+     * Удаляет из кэша все блоки сегмента, например, при удалении его файла.
+     *
+     * @param path путь до сегмента
+     */
+    public void invalidate(Path path) {
+        for (var entry : blocks.entrySet()) {
+            if (entry.getKey().path.equals(path) && blocks.remove(entry.getKey(), entry.getValue())) {
+                cachedBytes.addAndGet(-entry.getValue().data.length);
+            }
+        }
+    }
+
+    public long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    /**
+     * Вытесняет давно не использованные блоки, пока их суммарный размер больше лимита.
+     * Если вытеснение уже выполняет другой поток, новый блок будет учтен следующей вставкой.
+     */
+    private void evict() {
+        if (cachedBytes.get() <= maxBytes || !evicting.tryLock())
+            return;
+
+        try {
+            var oldest = new ArrayList<>(blocks.entrySet());
+            oldest.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+
+            for (var entry : oldest) {
+                if (cachedBytes.get() <= maxBytes)
+                    break;
+
+                if (blocks.remove(entry.getKey(), entry.getValue())) {
+                    cachedBytes.addAndGet(-entry.getValue().data.length);
+                }
+            }
+        } finally {
+            evicting.unlock();
+        }
+    }
+
+    private static final class Block {
+        private final byte[] data;
+        private volatile long lastAccess;
+
+        Block(byte[] data, long lastAccess) {
+            this.data = data;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static final class BlockKey {
+        private final Path path;
+        private final int block;
+
+        BlockKey(Path path, int block) {
+            this.path = path;
+            this.block = block;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+
+            if (!(o instanceof BlockKey))
+                return false;
+
+            var other = (BlockKey) o;
+            return block == other.block && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, block);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.IOException;
+
+/**
+ * Запись сегмента оборвана или не совпадает с контрольной суммой
+ */
+public class CorruptedRecordException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public CorruptedRecordException(String message) {
+        super(message);
+    }
+}
@@ -2,27 +2,41 @@ package com.itmo.java.basics.logic.io;
 
 import com.itmo.java.basics.logic.DatabaseRecord;
 import com.itmo.java.basics.logic.WritableDatabaseRecord;
+import com.itmo.java.basics.logic.impl.BlobPointerRecord;
 import com.itmo.java.basics.logic.impl.RemoveDatabaseRecord;
 import com.itmo.java.basics.logic.impl.SetDatabaseRecord;
 
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Optional;
+import java.util.zip.CRC32C;
 
 /**
- * Класс, отвечающий за чтение данных из БД
+ * Класс, отвечающий за чтение данных из БД.
+ * Заголовок файла сегмента ({@link SegmentFormat#getFileHeaderSize()}) должен быть пропущен до начала чтения
  */
 public class DatabaseInputStream extends DataInputStream {
     private static final int REMOVED_OBJECT_SIZE = -1;
 
+    private final SegmentFormat format;
+    private final CRC32C checksum = new CRC32C();
+    private final ByteBuffer integerBytes = ByteBuffer.allocate(DatabaseRecordCodec.INTEGER_SIZE);
+
     public DatabaseInputStream(InputStream inputStream) {
+        this(inputStream, SegmentFormat.V1);
+    }
+
+    public DatabaseInputStream(InputStream inputStream, SegmentFormat format) {
         super(inputStream);
+        this.format = format;
     }
 
     /**
      * Читает следующую запись (см {@link DatabaseOutputStream#write(WritableDatabaseRecord)})
      * @return следующую запись, если она существует. {@link Optional#empty()} - если конец файла достигнут
+     * @throws CorruptedRecordException если запись не совпадает с контрольной суммой
      */
     public Optional<DatabaseRecord> readDbUnit() throws IOException {
 
@@ -30,12 +44,37 @@ public class DatabaseInputStream extends DataInputStream {
             return Optional.empty();
         }
 
+        int expectedChecksum = format.hasChecksums() ? readInt() : 0;
         int keySize = readInt();
         byte[] key = readNBytes(keySize);
         int valueSize = readInt();
+        byte[] value = valueSize != REMOVED_OBJECT_SIZE ? readNBytes(DatabaseRecordCodec.payloadSize(valueSize)) : null;
+
+        if (format.hasChecksums() && expectedChecksum != checksum(keySize, key, valueSize, value))
+            throw new CorruptedRecordException("Record checksum mismatch");
+
+        if (value == null)
+            return Optional.of(new RemoveDatabaseRecord(key));
+
+        return valueSize == DatabaseRecordCodec.BLOB_POINTER_SIZE
+                ? Optional.of(new BlobPointerRecord(key, value))
+                : Optional.of(new SetDatabaseRecord(key, value));
+    }
+
+    private int checksum(int keySize, byte[] key, int valueSize, byte[] value) {
+        checksum.reset();
+        updateChecksum(keySize);
+        checksum.update(key);
+        updateChecksum(valueSize);
+
+        if (value != null) {
+            checksum.update(value);
+        }
+
+        return (int) checksum.getValue();
+    }
 
-        return valueSize != REMOVED_OBJECT_SIZE
-                ? Optional.of(new SetDatabaseRecord(key, readNBytes(valueSize)))
-                : Optional.of(new RemoveDatabaseRecord(key));
+    private void updateChecksum(int value) {
+        checksum.update(integerBytes.clear().putInt(value).flip());
     }
 }
@@ -16,15 +16,16 @@ public class DatabaseOutputStream extends DataOutputStream {
     }
 
     /**
-     * Записывает в БД в следующем формате:
+     * Записывает в БД в формате {@link SegmentFormat#CURRENT}:
+     * - CRC32C остальных байтов записи
      * - Размер ключа в байтахб используя {@link WritableDatabaseRecord#getKeySize()}
      * - Ключ
      * - Размер записи в байтах {@link WritableDatabaseRecord#getValueSize()}
      * - Запись
      * Например при использовании UTF_8,
      * "key" : "value"
-     * 3key5value
-     * Метод вернет 10
+     * crc3key5value
+     * Метод вернет 20: 4 байта контрольной суммы, 4 + 3 байта ключа и 4 + 5 байтов значения
      *
      * @param databaseRecord запись
      * @return размер записи
@@ -32,14 +33,9 @@ public class DatabaseOutputStream extends DataOutputStream {
      */
     public long write(WritableDatabaseRecord databaseRecord) throws IOException {
 
-        writeInt(databaseRecord.getKeySize());
-        write(databaseRecord.getKey());
-        writeInt(databaseRecord.getValueSize());
+        var buffer = DatabaseRecordCodec.encode(databaseRecord, null);
+        write(buffer.array(), buffer.arrayOffset(), buffer.limit());
 
-        if (databaseRecord.getValue() != null) {
-            write(databaseRecord.getValue());
-        }
-
-        return databaseRecord.size();
+        return buffer.limit();
     }
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * Кодирует записи в формат {@link SegmentFormat#CURRENT} без промежуточных потоков
+ */
+public final class DatabaseRecordCodec {
+
+    public static final int INTEGER_SIZE = 4;
+    public static final int REMOVED_OBJECT_SIZE = -1;
+    /**
+     * Размер значения в записи, значение которой вынесено в blob-файл: вместо значения записана {@link BlobPointer}
+     */
+    public static final int BLOB_POINTER_SIZE = -2;
+    public static final int CHECKSUM_SIZE = 4;
+
+    private static final ThreadLocal<CRC32C> CHECKSUM = ThreadLocal.withInitial(CRC32C::new);
+
+    private DatabaseRecordCodec() {
+    }
+
+    /**
+     * Кодирует запись в буфер, готовый к записи в канал.
+     *
+     * @param databaseRecord запись
+     * @param buffer буфер для повторного использования, может быть {@code null}
+     * @return переданный буфер или новый, если размера переданного не хватило
+     */
+    public static ByteBuffer encode(WritableDatabaseRecord databaseRecord, ByteBuffer buffer) {
+        int size = (int) encodedSize(databaseRecord);
+
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size);
+        }
+
+        buffer.clear();
+        put(databaseRecord, buffer);
+
+        return buffer.flip();
+    }
+
+    /**
+     * Дописывает закодированную запись в буфер с его текущей позиции.
+     *
+     * @param databaseRecord запись
+     * @param buffer буфер, в котором достаточно места для записи
+     */
+    public static void put(WritableDatabaseRecord databaseRecord, ByteBuffer buffer) {
+        int start = buffer.position();
+
+        buffer.putInt(0);
+        buffer.putInt(databaseRecord.getKeySize());
+        buffer.put(databaseRecord.getKey());
+        buffer.putInt(databaseRecord.getValueSize());
+
+        if (databaseRecord.getValue() != null) {
+            buffer.put(databaseRecord.getValue());
+        }
+
+        buffer.putInt(start, checksum(buffer, start + CHECKSUM_SIZE, buffer.position()));
+    }
+
+    /**
+     * Кодирует заголовок записи, значение которой пишется в канал отдельно, не копируя значение в буфер.
+     * Контрольная сумма в заголовке считается по заголовку и значению.
+     *
+     * @param databaseRecord запись со значением
+     * @return заголовок записи, готовый к записи в канал
+     */
+    public static ByteBuffer encodeHeader(WritableDatabaseRecord databaseRecord) {
+        var header = header(databaseRecord.getKey(), databaseRecord.getValueSize());
+        var crc = CHECKSUM.get();
+
+        crc.reset();
+        crc.update(header.duplicate().position(CHECKSUM_SIZE));
+        crc.update(databaseRecord.getValue());
+
+        return header.putInt(0, (int) crc.getValue());
+    }
+
+    /**
+     * Кодирует заголовок записи без контрольной суммы: на ее месте нули. Нужен, когда значение пишется частями
+     * и контрольная сумма считается по ходу записи.
+     *
+     * @param key ключ записи
+     * @param valueSize размер значения
+     * @return заголовок записи, готовый к записи в канал
+     */
+    public static ByteBuffer header(byte[] key, int valueSize) {
+        return ByteBuffer.allocate(SegmentFormat.CURRENT.recordHeaderSize(key.length))
+                .putInt(0)
+                .putInt(key.length)
+                .put(key)
+                .putInt(valueSize)
+                .flip();
+    }
+
+    /**
+     * @param databaseRecord запись
+     * @return размер записи вместе с контрольной суммой
+     */
+    public static long encodedSize(WritableDatabaseRecord databaseRecord) {
+        return CHECKSUM_SIZE + databaseRecord.size();
+    }
+
+    /**
+     * @param valueSize размер значения из заголовка записи
+     * @return число байтов записи после заголовка: значение, ссылка на значение или ничего для удаления
+     */
+    public static int payloadSize(int valueSize) {
+        if (valueSize >= 0)
+            return valueSize;
+
+        return valueSize == BLOB_POINTER_SIZE
+                ? BlobPointer.SIZE
+                : 0;
+    }
+
+    /**
+     * Считает CRC32C байтов буфера в диапазоне {@code [from, to)}, не изменяя позицию буфера.
+     */
+    private static int checksum(ByteBuffer buffer, int from, int to) {
+        var crc = CHECKSUM.get();
+        crc.reset();
+
+        int position = buffer.position();
+        int limit = buffer.limit();
+
+        buffer.limit(to).position(from);
+        crc.update(buffer);
+        buffer.limit(limit).position(position);
+
+        return (int) crc.getValue();
+    }
+}
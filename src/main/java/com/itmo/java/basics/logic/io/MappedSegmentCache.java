@@ -0,0 +1,129 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Отображения заполненных сегментов в память с ограничением на их суммарный размер.
+ * При превышении лимита отпускаются давно не использованные отображения: ссылки на них удаляются,
+ * а сама память освобождается сборщиком мусора, так как явного munmap в JDK нет.
+ * <p>
+ * Поиск отображения не блокируется: время последнего обращения хранится в самом отображении.
+ * Одновременные промахи по одному сегменту отображают его один раз, вытеснение выполняет один поток.
+ */
+public class MappedSegmentCache {
+
+    private final long maxMappedBytes;
+    private final ConcurrentHashMap<Path, Mapping> mappings = new ConcurrentHashMap<>();
+    private final AtomicLong mappedBytes = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final ReentrantLock evicting = new ReentrantLock();
+
+    public MappedSegmentCache(long maxMappedBytes) {
+        this.maxMappedBytes = maxMappedBytes;
+    }
+
+    /**
+     * Возвращает отображение сегмента, при необходимости отображая его в память.
+     *
+     * @param path путь до сегмента, используется как ключ
+     * @param channel канал, открытый на чтение
+     * @param size размер сегмента
+     * @return отображение только для чтения или {@link Optional#empty()}, если сегмент больше лимита
+     * @throws IOException если не удалось отобразить файл
+     */
+    public Optional<ByteBuffer> map(Path path, FileChannel channel, long size) throws IOException {
+        var mapping = mappings.get(path);
+
+        if (mapping == null) {
+            if (size > maxMappedBytes || size > Integer.MAX_VALUE)
+                return Optional.empty();
+
+            try {
+                mapping = mappings.computeIfAbsent(path, key -> create(channel, size));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            evict();
+        } else {
+            mapping.lastAccess = clock.incrementAndGet();
+        }
+
+        return Optional.of(mapping.buffer);
+    }
+
+    /**
+     * Отпускает отображение сегмента, например, при его закрытии.
+     *
+     * @param path путь до сегмента
+     */
+    public void unmap(Path path) {
+        var mapping = mappings.remove(path);
+
+        if (mapping != null) {
+            mappedBytes.addAndGet(-mapping.buffer.capacity());
+        }
+    }
+
+    /**
+     * @return суммарный размер текущих отображений
+     */
+    public long getMappedBytes() {
+        return mappedBytes.get();
+    }
+
+    private Mapping create(FileChannel channel, long size) {
+        try {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).asReadOnlyBuffer();
+            mappedBytes.addAndGet(size);
+            return new Mapping(buffer, clock.incrementAndGet());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Отпускает давно не использованные отображения, пока их суммарный размер больше лимита.
+     * Если вытеснение уже выполняет другой поток, новое отображение будет учтено следующим промахом.
+     */
+    private void evict() {
+        if (mappedBytes.get() <= maxMappedBytes || !evicting.tryLock())
+            return;
+
+        try {
+            var oldest = new ArrayList<>(mappings.entrySet());
+            oldest.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+
+            for (var entry : oldest) {
+                if (mappedBytes.get() <= maxMappedBytes)
+                    break;
+
+                if (mappings.remove(entry.getKey(), entry.getValue())) {
+                    mappedBytes.addAndGet(-entry.getValue().buffer.capacity());
+                }
+            }
+        } finally {
+            evicting.unlock();
+        }
+    }
+
+    private static final class Mapping {
+        private final ByteBuffer buffer;
+        private volatile long lastAccess;
+
+        Mapping(ByteBuffer buffer, long lastAccess) {
+            this.buffer = buffer;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
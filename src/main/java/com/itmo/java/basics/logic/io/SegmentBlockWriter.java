@@ -0,0 +1,112 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Deflater;
+
+/**
+ * Записывает сжатый сегмент ({@link SegmentFormat#V3}) в канал с его текущей позиции.
+ * Записи копятся в блок размером {@link SegmentBlocks#BLOCK_SIZE}, запись больше блока сжимается отдельным блоком
+ */
+public final class SegmentBlockWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private ByteBuffer block = ByteBuffer.allocate(SegmentBlocks.BLOCK_SIZE);
+    private byte[] compressed = new byte[SegmentBlocks.BLOCK_SIZE];
+    private ByteBuffer table = ByteBuffer.allocate(SegmentBlocks.ENTRY_SIZE * 16);
+    private int blockCount = 0;
+    private long size;
+
+    public SegmentBlockWriter(FileChannel channel) throws IOException {
+        this.channel = channel;
+        writeFully(SegmentFormat.V3.header());
+    }
+
+    /**
+     * Добавляет запись в текущий блок.
+     *
+     * @param databaseRecord запись
+     * @return смещение записи в сжатом сегменте ({@link SegmentBlocks#offset(int, int)})
+     * @throws IOException если не удалось записать заполненный блок
+     */
+    public long append(WritableDatabaseRecord databaseRecord) throws IOException {
+        int recordSize = (int) DatabaseRecordCodec.encodedSize(databaseRecord);
+
+        if (block.position() > 0 && block.remaining() < recordSize) {
+            flushBlock();
+        }
+
+        if (block.capacity() < recordSize) {
+            block = ByteBuffer.allocate(recordSize);
+        }
+
+        long offset = SegmentBlocks.offset(blockCount, block.position());
+        DatabaseRecordCodec.put(databaseRecord, block);
+
+        return offset;
+    }
+
+    /**
+     * Сжимает последний блок и дописывает таблицу блоков.
+     *
+     * @return размер файла сегмента
+     */
+    public long finish() throws IOException {
+        if (block.position() > 0) {
+            flushBlock();
+        }
+
+        long tableOffset = size;
+        writeFully(table.flip());
+        writeFully(ByteBuffer.allocate(SegmentBlocks.FOOTER_SIZE).putLong(tableOffset).putInt(blockCount).flip());
+
+        return size;
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    private void flushBlock() throws IOException {
+        deflater.reset();
+        deflater.setInput(block.array(), 0, block.position());
+        deflater.finish();
+
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                var grown = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, grown, 0, length);
+                compressed = grown;
+            }
+
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        if (table.remaining() < SegmentBlocks.ENTRY_SIZE) {
+            table = ByteBuffer.allocate(table.capacity() * 2).put(table.flip());
+        }
+
+        table.putLong(size).putInt(length).putInt(block.position());
+        writeFully(ByteBuffer.wrap(compressed, 0, length));
+        blockCount++;
+
+        if (block.capacity() > SegmentBlocks.BLOCK_SIZE) {
+            block = ByteBuffer.allocate(SegmentBlocks.BLOCK_SIZE);
+        } else {
+            block.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            size += channel.write(buffer);
+        }
+    }
+}
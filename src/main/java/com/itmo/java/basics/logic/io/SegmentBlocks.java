@@ -0,0 +1,142 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Таблица блоков сжатого сегмента ({@link SegmentFormat#V3}).
+ * Файл такого сегмента состоит из заголовка, блоков записей, сжатых {@link java.util.zip.Deflater},
+ * таблицы блоков (смещение в файле, сжатый и исходный размер каждого блока) и завершающих
+ * смещения таблицы и числа блоков. Запись целиком лежит в одном блоке
+ */
+public final class SegmentBlocks {
+
+    public static final int BLOCK_SIZE = 32 * 1024;
+
+    static final int ENTRY_SIZE = 16;
+    static final int FOOTER_SIZE = 12;
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private final long[] offsets;
+    private final int[] compressedSizes;
+    private final int[] sizes;
+
+    private SegmentBlocks(long[] offsets, int[] compressedSizes, int[] sizes) {
+        this.offsets = offsets;
+        this.compressedSizes = compressedSizes;
+        this.sizes = sizes;
+    }
+
+    /**
+     * Читает таблицу блоков из конца файла.
+     *
+     * @param channel канал сжатого сегмента, открытый на чтение
+     * @return таблица блоков
+     * @throws IOException если таблица повреждена
+     */
+    public static SegmentBlocks read(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        var footer = readFully(channel, fileSize - FOOTER_SIZE, FOOTER_SIZE);
+        long tableOffset = footer.getLong();
+        int count = footer.getInt();
+
+        if (count < 0 || tableOffset < 0 || tableOffset + (long) count * ENTRY_SIZE + FOOTER_SIZE != fileSize)
+            throw new CorruptedRecordException("Corrupted block table of compressed segment");
+
+        var table = readFully(channel, tableOffset, count * ENTRY_SIZE);
+        var offsets = new long[count];
+        var compressedSizes = new int[count];
+        var sizes = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            offsets[i] = table.getLong();
+            compressedSizes[i] = table.getInt();
+            sizes[i] = table.getInt();
+        }
+
+        return new SegmentBlocks(offsets, compressedSizes, sizes);
+    }
+
+    /**
+     * Собирает смещение записи в сжатом сегменте.
+     *
+     * @param block номер блока
+     * @param position смещение записи в распакованном блоке
+     * @return смещение записи, которое хранится в индексе сегмента
+     */
+    public static long offset(int block, int position) {
+        return (long) block << 32 | position;
+    }
+
+    /**
+     * @return номер блока, в котором лежит запись со смещением {@code offset}
+     */
+    public static int block(long offset) {
+        return (int) (offset >>> 32);
+    }
+
+    /**
+     * @return смещение записи внутри распакованного блока
+     */
+    public static int position(long offset) {
+        return (int) offset;
+    }
+
+    public int count() {
+        return offsets.length;
+    }
+
+    /**
+     * Читает и распаковывает блок.
+     *
+     * @param channel канал сжатого сегмента, открытый на чтение
+     * @param block номер блока
+     * @return распакованные записи блока
+     * @throws IOException если блок не удалось прочитать или распаковать
+     */
+    public byte[] inflate(FileChannel channel, int block) throws IOException {
+        var compressed = readFully(channel, offsets[block], compressedSizes[block]);
+        var result = new byte[sizes[block]];
+        var inflater = INFLATER.get();
+
+        try {
+            inflater.reset();
+            inflater.setInput(compressed.array(), 0, compressedSizes[block]);
+
+            int inflated = 0;
+            while (inflated < result.length && !inflater.finished()) {
+                int read = inflater.inflate(result, inflated, result.length - inflated);
+
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+
+                inflated += read;
+            }
+
+            if (inflated != result.length)
+                throw new CorruptedRecordException("Compressed block " + block + " is cut off");
+        } catch (DataFormatException e) {
+            throw new CorruptedRecordException("Compressed block " + block + " is corrupted: " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+        if (position < 0)
+            throw new CorruptedRecordException("Compressed segment is too short");
+
+        var buffer = ByteBuffer.allocate(size);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new CorruptedRecordException("Compressed segment is cut off at " + (position + buffer.position()));
+        }
+
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,219 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Фильтр Блума по ключам заполненного сегмента. Отвечает "ключа в сегменте точно нет" без обращения
+ * к индексу и диску. Хранится рядом с сегментом.
+ * <p>
+ * Формат файла: магическое число, версия, размер сегмента, число хеш-функций, число добавленных ключей,
+ * число слов битового массива, слова, в конце CRC32 всего файла.
+ */
+public final class SegmentBloomFilter {
+
+    public static final String SUFFIX = ".bloom";
+
+    private static final int MAGIC = 0x424C4F4D;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4;
+    private static final int CHECKSUM_SIZE = 8;
+    private static final int MAX_HASH_FUNCTIONS = 16;
+
+    private final long[] bits;
+    private final int hashFunctions;
+    private int keys;
+
+    private SegmentBloomFilter(long[] bits, int hashFunctions, int keys) {
+        this.bits = bits;
+        this.hashFunctions = hashFunctions;
+        this.keys = keys;
+    }
+
+    /**
+     * Создает пустой фильтр, размер которого подобран под число ключей и желаемую долю ложных срабатываний.
+     *
+     * @param expectedKeys ожидаемое число ключей
+     * @param falsePositiveRate желаемая доля ложных срабатываний, от 0 до 1
+     * @return пустой фильтр
+     */
+    public static SegmentBloomFilter create(int expectedKeys, double falsePositiveRate) {
+        int keys = Math.max(1, expectedKeys);
+        double bitCount = -keys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        int words = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, Math.ceil(bitCount / Long.SIZE)));
+        int hashFunctions = (int) Math.round((double) words * Long.SIZE / keys * Math.log(2));
+
+        return new SegmentBloomFilter(new long[words], Math.max(1, Math.min(MAX_HASH_FUNCTIONS, hashFunctions)), 0);
+    }
+
+    public void add(String key) {
+        long hash = hash(key);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        long bitCount = (long) bits.length * Long.SIZE;
+
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Integer.toUnsignedLong(first + i * second) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+
+        keys++;
+    }
+
+    /**
+     * @param key ключ
+     * @return {@code false}, если ключа в сегменте точно нет
+     */
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        long bitCount = (long) bits.length * Long.SIZE;
+
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Integer.toUnsignedLong(first + i * second) % bitCount;
+
+            if ((bits[(int) (bit >>> 6)] & 1L << bit) == 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return ожидаемая доля ложных срабатываний при текущем числе ключей
+     */
+    public double getFalsePositiveRate() {
+        double bitCount = (double) bits.length * Long.SIZE;
+        return Math.pow(1 - Math.exp(-hashFunctions * keys / bitCount), hashFunctions);
+    }
+
+    /**
+     * @return размер битового массива фильтра в байтах
+     */
+    public long getMemoryBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    /**
+     * @param segmentPath путь до сегмента
+     * @return путь до файла фильтра сегмента
+     */
+    public static Path pathFor(Path segmentPath) {
+        return segmentPath.resolveSibling(segmentPath.getFileName() + SUFFIX);
+    }
+
+    /**
+     * @param path путь до файла таблицы
+     * @return {@code true}, если файл является файлом фильтра
+     */
+    public static boolean isFilterFile(Path path) {
+        return path.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    /**
+     * Атомарно записывает фильтр сегмента.
+     *
+     * @param segmentPath путь до сегмента
+     * @param segmentSize размер сегмента
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    public void write(Path segmentPath, long segmentSize) throws IOException {
+        var buffer = ByteBuffer.allocate(HEADER_SIZE + bits.length * Long.BYTES + CHECKSUM_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(segmentSize).putInt(hashFunctions).putInt(keys).putInt(bits.length);
+
+        for (long word : bits) {
+            buffer.putLong(word);
+        }
+
+        var crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        buffer.flip();
+
+        var filterPath = pathFor(segmentPath);
+        var temp = filterPath.resolveSibling(filterPath.getFileName() + ".tmp");
+
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+
+        Files.move(temp, filterPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Читает фильтр сегмента.
+     *
+     * @param segmentPath путь до сегмента
+     * @param segmentSize текущий размер файла сегмента
+     * @return фильтр или {@link Optional#empty()}, если файла нет, он поврежден или относится к сегменту другого размера
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    public static Optional<SegmentBloomFilter> read(Path segmentPath, long segmentSize) throws IOException {
+        byte[] content;
+
+        try {
+            content = Files.readAllBytes(pathFor(segmentPath));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+
+        if (content.length < HEADER_SIZE + CHECKSUM_SIZE)
+            return Optional.empty();
+
+        var buffer = ByteBuffer.wrap(content);
+        var crc = new CRC32();
+        crc.update(content, 0, content.length - CHECKSUM_SIZE);
+
+        if (buffer.getLong(content.length - CHECKSUM_SIZE) != crc.getValue()
+                || buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION
+                || buffer.getLong() != segmentSize)
+            return Optional.empty();
+
+        int hashFunctions = buffer.getInt();
+        int keys = buffer.getInt();
+        int words = buffer.getInt();
+
+        if (hashFunctions < 1 || words < 1 || (long) words * Long.BYTES != content.length - HEADER_SIZE - CHECKSUM_SIZE)
+            return Optional.empty();
+
+        var bits = new long[words];
+        buffer.asLongBuffer().get(bits);
+
+        return Optional.of(new SegmentBloomFilter(bits, hashFunctions, keys));
+    }
+
+    /**
+     * 64-битный хеш символов ключа (FNV-1a с перемешиванием из MurmurHash3).
+     * Зависит только от содержимого строки, поэтому пригоден для сохраненных фильтров.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
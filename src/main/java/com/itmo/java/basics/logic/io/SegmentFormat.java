@@ -0,0 +1,113 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Версия формата файла сегмента. Файлы новых версий начинаются с заголовка (магическое число и номер версии),
+ * файлы без заголовка считаются записанными в исходном формате {@link #V1}
+ */
+public enum SegmentFormat {
+
+    /**
+     * Исходный формат: размер ключа, ключ, размер значения, значение
+     */
+    V1(1, 0, 0, false),
+
+    /**
+     * Заголовок файла, перед каждой записью - CRC32C ее остальных байтов
+     */
+    V2(2, 8, 4, false),
+
+    /**
+     * Записи формата {@link #V2}, сжатые блоками (см {@link SegmentBlocks}). Смещение записи в таком сегменте -
+     * номер блока и смещение внутри распакованного блока ({@link SegmentBlocks#offset(int, int)})
+     */
+    V3(3, 8, 4, true);
+
+    public static final SegmentFormat CURRENT = V2;
+
+    private static final int MAGIC = 0x5345474B;
+
+    private final int version;
+    private final int fileHeaderSize;
+    private final int checksumSize;
+    private final boolean compressed;
+
+    SegmentFormat(int version, int fileHeaderSize, int checksumSize, boolean compressed) {
+        this.version = version;
+        this.fileHeaderSize = fileHeaderSize;
+        this.checksumSize = checksumSize;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Определяет формат файла по его заголовку. Пустой файл считается файлом текущего формата без заголовка.
+     *
+     * @param channel канал, открытый на чтение
+     * @return формат файла
+     * @throws IOException если заголовок указывает на неизвестную версию
+     */
+    public static SegmentFormat detect(FileChannel channel) throws IOException {
+        if (channel.size() == 0)
+            return CURRENT;
+
+        if (channel.size() < CURRENT.fileHeaderSize)
+            return V1;
+
+        var header = ByteBuffer.allocate(CURRENT.fileHeaderSize);
+
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0)
+                return V1;
+        }
+
+        if (header.getInt(0) != MAGIC)
+            return V1;
+
+        int version = header.getInt(4);
+
+        for (var format : values()) {
+            if (format.version == version && format.fileHeaderSize > 0)
+                return format;
+        }
+
+        throw new IOException("Unsupported segment format version " + version);
+    }
+
+    /**
+     * @return заголовок файла, готовый к записи в канал
+     */
+    public ByteBuffer header() {
+        var header = ByteBuffer.allocate(fileHeaderSize);
+
+        if (fileHeaderSize > 0) {
+            header.putInt(MAGIC).putInt(version);
+        }
+
+        return header.flip();
+    }
+
+    public int getFileHeaderSize() {
+        return fileHeaderSize;
+    }
+
+    public boolean hasChecksums() {
+        return checksumSize > 0;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Возвращает размер заголовка записи (контрольная сумма, размеры ключа и значения вместе с ключом).
+     *
+     * @param keySize размер ключа в байтах
+     * @return смещение начала значения относительно начала записи
+     */
+    public int recordHeaderSize(int keySize) {
+        return checksumSize + DatabaseRecordCodec.INTEGER_SIZE + keySize + DatabaseRecordCodec.INTEGER_SIZE;
+    }
+}
@@ -0,0 +1,263 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+/**
+ * Файл-подсказка заполненного сегмента: ключи и смещения их последних записей без значений.
+ * Позволяет построить индекс сегмента при инициализации, не читая значения.
+ * <p>
+ * Формат: магическое число, версия, размер сегмента, количество записей,
+ * затем для каждой записи размер ключа, ключ, смещение, размер записи в сегменте и вид записи
+ * (значение, удаление или ссылка на blob-файл, за которым следует сама ссылка {@link BlobPointer}),
+ * в конце CRC32 всего файла. В файлах версии 2 вместо вида записи - признак удаления, ссылки на blob-файлы
+ * в них не отмечены. В файлах версии 1 нет и признака удаления, их записи читаются как не удаления.
+ */
+public final class SegmentHintFile {
+
+    public static final String SUFFIX = ".hint";
+
+    private static final int MAGIC = 0x48494E54;
+    private static final int VERSION = 3;
+    private static final int VERSION_WITHOUT_BLOB_POINTERS = 2;
+    private static final int VERSION_WITHOUT_REMOVED = 1;
+    private static final byte VALUE = 0;
+    private static final byte REMOVED = 1;
+    private static final byte BLOB_POINTER = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+    private static final int CHECKSUM_SIZE = 8;
+
+    private SegmentHintFile() {
+    }
+
+    /**
+     * Запись файла-подсказки
+     */
+    public static class Entry {
+        private final byte[] key;
+        private final long offset;
+        private final long recordSize;
+        private final boolean removed;
+        private final BlobPointer blobPointer;
+
+        public Entry(byte[] key, long offset, long recordSize, boolean removed) {
+            this(key, offset, recordSize, removed, null);
+        }
+
+        public Entry(byte[] key, long offset, long recordSize, boolean removed, BlobPointer blobPointer) {
+            this.key = key;
+            this.offset = offset;
+            this.recordSize = recordSize;
+            this.removed = removed;
+            this.blobPointer = blobPointer;
+        }
+
+        public byte[] getKey() {
+            return key;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getRecordSize() {
+            return recordSize;
+        }
+
+        /**
+         * @return является ли запись удалением ключа
+         */
+        public boolean isRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return ссылка на blob-файл, записанная вместо значения, или {@code null}
+         */
+        public BlobPointer getBlobPointer() {
+            return blobPointer;
+        }
+    }
+
+    public interface EntryConsumer {
+        void accept(byte[] key, long offset, long recordSize, boolean removed, BlobPointer blobPointer);
+    }
+
+    /**
+     * @param segmentPath путь до сегмента
+     * @return путь до файла-подсказки сегмента
+     */
+    public static Path pathFor(Path segmentPath) {
+        return segmentPath.resolveSibling(segmentPath.getFileName() + SUFFIX);
+    }
+
+    /**
+     * @param path путь до файла таблицы
+     * @return {@code true}, если файл является файлом-подсказкой
+     */
+    public static boolean isHintFile(Path path) {
+        return path.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    /**
+     * Атомарно записывает файл-подсказку сегмента.
+     *
+     * @param segmentPath путь до сегмента
+     * @param segmentSize размер сегмента
+     * @param entries последние записи каждого ключа сегмента
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    public static void write(Path segmentPath, long segmentSize, Collection<Entry> entries) throws IOException {
+        long size = HEADER_SIZE + CHECKSUM_SIZE;
+
+        for (var entry : entries) {
+            size += entrySize(entry);
+        }
+
+        var buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(segmentSize).putInt(entries.size());
+
+        for (var entry : entries) {
+            buffer.putInt(entry.key.length).put(entry.key).putLong(entry.offset).putLong(entry.recordSize);
+
+            if (entry.blobPointer != null) {
+                buffer.put(BLOB_POINTER).put(entry.blobPointer.encode());
+            } else {
+                buffer.put(entry.removed ? REMOVED : VALUE);
+            }
+        }
+
+        var crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        buffer.flip();
+
+        var hintPath = pathFor(segmentPath);
+        var temp = hintPath.resolveSibling(hintPath.getFileName() + ".tmp");
+
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+
+        Files.move(temp, hintPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Читает файл-подсказку сегмента. Записи передаются потребителю только после проверки всего файла.
+     *
+     * @param segmentPath путь до сегмента
+     * @param segmentSize текущий размер файла сегмента
+     * @param consumer потребитель записей
+     * @return {@code false}, если файла нет, он поврежден или относится к сегменту другого размера
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    public static boolean read(Path segmentPath, long segmentSize, EntryConsumer consumer) throws IOException {
+        return read(segmentPath, segmentSize, false, consumer);
+    }
+
+    /**
+     * Читает файл-подсказку сегмента, см {@link #read(Path, long, EntryConsumer)}.
+     *
+     * @param blobPointers нужны ли ссылки на blob-файлы: файлы прежних версий, в которых ссылки не отмечены,
+     * тогда не читаются
+     * @return {@code false}, если файла нет, он поврежден, относится к сегменту другого размера
+     * или в нем не отмечены нужные ссылки на blob-файлы
+     */
+    public static boolean read(Path segmentPath, long segmentSize, boolean blobPointers, EntryConsumer consumer)
+            throws IOException {
+        byte[] content;
+
+        try {
+            content = Files.readAllBytes(pathFor(segmentPath));
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        if (content.length < HEADER_SIZE + CHECKSUM_SIZE)
+            return false;
+
+        var buffer = ByteBuffer.wrap(content);
+        var crc = new CRC32();
+        crc.update(content, 0, content.length - CHECKSUM_SIZE);
+
+        if (buffer.getLong(content.length - CHECKSUM_SIZE) != crc.getValue()
+                || buffer.getInt() != MAGIC)
+            return false;
+
+        int version = buffer.getInt();
+
+        if (version != VERSION && version != VERSION_WITHOUT_BLOB_POINTERS && version != VERSION_WITHOUT_REMOVED
+                || blobPointers && version != VERSION
+                || buffer.getLong() != segmentSize)
+            return false;
+
+        int count = buffer.getInt();
+        buffer.limit(content.length - CHECKSUM_SIZE);
+
+        if (!isConsistent(buffer.duplicate(), count, version))
+            return false;
+
+        for (int i = 0; i < count; i++) {
+            var key = new byte[buffer.getInt()];
+            buffer.get(key);
+            long offset = buffer.getLong();
+            long recordSize = buffer.getLong();
+            byte kind = version != VERSION_WITHOUT_REMOVED ? buffer.get() : VALUE;
+            var blobPointer = kind == BLOB_POINTER ? readPointer(buffer) : null;
+            consumer.accept(key, offset, recordSize, kind == REMOVED, blobPointer);
+        }
+
+        return true;
+    }
+
+    private static BlobPointer readPointer(ByteBuffer buffer) {
+        var pointer = BlobPointer.decode(buffer, buffer.position());
+        buffer.position(buffer.position() + BlobPointer.SIZE);
+        return pointer;
+    }
+
+    private static int entrySize(Entry entry) {
+        return 4 + entry.key.length + 8 + 8 + 1 + (entry.blobPointer != null ? BlobPointer.SIZE : 0);
+    }
+
+    private static boolean isConsistent(ByteBuffer entries, int count, int version) {
+        try {
+            for (int i = 0; i < count; i++) {
+                int keySize = entries.getInt();
+
+                if (keySize < 0)
+                    return false;
+
+                entries.position(entries.position() + keySize + 8 + 8);
+
+                if (version == VERSION_WITHOUT_REMOVED)
+                    continue;
+
+                byte kind = entries.get();
+
+                if (kind == BLOB_POINTER && version == VERSION) {
+                    entries.position(entries.position() + BlobPointer.SIZE);
+                } else if (kind != VALUE && kind != REMOVED) {
+                    return false;
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return false;
+        }
+
+        return !entries.hasRemaining();
+    }
+}
@@ -0,0 +1,374 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Последовательно читает записи сегмента (см {@link DatabaseRecordCodec}) крупными блоками через {@link FileChannel}.
+ * Заголовки записей разбираются прямо в буфере, а значение копируется только по запросу {@link #value()},
+ * иначе пропускается без чтения. Формат определяется по заголовку файла ({@link SegmentFormat#detect(FileChannel)}).
+ * Сжатые сегменты ({@link SegmentFormat#V3}) читаются по одному распакованному блоку.
+ * В режиме проверки каждая запись сверяется со своей контрольной суммой. Экземпляр не потокобезопасен.
+ */
+public final class SegmentScanner implements Closeable {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<>();
+
+    private final FileChannel channel;
+    private final SegmentFormat format;
+    private final long limit;
+    private final CRC32C checksum;
+    private final SegmentBlocks blocks;
+    private int block = -1;
+    private ByteBuffer pooled;
+    private final ByteBuffer integer = ByteBuffer.allocate(DatabaseRecordCodec.INTEGER_SIZE);
+    private ByteBuffer buffer;
+    private long channelPosition;
+    private boolean endOfFile;
+
+    private long offset = -1;
+    private byte[] key = new byte[64];
+    private int keySize;
+    private int valueSize;
+    private int unreadValue;
+    private ByteBuffer verifyBuffer;
+
+    private SegmentScanner(FileChannel channel, long from, long limit, boolean verify) throws IOException {
+        this.channel = channel;
+        this.format = SegmentFormat.detect(channel);
+        this.limit = limit;
+        this.checksum = verify && format.hasChecksums() ? new CRC32C() : null;
+        this.channelPosition = Math.max(from, format.getFileHeaderSize());
+
+        if (format.isCompressed()) {
+            this.blocks = SegmentBlocks.read(channel);
+            this.buffer = ByteBuffer.allocate(0);
+            return;
+        }
+
+        this.blocks = null;
+        this.pooled = BUFFERS.get();
+
+        if (pooled == null) {
+            pooled = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+
+        BUFFERS.remove();
+        buffer = pooled.clear().flip();
+    }
+
+    /**
+     * Открывает сегмент для чтения с начала.
+     *
+     * @param path путь к файлу сегмента
+     * @param limit размер читаемой части файла
+     * @return сканер, стоящий перед первой записью
+     */
+    public static SegmentScanner open(Path path, long limit) throws IOException {
+        return open(path, limit, false);
+    }
+
+    /**
+     * Открывает сегмент для чтения с начала.
+     *
+     * @param path путь к файлу сегмента
+     * @param limit размер читаемой части файла
+     * @param verify сверять ли записи с контрольными суммами
+     * @return сканер, стоящий перед первой записью
+     */
+    public static SegmentScanner open(Path path, long limit, boolean verify) throws IOException {
+        return open(path, 0, limit, verify);
+    }
+
+    /**
+     * Открывает несжатый сегмент для чтения с указанного смещения. Сжатые сегменты всегда читаются с начала.
+     *
+     * @param path путь к файлу сегмента
+     * @param from смещение записи, с которой начинается чтение
+     * @param limit размер читаемой части файла
+     * @param verify сверять ли записи с контрольными суммами
+     * @return сканер, стоящий перед записью по смещению {@code from}
+     */
+    public static SegmentScanner open(Path path, long from, long limit, boolean verify) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            return new SegmentScanner(channel, from, limit, verify);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Переходит к следующей записи, пропуская непрочитанное значение текущей.
+     *
+     * @return {@code false}, если записей до конца читаемой части больше нет
+     * @throws CorruptedRecordException если запись оборвана или не совпадает с контрольной суммой
+     */
+    public boolean next() throws IOException {
+        skip(unreadValue);
+        unreadValue = 0;
+
+        if (blocks != null) {
+            while (!buffer.hasRemaining()) {
+                if (++block >= blocks.count())
+                    return false;
+
+                buffer = ByteBuffer.wrap(blocks.inflate(channel, block));
+            }
+
+            offset = SegmentBlocks.offset(block, buffer.position());
+        } else {
+            offset = channelPosition - buffer.remaining();
+
+            if (offset >= limit)
+                return false;
+        }
+
+        long available = blocks != null ? buffer.remaining() : limit - offset;
+
+        if (available < format.recordHeaderSize(0))
+            throw corrupted("record header is cut off");
+
+        int expectedChecksum = format.hasChecksums() ? readInt() : 0;
+        keySize = readInt();
+
+        if (keySize < 0 || available < format.recordHeaderSize(keySize))
+            throw corrupted("key size " + keySize);
+
+        if (key.length < keySize) {
+            key = new byte[Math.max(keySize, key.length * 2)];
+        }
+
+        readFully(key, keySize);
+        valueSize = readInt();
+
+        if (valueSize < DatabaseRecordCodec.BLOB_POINTER_SIZE || available < recordSize())
+            throw corrupted("value size " + valueSize);
+
+        unreadValue = DatabaseRecordCodec.payloadSize(valueSize);
+
+        if (checksum != null && expectedChecksum != computeChecksum())
+            throw corrupted("checksum mismatch");
+
+        return true;
+    }
+
+    /**
+     * @return формат читаемого сегмента
+     */
+    public SegmentFormat format() {
+        return format;
+    }
+
+    /**
+     * @return смещение текущей записи от начала сегмента, для сжатого сегмента - {@link SegmentBlocks#offset(int, int)}
+     */
+    public long offset() {
+        return offset;
+    }
+
+    /**
+     * @return размер текущей записи в байтах
+     */
+    public long recordSize() {
+        return format.recordHeaderSize(keySize) + (long) DatabaseRecordCodec.payloadSize(valueSize);
+    }
+
+    /**
+     * @return копию ключа текущей записи
+     */
+    public byte[] key() {
+        var result = new byte[keySize];
+        System.arraycopy(key, 0, result, 0, keySize);
+        return result;
+    }
+
+    /**
+     * @return ключ текущей записи в виде строки, без промежуточной копии байтов
+     */
+    public String keyString() {
+        return new String(key, 0, keySize, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return {@code false}, если текущая запись - удаление ключа
+     */
+    public boolean isValuePresented() {
+        return valueSize != DatabaseRecordCodec.REMOVED_OBJECT_SIZE;
+    }
+
+    /**
+     * @return {@code true}, если вместо значения текущей записи записана ссылка на blob-файл, см {@link BlobPointer}
+     */
+    public boolean isBlobPointer() {
+        return valueSize == DatabaseRecordCodec.BLOB_POINTER_SIZE;
+    }
+
+    /**
+     * Читает значение текущей записи. Может быть вызван один раз на запись.
+     *
+     * @return значение, закодированная ссылка на значение ({@link #isBlobPointer()})
+     * или {@code null}, если запись - удаление ключа
+     */
+    public byte[] value() throws IOException {
+        if (!isValuePresented())
+            return null;
+
+        int payloadSize = DatabaseRecordCodec.payloadSize(valueSize);
+
+        if (unreadValue != payloadSize)
+            throw new IllegalStateException("Value at offset " + offset + " is already read");
+
+        var value = new byte[payloadSize];
+        readFully(value, payloadSize);
+        unreadValue = 0;
+
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pooled != null) {
+            BUFFERS.set(pooled);
+            pooled = null;
+        }
+
+        buffer = null;
+
+        channel.close();
+    }
+
+    /**
+     * Считает контрольную сумму текущей записи, не сдвигая позицию чтения значения.
+     */
+    private int computeChecksum() throws IOException {
+        checksum.reset();
+        updateChecksum(keySize);
+        checksum.update(key, 0, keySize);
+        updateChecksum(valueSize);
+
+        if (unreadValue <= buffer.capacity()) {
+            if (buffer.remaining() < unreadValue) {
+                fill(unreadValue);
+            }
+
+            int bufferLimit = buffer.limit();
+            int position = buffer.position();
+            buffer.limit(position + unreadValue);
+            checksum.update(buffer);
+            buffer.limit(bufferLimit).position(position);
+        } else {
+            int position = buffer.position();
+            checksum.update(buffer);
+            buffer.position(position);
+
+            if (verifyBuffer == null) {
+                verifyBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+            }
+
+            long filePosition = channelPosition;
+            long rest = unreadValue - buffer.remaining();
+
+            while (rest > 0) {
+                verifyBuffer.clear().limit((int) Math.min(rest, verifyBuffer.capacity()));
+                int read = channel.read(verifyBuffer, filePosition);
+
+                if (read < 0)
+                    throw corrupted("value is cut off");
+
+                checksum.update(verifyBuffer.flip());
+                filePosition += read;
+                rest -= read;
+            }
+        }
+
+        return (int) checksum.getValue();
+    }
+
+    private void updateChecksum(int value) {
+        checksum.update(integer.clear().putInt(value).flip());
+    }
+
+    private CorruptedRecordException corrupted(String reason) {
+        return new CorruptedRecordException("Corrupted record at offset " + offset + ": " + reason);
+    }
+
+    private int readInt() throws IOException {
+        if (buffer.remaining() < DatabaseRecordCodec.INTEGER_SIZE) {
+            fill(DatabaseRecordCodec.INTEGER_SIZE);
+        }
+
+        return buffer.getInt();
+    }
+
+    private void readFully(byte[] destination, int length) throws IOException {
+        int copied = Math.min(length, buffer.remaining());
+        buffer.get(destination, 0, copied);
+
+        if (copied == length)
+            return;
+
+        if (length - copied < buffer.capacity()) {
+            fill(length - copied);
+            buffer.get(destination, copied, length - copied);
+            return;
+        }
+
+        var direct = ByteBuffer.wrap(destination, copied, length - copied);
+
+        while (direct.hasRemaining()) {
+            int read = channel.read(direct, channelPosition);
+
+            if (read < 0)
+                throw corrupted("segment ends inside record");
+
+            channelPosition += read;
+        }
+    }
+
+    private void skip(long length) {
+        if (length <= buffer.remaining()) {
+            buffer.position(buffer.position() + (int) length);
+            return;
+        }
+
+        channelPosition += length - buffer.remaining();
+        buffer.clear().flip();
+        endOfFile = false;
+    }
+
+    /**
+     * Дочитывает в буфер данные так, чтобы в нем осталось хотя бы {@code required} байтов.
+     */
+    private void fill(int required) throws IOException {
+        if (blocks != null)
+            throw corrupted("record crosses block boundary");
+
+        buffer.compact();
+
+        while (buffer.position() < required && !endOfFile) {
+            int read = channel.read(buffer, channelPosition);
+
+            if (read < 0) {
+                endOfFile = true;
+            } else {
+                channelPosition += read;
+            }
+        }
+
+        buffer.flip();
+
+        if (buffer.remaining() < required)
+            throw corrupted("segment ends inside record");
+    }
+}
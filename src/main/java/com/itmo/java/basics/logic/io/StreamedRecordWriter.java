@@ -0,0 +1,92 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Записывает запись формата {@link SegmentFormat#CURRENT}, значение которой читается из потока частями
+ * по {@link #CHUNK_SIZE} байтов. Значение не собирается в памяти целиком: контрольная сумма считается
+ * по ходу записи и дописывается в заголовок записи в конце. Запись пишется по заданному смещению
+ * без изменения позиции канала, поэтому в другие места файла одновременно можно писать.
+ */
+public final class StreamedRecordWriter {
+
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    private StreamedRecordWriter() {
+    }
+
+    /**
+     * Если поток закончился раньше или чтение из него не удалось, запись все равно дописывается: вместо
+     * непрочитанной части значения в ней остаются нули (непрочитанная часть файла не записывается и читается
+     * как нули), а контрольная сумма считается с ними. Так записи, идущие в файле после нее, остаются читаемыми.
+     *
+     * @param channel канал файла
+     * @param recordOffset смещение записи в файле
+     * @param key ключ записи
+     * @param value поток со значением
+     * @param valueSize размер значения
+     * @return смещение конца записи
+     * @throws EOFException если поток закончился раньше, чем было прочитано {@code valueSize} байтов
+     */
+    public static long write(FileChannel channel, long recordOffset, byte[] key, InputStream value, int valueSize)
+            throws IOException {
+        var checksum = new CRC32C();
+        var recordHeader = DatabaseRecordCodec.header(key, valueSize);
+
+        checksum.update(recordHeader.duplicate().position(DatabaseRecordCodec.CHECKSUM_SIZE));
+        long position = writeFully(channel, recordHeader, recordOffset);
+        long end = position + valueSize;
+
+        try {
+            var chunk = new byte[CHUNK_SIZE];
+
+            while (position < end) {
+                int read = value.read(chunk, 0, (int) Math.min(chunk.length, end - position));
+
+                if (read < 0)
+                    throw new EOFException("Value stream ended " + (end - position) + " bytes early");
+
+                checksum.update(chunk, 0, read);
+                position = writeFully(channel, ByteBuffer.wrap(chunk, 0, read), position);
+            }
+        } catch (IOException e) {
+            try {
+                updateWithZeros(checksum, end - position);
+                writeChecksum(channel, checksum, recordOffset);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        writeChecksum(channel, checksum, recordOffset);
+        return end;
+    }
+
+    private static void updateWithZeros(CRC32C checksum, long count) {
+        var zeros = new byte[(int) Math.min(CHUNK_SIZE, Math.max(0, count))];
+
+        for (long left = count; left > 0; left -= zeros.length) {
+            checksum.update(zeros, 0, (int) Math.min(zeros.length, left));
+        }
+    }
+
+    private static void writeChecksum(FileChannel channel, CRC32C checksum, long recordOffset) throws IOException {
+        writeFully(channel, ByteBuffer.allocate(DatabaseRecordCodec.CHECKSUM_SIZE)
+                .putInt((int) checksum.getValue())
+                .flip(), recordOffset);
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+
+        return position;
+    }
+}
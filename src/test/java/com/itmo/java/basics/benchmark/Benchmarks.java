@@ -0,0 +1,68 @@
+package com.itmo.java.basics.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+
+/**
+ * Общие части замеров. Замеры - обычные программы с методом {@code main}, тесты их не запускают:
+ * <pre>
+ * mvn -B test-compile
+ * java -cp target/classes:target/test-classes -Dbenchmark.threads=16 com.itmo.java.basics.benchmark.DurabilityBenchmark
+ * </pre>
+ * Параметры замеров задаются системными свойствами, значения по умолчанию подобраны для ноутбука.
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    static int intProperty(String name, int defaultValue) {
+        return Integer.getInteger("benchmark." + name, defaultValue);
+    }
+
+    static Path createDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix);
+    }
+
+    /**
+     * Рекурсивно удаляет каталог замера. Файлы, которые фоновые задачи дописывают после закрытия базы,
+     * удаляются следующей попыткой.
+     */
+    static void delete(Path directory) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try (var walk = Files.walk(directory)) {
+                var files = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+
+                for (var file : files) {
+                    Files.deleteIfExists(file);
+                }
+                return;
+            } catch (IOException | UncheckedIOException e) {
+                if (attempt == 10)
+                    throw e;
+
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    static long directorySize(Path directory) throws IOException {
+        try (var files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .mapToLong(file -> file.toFile().length())
+                    .sum();
+        }
+    }
+
+    static double perSecond(long operations, long nanos) {
+        return operations * 1e9 / nanos;
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
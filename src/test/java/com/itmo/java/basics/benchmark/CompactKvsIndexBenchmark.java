@@ -0,0 +1,177 @@
+package com.itmo.java.basics.benchmark;
+
+import com.itmo.java.basics.index.RecordLocation;
+import com.itmo.java.basics.index.impl.MapBasedKvsIndex;
+import com.itmo.java.basics.index.impl.RecordLocationImpl;
+import com.itmo.java.basics.index.impl.TableIndex;
+
+import java.util.Random;
+
+/**
+ * Сравнение {@link TableIndex} с индексом на {@link MapBasedKvsIndex}, который он заменил:
+ * время заполнения, поиска существующих и отсутствующих ключей и занятая индексом память.
+ * Память считается по занятой куче после сборки мусора, ключи, по которым индекс заполнялся, к этому моменту
+ * уже не достижимы, поэтому учитываются только строки, которые хранит сам индекс.
+ * <p>
+ * Свойства: {@code benchmark.keys} - число ключей, {@code benchmark.rounds} - число замеров каждого индекса,
+ * первый замер прогревочный и не печатается.
+ */
+public class CompactKvsIndexBenchmark {
+
+    public static void main(String[] args) {
+        int keys = Benchmarks.intProperty("keys", 1_000_000);
+        int rounds = Benchmarks.intProperty("rounds", 3);
+
+        System.out.printf("keys=%,d%n", keys);
+
+        for (int round = 0; round <= rounds; round++) {
+            var compact = measure(new CompactIndex(), keys);
+            var map = measure(new MapIndex(), keys);
+
+            if (round > 0) {
+                System.out.printf("round %d: %s%n         %s%n", round, compact, map);
+            }
+        }
+    }
+
+    private static Result measure(Index index, int count) {
+        var lookups = shuffle(keys("key-", count));
+        var misses = shuffle(keys("missing-", count));
+        long heapBefore = usedHeap();
+
+        long start = System.nanoTime();
+        var inserted = keys("key-", count);
+        for (int i = 0; i < count; i++) {
+            index.put(inserted[i], i);
+        }
+        long put = System.nanoTime() - start;
+        inserted = null;
+
+        long heap = usedHeap() - heapBefore;
+
+        start = System.nanoTime();
+        int found = 0;
+        for (var key : lookups) {
+            found += index.contains(key) ? 1 : 0;
+        }
+        long hits = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (var key : misses) {
+            found += index.contains(key) ? 1 : 0;
+        }
+        long missed = System.nanoTime() - start;
+
+        if (found != count)
+            throw new IllegalStateException("Expected " + count + " keys, found " + found);
+
+        return new Result(index.name(), count, put, hits, missed, heap);
+    }
+
+    private static String[] keys(String prefix, int count) {
+        var keys = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            keys[i] = prefix + i;
+        }
+
+        return keys;
+    }
+
+    /**
+     * Ключи ищутся в случайном порядке: иначе узлы карты, созданные подряд, читаются подряд из кэша процессора
+     */
+    private static String[] shuffle(String[] keys) {
+        var random = new Random(42);
+
+        for (int i = keys.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            var key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+
+        return keys;
+    }
+
+    private static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private interface Index {
+        String name();
+
+        void put(String key, int i);
+
+        boolean contains(String key);
+    }
+
+    private static final class CompactIndex implements Index {
+        private final TableIndex index = new TableIndex();
+
+        @Override
+        public String name() {
+            return "compact";
+        }
+
+        @Override
+        public void put(String key, int i) {
+            index.put(key, i % 16, i * 100L, 100);
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return index.entryOf(key) >= 0;
+        }
+    }
+
+    private static final class MapIndex implements Index {
+        private final MapBasedKvsIndex<String, RecordLocation> index = new MapBasedKvsIndex<>();
+
+        @Override
+        public String name() {
+            return "map";
+        }
+
+        @Override
+        public void put(String key, int i) {
+            index.onIndexedEntityUpdated(key, new RecordLocationImpl(i % 16, i * 100L, 100));
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return index.searchForKey(key).isPresent();
+        }
+    }
+
+    private static final class Result {
+        private final String name;
+        private final int count;
+        private final long put;
+        private final long hits;
+        private final long misses;
+        private final long heap;
+
+        Result(String name, int count, long put, long hits, long misses, long heap) {
+            this.name = name;
+            this.count = count;
+            this.put = put;
+            this.hits = hits;
+            this.misses = misses;
+            this.heap = heap;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s put %,12.0f ops/s, get %,12.0f ops/s, miss %,12.0f ops/s, heap %,6.1f MB",
+                    name, Benchmarks.perSecond(count, put), Benchmarks.perSecond(count, hits),
+                    Benchmarks.perSecond(count, misses), heap / 1024.0 / 1024.0);
+        }
+    }
+}
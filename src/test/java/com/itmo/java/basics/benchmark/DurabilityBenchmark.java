@@ -0,0 +1,94 @@
+package com.itmo.java.basics.benchmark;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.config.DurabilityPolicy;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.impl.DatabaseImpl;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пропускная способность записи для каждой {@link DurabilityPolicy}: несколько потоков пишут в одну таблицу,
+ * при {@link DurabilityPolicy#EVERY_WRITE} их записи объединяются в общий сброс на диск.
+ * <p>
+ * Свойства: {@code benchmark.threads} - число пишущих потоков, {@code benchmark.seconds} - длительность замера
+ * одной политики, {@code benchmark.valueBytes} - размер значения.
+ */
+public class DurabilityBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = Benchmarks.intProperty("threads", 8);
+        int seconds = Benchmarks.intProperty("seconds", 5);
+        int valueBytes = Benchmarks.intProperty("valueBytes", 100);
+
+        System.out.printf("threads=%d, value=%d bytes%n", threads, valueBytes);
+
+        for (var policy : DurabilityPolicy.values()) {
+            var result = measure(policy, threads, seconds, valueBytes);
+            System.out.printf("%-12s %,12.0f ops/s%n", policy, result);
+        }
+    }
+
+    private static double measure(DurabilityPolicy policy, int threads, int seconds, int valueBytes) throws Exception {
+        var root = Benchmarks.createDirectory("durability");
+
+        try {
+            var config = DatabaseConfig.builder()
+                    .workingPath(root.toString())
+                    .durabilityPolicy(policy)
+                    .build();
+            var database = DatabaseImpl.create("benchmark", root, new DatabaseResources(config));
+            database.createTableIfNotExists("table");
+
+            var operations = new AtomicLong();
+            var start = new CountDownLatch(1);
+            var workers = new ArrayList<Thread>();
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+            for (int i = 0; i < threads; i++) {
+                int worker = i;
+                var thread = new Thread(() -> write(database, worker, valueBytes, deadline, start, operations));
+                thread.start();
+                workers.add(thread);
+            }
+
+            long began = System.nanoTime();
+            start.countDown();
+
+            for (var thread : workers) {
+                thread.join();
+            }
+
+            double result = Benchmarks.perSecond(operations.get(), System.nanoTime() - began);
+            database.close();
+            return result;
+        } finally {
+            Benchmarks.delete(root);
+        }
+    }
+
+    private static void write(Database database, int worker, int valueBytes, long deadline, CountDownLatch start,
+                              AtomicLong operations) {
+        var value = new byte[valueBytes];
+        long written = 0;
+
+        try {
+            start.await();
+
+            while (System.nanoTime() < deadline) {
+                database.write("table", "key-" + worker + "-" + written % 10_000, value);
+                written++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (DatabaseException e) {
+            throw new IllegalStateException(e);
+        }
+
+        operations.addAndGet(written);
+    }
+}
@@ -0,0 +1,114 @@
+package com.itmo.java.basics.benchmark;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.impl.DatabaseImpl;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Запросы по диапазону с упорядоченным индексом ключей и без него, когда страница собирается полным проходом
+ * по таблице. Обе таблицы заполняются одинаково, затем в каждой запрашиваются страницы со случайного ключа.
+ * <p>
+ * Свойства: {@code benchmark.keys} - число ключей, {@code benchmark.valueBytes} - размер значения,
+ * {@code benchmark.limit} - размер страницы, {@code benchmark.queries} - число запросов в замере,
+ * {@code benchmark.rounds} - число замеров каждого способа.
+ */
+public class RangeBenchmark {
+
+    private static final String ORDERED = "ordered";
+    private static final String SCANNED = "scanned";
+
+    public static void main(String[] args) throws Exception {
+        int keys = Benchmarks.intProperty("keys", 100_000);
+        int valueBytes = Benchmarks.intProperty("valueBytes", 100);
+        int limit = Benchmarks.intProperty("limit", 100);
+        int queries = Benchmarks.intProperty("queries", 200);
+        int rounds = Benchmarks.intProperty("rounds", 3);
+
+        var root = Benchmarks.createDirectory("range");
+
+        try {
+            var config = DatabaseConfig.builder()
+                    .workingPath(root.toString())
+                    .orderedIndexTables(Set.of(ORDERED))
+                    .build();
+            var database = DatabaseImpl.create("benchmark", root, new DatabaseResources(config));
+
+            try {
+                fill(database, ORDERED, keys, valueBytes);
+                fill(database, SCANNED, keys, valueBytes);
+                System.out.printf("keys=%,d, value=%d bytes, limit=%d, queries=%d%n", keys, valueBytes, limit, queries);
+
+                for (int round = 0; round < rounds; round++) {
+                    long ordered = query(database, ORDERED, keys, limit, queries);
+                    long scanned = query(database, SCANNED, keys, limit, queries);
+
+                    System.out.printf("round %d: ordered index %,10.0f pages/s, full scan %,10.0f pages/s%n", round,
+                            Benchmarks.perSecond(queries, ordered), Benchmarks.perSecond(queries, scanned));
+                }
+            } finally {
+                database.close();
+            }
+        } finally {
+            Benchmarks.delete(root);
+        }
+    }
+
+    private static void fill(Database database, String table, int keys, int valueBytes) throws DatabaseException {
+        database.createTableIfNotExists(table);
+
+        var value = new byte[valueBytes];
+        var batch = new HashMap<String, byte[]>();
+
+        for (int i = 0; i < keys; i++) {
+            batch.put(key(i), value);
+
+            if (batch.size() == 1000) {
+                database.writeBatch(table, batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            database.writeBatch(table, batch);
+        }
+    }
+
+    /**
+     * @return время запросов в наносекундах
+     */
+    private static long query(Database database, String table, int keys, int limit, int queries)
+            throws DatabaseException {
+        var random = new Random(42);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < queries; i++) {
+            int from = random.nextInt(keys);
+            int expected = Math.min(limit, keys - from);
+            int found = 0;
+
+            try (var page = database.range(table, key(from), null, limit)) {
+                while (page.next()) {
+                    found++;
+                }
+            }
+
+            if (found != expected)
+                throw new IllegalStateException("Expected " + expected + " keys in " + table + ", found " + found);
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Номер дополнен нулями, чтобы порядок ключей совпадал с порядком номеров
+     */
+    private static String key(int i) {
+        return String.format("key-%08d", i);
+    }
+}
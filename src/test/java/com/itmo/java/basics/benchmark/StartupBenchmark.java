@@ -0,0 +1,165 @@
+package com.itmo.java.basics.benchmark;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.console.impl.ExecutionEnvironmentImpl;
+import com.itmo.java.basics.initialization.impl.DatabaseInitializer;
+import com.itmo.java.basics.initialization.impl.DatabaseServerInitializer;
+import com.itmo.java.basics.initialization.impl.InitializationContextImpl;
+import com.itmo.java.basics.initialization.impl.SegmentInitializer;
+import com.itmo.java.basics.initialization.impl.TableInitializer;
+import com.itmo.java.basics.logic.impl.DatabaseImpl;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Время инициализации таблицы по файлам-подсказкам сегментов и полным чтением сегментов.
+ * Таблица заполняется один раз, затем инициализируется по очереди с подсказками и без них
+ * (на время запуска без подсказок они переносятся в отдельный каталог). Файлы таблицы к этому моменту обычно
+ * в кэше страниц, поэтому замер показывает разницу в разборе записей, а не в чтении с диска.
+ * <p>
+ * Свойства: {@code benchmark.keys} - число ключей, {@code benchmark.valueBytes} - размер значения,
+ * {@code benchmark.rounds} - число запусков каждого способа.
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int keys = Benchmarks.intProperty("keys", 1_000_000);
+        int valueBytes = Benchmarks.intProperty("valueBytes", 200);
+        int rounds = Benchmarks.intProperty("rounds", 3);
+
+        var root = Benchmarks.createDirectory("startup");
+        var table = root.resolve("benchmark").resolve("table");
+        var hidden = Benchmarks.createDirectory("startup-hints");
+
+        try {
+            var config = DatabaseConfig.builder()
+                    .workingPath(root.toString())
+                    .compactionThreshold(0)
+                    .build();
+
+            fill(root, config, keys, valueBytes);
+            System.out.printf("keys=%,d, value=%d bytes, table=%,d bytes%n", keys, valueBytes,
+                    Benchmarks.directorySize(root));
+
+            for (int round = 0; round < rounds; round++) {
+                long hinted = initialize(config);
+                awaitBackgroundWrites(table);
+                moveHints(table, hidden);
+                long scanned = initialize(config);
+                awaitBackgroundWrites(table);
+                moveHints(hidden, table);
+
+                System.out.printf("round %d: hints %8.1f ms, full scan %8.1f ms%n", round,
+                        Benchmarks.millis(hinted), Benchmarks.millis(scanned));
+            }
+        } finally {
+            Benchmarks.delete(root);
+            Benchmarks.delete(hidden);
+        }
+    }
+
+    private static void fill(Path root, DatabaseConfig config, int keys, int valueBytes) throws Exception {
+        var database = DatabaseImpl.create("benchmark", root, new DatabaseResources(config));
+        database.createTableIfNotExists("table");
+
+        var value = new byte[valueBytes];
+        var batch = new HashMap<String, byte[]>();
+
+        for (int i = 0; i < keys; i++) {
+            batch.put("key-" + i, value);
+
+            if (batch.size() == 1000) {
+                database.writeBatch("table", batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            database.writeBatch("table", batch);
+        }
+
+        database.close();
+        writeHints(config);
+    }
+
+    /**
+     * @return время инициализации в наносекундах
+     */
+    private static long initialize(DatabaseConfig config) throws Exception {
+        var environment = new ExecutionEnvironmentImpl(config);
+        var initializer = new DatabaseServerInitializer(
+                new DatabaseInitializer(new TableInitializer(new SegmentInitializer())));
+
+        long start = System.nanoTime();
+        initializer.perform(InitializationContextImpl.builder().executionEnvironment(environment).build());
+        long elapsed = System.nanoTime() - start;
+
+        environment.getDatabase("benchmark").orElseThrow().close();
+        return elapsed;
+    }
+
+    /**
+     * Подсказки и фильтры заполненных сегментов пишутся в фоне, в том числе после закрытия базы:
+     * ждет, пока они появятся у всех сегментов, кроме последнего
+     */
+    private static void writeHints(DatabaseConfig config) throws Exception {
+        var table = Path.of(config.getWorkingPath(), "benchmark", "table");
+
+        initialize(config);
+        awaitBackgroundWrites(table);
+        if (countMissingHints(table) > 1)
+            throw new IllegalStateException("Hint files were not written");
+    }
+
+    /**
+     * Ждет, пока фоновые задачи перестанут менять файлы таблицы
+     */
+    private static void awaitBackgroundWrites(Path table) throws Exception {
+        var previous = listFiles(table);
+
+        while (true) {
+            Thread.sleep(200);
+            var current = listFiles(table);
+
+            if (current.equals(previous) && current.keySet().stream().noneMatch(name -> name.endsWith(".tmp")))
+                return;
+
+            previous = current;
+        }
+    }
+
+    private static Map<String, Long> listFiles(Path table) throws Exception {
+        var result = new HashMap<String, Long>();
+
+        try (var files = Files.list(table)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                result.put(file.getFileName().toString(), file.toFile().length());
+            }
+        }
+
+        return result;
+    }
+
+    private static long countMissingHints(Path table) throws Exception {
+        var names = listFiles(table).keySet();
+
+        return names.stream()
+                .filter(name -> !name.contains("."))
+                .filter(segment -> !names.contains(segment + SegmentHintFile.SUFFIX))
+                .count();
+    }
+
+    private static void moveHints(Path from, Path to) throws Exception {
+        try (var files = Files.list(from)) {
+            for (var file : (Iterable<Path>) files.filter(SegmentHintFile::isHintFile)::iterator) {
+                Files.move(file, to.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.itmo.java.basics.config;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Сбросы на диск разных таблиц не ждут друг друга и фоновых задач планировщика, число их потоков ограничено,
+ * а закрытие ресурсов останавливает фоновые потоки.
+ */
+public class DatabaseResourcesTest {
+
+    private static final long INTERVAL_MILLIS = 5;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final DatabaseResources resources = new DatabaseResources(new DatabaseConfig(null));
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final List<ScheduledFuture<?>> flushes = new ArrayList<>();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        blocked.countDown();
+        flushes.forEach(resources::cancelFlush);
+        resources.close();
+        awaitNoFlushThreads();
+    }
+
+    @Test
+    public void slowFlushDoesNotDelayOtherFlushes() throws InterruptedException {
+        var slowStarted = new CountDownLatch(1);
+
+        flushes.add(resources.scheduleFlush(() -> {
+            slowStarted.countDown();
+            awaitBlocked();
+        }, INTERVAL_MILLIS));
+
+        assertTrue(slowStarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        for (int i = 0; i < 3; i++) {
+            var flushed = new CountDownLatch(3);
+            flushes.add(resources.scheduleFlush(flushed::countDown, INTERVAL_MILLIS));
+
+            assertTrue("Flush " + i + " waits for the slow flush", flushed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void busySchedulerDoesNotDelayFlushes() throws InterruptedException {
+        var taskStarted = new CountDownLatch(1);
+
+        resources.getScheduler().execute(() -> {
+            taskStarted.countDown();
+            awaitBlocked();
+        });
+
+        assertTrue(taskStarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        var flushed = new CountDownLatch(3);
+        flushes.add(resources.scheduleFlush(flushed::countDown, INTERVAL_MILLIS));
+
+        assertTrue("Flush waits for a background task", flushed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Потоков сброса не больше {@link DatabaseResources#FLUSH_THREADS}, сколько бы таблиц ни сбрасывалось
+     */
+    @Test
+    public void flushThreadsAreBounded() throws InterruptedException {
+        var flushed = new CountDownLatch(300);
+
+        for (int i = 0; i < 300; i++) {
+            var once = new CountDownLatch(1);
+            flushes.add(resources.scheduleFlush(() -> {
+                if (once.getCount() > 0) {
+                    once.countDown();
+                    flushed.countDown();
+                }
+            }, INTERVAL_MILLIS));
+        }
+
+        assertTrue(flushed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(DatabaseResources.FLUSH_THREADS, flushThreads());
+    }
+
+    @Test
+    public void closeStopsBackgroundThreads() throws Exception {
+        var flushed = new CountDownLatch(1);
+        flushes.add(resources.scheduleFlush(flushed::countDown, INTERVAL_MILLIS));
+        assertTrue(flushed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        var scheduler = resources.getScheduler();
+        var compaction = resources.getCompactionExecutor();
+        scheduler.submit(() -> { }).get();
+        compaction.submit(() -> { }).get();
+
+        resources.close();
+
+        assertTrue(scheduler.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(compaction.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        awaitNoFlushThreads();
+    }
+
+    /**
+     * Дожидается остановки потоков сброса, в том числе оставшихся от предыдущего теста
+     */
+    private static void awaitNoFlushThreads() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+        while (flushThreads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, flushThreads());
+    }
+
+    private static long flushThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.isAlive() && thread.getName().equals("database-flush"))
+                .count();
+    }
+
+    private void awaitBlocked() {
+        try {
+            blocked.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
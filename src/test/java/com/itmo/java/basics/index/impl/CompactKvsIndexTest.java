@@ -0,0 +1,241 @@
+package com.itmo.java.basics.index.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactKvsIndexTest {
+
+    /**
+     * Размер таблицы нового индекса, см {@code CompactKvsIndex#INITIAL_CAPACITY}
+     */
+    private static final int INITIAL_SLOTS = 64;
+
+    @Test
+    public void getReturnsLatestValue() {
+        var index = new TestIndex();
+
+        index.put("key", 1);
+        index.put("other", 2);
+        index.put("key", 3);
+
+        assertEquals(3, index.get("key"));
+        assertEquals(2, index.get("other"));
+        assertEquals(CompactKvsIndex.NO_VALUE, index.get("missing"));
+        assertEquals(2, index.size());
+    }
+
+    /**
+     * После удаления из середины цепочки коллизий остальные ключи цепочки сдвигаются назад и находятся
+     */
+    @Test
+    public void removeKeepsCollidingKeysReachable() {
+        var chain = collidingKeys(6);
+
+        for (int start = 0; start < chain.size(); start++) {
+            var index = new TestIndex();
+
+            for (int i = 0; i < chain.size(); i++) {
+                index.put(chain.get(i), i);
+            }
+
+            index.onIndexedEntityRemoved(chain.get(start));
+
+            for (int i = 0; i < chain.size(); i++) {
+                long expected = i == start ? CompactKvsIndex.NO_VALUE : i;
+                assertEquals("removed " + start + ", key " + i, expected, index.get(chain.get(i)));
+            }
+            assertEquals(chain.size() - 1, index.size());
+        }
+    }
+
+    /**
+     * Удаление ключа, чья цепочка пересекается с цепочкой соседнего слота, не должно сдвигать
+     * ключи соседней цепочки перед их домашним слотом
+     */
+    @Test
+    public void removeKeepsNeighbourChainsReachable() {
+        var first = collidingKeys(4, 10);
+        var second = collidingKeys(4, 12);
+        var index = new TestIndex();
+        var keys = new ArrayList<String>();
+        keys.addAll(first);
+        keys.addAll(second);
+
+        for (int i = 0; i < keys.size(); i++) {
+            index.put(keys.get(i), i);
+        }
+
+        index.onIndexedEntityRemoved(first.get(0));
+        index.onIndexedEntityRemoved(first.get(2));
+
+        for (int i = 0; i < keys.size(); i++) {
+            var key = keys.get(i);
+            long expected = key.equals(first.get(0)) || key.equals(first.get(2)) ? CompactKvsIndex.NO_VALUE : i;
+            assertEquals(key, expected, index.get(key));
+        }
+    }
+
+    @Test
+    public void removeMissingKeyDoesNothing() {
+        var index = new TestIndex();
+        index.put("key", 1);
+
+        index.onIndexedEntityRemoved("missing");
+
+        assertEquals(1, index.size());
+        assertEquals(1, index.get("key"));
+    }
+
+    @Test
+    public void growthKeepsAllKeys() {
+        var index = new TestIndex();
+        int count = 200_000;
+
+        for (int i = 0; i < count; i++) {
+            index.put("key-" + i, i);
+        }
+
+        assertEquals(count, index.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, index.get("key-" + i));
+        }
+    }
+
+    /**
+     * Записи удаленных ключей освобождаются перестроением таблицы, а не ее расширением:
+     * после ста перезаписей всех ключей индекс занимает несколько своих исходных размеров, а не сотню
+     */
+    @Test
+    public void churnDoesNotGrowIndex() {
+        var index = new TestIndex();
+
+        for (int i = 0; i < 1000; i++) {
+            index.put("key-" + i, i);
+        }
+        long heapBytes = index.estimateHeapBytes();
+
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 1000; i++) {
+                index.onIndexedEntityRemoved("key-" + i);
+                index.put("key-" + i, round);
+            }
+        }
+
+        assertEquals(1000, index.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(99, index.get("key-" + i));
+        }
+        assertTrue(index.estimateHeapBytes() <= 4 * heapBytes);
+    }
+
+    @Test
+    public void randomOperationsMatchHashMap() {
+        var random = new Random(42);
+        var index = new TestIndex();
+        var expected = new HashMap<String, Long>();
+
+        for (int i = 0; i < 500_000; i++) {
+            var key = "k" + random.nextInt(20_000);
+
+            if (random.nextInt(3) == 0) {
+                index.onIndexedEntityRemoved(key);
+                expected.remove(key);
+            } else {
+                index.put(key, i);
+                expected.put(key, (long) i);
+            }
+        }
+
+        assertEquals(expected.size(), index.size());
+        for (var entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), (long) entry.getValue(), index.get(entry.getKey()));
+        }
+
+        var keys = new HashSet<String>();
+        index.forEachKey(keys::add);
+        assertEquals(expected.keySet(), keys);
+    }
+
+    @Test
+    public void nonAsciiKeysAreComparedAsUtf8() {
+        var index = new TestIndex();
+        var keys = List.of("ключ", "κλειδί", "键", "🔑", "key\u0000", "key");
+
+        for (int i = 0; i < keys.size(); i++) {
+            index.put(keys.get(i), i);
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(keys.get(i), i, index.get(keys.get(i)));
+        }
+        assertEquals(CompactKvsIndex.NO_VALUE, index.get("ключи"));
+        assertEquals(CompactKvsIndex.NO_VALUE, index.get("клю"));
+
+        var read = new HashSet<String>();
+        index.forEachKey(read::add);
+        assertEquals(new HashSet<>(keys), read);
+    }
+
+    @Test
+    public void wideValuesSurviveGrowth() {
+        var index = new TableIndex();
+
+        for (int i = 0; i < 10_000; i++) {
+            index.put("key-" + i, i, i * 10L, i % 100);
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            int entry = index.entryOf("key-" + i);
+            assertEquals(i * 10L, index.valueAt(entry, 0));
+            assertEquals(i, index.segmentIdAt(entry));
+            assertEquals(i % 100, index.lengthAt(entry));
+        }
+    }
+
+    private static List<String> collidingKeys(int count) {
+        return collidingKeys(count, 0);
+    }
+
+    /**
+     * Подбирает ключи с одним домашним слотом в таблице нового индекса
+     */
+    private static List<String> collidingKeys(int count, int home) {
+        var keys = new ArrayList<String>();
+
+        for (int i = 0; keys.size() < count; i++) {
+            var key = "key-" + i;
+
+            if (homeSlot(key) == home) {
+                keys.add(key);
+            }
+        }
+
+        return keys;
+    }
+
+    private static int homeSlot(String key) {
+        int spread = key.hashCode() * 0x9E3779B9;
+        return (spread ^ (spread >>> 16)) & (INITIAL_SLOTS - 1);
+    }
+
+    private static final class TestIndex extends CompactKvsIndex<Long> {
+
+        @Override
+        public void onIndexedEntityUpdated(String key, Long value) {
+            put(key, value);
+        }
+
+        @Override
+        protected Long decode(int entry) {
+            return valueAt(entry, 0);
+        }
+    }
+}
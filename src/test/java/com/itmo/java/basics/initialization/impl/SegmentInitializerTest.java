@@ -0,0 +1,190 @@
+package com.itmo.java.basics.initialization.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.config.SegmentPolicy;
+import com.itmo.java.basics.console.impl.ExecutionEnvironmentImpl;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.impl.DatabaseImpl;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Восстановление после сбоя во время записи: оборванная последняя запись последнего сегмента отбрасывается,
+ * а оборванный закрытый сегмент считается повреждением.
+ */
+public class SegmentInitializerTest {
+
+    private static final int KEYS = 20;
+    private static final int VALUE_SIZE = 100;
+    private static final long HINT_TIMEOUT_MILLIS = 10_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DatabaseConfig config;
+    private Path table;
+
+    @Before
+    public void setUp() {
+        config = DatabaseConfig.builder()
+                .workingPath(folder.getRoot().toString())
+                .compactionThreshold(0)
+                .segmentPolicy(SegmentPolicy.builder().maxSegmentBytes(1024L).build())
+                .build();
+        table = folder.getRoot().toPath().resolve("database").resolve("table");
+    }
+
+    @Test
+    public void truncatesTornTailOfLastSegment() throws Exception {
+        fill();
+
+        var last = lastSegment();
+        long size = Files.size(last);
+        cutTail(last, 10);
+
+        var database = initialize();
+
+        try {
+            for (int i = 0; i < KEYS - 1; i++) {
+                assertArrayEquals(value(i), database.read("table", key(i)).orElseThrow());
+            }
+
+            assertFalse(database.read("table", key(KEYS - 1)).isPresent());
+            assertEquals(size - recordSize(KEYS - 1), Files.size(last));
+
+            database.write("table", "after", value(KEYS));
+        } finally {
+            database.close();
+        }
+
+        database = initialize();
+
+        try {
+            assertArrayEquals(value(KEYS), database.read("table", "after").orElseThrow());
+            assertArrayEquals(value(KEYS - 2), database.read("table", key(KEYS - 2)).orElseThrow());
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * Обрыв закрытого сегмента не может быть следствием сбоя во время записи, поэтому его записи не отбрасываются
+     */
+    @Test
+    public void failsOnTornTailOfSealedSegment() throws Exception {
+        fill();
+
+        var segments = segments();
+        assertTrue("Keys are written to a single segment", segments.size() > 2);
+
+        var sealed = segments.get(0);
+        awaitHint(sealed);
+        long size = Files.size(sealed);
+        cutTail(sealed, 10);
+
+        try {
+            initialize().close();
+            fail("Torn sealed segment is initialized");
+        } catch (DatabaseException e) {
+            // ожидаемо
+        }
+
+        assertEquals(size - 10, Files.size(sealed));
+    }
+
+    private void fill() throws DatabaseException {
+        var database = DatabaseImpl.create("database", folder.getRoot().toPath(), new DatabaseResources(config));
+
+        try {
+            database.createTableIfNotExists("table");
+
+            for (int i = 0; i < KEYS; i++) {
+                database.write("table", key(i), value(i));
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    private Database initialize() throws DatabaseException {
+        var environment = new ExecutionEnvironmentImpl(config);
+        var initializer = new DatabaseServerInitializer(
+                new DatabaseInitializer(new TableInitializer(new SegmentInitializer())));
+
+        initializer.perform(InitializationContextImpl.builder().executionEnvironment(environment).build());
+
+        return environment.getDatabase("database").orElseThrow();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (var files = Files.list(table)) {
+            return files.filter(file -> !file.getFileName().toString().contains("."))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path lastSegment() throws IOException {
+        var segments = segments();
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Подсказка закрытого сегмента пишется в фоне: ждет ее, чтобы она не появилась после порчи сегмента
+     */
+    private static void awaitHint(Path segment) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HINT_TIMEOUT_MILLIS);
+
+        while (Files.notExists(SegmentHintFile.pathFor(segment))) {
+            if (System.nanoTime() > deadline)
+                fail("Hint of " + segment + " is not written");
+
+            Thread.sleep(10);
+        }
+    }
+
+    private static void cutTail(Path segment, int bytes) throws IOException {
+        try (var channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - bytes);
+        }
+    }
+
+    /**
+     * @return размер записи ключа в сегменте: контрольная сумма, размеры ключа и значения, ключ и значение
+     */
+    private static int recordSize(int key) {
+        return 3 * Integer.BYTES + key(key).length() + VALUE_SIZE;
+    }
+
+    private static String key(int key) {
+        return "key-" + key;
+    }
+
+    private static byte[] value(int seed) {
+        var value = new byte[VALUE_SIZE];
+        var prefix = ("value-" + seed).getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(prefix, 0, value, 0, prefix.length);
+        return value;
+    }
+}
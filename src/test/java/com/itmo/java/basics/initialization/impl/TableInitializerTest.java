@@ -0,0 +1,188 @@
+package com.itmo.java.basics.initialization.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.config.SegmentPolicy;
+import com.itmo.java.basics.console.impl.ExecutionEnvironmentImpl;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.index.impl.TableIndex;
+import com.itmo.java.basics.logic.impl.TableImpl;
+import com.itmo.java.basics.logic.io.SegmentScanner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Параллельная загрузка сегментов таблицы: индекс таблицы указывает на последнюю запись ключа, хотя сегменты
+ * загружаются в произвольном порядке, а ошибка загрузки одного сегмента прерывает инициализацию таблицы.
+ */
+public class TableInitializerTest {
+
+    private static final int KEYS = 30;
+    private static final int ROUNDS = 10;
+    private static final int PARALLELISM = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DatabaseConfig config;
+    private Path table;
+    private ExecutionEnvironmentImpl environment;
+    private final Map<String, byte[]> expected = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        config = DatabaseConfig.builder()
+                .workingPath(folder.getRoot().toString())
+                .compactionThreshold(0)
+                .initializationParallelism(PARALLELISM)
+                .segmentPolicy(SegmentPolicy.builder().maxSegmentBytes(1024L).build())
+                .build();
+        table = folder.getRoot().toPath().resolve("database").resolve("table");
+        environment = new ExecutionEnvironmentImpl(config);
+    }
+
+    @After
+    public void tearDown() {
+        environment.close();
+    }
+
+    /**
+     * Каждый ключ перезаписан в нескольких сегментах, часть ключей удалена в последних сегментах
+     */
+    @Test
+    public void indexPointsToNewestSegment() throws Exception {
+        fill();
+
+        var segments = segments();
+        assertTrue("Keys are written to few segments: " + segments.size(), segments.size() > 2 * PARALLELISM);
+
+        var newest = newestSegments(segments);
+        var context = context();
+
+        new TableInitializer(new SegmentInitializer()).perform(context);
+
+        var tableContext = context.currentTableContext();
+        var index = tableContext.getTableIndex();
+        var loaded = context.currentDbContext().getTables().get("table");
+
+        try {
+            assertEquals(segments.size(), tableContext.getSegments().size());
+
+            for (int i = 0; i < KEYS; i++) {
+                int entry = index.entryOf(key(i));
+                var segment = tableContext.getSegments().get(index.segmentIdAt(entry));
+
+                assertEquals(key(i), newest.get(key(i)), segment.getName());
+                assertEquals(key(i), !expected.containsKey(key(i)), index.isRemovedAt(entry));
+
+                if (expected.containsKey(key(i))) {
+                    assertArrayEquals(key(i), expected.get(key(i)), loaded.read(key(i)).orElseThrow());
+                } else {
+                    assertFalse(key(i), loaded.read(key(i)).isPresent());
+                }
+            }
+        } finally {
+            loaded.close();
+        }
+    }
+
+    /**
+     * Вместо одного из сегментов лежит каталог, и его загрузка, выполняемая в пуле, сообщает об ошибке
+     */
+    @Test
+    public void failedSegmentFailsTable() throws Exception {
+        fill();
+
+        var segments = segments();
+        Files.createDirectory(table.resolve(segments.get(segments.size() / 2).getFileName() + "0"));
+
+        try {
+            new TableInitializer(new SegmentInitializer()).perform(context());
+            fail("Table with a broken segment is initialized");
+        } catch (DatabaseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("is not a segment file"));
+        }
+    }
+
+    private void fill() throws DatabaseException, IOException {
+        Files.createDirectories(table);
+        var resources = new DatabaseResources(config);
+        var tableImpl = new TableImpl("table", table, new TableIndex(), resources);
+
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = round % 3; i < KEYS; i += 1 + round % 3) {
+                    expected.put(key(i), value(i, round));
+                    tableImpl.write(key(i), expected.get(key(i)));
+                }
+            }
+
+            for (int i = 0; i < KEYS; i += 4) {
+                expected.remove(key(i));
+                tableImpl.delete(key(i));
+            }
+        } finally {
+            tableImpl.close();
+            resources.close();
+        }
+    }
+
+    private InitializationContextImpl context() {
+        return InitializationContextImpl.builder()
+                .executionEnvironment(environment)
+                .currentDatabaseContext(new DatabaseInitializationContextImpl("database", folder.getRoot().toPath()))
+                .currentTableContext(new TableInitializationContextImpl("table", table.getParent(), new TableIndex()))
+                .build();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (var files = Files.list(table)) {
+            return files.filter(file -> !file.getFileName().toString().contains("."))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return имя сегмента с последней записью каждого ключа, найденное последовательным чтением сегментов
+     */
+    private static Map<String, String> newestSegments(List<Path> segments) throws IOException {
+        var newest = new HashMap<String, String>();
+
+        for (var segment : segments) {
+            try (var scanner = SegmentScanner.open(segment, Files.size(segment))) {
+                while (scanner.next()) {
+                    newest.put(scanner.keyString(), segment.getFileName().toString());
+                }
+            }
+        }
+
+        return newest;
+    }
+
+    private static String key(int key) {
+        return "key-" + key;
+    }
+
+    private static byte[] value(int key, int round) {
+        return ("value-" + key + "-" + round + "-" + "x".repeat(60)).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,235 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.BlobPolicy;
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.console.impl.ExecutionEnvironmentImpl;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.initialization.impl.DatabaseInitializer;
+import com.itmo.java.basics.initialization.impl.DatabaseServerInitializer;
+import com.itmo.java.basics.initialization.impl.InitializationContextImpl;
+import com.itmo.java.basics.initialization.impl.SegmentInitializer;
+import com.itmo.java.basics.initialization.impl.TableInitializer;
+import com.itmo.java.basics.logic.Database;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Сборка мусора в blob-файлах: актуальные значения переносятся и читаются после перезапуска,
+ * а файл, из которого их не удалось перенести, не удаляется.
+ */
+public class BlobCollectorTest {
+
+    private static final int BLOB_SIZE = 1500;
+    private static final long MAX_BLOB_FILE_BYTES = 8192;
+    /**
+     * Столько значений {@link #BLOB_SIZE} помещается в один blob-файл
+     */
+    private static final int BLOBS_PER_FILE = 6;
+    private static final long COLLECTION_TIMEOUT_MILLIS = 30_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DatabaseConfig config;
+    private Path table;
+    private final Map<String, byte[]> expected = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        config = DatabaseConfig.builder()
+                .workingPath(folder.getRoot().toString())
+                .compactionThreshold(0)
+                .blobPolicy(BlobPolicy.builder()
+                        .minValueBytes(1000)
+                        .maxBlobFileBytes(MAX_BLOB_FILE_BYTES)
+                        .build())
+                .build();
+        table = folder.getRoot().toPath().resolve("database").resolve("table");
+    }
+
+    /**
+     * Большая часть значений перезаписывается маленькими, и файлы, в которых не осталось актуальных значений
+     * или их мало, удаляются, а оставшиеся значения переносятся
+     */
+    @Test
+    public void valuesSurviveCollectionAndReopen() throws Exception {
+        var database = create();
+        long written;
+
+        try {
+            for (int i = 0; i < 8 * BLOBS_PER_FILE; i++) {
+                write(database, i, blob(i));
+            }
+
+            written = blobBytes();
+
+            for (int i = 0; i < 8 * BLOBS_PER_FILE; i++) {
+                if (i % 8 != 0) {
+                    write(database, i, small(i));
+                }
+            }
+
+            await(() -> blobBytes() < written / 2);
+            assertValues(database);
+        } finally {
+            database.close();
+        }
+
+        database = initialize();
+
+        try {
+            assertValues(database);
+
+            write(database, 1, blob(-1));
+            assertValues(database);
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * Запись в blob-файле повреждена, поэтому сборка мусора не может перенести значения после нее.
+     * Ссылки на эти значения остаются, и файл не удаляется, хотя соседний файл с мусором удален
+     */
+    @Test
+    public void failedCollectionKeepsReferencedFile() throws Exception {
+        var database = create();
+        Path damaged;
+        Path collected;
+
+        try {
+            for (int i = 0; i < 3 * BLOBS_PER_FILE; i++) {
+                write(database, i, blob(i));
+            }
+
+            var files = blobFiles();
+            assertEquals(3, files.size());
+            damaged = files.get(0);
+            collected = files.get(1);
+
+            try (var channel = FileChannel.open(damaged, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{-1, -1, -1, -1}), 100);
+            }
+
+            for (int i = 0; i < 2 * BLOBS_PER_FILE; i++) {
+                if (i < BLOBS_PER_FILE - 2 || i >= BLOBS_PER_FILE) {
+                    write(database, i, small(i));
+                }
+            }
+
+            await(() -> Files.notExists(collected));
+            assertValues(database);
+        } finally {
+            database.close();
+        }
+
+        assertTrue(Files.exists(damaged));
+
+        database = initialize();
+
+        try {
+            assertValues(database);
+        } finally {
+            database.close();
+        }
+
+        assertTrue(Files.exists(damaged));
+    }
+
+    private Database create() throws DatabaseException {
+        var database = DatabaseImpl.create("database", folder.getRoot().toPath(), new DatabaseResources(config));
+        database.createTableIfNotExists("table");
+        return database;
+    }
+
+    private Database initialize() throws DatabaseException {
+        var environment = new ExecutionEnvironmentImpl(config);
+        var initializer = new DatabaseServerInitializer(
+                new DatabaseInitializer(new TableInitializer(new SegmentInitializer())));
+
+        initializer.perform(InitializationContextImpl.builder().executionEnvironment(environment).build());
+
+        return environment.getDatabase("database").orElseThrow();
+    }
+
+    private void write(Database database, int key, byte[] value) throws DatabaseException {
+        database.write("table", key(key), value);
+        expected.put(key(key), value);
+    }
+
+    private void assertValues(Database database) throws DatabaseException {
+        for (var entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), database.read("table", entry.getKey()).orElseThrow());
+        }
+    }
+
+    private List<Path> blobFiles() throws IOException {
+        try (var files = Files.list(table)) {
+            return files.filter(BlobLog::isBlobFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private long blobBytes() {
+        try {
+            long total = 0;
+
+            for (var file : blobFiles()) {
+                total += Files.size(file);
+            }
+
+            return total;
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COLLECTION_TIMEOUT_MILLIS);
+
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline)
+                fail("Blob files were never collected");
+
+            Thread.sleep(10);
+        }
+    }
+
+    private static String key(int key) {
+        return "key-" + key;
+    }
+
+    private static byte[] blob(int seed) {
+        var value = new byte[BLOB_SIZE];
+        Arrays.fill(value, (byte) seed);
+        return value;
+    }
+
+    private static byte[] small(int seed) {
+        return ("value-" + seed).getBytes(StandardCharsets.UTF_8);
+    }
+}
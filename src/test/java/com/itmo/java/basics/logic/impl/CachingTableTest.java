@@ -0,0 +1,260 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.index.impl.TableIndex;
+import com.itmo.java.basics.logic.Table;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Кэш значений таблицы: заполнение при чтении и записи и сброс при изменении ключа.
+ */
+public class CachingTableTest {
+
+    private static final int READERS = 8;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DatabaseResources resources;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        resources = new DatabaseResources(new DatabaseConfig(folder.getRoot().toString()));
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Запись {@code null} удаляет ключ и запоминает его отсутствие, а не кладет {@code null} в кэш значений
+     */
+    @Test
+    public void writingNullRemovesKey() throws Exception {
+        var path = folder.newFolder("database", "table").toPath();
+        var table = new CachingTable(new TableImpl("table", path, new TableIndex(), resources), resources, "db/table");
+
+        try {
+            table.write("key", value("first"));
+            assertArrayEquals(value("first"), table.read("key").orElseThrow());
+
+            table.write("key", null);
+
+            assertFalse(table.read("key").isPresent());
+            assertEquals(0, table.getCacheStats().getCachedBytes());
+
+            table.write("key", value("second"));
+            assertArrayEquals(value("second"), table.read("key").orElseThrow());
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    public void batchWithNullValueRemembersAbsentKey() throws Exception {
+        var origin = mock(Table.class);
+        var table = new CachingTable(origin, resources, "db/table");
+        var entries = new HashMap<String, byte[]>();
+        entries.put("kept", value("kept"));
+        entries.put("removed", null);
+
+        table.writeBatch(entries);
+
+        assertArrayEquals(value("kept"), table.read("kept").orElseThrow());
+        assertFalse(table.read("removed").isPresent());
+        verify(origin, never()).read(anyString());
+    }
+
+    @Test
+    public void readFillsCache() throws Exception {
+        var origin = mock(Table.class);
+        when(origin.read("key")).thenReturn(Optional.of(value("value")));
+        when(origin.read("missing")).thenReturn(Optional.empty());
+        var table = new CachingTable(origin, resources, "db/table");
+
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(value("value"), table.read("key").orElseThrow());
+            assertFalse(table.read("missing").isPresent());
+        }
+
+        verify(origin, times(1)).read("key");
+        verify(origin, times(1)).read("missing");
+    }
+
+    /**
+     * Одновременные промахи по одному ключу дожидаются одного чтения таблицы
+     */
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        var origin = mock(Table.class);
+        var loads = new AtomicInteger();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(origin.read("key")).thenAnswer(invocation -> {
+            loads.incrementAndGet();
+            started.countDown();
+            assertTrue(release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            return Optional.of(value("value"));
+        });
+        var table = new CachingTable(origin, resources, "db/table");
+
+        var reads = new ArrayList<Future<Optional<byte[]>>>();
+
+        for (int i = 0; i < READERS; i++) {
+            reads.add(executor.submit(() -> table.read("key")));
+        }
+
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        release.countDown();
+
+        for (var read : reads) {
+            assertArrayEquals(value("value"), read.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).orElseThrow());
+        }
+
+        assertArrayEquals(value("value"), table.read("key").orElseThrow());
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * Значение, прочитанное до записи ключа, не попадает в кэш после нее
+     */
+    @Test
+    public void writeDuringLoadLeavesNoStaleValue() throws Exception {
+        var origin = mock(Table.class);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(origin.read("key")).thenAnswer(invocation -> {
+            started.countDown();
+            assertTrue(release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            return Optional.of(value("old"));
+        });
+        var table = new CachingTable(origin, resources, "db/table");
+
+        var read = executor.submit(() -> table.read("key"));
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        table.write("key", value("new"));
+        release.countDown();
+
+        assertArrayEquals(value("old"), read.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).orElseThrow());
+        assertArrayEquals(value("new"), table.read("key").orElseThrow());
+        assertArrayEquals(value("new"), table.readMany(List.of("key")).get("key"));
+    }
+
+    /**
+     * Запомненное отсутствие ключа сбрасывается любой последующей записью ключа
+     */
+    @Test
+    public void writeInvalidatesAbsentKey() throws Exception {
+        var origin = mock(Table.class);
+        when(origin.read(anyString())).thenReturn(Optional.empty());
+        var table = new CachingTable(origin, resources, "db/table");
+
+        for (var key : new String[]{"single", "batch", "stream"}) {
+            assertFalse(table.read(key).isPresent());
+            assertFalse(table.read(key).isPresent());
+        }
+
+        verify(origin, times(3)).read(anyString());
+
+        table.write("single", value("single"));
+        table.writeBatch(Map.of("batch", value("batch")));
+        table.write("stream", new ByteArrayInputStream(value("stream")), 6);
+
+        when(origin.read("stream")).thenReturn(Optional.of(value("stream")));
+
+        assertArrayEquals(value("single"), table.read("single").orElseThrow());
+        assertArrayEquals(value("batch"), table.read("batch").orElseThrow());
+        assertArrayEquals(value("stream"), table.read("stream").orElseThrow());
+        verify(origin).write(any(String.class), any(InputStream.class), anyLong());
+    }
+
+    /**
+     * Таблицы окружения делят один кэш, но одинаковые ключи разных таблиц не пересекаются,
+     * а обращения к кэшу одной таблицы не попадают в статистику другой
+     */
+    @Test
+    public void tablesOfSharedCacheAreIsolated() throws Exception {
+        var database = DatabaseImpl.create("database", folder.getRoot().toPath(), resources);
+
+        try {
+            database.createTableIfNotExists("first");
+            database.createTableIfNotExists("second");
+
+            database.write("first", "key", value("first"));
+            database.write("second", "key", value("second"));
+            database.write("first", "removed", value("first"));
+            database.write("second", "removed", value("second"));
+            database.write("first", "removed", null);
+
+            for (int i = 0; i < 3; i++) {
+                assertArrayEquals(value("first"), database.read("first", "key").orElseThrow());
+            }
+
+            assertArrayEquals(value("second"), database.read("second", "key").orElseThrow());
+            assertFalse(database.read("first", "removed").isPresent());
+            assertArrayEquals(value("second"), database.read("second", "removed").orElseThrow());
+
+            var first = stats("database/first");
+            var second = stats("database/second");
+
+            assertEquals(3, first.getHitCount());
+            assertEquals(1, first.getMissCount());
+            assertEquals(2, second.getHitCount());
+            assertEquals(0, second.getMissCount());
+            assertTrue(first.getCachedBytes() > 0);
+            assertEquals(resources.getValueCache().getCachedBytes(), first.getCachedBytes() + second.getCachedBytes());
+        } finally {
+            database.close();
+        }
+    }
+
+    private CacheStats stats(String name) {
+        return resources.getValueCache().getStatistics().stream()
+                .filter(stats -> stats.getName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static byte[] value(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,321 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.config.SegmentPolicy;
+import com.itmo.java.basics.console.impl.ExecutionEnvironmentImpl;
+import com.itmo.java.basics.index.impl.TableIndex;
+import com.itmo.java.basics.initialization.impl.DatabaseInitializer;
+import com.itmo.java.basics.initialization.impl.DatabaseServerInitializer;
+import com.itmo.java.basics.initialization.impl.InitializationContextImpl;
+import com.itmo.java.basics.initialization.impl.SegmentInitializationContextImpl;
+import com.itmo.java.basics.initialization.impl.SegmentInitializer;
+import com.itmo.java.basics.initialization.impl.TableInitializer;
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+import com.itmo.java.basics.logic.io.DatabaseRecordCodec;
+import com.itmo.java.basics.logic.io.SegmentBlockWriter;
+import com.itmo.java.basics.logic.io.SegmentBlocks;
+import com.itmo.java.basics.logic.io.SegmentFormat;
+import com.itmo.java.basics.logic.io.SegmentScanner;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Сжатые сегменты ({@link SegmentFormat#V3}): запись блоками, последовательное чтение, чтение по положениям
+ * и открытие после перезапуска.
+ */
+public class CompressedSegmentTest {
+
+    private static final long MAX_SEGMENT_BYTES = 16 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DatabaseResources resources;
+    private Path path;
+    private final Map<String, byte[]> values = new LinkedHashMap<>();
+    private final Map<String, Long> offsets = new HashMap<>();
+    private long size;
+
+    @Before
+    public void setUp() {
+        resources = new DatabaseResources(new DatabaseConfig(folder.getRoot().toString()));
+        path = folder.getRoot().toPath().resolve("table_1_c");
+    }
+
+    @Test
+    public void scannerReadsWrittenRecords() throws IOException {
+        var records = records(500, 200);
+        write(records);
+
+        int read = 0;
+
+        try (var scanner = SegmentScanner.open(path, size, true)) {
+            assertEquals(SegmentFormat.V3, scanner.format());
+
+            while (scanner.next()) {
+                var key = scanner.keyString();
+
+                assertEquals(key, keyOf(records.get(read)));
+                assertEquals((long) offsets.get(key), scanner.offset());
+                assertEquals(DatabaseRecordCodec.encodedSize(records.get(read)), scanner.recordSize());
+                assertArrayEquals(key, values.get(key), scanner.value());
+                read++;
+            }
+        }
+
+        assertEquals(records.size(), read);
+    }
+
+    /**
+     * Запись, которая не помещается в остаток блока, начинает следующий блок, а запись больше блока сжимается
+     * отдельным блоком: ни одна запись не разрезается между блоками
+     */
+    @Test
+    public void recordsDoNotStraddleBlocks() throws IOException {
+        var records = new ArrayList<WritableDatabaseRecord>();
+        records.add(record("first", SegmentBlocks.BLOCK_SIZE - 100));
+        records.add(record("straddling", 200));
+        records.add(record("large", 2 * SegmentBlocks.BLOCK_SIZE));
+        records.add(record("after-large", 10));
+        write(records);
+
+        assertEquals(SegmentBlocks.offset(0, 0), (long) offsets.get("first"));
+        assertEquals(SegmentBlocks.offset(1, 0), (long) offsets.get("straddling"));
+        assertEquals(SegmentBlocks.offset(2, 0), (long) offsets.get("large"));
+        assertEquals(SegmentBlocks.offset(3, 0), (long) offsets.get("after-large"));
+
+        var segment = open();
+
+        try {
+            for (var key : values.keySet()) {
+                assertArrayEquals(key, values.get(key), segment.readAt(offsets.get(key), 0).orElseThrow());
+            }
+
+            var buffer = segment.readBufferAt(offsets.get("large"), 0).orElseThrow();
+            assertEquals(2 * SegmentBlocks.BLOCK_SIZE, buffer.remaining());
+        } finally {
+            segment.close();
+        }
+    }
+
+    @Test
+    public void readsManyRecordsOfSeveralBlocks() throws IOException {
+        var records = records(2000, 100);
+        write(records);
+
+        var located = new ArrayList<SegmentImpl.LocatedKey>();
+        var expected = new HashMap<String, byte[]>();
+        var random = new Random(1);
+
+        for (var record : records) {
+            var key = keyOf(record);
+
+            if (random.nextInt(3) == 0) {
+                located.add(new SegmentImpl.LocatedKey(key, offsets.get(key),
+                        (int) DatabaseRecordCodec.encodedSize(record)));
+
+                if (values.get(key) != null) {
+                    expected.put(key, values.get(key));
+                }
+            }
+        }
+
+        Collections.shuffle(located, random);
+
+        assertTrue("Records fit into a single block",
+                SegmentBlocks.block(offsets.get(keyOf(records.get(records.size() - 1)))) > 2);
+
+        var segment = open();
+
+        try {
+            var result = segment.readAt(located);
+
+            assertEquals(expected.keySet(), result.keySet());
+            expected.forEach((key, value) -> assertArrayEquals(key, value, result.get(key)));
+        } finally {
+            segment.close();
+        }
+    }
+
+    @Test
+    public void reopenedSegmentReadsByKey() throws Exception {
+        var records = records(1000, 300);
+        write(records);
+
+        var segment = SegmentImpl.initializeFromContext(SegmentInitializationContextImpl.builder()
+                .segmentName(path.getFileName().toString())
+                .segmentPath(path)
+                .currentSize(size)
+                .build(), resources);
+
+        try {
+            assertTrue(segment.isReadOnly());
+
+            for (var entry : values.entrySet()) {
+                var value = segment.read(entry.getKey());
+
+                if (entry.getValue() == null) {
+                    assertFalse(entry.getKey(), value.isPresent());
+                } else {
+                    assertArrayEquals(entry.getKey(), entry.getValue(), value.orElseThrow());
+                }
+            }
+
+            assertFalse(segment.read("missing").isPresent());
+        } finally {
+            segment.close();
+        }
+    }
+
+    /**
+     * Компактизация со сжатием пишет сжатый сегмент, и после перезапуска таблица читает его значения.
+     * Фоновая компактизация выключена, слияние вызывается явно
+     */
+    @Test
+    public void compactedTableSurvivesReopen() throws Exception {
+        var config = DatabaseConfig.builder()
+                .workingPath(folder.getRoot().toString())
+                .blockCompressionEnabled(true)
+                .compactionThreshold(0)
+                .segmentPolicy(SegmentPolicy.builder().maxSegmentBytes(MAX_SEGMENT_BYTES).build())
+                .build();
+        var tableResources = new DatabaseResources(config);
+        var tablePath = folder.newFolder("database", "table").toPath();
+        var table = new TableImpl("table", tablePath, new TableIndex(), tableResources);
+        var expected = new HashMap<String, byte[]>();
+
+        try {
+            for (int i = 0; i < 2000; i++) {
+                var value = ("value-" + i + "-" + "x".repeat(i % 50)).getBytes(StandardCharsets.UTF_8);
+                expected.put("key-" + i % 700, value);
+                table.write("key-" + i % 700, value);
+            }
+
+            for (int i = 0; i < 700; i += 9) {
+                table.delete("key-" + i);
+                expected.remove("key-" + i);
+            }
+
+            var compactor = new SegmentCompactor(table, tableResources, MAX_SEGMENT_BYTES);
+            assertTrue("Nothing to compact", compactor.compact());
+            assertTrue("Compacted segment is not compressed", hasCompressedSegment(tablePath));
+            assertValues(expected, table::read);
+        } finally {
+            table.close();
+            tableResources.close();
+        }
+
+        var environment = new ExecutionEnvironmentImpl(config);
+        new DatabaseServerInitializer(new DatabaseInitializer(new TableInitializer(new SegmentInitializer())))
+                .perform(InitializationContextImpl.builder().executionEnvironment(environment).build());
+        var database = environment.getDatabase("database").orElseThrow();
+
+        try {
+            assertValues(expected, key -> database.read("table", key));
+        } finally {
+            database.close();
+            environment.close();
+        }
+    }
+
+    private void write(List<WritableDatabaseRecord> records) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             var writer = new SegmentBlockWriter(channel)) {
+
+            for (var record : records) {
+                var key = keyOf(record);
+                offsets.put(key, writer.append(record));
+                values.put(key, record.isValuePresented() ? record.getValue() : null);
+            }
+
+            size = writer.finish();
+        }
+    }
+
+    private SegmentImpl open() throws IOException {
+        return SegmentImpl.openSealed(path.getFileName().toString(), path, size, SegmentFormat.V3, resources);
+    }
+
+    /**
+     * @return записи разного размера, каждая десятая - удаление
+     */
+    private static List<WritableDatabaseRecord> records(int count, int maxValueSize) {
+        var random = new Random(count);
+        var records = new ArrayList<WritableDatabaseRecord>();
+
+        for (int i = 0; i < count; i++) {
+            var key = "key-" + i;
+
+            records.add(i % 10 == 9
+                    ? new RemoveDatabaseRecord(key.getBytes(StandardCharsets.UTF_8))
+                    : record(key, random.nextInt(maxValueSize)));
+        }
+
+        return records;
+    }
+
+    private static WritableDatabaseRecord record(String key, int valueSize) {
+        var value = new byte[valueSize];
+        new Random(key.hashCode()).nextBytes(value);
+        return new SetDatabaseRecord(key.getBytes(StandardCharsets.UTF_8), value);
+    }
+
+    private static String keyOf(WritableDatabaseRecord record) {
+        return new String(record.getKey(), StandardCharsets.UTF_8);
+    }
+
+    private static void assertValues(Map<String, byte[]> expected, Reader reader) throws Exception {
+        for (int i = 0; i < 700; i++) {
+            var key = "key-" + i;
+            var value = reader.read(key);
+
+            if (expected.containsKey(key)) {
+                assertArrayEquals(key, expected.get(key), value.orElseThrow());
+            } else {
+                assertFalse(key, value.isPresent());
+            }
+        }
+    }
+
+    private static boolean hasCompressedSegment(Path table) throws IOException {
+        try (var files = Files.list(table)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(SegmentImpl.COMPACTED_SUFFIX)) {
+                    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        if (SegmentFormat.detect(channel) == SegmentFormat.V3)
+                            return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private interface Reader {
+        Optional<byte[]> read(String key) throws Exception;
+    }
+}
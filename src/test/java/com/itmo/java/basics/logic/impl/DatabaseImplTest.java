@@ -0,0 +1,63 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.initialization.DatabaseInitializationContext;
+import com.itmo.java.basics.logic.Table;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Закрытие базы данных, таблицы которой не закрываются.
+ */
+public class DatabaseImplTest {
+
+    /**
+     * Ошибка закрытия одной таблицы не оставляет открытыми остальные, а все ошибки попадают в одно исключение
+     */
+    @Test
+    public void closesAllTablesDespiteFailures() throws Exception {
+        var tables = new LinkedHashMap<String, Table>();
+        var failures = new Exception[]{new DatabaseException("first"), new IllegalStateException("second")};
+
+        for (int i = 0; i < 4; i++) {
+            tables.put("table-" + i, mock(Table.class));
+        }
+
+        doThrow(failures[0]).when(tables.get("table-1")).close();
+        doThrow(failures[1]).when(tables.get("table-2")).close();
+
+        var context = mock(DatabaseInitializationContext.class);
+        when(context.getDbName()).thenReturn("database");
+        when(context.getDatabasePath()).thenReturn(Path.of("database"));
+        when(context.getTables()).thenReturn(tables);
+
+        var database = DatabaseImpl.initializeFromContext(context);
+
+        try {
+            database.close();
+            fail("Failures of closing tables are lost");
+        } catch (DatabaseException e) {
+            var thrown = new HashSet<Throwable>(Arrays.asList(e.getSuppressed()));
+            thrown.add(e == failures[0] ? e : e.getCause());
+
+            assertEquals(1, e.getSuppressed().length);
+            assertEquals(Set.of(failures), thrown);
+        }
+
+        for (var table : tables.values()) {
+            verify(table).close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.itmo.java.basics.logic.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Счетчик частоты обращений: оценка числа обращений, насыщение счетчиков и их уменьшение вдвое.
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void countsIncrements() {
+        var sketch = new FrequencySketch(1024);
+
+        assertEquals(0, sketch.frequency("key".hashCode()));
+
+        for (int i = 1; i <= 5; i++) {
+            sketch.increment("key".hashCode());
+            assertEquals(i, sketch.frequency("key".hashCode()));
+        }
+
+        assertEquals(0, sketch.frequency("other".hashCode()));
+    }
+
+    @Test
+    public void frequencyIsLimited() {
+        var sketch = new FrequencySketch(1024);
+
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("key".hashCode());
+        }
+
+        assertEquals(15, sketch.frequency("key".hashCode()));
+    }
+
+    /**
+     * После размера выборки учтенных обращений частоты уменьшаются вдвое, и давно популярный ключ
+     * перестает выглядеть популярнее новых
+     */
+    @Test
+    public void frequenciesAreHalvedAfterSample() {
+        var sketch = new FrequencySketch(16);
+
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("key".hashCode());
+        }
+
+        for (int i = 0; i < 170; i++) {
+            sketch.increment(("other-" + i).hashCode());
+        }
+
+        int frequency = sketch.frequency("key".hashCode());
+        assertTrue("Frequency is not halved: " + frequency, frequency > 0 && frequency < 15);
+    }
+}
@@ -0,0 +1,264 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.config.SegmentPolicy;
+import com.itmo.java.basics.index.impl.TableIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Чтение нескольких записей сегмента по положениям, см {@link SegmentImpl#readAt(List)},
+ * и чтение нескольких ключей таблицы, записи которых лежат в разных сегментах.
+ */
+public class SegmentReadManyTest {
+
+    /**
+     * Больше {@code SegmentImpl#READ_AHEAD_SIZE}: записи через такой промежуток читаются отдельно
+     */
+    private static final int GAP_SIZE = 8 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DatabaseResources resources;
+    private SegmentImpl segment;
+    private final Map<String, SegmentImpl.LocatedKey> locations = new HashMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        resources = new DatabaseResources(new DatabaseConfig(folder.getRoot().toString()));
+        segment = (SegmentImpl) SegmentImpl.create("table_1", folder.getRoot().toPath(), resources);
+        segment.setMaxSize(Long.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        segment.close();
+    }
+
+    @Test
+    public void readsAdjacentRecords() throws IOException {
+        var expected = new HashMap<String, byte[]>();
+
+        for (int i = 0; i < 100; i++) {
+            expected.put(key(i), value(i, 10 + i));
+            append(key(i), expected.get(key(i)));
+        }
+
+        assertValues(expected, segment.readAt(located(expected.keySet().toArray(String[]::new))));
+    }
+
+    /**
+     * Одна и та же запись, запрошенная дважды, и записи, чьи диапазоны совпадают или вложены друг в друга,
+     * читаются одним чтением и декодируются каждая со своего смещения
+     */
+    @Test
+    public void readsOverlappingRanges() throws IOException {
+        append("first", value(1, 10));
+        append("second", value(2, 20));
+        append("third", value(3, 30));
+
+        var second = locations.get("second");
+        var located = new ArrayList<>(List.of(
+                locations.get("third"),
+                second,
+                new SegmentImpl.LocatedKey("second", second.getOffset(), (int) (second.end() - second.getOffset())),
+                locations.get("first")));
+
+        var values = segment.readAt(located);
+
+        assertEquals(3, values.size());
+        assertArrayEquals(value(1, 10), values.get("first"));
+        assertArrayEquals(value(2, 20), values.get("second"));
+        assertArrayEquals(value(3, 30), values.get("third"));
+    }
+
+    /**
+     * Записи, разделенные большими промежутками, записи больше буфера предвыборки и группы записей больше
+     * наибольшего объединенного чтения читаются несколькими чтениями
+     */
+    @Test
+    public void readsDistantAndLargeRecords() throws IOException {
+        var expected = new HashMap<String, byte[]>();
+
+        for (int i = 0; i < 40; i++) {
+            expected.put(key(i), value(i, i % 4 == 0 ? 3 * GAP_SIZE : 50));
+            append(key(i), expected.get(key(i)));
+            append("gap-" + i, value(-i, GAP_SIZE));
+        }
+
+        assertValues(expected, segment.readAt(located(expected.keySet().toArray(String[]::new))));
+    }
+
+    @Test
+    public void skipsRemovedRecords() throws IOException {
+        append("kept", value(1, 10));
+        append("removed", null);
+        append("other", value(2, 10));
+
+        var values = segment.readAt(located("kept", "removed", "other"));
+
+        assertEquals(2, values.size());
+        assertFalse(values.containsKey("removed"));
+        assertArrayEquals(value(1, 10), values.get("kept"));
+        assertArrayEquals(value(2, 10), values.get("other"));
+    }
+
+    @Test
+    public void readsSealedMappedSegment() throws Exception {
+        segment.close();
+
+        resources = new DatabaseResources(DatabaseConfig.builder()
+                .workingPath(folder.getRoot().toString())
+                .memoryMappingEnabled(true)
+                .build());
+        segment = (SegmentImpl) SegmentImpl.create("table_2", folder.getRoot().toPath(), resources);
+        locations.clear();
+
+        var expected = new HashMap<String, byte[]>();
+
+        for (int i = 0; i < 20; i++) {
+            expected.put(key(i), value(i, 100));
+            append(key(i), expected.get(key(i)));
+        }
+
+        append("removed", null);
+        segment.seal();
+
+        var keys = new ArrayList<>(expected.keySet());
+        keys.add("removed");
+
+        assertValues(expected, segment.readAt(located(keys.toArray(String[]::new))));
+    }
+
+    /**
+     * Записи ключей сегмента, лежащие рядом, читаются одним чтением, а далекие - отдельными
+     */
+    @Test
+    public void readManyMergesNearbyRecords() throws IOException {
+        var expected = new HashMap<String, byte[]>();
+
+        for (int i = 0; i < 50; i++) {
+            expected.put(key(i), value(i, 10 + i));
+            append(key(i), expected.get(key(i)));
+        }
+
+        append("gap", value(-1, GAP_SIZE));
+        expected.put("distant", value(-2, 10));
+        append("distant", expected.get("distant"));
+
+        var keys = new ArrayList<>(expected.keySet());
+        keys.add("missing");
+
+        long reads = segment.fileReads();
+        assertValues(expected, segment.readMany(keys));
+        assertEquals(2, segment.fileReads() - reads);
+
+        reads = segment.fileReads();
+        assertValues(Map.of(key(1), expected.get(key(1))), segment.readMany(List.of(key(1), "missing")));
+        assertEquals(1, segment.fileReads() - reads);
+    }
+
+    @Test
+    public void readsEmptyList() throws IOException {
+        assertTrue(segment.readAt(new ArrayList<>()).isEmpty());
+    }
+
+    /**
+     * Ключи таблицы лежат в нескольких сегментах, часть из них удалена или перезаписана, часть никогда не писалась
+     */
+    @Test
+    public void tableReadsKeysOfSeveralSegments() throws Exception {
+        var path = folder.newFolder("database", "table").toPath();
+        var config = DatabaseConfig.builder()
+                .workingPath(folder.getRoot().toString())
+                .compactionThreshold(0)
+                .segmentPolicy(SegmentPolicy.builder().maxSegmentBytes(1024L).build())
+                .build();
+        var table = new TableImpl("table", path, new TableIndex(), new DatabaseResources(config));
+
+        try {
+            var expected = new HashMap<String, byte[]>();
+
+            for (int i = 0; i < 100; i++) {
+                expected.put(key(i), value(i, 40));
+                table.write(key(i), expected.get(key(i)));
+            }
+
+            for (int i = 0; i < 100; i += 7) {
+                table.delete(key(i));
+                expected.remove(key(i));
+            }
+
+            for (int i = 3; i < 100; i += 11) {
+                expected.put(key(i), value(1000 + i, 60));
+                table.write(key(i), expected.get(key(i)));
+            }
+
+            try (var files = Files.list(path)) {
+                assertTrue("Keys are written to a single segment", files.count() > 5);
+            }
+
+            var keys = new ArrayList<String>();
+
+            for (int i = 0; i < 120; i++) {
+                keys.add(key(i));
+            }
+
+            assertValues(expected, table.readMany(keys));
+        } finally {
+            table.close();
+        }
+    }
+
+    private void append(String key, byte[] value) throws IOException {
+        assertTrue(segment.append(key, value, (objectKey, offset, length, removed) ->
+                locations.put(objectKey, new SegmentImpl.LocatedKey(objectKey, offset, length))));
+    }
+
+    private List<SegmentImpl.LocatedKey> located(String... keys) {
+        var result = new ArrayList<SegmentImpl.LocatedKey>();
+
+        for (var key : keys) {
+            result.add(locations.get(key));
+        }
+
+        return result;
+    }
+
+    private static void assertValues(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+
+        expected.forEach((key, value) -> assertArrayEquals(key, value, actual.get(key)));
+    }
+
+    private static String key(int key) {
+        return "key-" + key;
+    }
+
+    private static byte[] value(int seed, int size) {
+        var value = new byte[size];
+        Arrays.fill(value, (byte) seed);
+        System.arraycopy(Integer.toString(seed).getBytes(StandardCharsets.UTF_8), 0, value, 0,
+                Math.min(size, Integer.toString(seed).length()));
+        return value;
+    }
+}
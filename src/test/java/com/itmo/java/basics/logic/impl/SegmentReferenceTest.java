@@ -0,0 +1,126 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Закрепление сегментов читателями: сегмент, слитый компактизацией ({@link SegmentImpl#retire()}), остается
+ * читаемым, пока его не отпустит последний читатель, а после этого удаляется и больше не закрепляется.
+ */
+public class SegmentReferenceTest {
+
+    private static final int READERS = 8;
+    private static final int KEYS = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SegmentImpl segment;
+    private final long[] offsets = new long[KEYS];
+    private volatile boolean retired = false;
+
+    @Before
+    public void setUp() throws Exception {
+        var resources = new DatabaseResources(new DatabaseConfig(folder.getRoot().toString()));
+        segment = (SegmentImpl) SegmentImpl.create("table_1", folder.getRoot().toPath(), resources);
+
+        for (int i = 0; i < KEYS; i++) {
+            int key = i;
+            segment.append(key(i), value(i), (objectKey, offset, length, removed) -> offsets[key] = offset);
+        }
+
+        segment.seal();
+    }
+
+    @Test
+    public void retiredSegmentIsRemovedByLastReader() throws Exception {
+        assertTrue(segment.retain());
+        assertTrue(segment.retain());
+
+        segment.retire();
+        assertTrue(Files.exists(segment.getPath()));
+        assertArrayEquals(value(1), segment.readAt(offsets[1], 0).orElseThrow());
+
+        segment.release();
+        assertTrue(Files.exists(segment.getPath()));
+        assertArrayEquals(value(2), segment.readAt(offsets[2], 0).orElseThrow());
+
+        segment.release();
+        assertFalse(Files.exists(segment.getPath()));
+        assertFalse(segment.retain());
+    }
+
+    /**
+     * Читатели закрепляют, читают и отпускают сегмент, пока его убирают из таблицы. После этого новые читатели
+     * сегмент не ищут, но начатые чтения могут закрепить его позже. Каждое удавшееся закрепление дает прочитать сегмент,
+     * а файл удаляется после ухода всех читателей
+     */
+    @Test
+    public void concurrentReadersKeepRetiredSegmentReadable() throws Exception {
+        var failure = new AtomicReference<Throwable>();
+        var reads = new AtomicLong();
+        var threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < READERS; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (int attempt = 0; !retired; attempt++) {
+                        if (!segment.retain())
+                            continue;
+
+                        try {
+                            int key = attempt % KEYS;
+                            assertArrayEquals(value(key), segment.readAt(offsets[key], 0).orElseThrow());
+                            reads.incrementAndGet();
+                        } finally {
+                            segment.release();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+
+        while (reads.get() < 10_000 && failure.get() == null) {
+            Thread.sleep(1);
+        }
+
+        retired = true;
+        segment.retire();
+
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+
+        assertFalse(Files.exists(segment.getPath()));
+        assertFalse(segment.retain());
+    }
+
+    private static String key(int key) {
+        return "key-" + key;
+    }
+
+    private static byte[] value(int key) {
+        return ("value-" + key).getBytes(StandardCharsets.UTF_8);
+    }
+}
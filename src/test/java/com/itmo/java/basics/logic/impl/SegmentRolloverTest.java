@@ -0,0 +1,255 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.config.SegmentPolicy;
+import com.itmo.java.basics.index.impl.TableIndex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Переход таблицы на новый сегмент по размеру и возрасту активного сегмента, правила отдельных таблиц
+ * и заранее создаваемый следующий сегмент.
+ */
+public class SegmentRolloverTest {
+
+    private static final int MAX_SEGMENT_BYTES = 1024;
+    private static final int VALUE_SIZE = 100;
+    private static final int HEADER_SIZE = 8;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * Число имен сегментов, занимаемых заранее, чтобы фоновое создание сегмента не нашло свободного имени
+     */
+    private static final int RESERVED_NAMES = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rollsOverAtByteLimit() throws Exception {
+        var config = config(SegmentPolicy.builder().maxSegmentBytes((long) MAX_SEGMENT_BYTES).build());
+        var path = folder.newFolder("database", "table").toPath();
+        var table = new TableImpl("table", path, new TableIndex(), new DatabaseResources(config));
+
+        try {
+            write(table, 0, 40);
+
+            var segments = segments(path, "table");
+            assertTrue("Keys are written to a single segment", segments.size() > 3);
+
+            for (var segment : segments.subList(0, segments.size() - 2)) {
+                long size = Files.size(segment);
+
+                assertTrue(segment + " is sealed before the limit: " + size, size >= MAX_SEGMENT_BYTES);
+                assertTrue(segment + " is sealed after the limit: " + size, size < MAX_SEGMENT_BYTES + recordSize(0));
+            }
+
+            assertValues(table, 0, 40);
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    public void rollsOverAtAgeLimit() throws Exception {
+        var config = config(SegmentPolicy.builder().maxSegmentAgeMillis(200L).build());
+        var path = folder.newFolder("database", "table").toPath();
+        var table = new TableImpl("table", path, new TableIndex(), new DatabaseResources(config));
+
+        try {
+            write(table, 0, 3);
+            assertEquals(1, segments(path, "table").size());
+
+            Thread.sleep(300);
+            write(table, 3, 5);
+
+            var segments = segments(path, "table");
+            assertEquals(2, segments.size());
+            assertEquals(HEADER_SIZE + 3L * recordSize(0), Files.size(segments.get(0)));
+            assertEquals(HEADER_SIZE + 2L * recordSize(0), Files.size(segments.get(1)));
+
+            assertValues(table, 0, 5);
+        } finally {
+            table.close();
+        }
+    }
+
+    /**
+     * Правило таблицы заменяет общее правило только для нее
+     */
+    @Test
+    public void tablePolicyOverridesDefault() throws Exception {
+        var config = DatabaseConfig.builder()
+                .workingPath(folder.getRoot().toString())
+                .compactionThreshold(0)
+                .segmentPolicy(SegmentPolicy.builder().maxSegmentBytes(1024L * 1024).build())
+                .tableSegmentPolicies(Map.of("database/small",
+                        SegmentPolicy.builder().maxSegmentBytes((long) MAX_SEGMENT_BYTES).build()))
+                .build();
+        var resources = new DatabaseResources(config);
+        var smallPath = folder.newFolder("database", "small").toPath();
+        var largePath = folder.newFolder("database", "large").toPath();
+        var small = new TableImpl("small", smallPath, new TableIndex(), resources);
+        var large = new TableImpl("large", largePath, new TableIndex(), resources);
+
+        try {
+            write(small, 0, 40);
+            write(large, 0, 40);
+
+            assertTrue(segments(smallPath, "small").size() > 3);
+            assertEquals(1, segments(largePath, "large").size());
+
+            assertValues(small, 0, 40);
+            assertValues(large, 0, 40);
+        } finally {
+            small.close();
+            large.close();
+        }
+    }
+
+    /**
+     * Когда активный сегмент заполнен наполовину, следующий сегмент создается в фоне,
+     * и переход на него не создает файлов при записи
+     */
+    @Test
+    public void preparesNextSegmentInBackground() throws Exception {
+        var config = config(SegmentPolicy.builder().maxSegmentBytes((long) MAX_SEGMENT_BYTES).build());
+        var resources = new DatabaseResources(config);
+        var path = folder.newFolder("database", "table").toPath();
+        var table = new TableImpl("table", path, new TableIndex(), resources);
+
+        try {
+            write(table, 0, 5);
+            drain(resources);
+
+            var segments = segments(path, "table");
+            assertEquals(2, segments.size());
+            assertEquals(HEADER_SIZE, Files.size(segments.get(1)));
+
+            write(table, 5, 12);
+
+            assertEquals(segments.get(1), segments(path, "table").get(1));
+            assertTrue(Files.size(segments.get(1)) > HEADER_SIZE);
+            assertValues(table, 0, 12);
+        } finally {
+            table.close();
+        }
+    }
+
+    /**
+     * Ошибка фонового создания сегмента не прерывает запись: следующий сегмент создается при переходе на него
+     */
+    @Test
+    public void failedPreparationFallsBackToNewSegment() throws Exception {
+        var config = config(SegmentPolicy.builder().maxSegmentBytes((long) MAX_SEGMENT_BYTES).build());
+        var resources = new DatabaseResources(config);
+        var path = folder.newFolder("database", "table").toPath();
+        var table = new TableImpl("table", path, new TableIndex(), resources);
+        var release = new CountDownLatch(1);
+        var reserved = new ArrayList<Path>();
+
+        try {
+            write(table, 0, 1);
+
+            resources.getScheduler().submit(() -> release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            write(table, 1, 5);
+
+            long reservedFrom = Long.parseLong(SegmentImpl.createSegmentName("table").substring("table_".length()));
+
+            for (long name = reservedFrom + 1; name <= reservedFrom + RESERVED_NAMES; name++) {
+                reserved.add(Files.createFile(path.resolve("table_" + name)));
+            }
+
+            release.countDown();
+            drain(resources);
+
+            long next = Long.parseLong(SegmentImpl.createSegmentName("table").substring("table_".length()));
+            assertTrue("Next segment is not prepared in background", next > reservedFrom + 1);
+
+            for (var file : reserved) {
+                Files.delete(file);
+            }
+
+            reserved.clear();
+
+            write(table, 5, 20);
+
+            assertTrue(segments(path, "table").size() > 2);
+            assertValues(table, 0, 20);
+        } finally {
+            release.countDown();
+            table.close();
+        }
+    }
+
+    private DatabaseConfig config(SegmentPolicy policy) {
+        return DatabaseConfig.builder()
+                .workingPath(folder.getRoot().toString())
+                .compactionThreshold(0)
+                .segmentPolicy(policy)
+                .build();
+    }
+
+    /**
+     * Дожидается выполнения уже поставленных фоновых задач
+     */
+    private static void drain(DatabaseResources resources) throws Exception {
+        resources.getScheduler().submit(() -> { }).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static void write(TableImpl table, int from, int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            table.write(key(i), value(i));
+        }
+    }
+
+    private static void assertValues(TableImpl table, int from, int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            assertArrayEquals(key(i), value(i), table.read(key(i)).orElseThrow());
+        }
+    }
+
+    private static List<Path> segments(Path path, String tableName) throws IOException {
+        try (var files = Files.list(path)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(tableName + "_"))
+                    .filter(file -> !file.getFileName().toString().contains("."))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return размер записи ключа в сегменте: контрольная сумма, размеры ключа и значения, ключ и значение
+     */
+    private static int recordSize(int key) {
+        return 3 * Integer.BYTES + key(key).length() + VALUE_SIZE;
+    }
+
+    private static String key(int key) {
+        return String.format("key-%02d", key);
+    }
+
+    private static byte[] value(int seed) {
+        var value = new byte[VALUE_SIZE];
+        var prefix = ("value-" + seed).getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(prefix, 0, value, 0, prefix.length);
+        return value;
+    }
+}
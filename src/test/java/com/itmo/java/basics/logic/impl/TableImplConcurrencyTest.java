@@ -0,0 +1,381 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.config.DurabilityPolicy;
+import com.itmo.java.basics.config.SegmentPolicy;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.index.impl.TableIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Чтение по ключу без блокировки таблицы одновременно с записью, сменой сегментов и компактизацией.
+ * У каждого ключа один пишущий поток, который записывает возрастающие версии. Для каждого чтения проверяется
+ * линеаризуемость по ключу: прочитанная версия не меньше версии, запись которой завершилась до начала чтения,
+ * не больше версии, запись которой началась до конца чтения, и не меньше версии, прочитанной этим же потоком раньше.
+ */
+public class TableImplConcurrencyTest {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int KEYS_PER_WRITER = 16;
+    private static final int KEYS = WRITERS * KEYS_PER_WRITER;
+    private static final long DURATION_MILLIS = 2000;
+    private static final long MAX_DURATION_MILLIS = 60_000;
+    private static final long WRITE_PAUSE_NANOS = 100_000;
+    private static final int STABLE_KEYS = 500;
+    private static final int BATCH_SIZE = 32;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TableImpl table;
+    private final AtomicLongArray started = new AtomicLongArray(KEYS);
+    private final AtomicLongArray committed = new AtomicLongArray(KEYS);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean stopped = false;
+
+    @Before
+    public void setUp() throws Exception {
+        var path = folder.newFolder("database", "table").toPath();
+        var config = DatabaseConfig.builder()
+                .workingPath(folder.getRoot().toString())
+                .durabilityPolicy(DurabilityPolicy.NONE)
+                .compactionThreshold(2)
+                .segmentPolicy(SegmentPolicy.builder().maxSegmentBytes(16 * 1024L).build())
+                .build();
+
+        table = new TableImpl("table", path, new TableIndex(), new DatabaseResources(config));
+    }
+
+    @After
+    public void tearDown() throws DatabaseException {
+        table.close();
+    }
+
+    @Test
+    public void readsAreLinearizablePerKey() throws Exception {
+        run(reader -> {
+            int key = ThreadLocalRandom.current().nextInt(KEYS);
+            long from = committed.get(key);
+            var value = table.read(key(key));
+            long to = started.get(key);
+
+            reader.check(key, from, version(value), to);
+        });
+    }
+
+    @Test
+    public void bufferReadsAreLinearizablePerKey() throws Exception {
+        run(reader -> {
+            int key = ThreadLocalRandom.current().nextInt(KEYS);
+            long from = committed.get(key);
+            var value = table.readBuffer(key(key));
+            long to = started.get(key);
+
+            reader.check(key, from, value.map(buffer -> buffer.getLong(buffer.position())).orElse(0L), to);
+        });
+    }
+
+    @Test
+    public void streamReadsAreLinearizablePerKey() throws Exception {
+        run(reader -> {
+            int key = ThreadLocalRandom.current().nextInt(KEYS);
+            long from = committed.get(key);
+            long version;
+
+            var stream = table.openValue(key(key));
+            if (stream.isPresent()) {
+                try (var value = stream.get()) {
+                    version = ByteBuffer.wrap(value.readNBytes(Long.BYTES)).getLong();
+                }
+            } else {
+                version = 0;
+            }
+
+            long to = started.get(key);
+            reader.check(key, from, version, to);
+        });
+    }
+
+    @Test
+    public void batchReadsAreLinearizablePerKey() throws Exception {
+        run(reader -> {
+            int first = ThreadLocalRandom.current().nextInt(KEYS - 8);
+            var keys = new ArrayList<String>();
+            var from = new long[8];
+
+            for (int i = 0; i < 8; i++) {
+                keys.add(key(first + i));
+                from[i] = committed.get(first + i);
+            }
+
+            Map<String, byte[]> values = table.readMany(keys);
+
+            for (int i = 0; i < 8; i++) {
+                long to = started.get(first + i);
+                reader.check(first + i, from[i], version(Optional.ofNullable(values.get(key(first + i)))), to);
+            }
+        });
+    }
+
+    /**
+     * Проход не ждет компактизации и не мешает ей: ключи, которые не перезаписываются, проход находит ровно по разу,
+     * даже если сегменты с ними слиты, пока проход открыт
+     */
+    @Test
+    public void scansSeeEveryKeyOnceDuringCompaction() throws Exception {
+        for (int i = 0; i < STABLE_KEYS; i++) {
+            table.write(stableKey(i), stableKey(i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        run(reader -> {
+            var seen = new HashSet<String>();
+
+            try (var scan = table.scan()) {
+                while (scan.next()) {
+                    var key = scan.getKey();
+
+                    if (!key.startsWith("stable-"))
+                        continue;
+
+                    assertTrue("Key " + key + " is scanned twice", seen.add(key));
+                    assertEquals(key, new String(scan.getValue(), StandardCharsets.UTF_8));
+                }
+            }
+
+            assertEquals(STABLE_KEYS, seen.size());
+        });
+    }
+
+    /**
+     * Ключи, которые не перезаписываются, находятся всегда, хотя компактизация переносит их записи и удаляет сегменты:
+     * читатель, прочитавший из индекса уже слитый сегмент, не может его закрепить и перечитывает индекс
+     */
+    @Test
+    public void stableKeysAreAlwaysFoundDuringCompaction() throws Exception {
+        for (int i = 0; i < STABLE_KEYS; i++) {
+            table.write(stableKey(i), stableKey(i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        run(reader -> {
+            var keys = new ArrayList<String>();
+
+            for (int i = 0; i < 4; i++) {
+                keys.add(stableKey(ThreadLocalRandom.current().nextInt(STABLE_KEYS)));
+            }
+
+            var key = keys.get(0);
+            assertEquals(key, new String(table.read(key).orElseThrow(), StandardCharsets.UTF_8));
+
+            var values = table.readMany(keys);
+
+            for (var each : keys) {
+                assertTrue("Key " + each + " is not found", values.containsKey(each));
+                assertEquals(each, new String(values.get(each), StandardCharsets.UTF_8));
+            }
+        });
+    }
+
+    /**
+     * Пакет записывает одну и ту же версию во все свои ключи, а каждый десятый пакет удаляет их. Чтение ключей пакета
+     * одним снимком должно видеть все ключи с одной версией или ни одного ключа, в том числе когда пакет попадает
+     * в два сегмента.
+     */
+    @Test
+    public void batchReadsNeverSeeHalfAppliedBatch() throws Exception {
+        var keys = new ArrayList<String>();
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            keys.add("batch-" + i);
+        }
+
+        var threads = new ArrayList<Thread>();
+
+        threads.add(new Thread(() -> guarded(() -> {
+            for (long version = 1; !stopped; version++) {
+                if (version % 10 == 0) {
+                    table.deleteBatch(keys);
+                    continue;
+                }
+
+                var batch = new HashMap<String, byte[]>();
+
+                for (var key : keys) {
+                    batch.put(key, ByteBuffer.allocate(100).putLong(version).array());
+                }
+
+                table.writeBatch(batch);
+            }
+        })));
+
+        for (int i = 0; i < READERS; i++) {
+            threads.add(new Thread(() -> guarded(() -> {
+                while (!stopped) {
+                    var values = table.readMany(keys);
+
+                    if (values.isEmpty())
+                        continue;
+
+                    assertEquals("Batch is read partially", BATCH_SIZE, values.size());
+
+                    var versions = new HashSet<Long>();
+                    values.values().forEach(value -> versions.add(ByteBuffer.wrap(value).getLong()));
+
+                    assertEquals("Batch is read partially: " + versions, 1, versions.size());
+                }
+            })));
+        }
+
+        threads.forEach(Thread::start);
+        Thread.sleep(DURATION_MILLIS);
+        stopped = true;
+
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+    }
+
+    /**
+     * Пишет и читает не меньше {@link #DURATION_MILLIS} и до тех пор, пока компактизация хотя бы раз
+     * не подменит сегменты, которые читаются.
+     */
+    private void run(ReadAction action) throws Exception {
+        var threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < WRITERS; i++) {
+            int writer = i;
+            threads.add(new Thread(() -> guarded(() -> write(writer))));
+        }
+
+        for (int i = 0; i < READERS; i++) {
+            threads.add(new Thread(() -> guarded(() -> {
+                var reader = new Reader();
+
+                while (!stopped) {
+                    action.read(reader);
+                }
+            })));
+        }
+
+        threads.forEach(Thread::start);
+
+        long start = System.nanoTime();
+        boolean compacted = false;
+
+        while (failure.get() == null && !compacted && elapsedMillis(start) < MAX_DURATION_MILLIS) {
+            Thread.sleep(DURATION_MILLIS);
+            compacted = isCompacted();
+        }
+
+        stopped = true;
+
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+
+        assertTrue("Segments were never compacted", compacted);
+
+        for (int key = 0; key < KEYS; key++) {
+            assertEquals(committed.get(key), version(table.read(key(key))));
+        }
+    }
+
+    private boolean isCompacted() throws IOException {
+        try (var files = Files.list(table.getPath())) {
+            return files.anyMatch(file -> file.getFileName().toString().endsWith(SegmentImpl.COMPACTED_SUFFIX));
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Пишущие потоки притормаживают: иначе сегменты заполняются быстрее, чем компактизация успевает их слить
+     */
+    private void write(int writer) throws DatabaseException {
+        var value = new byte[100];
+
+        for (long version = 1; !stopped; version++) {
+            for (int i = 0; i < KEYS_PER_WRITER; i++) {
+                int key = writer * KEYS_PER_WRITER + i;
+
+                ByteBuffer.wrap(value).putLong(version);
+                started.set(key, version);
+                table.write(key(key), value);
+                committed.set(key, version);
+                LockSupport.parkNanos(WRITE_PAUSE_NANOS);
+            }
+        }
+    }
+
+    private void guarded(Action action) {
+        try {
+            action.run();
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+            stopped = true;
+        }
+    }
+
+    private static String key(int key) {
+        return "key-" + key;
+    }
+
+    private static String stableKey(int key) {
+        return "stable-" + key;
+    }
+
+    private static long version(Optional<byte[]> value) {
+        return value.map(bytes -> ByteBuffer.wrap(bytes).getLong()).orElse(0L);
+    }
+
+    private static final class Reader {
+        private final long[] seen = new long[KEYS];
+
+        void check(int key, long from, long version, long to) {
+            if (version < from || version > to || version < seen[key])
+                throw new AssertionError(String.format("Key %d: read version %d, expected [%d, %d], previously read %d",
+                        key, version, Math.max(from, seen[key]), to, seen[key]));
+
+            seen[key] = version;
+        }
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private interface ReadAction {
+        void read(Reader reader) throws Exception;
+    }
+}
@@ -0,0 +1,226 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.config.SegmentPolicy;
+import com.itmo.java.basics.console.impl.ExecutionEnvironmentImpl;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.initialization.impl.DatabaseInitializer;
+import com.itmo.java.basics.initialization.impl.DatabaseServerInitializer;
+import com.itmo.java.basics.initialization.impl.InitializationContextImpl;
+import com.itmo.java.basics.initialization.impl.SegmentInitializer;
+import com.itmo.java.basics.initialization.impl.TableInitializer;
+import com.itmo.java.basics.logic.Database;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Запросы по диапазону и префиксу ключей таблицы с упорядоченным индексом, в том числе после перезапуска,
+ * когда индекс восстанавливается по сегментам с удаленными ключами.
+ */
+public class TableRangeTest {
+
+    private static final int KEYS = 200;
+    private static final int PAGE_SIZE = 7;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DatabaseConfig config;
+    private final TreeMap<String, byte[]> expected = new TreeMap<>();
+
+    @Before
+    public void setUp() {
+        config = DatabaseConfig.builder()
+                .workingPath(folder.getRoot().toString())
+                .compactionThreshold(0)
+                .orderedIndexTables(Set.of("table"))
+                .segmentPolicy(SegmentPolicy.builder().maxSegmentBytes(2048L).build())
+                .build();
+    }
+
+    @Test
+    public void rangeSkipsDeletedKeys() throws Exception {
+        var database = DatabaseImpl.create("database", folder.getRoot().toPath(), new DatabaseResources(config));
+
+        try {
+            database.createTableIfNotExists("table");
+            fill(database);
+
+            assertRange(database);
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * Удаления лежат в более поздних сегментах, чем записи ключей, а часть удаленных ключей записана заново
+     */
+    @Test
+    public void rangeSkipsDeletedKeysAfterReopen() throws Exception {
+        var database = DatabaseImpl.create("database", folder.getRoot().toPath(), new DatabaseResources(config));
+
+        try {
+            database.createTableIfNotExists("table");
+            fill(database);
+        } finally {
+            database.close();
+        }
+
+        database = initialize();
+
+        try {
+            assertRange(database);
+
+            database.delete("table", key(1));
+            database.write("table", key(3), value(3));
+            expected.remove(key(1));
+            expected.put(key(3), value(3));
+
+            assertRange(database);
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * Страница, которая еще не выдала ключей или не может их выдать при нулевом {@code limit}, возвращает курсор
+     * начала диапазона, а {@code null} - только когда ключи диапазона кончились
+     */
+    @Test
+    public void cursorIsNullOnlyWhenRangeIsExhausted() throws Exception {
+        var database = DatabaseImpl.create("database", folder.getRoot().toPath(), new DatabaseResources(config));
+
+        try {
+            database.createTableIfNotExists("table");
+            fill(database);
+
+            try (var scan = database.range("table", key(50), null, PAGE_SIZE)) {
+                assertEquals(key(50), scan.getNextCursor());
+            }
+
+            try (var scan = database.range("table", null, null, PAGE_SIZE)) {
+                assertEquals("", scan.getNextCursor());
+            }
+
+            for (var fromKey : new String[]{null, key(50)}) {
+                try (var scan = database.range("table", fromKey, null, 0)) {
+                    assertFalse(scan.next());
+                    assertEquals(fromKey == null ? "" : fromKey, scan.getNextCursor());
+                }
+            }
+
+            assertPages(database, key(50), null, expected.tailMap(key(50)));
+
+            try (var scan = database.range("table", key(KEYS), null, PAGE_SIZE)) {
+                assertFalse(scan.next());
+                assertNull(scan.getNextCursor());
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * Пишет ключи и удаляет каждый третий ключ по одному, пакетом и записью {@code null}
+     */
+    private void fill(Database database) throws DatabaseException {
+        for (int i = 0; i < KEYS; i++) {
+            database.write("table", key(i), value(i));
+            expected.put(key(i), value(i));
+        }
+
+        var batch = new ArrayList<String>();
+
+        for (int i = 0; i < KEYS; i += 3) {
+            if (i % 2 == 0) {
+                batch.add(key(i));
+            } else if (i % 5 == 0) {
+                database.write("table", key(i), null);
+            } else {
+                database.delete("table", key(i));
+            }
+
+            expected.remove(key(i));
+        }
+
+        database.deleteBatch("table", batch);
+
+        for (int i = 0; i < KEYS; i += 30) {
+            database.write("table", key(i), value(-i));
+            expected.put(key(i), value(-i));
+        }
+    }
+
+    private void assertRange(Database database) throws DatabaseException {
+        assertPages(database, null, null, expected);
+        assertPages(database, key(50), key(150), expected.subMap(key(50), key(150)));
+
+        for (var prefix : List.of("key-00", "key-01", "key-1", "missing")) {
+            var page = new ArrayList<String>();
+
+            try (var scan = database.prefix("table", prefix, KEYS)) {
+                while (scan.next()) {
+                    assertArrayEquals(scan.getKey(), expected.get(scan.getKey()), scan.getValue());
+                    page.add(scan.getKey());
+                }
+            }
+
+            assertEquals(prefix, new ArrayList<>(expected.subMap(prefix, prefix + Character.MAX_VALUE).keySet()), page);
+        }
+    }
+
+    /**
+     * Проходит диапазон страницами, начиная каждую страницу с курсора предыдущей
+     */
+    private static void assertPages(Database database, String fromKey, String toKey, Map<String, byte[]> expected)
+            throws DatabaseException {
+        var keys = new ArrayList<String>();
+        var cursor = fromKey;
+
+        do {
+            try (var scan = database.range("table", cursor, toKey, PAGE_SIZE)) {
+                while (scan.next()) {
+                    assertArrayEquals(scan.getKey(), expected.get(scan.getKey()), scan.getValue());
+                    keys.add(scan.getKey());
+                }
+
+                cursor = scan.getNextCursor();
+            }
+        } while (cursor != null);
+
+        assertEquals(new ArrayList<>(expected.keySet()), keys);
+    }
+
+    private Database initialize() throws DatabaseException {
+        var environment = new ExecutionEnvironmentImpl(config);
+        var initializer = new DatabaseServerInitializer(
+                new DatabaseInitializer(new TableInitializer(new SegmentInitializer())));
+
+        initializer.perform(InitializationContextImpl.builder().executionEnvironment(environment).build());
+
+        return environment.getDatabase("database").orElseThrow();
+    }
+
+    private static String key(int key) {
+        return String.format("key-%03d", key);
+    }
+
+    private static byte[] value(int seed) {
+        return ("value-" + seed).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,189 @@
+package com.itmo.java.basics.logic.impl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Общий кэш значений: ограничение суммарного размера, допуск новых ключей по частоте обращений,
+ * удаление значений закрытой таблицы и статистика таблиц.
+ */
+public class ValueCacheTest {
+
+    private static final int VALUE_SIZE = 100;
+
+    /**
+     * Размер записи ключа вида {@code hot-1} со значением {@link #VALUE_SIZE}: накладные расходы, ключ и значение
+     */
+    private static final int ENTRY_SIZE = 112 + 2 * 5 + VALUE_SIZE;
+
+    /**
+     * Основная часть вмещает 17 таких записей, окно меньше одной записи
+     */
+    private static final long SMALL_CACHE_BYTES = 4000;
+
+    @Test
+    public void cachedBytesStayWithinBudget() {
+        var cache = new ValueCache(64 * 1024);
+        var first = new DatabaseCacheImpl(cache, "db/first");
+        var second = new DatabaseCacheImpl(cache, "db/second");
+
+        for (int i = 0; i < 2000; i++) {
+            (i % 2 == 0 ? first : second).set("key-" + i, new byte[i % 700]);
+            assertTrue(cache.getCachedBytes() <= cache.getMaxBytes());
+        }
+
+        assertEquals(cache.getCachedBytes(), first.getCachedBytes() + second.getCachedBytes());
+        assertTrue(first.getEvictionCount() > 0);
+        assertTrue(second.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void valueLargerThanMainPartIsNotCached() {
+        var cache = new ValueCache(SMALL_CACHE_BYTES);
+        var scope = new DatabaseCacheImpl(cache, "db/table");
+
+        scope.set("key", value(1));
+        scope.set("key", new byte[(int) SMALL_CACHE_BYTES]);
+
+        assertNull(scope.get("key"));
+        assertEquals(0, cache.getCachedBytes());
+    }
+
+    /**
+     * Ключ, к которому обращались реже, чем к самому давнему ключу основной части, в нее не допускается
+     * и не вытесняет часто читаемые ключи
+     */
+    @Test
+    public void coldCandidateIsRejected() {
+        var cache = new ValueCache(SMALL_CACHE_BYTES);
+        var scope = new DatabaseCacheImpl(cache, "db/table");
+
+        fillWithHotKeys(scope);
+        scope.set("cold1", value(-1));
+
+        assertNull(scope.get("cold1"));
+        assertEquals(1, scope.getEvictionCount());
+
+        for (int i = 0; i < 17; i++) {
+            assertArrayEquals(value(i), scope.get(hotKey(i)));
+        }
+    }
+
+    /**
+     * Промахи по ключу учитываются в частоте обращений, поэтому часто запрашиваемый новый ключ вытесняет
+     * самый давний ключ основной части
+     */
+    @Test
+    public void frequentlyRequestedCandidateIsAdmitted() {
+        var cache = new ValueCache(SMALL_CACHE_BYTES);
+        var scope = new DatabaseCacheImpl(cache, "db/table");
+
+        fillWithHotKeys(scope);
+
+        for (int i = 0; i < 12; i++) {
+            assertNull(scope.get("warm1"));
+        }
+
+        scope.set("warm1", value(-1));
+
+        assertArrayEquals(value(-1), scope.get("warm1"));
+        assertEquals(1, scope.getEvictionCount());
+        assertTrue(cache.getCachedBytes() <= cache.getMaxBytes());
+    }
+
+    @Test
+    public void unregisterKeepsValuesOfOtherTables() {
+        var cache = new ValueCache(64 * 1024);
+        var closed = new DatabaseCacheImpl(cache, "db/closed");
+        var open = new DatabaseCacheImpl(cache, "db/open");
+
+        for (int i = 0; i < 20; i++) {
+            closed.set(hotKey(i), value(i));
+            open.set(hotKey(i), value(-i));
+        }
+
+        closed.clear();
+
+        assertEquals(open.getCachedBytes(), cache.getCachedBytes());
+        assertEquals(0, closed.getCachedBytes());
+
+        for (int i = 0; i < 20; i++) {
+            assertNull(closed.get(hotKey(i)));
+            assertArrayEquals(value(-i), open.get(hotKey(i)));
+        }
+
+        closed.set("after", value(1));
+
+        assertNull(closed.get("after"));
+        assertEquals(open.getCachedBytes(), cache.getCachedBytes());
+        assertEquals(Arrays.asList("db/open"), cache.getStatistics().stream()
+                .map(CacheStats::getName)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void statisticsAreCountedPerTable() {
+        var cache = new ValueCache(64 * 1024);
+        var first = new DatabaseCacheImpl(cache, "db/first");
+        var second = new DatabaseCacheImpl(cache, "db/second");
+
+        first.set("key", value(1));
+
+        assertNotNull(first.get("key"));
+        assertNotNull(first.get("key"));
+        assertNull(first.get("missing"));
+        assertNull(second.get("key"));
+
+        var firstStats = first.getStats();
+        assertEquals("db/first", firstStats.getName());
+        assertEquals(2, firstStats.getHitCount());
+        assertEquals(1, firstStats.getMissCount());
+        assertEquals(ENTRY_SIZE - 2 * 5 + 2 * 3, firstStats.getCachedBytes());
+
+        var secondStats = second.getStats();
+        assertEquals(0, secondStats.getHitCount());
+        assertEquals(1, secondStats.getMissCount());
+        assertEquals(0, secondStats.getCachedBytes());
+        assertEquals(0, secondStats.getHitRate(), 0);
+        assertEquals(2, cache.getStatistics().size());
+    }
+
+    /**
+     * Заполняет основную часть кэша ключами, к которым несколько раз обращались
+     */
+    private static void fillWithHotKeys(DatabaseCacheImpl scope) {
+        for (int i = 0; i < 17; i++) {
+            scope.set(hotKey(i), value(i));
+        }
+
+        for (int access = 0; access < 5; access++) {
+            for (int i = 0; i < 17; i++) {
+                assertNotNull(scope.get(hotKey(i)));
+            }
+        }
+
+        assertEquals(17L * ENTRY_SIZE, scope.getCachedBytes());
+        assertEquals(0, scope.getEvictionCount());
+    }
+
+    /**
+     * @return ключ из пяти символов
+     */
+    private static String hotKey(int key) {
+        return String.format("hot%02d", key);
+    }
+
+    private static byte[] value(int seed) {
+        var value = new byte[VALUE_SIZE];
+        Arrays.fill(value, (byte) seed);
+        return value;
+    }
+}
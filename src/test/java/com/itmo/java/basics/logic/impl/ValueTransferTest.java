@@ -0,0 +1,138 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DatabaseResources;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.index.impl.TableIndex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Передача значений в канал: канал, принимающий байты частями, получает значение целиком,
+ * а канал, который не принимает байтов, прерывает передачу вместо бесконечного цикла.
+ */
+public class ValueTransferTest {
+
+    private static final byte[] VALUE = "transferred-value".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void bufferIsWrittenInParts() throws IOException {
+        var target = new Channel(3);
+
+        try (var value = new SegmentImpl.StoredValue(ByteBuffer.wrap(VALUE))) {
+            assertEquals(VALUE.length, value.transferTo(target));
+        }
+
+        assertArrayEquals(VALUE, target.bytes());
+    }
+
+    @Test
+    public void bufferTransferStopsWhenChannelAcceptsNothing() throws IOException {
+        var target = new Channel(0);
+
+        try (var value = new SegmentImpl.StoredValue(ByteBuffer.wrap(VALUE))) {
+            value.transferTo(target);
+            fail("Transfer to a channel that accepts nothing succeeded");
+        } catch (IOException e) {
+            assertTrue(target.writes > 0);
+        }
+    }
+
+    @Test
+    public void fileTransferStopsWhenChannelAcceptsNothing() throws IOException {
+        var path = folder.newFile().toPath();
+        Files.write(path, VALUE);
+        var target = new Channel(0);
+
+        try (var value = new SegmentImpl.StoredValue(FileChannel.open(path, StandardOpenOption.READ), 0, VALUE.length)) {
+            value.transferTo(target);
+            fail("Transfer to a channel that accepts nothing succeeded");
+        } catch (IOException e) {
+            assertTrue(target.writes > 0);
+        }
+    }
+
+    /**
+     * Значение из кэша передается тем же способом, что и значение сегмента
+     */
+    @Test
+    public void cachedValueTransferStopsWhenChannelAcceptsNothing() throws Exception {
+        var resources = new DatabaseResources(new DatabaseConfig(folder.getRoot().toString()));
+        var path = folder.newFolder("database", "table").toPath();
+        var table = new CachingTable(new TableImpl("table", path, new TableIndex(), resources), resources, "db/table");
+
+        try {
+            table.write("key", VALUE);
+
+            var target = new Channel(5);
+            assertEquals(VALUE.length, table.transferTo("key", target));
+            assertArrayEquals(VALUE, target.bytes());
+
+            try {
+                table.transferTo("key", new Channel(0));
+                fail("Transfer to a channel that accepts nothing succeeded");
+            } catch (DatabaseException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        } finally {
+            table.close();
+            resources.close();
+        }
+    }
+
+    /**
+     * Неблокирующий канал, принимающий за одну запись не больше заданного числа байтов
+     */
+    private static class Channel implements WritableByteChannel {
+        private final int bytesPerWrite;
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private int writes = 0;
+
+        Channel(int bytesPerWrite) {
+            this.bytesPerWrite = bytesPerWrite;
+        }
+
+        @Override
+        public int write(ByteBuffer source) {
+            writes++;
+
+            int count = Math.min(bytesPerWrite, source.remaining());
+            for (int i = 0; i < count; i++) {
+                written.write(source.get());
+            }
+
+            return count;
+        }
+
+        byte[] bytes() {
+            return written.toByteArray();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
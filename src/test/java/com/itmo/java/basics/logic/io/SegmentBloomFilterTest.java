@@ -0,0 +1,137 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Фильтр Блума сегмента: отсутствие ложноотрицательных ответов, доля ложных срабатываний и отказ от файла фильтра,
+ * который не соответствует сегменту.
+ */
+public class SegmentBloomFilterTest {
+
+    private static final int KEYS = 20_000;
+    private static final int PROBES = 200_000;
+    private static final long SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path segment;
+    private double falsePositiveRate;
+
+    @Before
+    public void setUp() throws IOException {
+        segment = folder.newFile("table_1").toPath();
+        falsePositiveRate = new DatabaseConfig(folder.getRoot().toString()).getBloomFilterFalsePositiveRate();
+    }
+
+    @Test
+    public void addedKeysAreAlwaysFound() throws IOException {
+        var filter = filled(falsePositiveRate);
+
+        assertAllFound(filter);
+
+        filter.write(segment, SEGMENT_SIZE);
+        assertAllFound(SegmentBloomFilter.read(segment, SEGMENT_SIZE).orElseThrow());
+    }
+
+    /**
+     * Доля ложных срабатываний на ключах, которых нет в фильтре, близка к заданной в настройках
+     */
+    @Test
+    public void falsePositiveRateMatchesConfig() {
+        for (double rate : new double[]{falsePositiveRate, 0.1, 0.001}) {
+            var filter = filled(rate);
+            int falsePositives = 0;
+
+            for (int i = 0; i < PROBES; i++) {
+                if (filter.mightContain("absent-" + i)) {
+                    falsePositives++;
+                }
+            }
+
+            double measured = (double) falsePositives / PROBES;
+
+            assertTrue("Measured rate " + measured + " for " + rate, measured > rate / 2 && measured < rate * 1.5);
+            assertEquals(rate, filter.getFalsePositiveRate(), rate / 2);
+        }
+    }
+
+    /**
+     * Фильтр, записанный для сегмента другого размера, например до дописывания сегмента, не читается
+     */
+    @Test
+    public void staleFilterIsRejected() throws IOException {
+        filled(falsePositiveRate).write(segment, SEGMENT_SIZE);
+
+        assertTrue(SegmentBloomFilter.read(segment, SEGMENT_SIZE).isPresent());
+        assertFalse(SegmentBloomFilter.read(segment, SEGMENT_SIZE + 1).isPresent());
+        assertFalse(SegmentBloomFilter.read(segment, SEGMENT_SIZE - 1).isPresent());
+    }
+
+    @Test
+    public void truncatedFilterIsRejected() throws IOException {
+        var filter = filled(falsePositiveRate);
+        var path = SegmentBloomFilter.pathFor(segment);
+        filter.write(segment, SEGMENT_SIZE);
+        long size = Files.size(path);
+
+        for (long cut : new long[]{1, 8, size / 2, size - 4, size}) {
+            filter.write(segment, SEGMENT_SIZE);
+
+            try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(size - cut);
+            }
+
+            assertFalse("Cut " + cut, SegmentBloomFilter.read(segment, SEGMENT_SIZE).isPresent());
+        }
+    }
+
+    @Test
+    public void damagedOrMissingFilterIsRejected() throws IOException {
+        filled(falsePositiveRate).write(segment, SEGMENT_SIZE);
+
+        var path = SegmentBloomFilter.pathFor(segment);
+        var content = Files.readAllBytes(path);
+        content[content.length / 2] ^= 1;
+        Files.write(path, content);
+
+        assertFalse(SegmentBloomFilter.read(segment, SEGMENT_SIZE).isPresent());
+
+        Files.delete(path);
+        assertFalse(SegmentBloomFilter.read(segment, SEGMENT_SIZE).isPresent());
+    }
+
+    private static SegmentBloomFilter filled(double rate) {
+        var filter = SegmentBloomFilter.create(KEYS, rate);
+
+        for (int i = 0; i < KEYS; i++) {
+            filter.add(key(i));
+        }
+
+        return filter;
+    }
+
+    private static void assertAllFound(SegmentBloomFilter filter) {
+        for (int i = 0; i < KEYS; i++) {
+            assertTrue(key(i), filter.mightContain(key(i)));
+        }
+    }
+
+    private static String key(int key) {
+        return "key-" + key;
+    }
+}
@@ -0,0 +1,221 @@
+package com.itmo.java.basics.logic.io;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentHintFileTest {
+
+    private static final long SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path segment;
+
+    @Before
+    public void setUp() throws IOException {
+        segment = folder.newFile("table_1").toPath();
+    }
+
+    @Test
+    public void readReturnsWrittenEntries() throws IOException {
+        SegmentHintFile.write(segment, SEGMENT_SIZE, List.of(
+                entry("first", 8, 20, false),
+                entry("second", 28, 16, true)));
+
+        var entries = read(SEGMENT_SIZE);
+
+        assertEquals(2, entries.size());
+        assertEntry(entries.get(0), "first", 8, 20, false);
+        assertEntry(entries.get(1), "second", 28, 16, true);
+    }
+
+    @Test
+    public void readReturnsBlobPointers() throws IOException {
+        var pointer = new BlobPointer(42, 128, 1_000_000);
+
+        SegmentHintFile.write(segment, SEGMENT_SIZE, List.of(
+                entry("value", 8, 20, false),
+                new SegmentHintFile.Entry("blob".getBytes(StandardCharsets.UTF_8), 28, 36, false, pointer),
+                entry("removed", 64, 16, true)));
+
+        var entries = read(SEGMENT_SIZE);
+
+        assertEquals(3, entries.size());
+        assertEntry(entries.get(0), "value", 8, 20, false);
+        assertNull(entries.get(0).getBlobPointer());
+        assertEntry(entries.get(1), "blob", 28, 36, false);
+        assertEquals(pointer, entries.get(1).getBlobPointer());
+        assertEntry(entries.get(2), "removed", 64, 16, true);
+        assertNull(entries.get(2).getBlobPointer());
+    }
+
+    @Test
+    public void readAcceptsEmptyHint() throws IOException {
+        SegmentHintFile.write(segment, SEGMENT_SIZE, List.of());
+
+        assertTrue(SegmentHintFile.read(segment, SEGMENT_SIZE, (key, offset, recordSize, removed, pointer) -> {
+            throw new AssertionError("Unexpected entry");
+        }));
+    }
+
+    @Test
+    public void readRejectsMissingHint() throws IOException {
+        assertFalse(SegmentHintFile.read(segment, SEGMENT_SIZE, this::fail));
+    }
+
+    @Test
+    public void readRejectsHintOfSegmentWithOtherSize() throws IOException {
+        SegmentHintFile.write(segment, SEGMENT_SIZE, List.of(entry("key", 8, 20, false)));
+
+        assertFalse(SegmentHintFile.read(segment, SEGMENT_SIZE + 1, this::fail));
+    }
+
+    @Test
+    public void readRejectsCorruptedHint() throws IOException {
+        SegmentHintFile.write(segment, SEGMENT_SIZE, List.of(entry("key", 8, 20, false)));
+        var hint = SegmentHintFile.pathFor(segment);
+        var content = Files.readAllBytes(hint);
+
+        for (int i = 0; i < content.length; i++) {
+            var corrupted = content.clone();
+            corrupted[i] ^= 1;
+            Files.write(hint, corrupted);
+
+            assertFalse("byte " + i, SegmentHintFile.read(segment, SEGMENT_SIZE, this::fail));
+        }
+    }
+
+    @Test
+    public void readRejectsTruncatedHint() throws IOException {
+        SegmentHintFile.write(segment, SEGMENT_SIZE, List.of(entry("key", 8, 20, false)));
+        var hint = SegmentHintFile.pathFor(segment);
+        var content = Files.readAllBytes(hint);
+
+        for (int length = 0; length < content.length; length++) {
+            Files.write(hint, Arrays.copyOf(content, length));
+
+            assertFalse("length " + length, SegmentHintFile.read(segment, SEGMENT_SIZE, this::fail));
+        }
+    }
+
+    /**
+     * Файл с верной контрольной суммой, но с числом записей больше, чем в нем есть
+     */
+    @Test
+    public void readRejectsInconsistentEntryCount() throws IOException {
+        var key = "key".getBytes(StandardCharsets.UTF_8);
+        var entries = ByteBuffer.allocate(4 + key.length + 8 + 8 + 1)
+                .putInt(key.length).put(key).putLong(8).putLong(20).put((byte) 0);
+
+        writeRaw(2, 2, entries.array());
+
+        assertFalse(SegmentHintFile.read(segment, SEGMENT_SIZE, this::fail));
+    }
+
+    @Test
+    public void readRejectsNegativeKeySize() throws IOException {
+        var entries = ByteBuffer.allocate(4 + 8 + 8 + 1).putInt(-1).putLong(8).putLong(20).put((byte) 0);
+
+        writeRaw(2, 1, entries.array());
+
+        assertFalse(SegmentHintFile.read(segment, SEGMENT_SIZE, this::fail));
+    }
+
+    @Test
+    public void readRejectsUnknownVersion() throws IOException {
+        writeRaw(4, 0, new byte[0]);
+
+        assertFalse(SegmentHintFile.read(segment, SEGMENT_SIZE, this::fail));
+    }
+
+    @Test
+    public void readAcceptsFirstVersionWithoutRemovedFlag() throws IOException {
+        var key = "key".getBytes(StandardCharsets.UTF_8);
+        var entries = ByteBuffer.allocate(4 + key.length + 8 + 8)
+                .putInt(key.length).put(key).putLong(8).putLong(20);
+
+        writeRaw(1, 1, entries.array());
+
+        var read = read(SEGMENT_SIZE);
+
+        assertEquals(1, read.size());
+        assertEntry(read.get(0), "key", 8, 20, false);
+    }
+
+    /**
+     * Во второй версии ссылки на blob-файлы не отмечены: файл читается, только если ссылки не нужны
+     */
+    @Test
+    public void readRejectsSecondVersionWhenBlobPointersAreNeeded() throws IOException {
+        var key = "key".getBytes(StandardCharsets.UTF_8);
+        var entries = ByteBuffer.allocate(4 + key.length + 8 + 8 + 1)
+                .putInt(key.length).put(key).putLong(8).putLong(20).put((byte) 1);
+
+        writeRaw(2, 1, entries.array());
+
+        assertFalse(SegmentHintFile.read(segment, SEGMENT_SIZE, true, this::fail));
+
+        var read = read(SEGMENT_SIZE);
+
+        assertEquals(1, read.size());
+        assertEntry(read.get(0), "key", 8, 20, true);
+    }
+
+    private List<SegmentHintFile.Entry> read(long segmentSize) throws IOException {
+        var result = new ArrayList<SegmentHintFile.Entry>();
+
+        assertTrue(SegmentHintFile.read(segment, segmentSize, (key, offset, recordSize, removed, pointer) ->
+                result.add(new SegmentHintFile.Entry(key, offset, recordSize, removed, pointer))));
+
+        return result;
+    }
+
+    /**
+     * Записывает файл-подсказку с заданными версией и числом записей и верной контрольной суммой
+     */
+    private void writeRaw(int version, int count, byte[] entries) throws IOException {
+        var buffer = ByteBuffer.allocate(4 + 4 + 8 + 4 + entries.length + 8)
+                .putInt(0x48494E54).putInt(version).putLong(SEGMENT_SIZE).putInt(count).put(entries);
+
+        var crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+
+        Files.write(SegmentHintFile.pathFor(segment), buffer.array());
+    }
+
+    private void fail(byte[] key, long offset, long recordSize, boolean removed, BlobPointer pointer) {
+        throw new AssertionError("Entries of an invalid hint must not be passed to the consumer");
+    }
+
+    private static SegmentHintFile.Entry entry(String key, long offset, long recordSize, boolean removed) {
+        return new SegmentHintFile.Entry(key.getBytes(StandardCharsets.UTF_8), offset, recordSize, removed);
+    }
+
+    private static void assertEntry(SegmentHintFile.Entry entry, String key, long offset, long recordSize,
+                                    boolean removed) {
+        assertArrayEquals(key.getBytes(StandardCharsets.UTF_8), entry.getKey());
+        assertEquals(offset, entry.getOffset());
+        assertEquals(recordSize, entry.getRecordSize());
+        assertEquals(removed, entry.isRemoved());
+    }
+}